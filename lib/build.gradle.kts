@@ -2,6 +2,8 @@ plugins {
     `java-library`
     `maven-publish`
     alias(libs.plugins.aspectj)
+    alias(libs.plugins.jmh)
+    alias(libs.plugins.graalvm.native)
 }
 
 val mavenArtifactId = "lambda-circuit-breaker"
@@ -17,6 +19,15 @@ repositories {
     mavenCentral()
 }
 
+// Smoke test that is run as a native image against the DynamoDB Local endpoint in DYNAMODB_ENDPOINT
+val smokeTest: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[smokeTest.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[smokeTest.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
 dependencies {
     implementation(libs.aws.lambda.javaCore)
     implementation(libs.aws.sdk.dynamodb) {
@@ -25,20 +36,60 @@ dependencies {
     }
     implementation(libs.aws.sdk.urlConnectionClient)
     implementation(libs.aspectj.rt)
+    implementation(libs.crac)
     implementation(libs.bundles.logging)
+    // Provided by functions that use the RedisPersistenceStore
+    compileOnly(libs.jedis)
 
     testImplementation(libs.bundles.test.common)
     testImplementation(libs.aws.lambda.javaTest)
 
     testImplementation(libs.aws.dynamoDBLocal)
+    testImplementation(libs.jedis)
+    testImplementation(libs.embeddedRedis)
 
     testRuntimeOnly(libs.junit.jupiter.engine)
+
+    // The end-to-end benchmarks reuse the DynamoDB Local setup of the tests
+    jmhImplementation(sourceSets.test.get().output)
+    jmhImplementation(libs.aws.dynamoDBLocal)
+
+    "smokeTestImplementation"(libs.assertj.core)
+    "smokeTestImplementation"(libs.junit.jupiter.params)
+    "smokeTestRuntimeOnly"(libs.junit.jupiter.engine)
 }
 
 tasks.test {
     useJUnitPlatform()
 }
 
+val smokeTestTask = tasks.register<Test>("smokeTest") {
+    description = "Runs the smoke test on the JVM, see nativeSmokeTest for the native image."
+    group = "verification"
+    testClassesDirs = smokeTest.output.classesDirs
+    classpath = smokeTest.runtimeClasspath
+    useJUnitPlatform()
+}
+
+// The unit tests embed DynamoDB Local, which can not be run as a native image, use nativeSmokeTest instead of nativeTest
+graalvmNative {
+    registerTestBinary("smokeTest") {
+        usingSourceSet(smokeTest)
+        forTestTask(smokeTestTask)
+    }
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    // Report the allocation rate next to the throughput, run with -Pjmh.includes=<regex> to select benchmarks
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+    (project.findProperty("jmh.includes") as String?)?.let { includes.add(it) }
+}
+
 configurations.all {
     exclude(group = "software.amazon.awssdk", module = "netty-nio-client")
     exclude(group = "software.amazon.awssdk", module = "apache-client")
@@ -0,0 +1,119 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.SourceLocation;
+import org.aspectj.runtime.internal.AroundClosure;
+
+/**
+ * Minimal {@link ProceedingJoinPoint} to call the advice without weaving.
+ * Like a woven join point it always returns the same static part.
+ */
+class BenchmarkJoinPoint implements ProceedingJoinPoint {
+
+    private final Call call;
+    private final JoinPoint.StaticPart staticPart = new BenchmarkStaticPart();
+
+    BenchmarkJoinPoint(Call call) {
+        this.call = call;
+    }
+
+    @Override
+    public Object proceed() throws Throwable {
+        return call.proceed();
+    }
+
+    @Override
+    public Object proceed(Object[] args) throws Throwable {
+        return call.proceed();
+    }
+
+    @Override
+    public void set$AroundClosure(AroundClosure arc) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toShortString() {
+        return "benchmark";
+    }
+
+    @Override
+    public String toLongString() {
+        return "benchmark";
+    }
+
+    @Override
+    public Object getThis() {
+        return null;
+    }
+
+    @Override
+    public Object getTarget() {
+        return null;
+    }
+
+    @Override
+    public Object[] getArgs() {
+        return new Object[0];
+    }
+
+    @Override
+    public Signature getSignature() {
+        return null;
+    }
+
+    @Override
+    public SourceLocation getSourceLocation() {
+        return null;
+    }
+
+    @Override
+    public String getKind() {
+        return JoinPoint.METHOD_EXECUTION;
+    }
+
+    @Override
+    public JoinPoint.StaticPart getStaticPart() {
+        return staticPart;
+    }
+
+    @FunctionalInterface
+    interface Call {
+        Object proceed() throws Throwable;
+    }
+
+    private static class BenchmarkStaticPart implements JoinPoint.StaticPart {
+
+        @Override
+        public Signature getSignature() {
+            return null;
+        }
+
+        @Override
+        public SourceLocation getSourceLocation() {
+            return null;
+        }
+
+        @Override
+        public String getKind() {
+            return JoinPoint.METHOD_EXECUTION;
+        }
+
+        @Override
+        public int getId() {
+            return 0;
+        }
+
+        @Override
+        public String toShortString() {
+            return "benchmark";
+        }
+
+        @Override
+        public String toLongString() {
+            return "benchmark";
+        }
+    }
+}
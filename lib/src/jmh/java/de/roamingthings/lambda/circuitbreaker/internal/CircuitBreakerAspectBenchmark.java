@@ -0,0 +1,93 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreaker;
+import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+import de.roamingthings.lambda.circuitbreaker.exceptions.CircuitBreakerOpenException;
+import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link Safeguarded} advice per call against a store without I/O.
+ * Run with {@code ./gradlew :lib:jmh -Pjmh.includes=CircuitBreakerAspectBenchmark}; the gc profiler reports the
+ * allocations per call ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CircuitBreakerAspectBenchmark {
+
+    private static final String RESULT = "result";
+    // Preallocated so that the cost of the failing call itself is not measured
+    private static final RuntimeException FAILURE = new IllegalStateException("failure");
+
+    @Benchmark
+    public Object closed(ClosedCircuit circuit) throws Throwable {
+        return circuit.aspect.around(circuit.succeedingCall, circuit.safeguarded);
+    }
+
+    @Benchmark
+    public Object open(OpenCircuit circuit) throws Throwable {
+        try {
+            return circuit.aspect.around(circuit.succeedingCall, circuit.safeguarded);
+        } catch (CircuitBreakerOpenException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object tripping(ClosedCircuit circuit) throws Throwable {
+        try {
+            return circuit.aspect.around(circuit.failingCall, circuit.safeguarded);
+        } catch (CircuitBreakerTrippedException e) {
+            return e;
+        }
+    }
+
+    @Safeguarded(id = "benchmark")
+    public void safeguardedMethod() {
+        // Only used for its annotation
+    }
+
+    @State(Scope.Benchmark)
+    public static class ClosedCircuit extends Circuit {
+
+        @Setup(Level.Trial)
+        public void setup() throws NoSuchMethodException {
+            setup(PersistenceStore.Status.CLOSED);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class OpenCircuit extends Circuit {
+
+        @Setup(Level.Trial)
+        public void setup() throws NoSuchMethodException {
+            setup(PersistenceStore.Status.OPEN);
+        }
+    }
+
+    public abstract static class Circuit {
+
+        final CircuitBreakerAspect aspect = new CircuitBreakerAspect();
+        final BenchmarkJoinPoint succeedingCall = new BenchmarkJoinPoint(() -> RESULT);
+        final BenchmarkJoinPoint failingCall = new BenchmarkJoinPoint(() -> {
+            throw FAILURE;
+        });
+        Safeguarded safeguarded;
+
+        void setup(PersistenceStore.Status status) throws NoSuchMethodException {
+            CircuitBreaker.config()
+                    .withPersistenceStore(new FixedStatePersistenceStore(status))
+                    .configure();
+            safeguarded = CircuitBreakerAspectBenchmark.class.getMethod("safeguardedMethod").getAnnotation(Safeguarded.class);
+        }
+    }
+}
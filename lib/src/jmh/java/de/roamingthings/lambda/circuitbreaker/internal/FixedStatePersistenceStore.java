@@ -0,0 +1,55 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.SlidingWindowType;
+import de.roamingthings.lambda.circuitbreaker.persistence.CallStatistics;
+import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
+
+import java.time.Instant;
+
+/**
+ * Persistence store without I/O that always returns the same state, so that only the cost of the advice is measured.
+ */
+class FixedStatePersistenceStore implements PersistenceStore {
+
+    private final Status status;
+
+    FixedStatePersistenceStore(Status status) {
+        this.status = status;
+    }
+
+    @Override
+    public void configure(CircuitBreakerConfig config) {
+        // Nothing to configure
+    }
+
+    @Override
+    public void saveCircuitBreakerOpen(String circuitBreakerId, Throwable cause, Instant now) {
+        // Nothing to save
+    }
+
+    @Override
+    public Status fetchCircuitBreakerState(String circuitBreakerId, Instant now) {
+        return status;
+    }
+
+    @Override
+    public boolean acquireProbeLease(String circuitBreakerId, Instant now) {
+        return false;
+    }
+
+    @Override
+    public boolean saveCircuitBreakerClosed(String circuitBreakerId, Instant leaseAcquiredAt, Instant now) {
+        return false;
+    }
+
+    @Override
+    public CallStatistics recordCallOutcome(String circuitBreakerId, SlidingWindowType windowType, int windowSize, boolean failure, boolean slow, Instant now) {
+        return CallStatistics.EMPTY;
+    }
+
+    @Override
+    public void flush() {
+        // Nothing to flush
+    }
+}
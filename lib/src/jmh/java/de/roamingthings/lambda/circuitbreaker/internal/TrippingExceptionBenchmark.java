@@ -0,0 +1,104 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classification of thrown exceptions with deep hierarchies by {@link CircuitBreakerHandler#isTrippingException(Throwable)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrippingExceptionBenchmark {
+
+    private final Throwable deepTrippingException = new Level8Exception();
+    private final Throwable deepOtherException = new OtherLevel8Exception();
+    private CircuitBreakerHandler handler;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        var safeguarded = TrippingExceptionBenchmark.class.getMethod("safeguardedMethod").getAnnotation(Safeguarded.class);
+        handler = new CircuitBreakerHandler(safeguarded, CircuitBreakerConfig.builder().build());
+    }
+
+    @Benchmark
+    public boolean deepTrippingException() {
+        return handler.isTrippingException(deepTrippingException);
+    }
+
+    @Benchmark
+    public boolean deepOtherException() {
+        return handler.isTrippingException(deepOtherException);
+    }
+
+    @Safeguarded(id = "benchmark", trippedBy = {UnrelatedException.class, Level0Exception.class})
+    public void safeguardedMethod() {
+        // Only used for its annotation
+    }
+
+    public static class UnrelatedException extends RuntimeException {
+    }
+
+    public static class Level0Exception extends RuntimeException {
+    }
+
+    public static class Level1Exception extends Level0Exception {
+    }
+
+    public static class Level2Exception extends Level1Exception {
+    }
+
+    public static class Level3Exception extends Level2Exception {
+    }
+
+    public static class Level4Exception extends Level3Exception {
+    }
+
+    public static class Level5Exception extends Level4Exception {
+    }
+
+    public static class Level6Exception extends Level5Exception {
+    }
+
+    public static class Level7Exception extends Level6Exception {
+    }
+
+    public static class Level8Exception extends Level7Exception {
+    }
+
+    public static class OtherLevel0Exception extends IllegalStateException {
+    }
+
+    public static class OtherLevel1Exception extends OtherLevel0Exception {
+    }
+
+    public static class OtherLevel2Exception extends OtherLevel1Exception {
+    }
+
+    public static class OtherLevel3Exception extends OtherLevel2Exception {
+    }
+
+    public static class OtherLevel4Exception extends OtherLevel3Exception {
+    }
+
+    public static class OtherLevel5Exception extends OtherLevel4Exception {
+    }
+
+    public static class OtherLevel6Exception extends OtherLevel5Exception {
+    }
+
+    public static class OtherLevel7Exception extends OtherLevel6Exception {
+    }
+
+    public static class OtherLevel8Exception extends OtherLevel7Exception {
+    }
+}
@@ -0,0 +1,56 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.test.DynamoDBTestBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end state checks of {@link DynamoDBPersistenceStore} against DynamoDB Local, including the HTTP round-trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DynamoDBPersistenceStoreBenchmark extends DynamoDBTestBase {
+
+    private static final String CLOSED_CIRCUIT_BREAKER_ID = "benchmark-closed";
+    private static final String OPEN_CIRCUIT_BREAKER_ID = "benchmark-open";
+
+    private DynamoDBPersistenceStore store;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        setupDynamo();
+        store = DynamoDBPersistenceStore.builder()
+                .withTableName(TABLE_NAME)
+                .withDynamoDbClient(client)
+                .build();
+        store.configure(CircuitBreakerConfig.builder().build());
+        store.saveCircuitBreakerOpen(OPEN_CIRCUIT_BREAKER_ID, new IllegalStateException("benchmark"), Instant.now());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        teardownDynamo();
+    }
+
+    @Benchmark
+    public Object fetchClosedCircuitBreakerState() {
+        return store.fetchCircuitBreakerState(CLOSED_CIRCUIT_BREAKER_ID, Instant.now());
+    }
+
+    @Benchmark
+    public Object fetchOpenCircuitBreakerState() {
+        return store.fetchCircuitBreakerState(OPEN_CIRCUIT_BREAKER_ID, Instant.now());
+    }
+}
@@ -0,0 +1,51 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the requests of the DynamoDB stores and mapping the returned items, without I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DynamoDBRequestFactoryBenchmark {
+
+    private static final String CIRCUIT_BREAKER_ID = "benchmark";
+
+    private final DynamoDBRequestFactory requests = new DynamoDBRequestFactory(
+            "circuit_breaker_table", "id", "circuitBreaker#benchmark", null, "expiration", "status", "cause");
+    private final CircuitBreakerStatusRecord openRecord = new CircuitBreakerStatusRecord(
+            CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, Instant.now().plusSeconds(300).getEpochSecond(), "cause");
+    private final Map<String, AttributeValue> openItem = requests.recordToItem(openRecord);
+    private final Instant now = Instant.now();
+
+    @Benchmark
+    public Object getRecordRequest() {
+        return requests.getRecordRequest(CIRCUIT_BREAKER_ID, true);
+    }
+
+    @Benchmark
+    public Object createRecordRequest() {
+        return requests.createRecordRequest(openRecord, now);
+    }
+
+    @Benchmark
+    public Object acquireProbeLeaseRequest() {
+        return requests.acquireProbeLeaseRequest(openRecord, now);
+    }
+
+    @Benchmark
+    public Object itemToRecord() {
+        return requests.itemToRecord(openItem);
+    }
+}
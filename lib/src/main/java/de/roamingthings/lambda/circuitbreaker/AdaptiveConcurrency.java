@@ -0,0 +1,145 @@
+package de.roamingthings.lambda.circuitbreaker;
+
+import java.time.Duration;
+
+/**
+ * Settings of an adaptive concurrency limit of circuit breakers.
+ * <p>
+ * Besides being open or closed, a circuit breaker with an adaptive concurrency limit only admits as many concurrent
+ * calls across all Lambda containers as the limit allows. The limit is adjusted with AIMD (additive increase,
+ * multiplicative decrease): every call that succeeds in time raises the limit by {@code 1 / limit}, so that it grows
+ * by about one per {@code limit} calls, every failed or slow call lowers it by the backoff ratio. Slow calls are the
+ * ones that take at least the slow call threshold of the circuit breaker.
+ * <p>
+ * Each Lambda container adjusts its copy of the limit and adds its changes to the limit in the persistence store
+ * once per reconcile interval. The concurrent calls are counted with leases in the persistence store, which costs
+ * two writes per call.
+ */
+public class AdaptiveConcurrency {
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long reconcileIntervalMillis;
+
+    private AdaptiveConcurrency(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long reconcileIntervalMillis) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.reconcileIntervalMillis = reconcileIntervalMillis;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public long getReconcileIntervalMillis() {
+        return reconcileIntervalMillis;
+    }
+
+    /**
+     * @param limit a concurrency limit
+     * @return the limit bounded to the range of the minimum and maximum limit
+     */
+    public double bound(double limit) {
+        return Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+
+    /**
+     * Create a builder that can be used to configure and create {@link AdaptiveConcurrency}.
+     *
+     * @return a new instance of {@link Builder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private double backoffRatio = 0.9;
+        private long reconcileIntervalMillis = 1000L; // 1 second
+
+        public AdaptiveConcurrency build() {
+            if (minLimit < 1) {
+                throw new IllegalArgumentException("Minimum limit must be greater than zero");
+            }
+            if (maxLimit < minLimit) {
+                throw new IllegalArgumentException("Maximum limit must not be less than the minimum limit");
+            }
+            if (initialLimit < minLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException("Initial limit must be between the minimum and the maximum limit");
+            }
+            if (!(backoffRatio > 0 && backoffRatio < 1)) {
+                throw new IllegalArgumentException("Backoff ratio must be greater than 0 and less than 1");
+            }
+            if (reconcileIntervalMillis < 0) {
+                throw new IllegalArgumentException("Reconcile interval must not be negative");
+            }
+            return new AdaptiveConcurrency(initialLimit, minLimit, maxLimit, backoffRatio, reconcileIntervalMillis);
+        }
+
+        /**
+         * The limit of a circuit breaker that has no limit in the persistence store yet (optional), by default 20.
+         *
+         * @param initialLimit initial number of concurrent calls
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * The range of the limit (optional), by default 1 to 200.
+         *
+         * @param minLimit minimum number of concurrent calls
+         * @param maxLimit maximum number of concurrent calls
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withLimits(int minLimit, int maxLimit) {
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * The factor the limit is multiplied with after a failed or slow call (optional), by default 0.9.
+         *
+         * @param backoffRatio factor between 0 and 1
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * How often a Lambda container adds its changes to the limit in the persistence store and reads the limit of
+         * all containers (optional), by default 1 second.
+         *
+         * @param reconcileInterval interval of the reconciliation
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withReconcileInterval(Duration reconcileInterval) {
+            this.reconcileIntervalMillis = reconcileInterval.toMillis();
+            return this;
+        }
+    }
+}
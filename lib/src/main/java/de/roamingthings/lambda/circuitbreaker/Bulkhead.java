@@ -0,0 +1,59 @@
+package de.roamingthings.lambda.circuitbreaker;
+
+import de.roamingthings.lambda.circuitbreaker.exceptions.BulkheadFullException;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * &#64;Bulkhead is used to limit the number of concurrent calls of the annotated method across all Lambda
+ * containers:<br/>
+ * Before the method is executed a lease is acquired from the persistence store. If {@code maxConcurrent} leases
+ * are already held, the method will not be called. Instead, a {@link BulkheadFullException} will be thrown.
+ * The lease is released once the method returns, or once the returned stage completes for a method that returns a
+ * {@link java.util.concurrent.CompletionStage}.
+ * <p>
+ * A lease that is not released, e.g. because the Lambda container timed out, expires after {@code leaseSeconds}.
+ * The lease should therefore be longer than the longest call of the method.
+ * <p>
+ * The persistence store must support bulkheads, see
+ * {@link de.roamingthings.lambda.circuitbreaker.persistence.BulkheadStore}. When the method is also
+ * {@link Safeguarded}, the circuit breaker is checked first and a {@link BulkheadFullException} does not trip it, even
+ * if it is one of the tripping exceptions. A rejected probe call does not close the circuit breaker either.
+ *
+ * <pre>
+ *     &#64;Bulkhead(id = "legacy-backend", maxConcurrent = 20)
+ *     public String callClient(String someParameter) {
+ *         // ...
+ *         return something;
+ *     }
+ * </pre>
+ * <br/>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Bulkhead {
+
+    /**
+     * A logical identifier for the bulkhead. Methods with the same identifier share the limit.
+     *
+     * @return The identifier
+     */
+    String id();
+
+    /**
+     * The maximum number of concurrent calls across all Lambda containers.
+     *
+     * @return The maximum number of concurrent calls
+     */
+    int maxConcurrent();
+
+    /**
+     * The number of seconds after which a lease that has not been released is no longer counted.
+     *
+     * @return The duration of a lease in seconds
+     */
+    int leaseSeconds() default 60;
+}
@@ -1,11 +1,46 @@
 package de.roamingthings.lambda.circuitbreaker;
 
+import de.roamingthings.lambda.circuitbreaker.events.CircuitBreakerEventListener;
+import de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerEventDispatcher;
+import de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerHandler;
+import de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerPrimingResource;
+import de.roamingthings.lambda.circuitbreaker.metrics.MetricsSink;
+import de.roamingthings.lambda.circuitbreaker.persistence.ConcurrencyLimitStore;
 import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
+import org.crac.Core;
 
+import java.lang.reflect.UndeclaredThrowableException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Entry point of the circuit breakers, configured with {@link #config()}.
+ * <p>
+ * Methods are safeguarded either with the {@link Safeguarded} annotation, which requires AspectJ weaving, or
+ * programmatically with {@link #execute(String, Supplier)} and its variants:
+ * <pre>
+ *     String result = CircuitBreaker.getInstance().execute("my-circuit-breaker", () -&gt; callClient(someParameter));
+ * </pre>
+ * Programmatic calls use the default values of {@link Safeguarded}: every exception trips the circuit breaker
+ * and the sliding window is taken from the {@link CircuitBreakerConfig}.
+ */
 public class CircuitBreaker {
 
     private CircuitBreakerConfig config;
     private PersistenceStore persistenceStore;
+    private MetricsSink metrics = MetricsSink.NONE;
+    private CircuitBreakerEventDispatcher eventDispatcher = CircuitBreakerEventDispatcher.NONE;
+    // CRaC only keeps a weak reference to registered resources
+    private CircuitBreakerPrimingResource primingResource;
+    private final ConcurrentMap<String, CircuitBreakerHandler> handlers = new ConcurrentHashMap<>();
 
     private CircuitBreaker() {
         // Prevent direct instantiation
@@ -39,10 +74,210 @@ public class CircuitBreaker {
         return persistenceStore;
     }
 
+    public MetricsSink getMetrics() {
+        return metrics;
+    }
+
+    public CircuitBreakerEventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
+    /**
+     * Call a supplier safeguarded by the circuit breaker with the given id.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param supplier         the protected call
+     * @param <T>              the type of the result
+     * @return the result of the supplier
+     * @throws de.roamingthings.lambda.circuitbreaker.exceptions.CircuitBreakerOpenException if the circuit breaker is open
+     */
+    public <T> T execute(String circuitBreakerId, Supplier<T> supplier) {
+        var handler = handler(circuitBreakerId);
+        var now = Instant.now();
+        var permission = handler.acquirePermission(now);
+        var callStart = System.nanoTime();
+        T result;
+        try {
+            result = supplier.get();
+        } catch (Throwable throwable) {
+            throw failed(handler, permission, throwable, now, callStart);
+        }
+        handler.onSuccess(permission, now, System.nanoTime() - callStart);
+        return result;
+    }
+
+    /**
+     * Call a runnable safeguarded by the circuit breaker with the given id.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param runnable         the protected call
+     * @throws de.roamingthings.lambda.circuitbreaker.exceptions.CircuitBreakerOpenException if the circuit breaker is open
+     */
+    public void run(String circuitBreakerId, Runnable runnable) {
+        var handler = handler(circuitBreakerId);
+        var now = Instant.now();
+        var permission = handler.acquirePermission(now);
+        var callStart = System.nanoTime();
+        try {
+            runnable.run();
+        } catch (Throwable throwable) {
+            throw failed(handler, permission, throwable, now, callStart);
+        }
+        handler.onSuccess(permission, now, System.nanoTime() - callStart);
+    }
+
+    /**
+     * Wrap a function so that every call is safeguarded by the circuit breaker with the given id.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param function         the protected function
+     * @param <T>              the type of the input
+     * @param <R>              the type of the result
+     * @return the safeguarded function
+     */
+    public <T, R> Function<T, R> decorate(String circuitBreakerId, Function<T, R> function) {
+        return input -> {
+            var handler = handler(circuitBreakerId);
+            var now = Instant.now();
+            var permission = handler.acquirePermission(now);
+            var callStart = System.nanoTime();
+            R result;
+            try {
+                result = function.apply(input);
+            } catch (Throwable throwable) {
+                throw failed(handler, permission, throwable, now, callStart);
+            }
+            handler.onSuccess(permission, now, System.nanoTime() - callStart);
+            return result;
+        };
+    }
+
+    /**
+     * Like {@link #execute(String, Supplier)} for an {@code int} result, without boxing.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param supplier         the protected call
+     * @return the result of the supplier
+     */
+    public int executeAsInt(String circuitBreakerId, IntSupplier supplier) {
+        var handler = handler(circuitBreakerId);
+        var now = Instant.now();
+        var permission = handler.acquirePermission(now);
+        var callStart = System.nanoTime();
+        int result;
+        try {
+            result = supplier.getAsInt();
+        } catch (Throwable throwable) {
+            throw failed(handler, permission, throwable, now, callStart);
+        }
+        handler.onSuccess(permission, now, System.nanoTime() - callStart);
+        return result;
+    }
+
+    /**
+     * Like {@link #execute(String, Supplier)} for a {@code long} result, without boxing.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param supplier         the protected call
+     * @return the result of the supplier
+     */
+    public long executeAsLong(String circuitBreakerId, LongSupplier supplier) {
+        var handler = handler(circuitBreakerId);
+        var now = Instant.now();
+        var permission = handler.acquirePermission(now);
+        var callStart = System.nanoTime();
+        long result;
+        try {
+            result = supplier.getAsLong();
+        } catch (Throwable throwable) {
+            throw failed(handler, permission, throwable, now, callStart);
+        }
+        handler.onSuccess(permission, now, System.nanoTime() - callStart);
+        return result;
+    }
+
+    /**
+     * Like {@link #execute(String, Supplier)} for a {@code double} result, without boxing.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param supplier         the protected call
+     * @return the result of the supplier
+     */
+    public double executeAsDouble(String circuitBreakerId, DoubleSupplier supplier) {
+        var handler = handler(circuitBreakerId);
+        var now = Instant.now();
+        var permission = handler.acquirePermission(now);
+        var callStart = System.nanoTime();
+        double result;
+        try {
+            result = supplier.getAsDouble();
+        } catch (Throwable throwable) {
+            throw failed(handler, permission, throwable, now, callStart);
+        }
+        handler.onSuccess(permission, now, System.nanoTime() - callStart);
+        return result;
+    }
+
+    /**
+     * A handler is created once per circuit breaker id and again when the circuit breaker is reconfigured.
+     */
+    private CircuitBreakerHandler handler(String circuitBreakerId) {
+        var handler = handlers.get(circuitBreakerId);
+        if (handler == null || !handler.isResolvedFor(config)) {
+            handler = CircuitBreakerHandler.forId(circuitBreakerId, config);
+            handlers.put(circuitBreakerId, handler);
+        }
+        return handler;
+    }
+
+    private static RuntimeException failed(CircuitBreakerHandler handler, CircuitBreakerHandler.Permission permission, Throwable throwable, Instant now, long callStart) {
+        var failure = handler.onError(permission, throwable, now, System.nanoTime() - callStart);
+        if (failure instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (failure instanceof Error error) {
+            throw error;
+        }
+        // Only thrown by suppliers that throw checked exceptions without declaring them
+        return new UndeclaredThrowableException(failure);
+    }
+
+    /**
+     * Write all state that has been aggregated in memory to the persistence store, publish the metrics and deliver
+     * the buffered events to the listeners.
+     * <p>
+     * Call this at the end of each Lambda invocation, e.g. in a {@code finally} block of the handler method.
+     */
+    public void flush() {
+        try {
+            getPersistenceStore().flush();
+        } finally {
+            metrics.flush();
+            eventDispatcher.drain();
+        }
+    }
+
     private void setPersistenceStore(PersistenceStore persistenceStore) {
         this.persistenceStore = persistenceStore;
     }
 
+    private void setMetrics(MetricsSink metrics) {
+        this.metrics = metrics;
+    }
+
+    private synchronized void setEventDispatcher(CircuitBreakerEventDispatcher eventDispatcher) {
+        var previous = this.eventDispatcher;
+        this.eventDispatcher = eventDispatcher;
+        previous.close();
+    }
+
+    private synchronized void registerPrimingResource() {
+        if (primingResource == null) {
+            primingResource = new CircuitBreakerPrimingResource();
+            Core.getGlobalContext().register(primingResource);
+        }
+    }
+
     private static class Holder {
         private static final CircuitBreaker instance = new CircuitBreaker();
     }
@@ -51,9 +286,15 @@ public class CircuitBreaker {
 
         private CircuitBreakerConfig config;
         private PersistenceStore store;
+        private MetricsSink metrics = MetricsSink.NONE;
+        private final List<CircuitBreakerEventListener> eventListeners = new ArrayList<>();
 
         /**
          * Use this method after configuring persistence layer (mandatory) and idem potency configuration (optional)
+         * <p>
+         * This also registers a CRaC resource that primes the persistence store before a snapshot is taken
+         * (e.g. with Lambda SnapStart) and drops the state kept in memory after the restore. Call this in the
+         * constructor or a static initializer of the handler so that it runs before the snapshot.
          */
         public void configure() {
             if (store == null) {
@@ -63,8 +304,18 @@ public class CircuitBreaker {
             if (config == null) {
                 config = CircuitBreakerConfig.builder().build();
             }
+            if (config.getAdaptiveConcurrency() != null && ConcurrencyLimitStore.of(store).isEmpty()) {
+                throw new IllegalStateException(
+                        "Persistence store does not support the adaptive concurrency limit: " + store.getClass().getName());
+            }
+            store.configure(config);
             CircuitBreaker.getInstance().setConfig(config);
             CircuitBreaker.getInstance().setPersistenceStore(store);
+            CircuitBreaker.getInstance().setMetrics(metrics);
+            CircuitBreaker.getInstance().setEventDispatcher(eventListeners.isEmpty()
+                    ? CircuitBreakerEventDispatcher.NONE
+                    : new CircuitBreakerEventDispatcher(eventListeners, CircuitBreakerEventDispatcher.DEFAULT_BUFFER_SIZE));
+            CircuitBreaker.getInstance().registerPrimingResource();
         }
 
         public Config withPersistenceStore(PersistenceStore persistenceStore) {
@@ -76,5 +327,28 @@ public class CircuitBreaker {
             this.config = config;
             return this;
         }
+
+        /**
+         * Sink for the metrics of the circuit breakers (optional), by default no metrics are recorded.
+         *
+         * @param metrics the sink, e.g. {@link de.roamingthings.lambda.circuitbreaker.metrics.EmfMetricsSink}
+         * @return the config instance (to chain operations)
+         */
+        public Config withMetrics(MetricsSink metrics) {
+            this.metrics = metrics == null ? MetricsSink.NONE : metrics;
+            return this;
+        }
+
+        /**
+         * Listener for the events of the circuit breakers (optional), can be called multiple times to register
+         * several listeners. The listeners are called off the path of the protected calls.
+         *
+         * @param listener the listener
+         * @return the config instance (to chain operations)
+         */
+        public Config withEventListener(CircuitBreakerEventListener listener) {
+            this.eventListeners.add(listener);
+            return this;
+        }
     }
 }
@@ -5,15 +5,107 @@ import java.time.Duration;
 public class CircuitBreakerConfig {
 
     private final long expirationInSeconds;
+    private final long probeLeaseInSeconds;
+    private final SlidingWindowType slidingWindowType;
+    private final int slidingWindowSize;
+    private final int minimumNumberOfCalls;
+    private final float failureRateThreshold;
+    private final int maxPendingCalls;
+    private final long maxPendingMillis;
+    private final long slowStartMillis;
+    private final SlowStartMode slowStartMode;
+    private final long slowCallThresholdMillis;
+    private final float slowCallRateThreshold;
+    private final AdaptiveConcurrency adaptiveConcurrency;
 
+    /**
+     * Create a configuration with the given expiration and the defaults of the {@link Builder} for everything else.
+     *
+     * @param expirationInSeconds the number of seconds to wait before a record is expired
+     * @deprecated use {@link #builder()} and {@link Builder#withExpiration(Duration)}
+     */
+    @Deprecated
     public CircuitBreakerConfig(long expirationInSeconds) {
-        this.expirationInSeconds = expirationInSeconds;
+        this(builder().withExpiration(Duration.ofSeconds(expirationInSeconds)));
+    }
+
+    private CircuitBreakerConfig(Builder builder) {
+        this.expirationInSeconds = builder.expirationInSeconds;
+        this.probeLeaseInSeconds = builder.probeLeaseInSeconds;
+        this.slidingWindowType = builder.slidingWindowType;
+        this.slidingWindowSize = builder.slidingWindowSize;
+        this.minimumNumberOfCalls = builder.minimumNumberOfCalls;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.maxPendingCalls = builder.maxPendingCalls;
+        this.maxPendingMillis = builder.maxPendingMillis;
+        this.slowStartMillis = builder.slowStartMillis;
+        this.slowStartMode = builder.slowStartMode;
+        this.slowCallThresholdMillis = builder.slowCallThresholdMillis;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.adaptiveConcurrency = builder.adaptiveConcurrency;
     }
 
     public long getExpirationInSeconds() {
         return expirationInSeconds;
     }
 
+    public long getProbeLeaseInSeconds() {
+        return probeLeaseInSeconds;
+    }
+
+    public SlidingWindowType getSlidingWindowType() {
+        return slidingWindowType;
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    public int getMinimumNumberOfCalls() {
+        return minimumNumberOfCalls;
+    }
+
+    public float getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public int getMaxPendingCalls() {
+        return maxPendingCalls;
+    }
+
+    public long getMaxPendingMillis() {
+        return maxPendingMillis;
+    }
+
+    /**
+     * @return the length of the slow start after a circuit breaker has been closed, 0 if disabled
+     */
+    public long getSlowStartMillis() {
+        return slowStartMillis;
+    }
+
+    public SlowStartMode getSlowStartMode() {
+        return slowStartMode;
+    }
+
+    /**
+     * @return the duration at or above which a call is counted as slow, 0 if disabled
+     */
+    public long getSlowCallThresholdMillis() {
+        return slowCallThresholdMillis;
+    }
+
+    public float getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * @return the settings of the adaptive concurrency limit, {@code null} if disabled
+     */
+    public AdaptiveConcurrency getAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
     /**
      * Create a builder that can be used to configure and create a {@link CircuitBreakerConfig}.
      *
@@ -26,11 +118,51 @@ public class CircuitBreakerConfig {
     public static class Builder {
 
         private long expirationInSeconds = 5 * 60L; // 5 minutes
+        private long probeLeaseInSeconds = 60L; // 1 minute
+        private SlidingWindowType slidingWindowType = SlidingWindowType.NONE;
+        private int slidingWindowSize = 100;
+        private int minimumNumberOfCalls = 10;
+        private float failureRateThreshold = 50.0f;
+        private int maxPendingCalls = 100;
+        private long maxPendingMillis = 1000L; // 1 second
+        private long slowStartMillis = 0L; // disabled
+        private SlowStartMode slowStartMode = SlowStartMode.LINEAR;
+        private long slowCallThresholdMillis = 0L; // disabled
+        private float slowCallRateThreshold = 100.0f;
+        private AdaptiveConcurrency adaptiveConcurrency; // disabled
 
         public CircuitBreakerConfig build() {
-            return new CircuitBreakerConfig(
-                    expirationInSeconds
-            );
+            if (probeLeaseInSeconds < 1) {
+                throw new IllegalArgumentException("Probe lease timeout must be at least one second");
+            }
+            if (slidingWindowType == SlidingWindowType.DEFAULT) {
+                throw new IllegalArgumentException("Sliding window type DEFAULT can only be used with @Safeguarded");
+            }
+            if (slidingWindowSize < 1) {
+                throw new IllegalArgumentException("Sliding window size must be greater than zero");
+            }
+            if (minimumNumberOfCalls < 1) {
+                throw new IllegalArgumentException("Minimum number of calls must be greater than zero");
+            }
+            if (maxPendingCalls < 1) {
+                throw new IllegalArgumentException("Maximum number of pending calls must be greater than zero");
+            }
+            if (failureRateThreshold <= 0 || failureRateThreshold > 100) {
+                throw new IllegalArgumentException("Failure rate threshold must be greater than 0 and at most 100");
+            }
+            if (slowStartMillis < 0) {
+                throw new IllegalArgumentException("Slow start window must not be negative");
+            }
+            if (slowStartMode == null) {
+                throw new IllegalArgumentException("Slow start mode is not specified");
+            }
+            if (slowCallThresholdMillis < 0) {
+                throw new IllegalArgumentException("Slow call threshold must not be negative");
+            }
+            if (slowCallRateThreshold <= 0 || slowCallRateThreshold > 100) {
+                throw new IllegalArgumentException("Slow call rate threshold must be greater than 0 and at most 100");
+            }
+            return new CircuitBreakerConfig(this);
         }
 
         /**
@@ -43,5 +175,132 @@ public class CircuitBreakerConfig {
             this.expirationInSeconds = expiration.getSeconds();
             return this;
         }
+
+        /**
+         * The number of seconds a half-open circuit breaker is reserved for a single probe call.
+         * If the probe does not report back within this time another caller may probe. A duration with a fraction of
+         * a second is rounded up to the next full second.
+         *
+         * @param probeLeaseTimeout duration of the probe lease
+         * @return the instance of the builder (to chain operations)
+         */
+        public Builder withProbeLeaseTimeout(Duration probeLeaseTimeout) {
+            this.probeLeaseInSeconds = probeLeaseTimeout.getSeconds() + (probeLeaseTimeout.getNano() > 0 ? 1 : 0);
+            return this;
+        }
+
+        /**
+         * The sliding window used to calculate the failure rate, by default {@link SlidingWindowType#NONE} which
+         * trips the circuit breaker on the first failure.
+         * <p>
+         * The size is the number of calls for a {@link SlidingWindowType#COUNT_BASED} window and the number of
+         * seconds for a {@link SlidingWindowType#TIME_BASED} window. The default size is 100.
+         *
+         * @param slidingWindowType type of the sliding window
+         * @param slidingWindowSize size of the sliding window
+         * @return the instance of the builder (to chain operations)
+         */
+        public Builder withSlidingWindow(SlidingWindowType slidingWindowType, int slidingWindowSize) {
+            this.slidingWindowType = slidingWindowType;
+            this.slidingWindowSize = slidingWindowSize;
+            return this;
+        }
+
+        /**
+         * The number of calls in the sliding window that is required before the failure rate is evaluated,
+         * by default 10
+         *
+         * @param minimumNumberOfCalls minimum number of calls
+         * @return the instance of the builder (to chain operations)
+         */
+        public Builder withMinimumNumberOfCalls(int minimumNumberOfCalls) {
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+            return this;
+        }
+
+        /**
+         * The failure rate in percent at or above which the circuit breaker trips, by default 50
+         *
+         * @param failureRateThreshold failure rate threshold in percent
+         * @return the instance of the builder (to chain operations)
+         */
+        public Builder withFailureRateThreshold(float failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * Call outcomes of a time based sliding window are aggregated in memory and written to the persistence store
+         * once the given number of calls or the given age of the oldest pending outcome is reached,
+         * by default 100 calls or 1 second. Pending outcomes are also written by {@link CircuitBreaker#flush()}.
+         *
+         * @param maxPendingCalls number of calls that triggers a write
+         * @param maxPendingAge   age of the oldest pending outcome that triggers a write
+         * @return the instance of the builder (to chain operations)
+         */
+        public Builder withOutcomeBatching(int maxPendingCalls, Duration maxPendingAge) {
+            this.maxPendingCalls = maxPendingCalls;
+            this.maxPendingMillis = maxPendingAge.toMillis();
+            return this;
+        }
+
+        /**
+         * Admit a growing fraction of the calls for a while after a circuit breaker has been closed, by default
+         * disabled. Calls that are not admitted are rejected with a
+         * {@link de.roamingthings.lambda.circuitbreaker.exceptions.CircuitBreakerOpenException} that carries a
+         * retry-after hint, so that the backlog of callers does not hit the recovered resource all at once.
+         * <p>
+         * While the slow start is in progress a closed record is kept in the persistence store, which expires at
+         * the end of the window.
+         *
+         * @param window length of the slow start
+         * @param mode   how the fraction of admitted calls grows
+         * @return the instance of the builder (to chain operations)
+         */
+        public Builder withSlowStart(Duration window, SlowStartMode mode) {
+            this.slowStartMillis = window.toMillis();
+            this.slowStartMode = mode;
+            return this;
+        }
+
+        /**
+         * The duration at or above which a call is counted as slow, by default disabled. Slow calls are only counted
+         * when a sliding window is configured, and the circuit breaker trips once the rate of slow calls reaches the
+         * slow call rate threshold, even if the calls succeed.
+         *
+         * @param slowCallThreshold duration of a slow call
+         * @return the instance of the builder (to chain operations)
+         */
+        public Builder withSlowCallThreshold(Duration slowCallThreshold) {
+            this.slowCallThresholdMillis = slowCallThreshold.toMillis();
+            return this;
+        }
+
+        /**
+         * The rate of slow calls in percent at or above which the circuit breaker trips, by default 100
+         *
+         * @param slowCallRateThreshold slow call rate threshold in percent
+         * @return the instance of the builder (to chain operations)
+         */
+        public Builder withSlowCallRateThreshold(float slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        /**
+         * Limit the concurrent calls of each circuit breaker across all Lambda containers with a limit that adapts
+         * to the failures and the latency of the calls, by default disabled. Calls above the limit are rejected with
+         * a {@link de.roamingthings.lambda.circuitbreaker.exceptions.CircuitBreakerOpenException}.
+         * <p>
+         * The persistence store must support bulkheads and concurrency limits, see
+         * {@link de.roamingthings.lambda.circuitbreaker.persistence.ConcurrencyLimitStore}.
+         *
+         * @param adaptiveConcurrency settings of the adaptive concurrency limit
+         * @return the instance of the builder (to chain operations)
+         */
+        public Builder withAdaptiveConcurrency(AdaptiveConcurrency adaptiveConcurrency) {
+            this.adaptiveConcurrency = adaptiveConcurrency;
+            return this;
+        }
     }
 }
@@ -4,6 +4,7 @@ public abstract class Constants {
 
     public static final String CIRCUIT_BREAKER_DISABLED_ENV = "CIRCUIT_BREAKER_DISABLED";
     public static final String AWS_REGION_ENV = "AWS_REGION";
+    public static final String LAMBDA_LOG_STREAM_NAME_ENV = "AWS_LAMBDA_LOG_STREAM_NAME";
 
     private Constants() {
         // Prevent direct instantiation
@@ -0,0 +1,69 @@
+package de.roamingthings.lambda.circuitbreaker;
+
+import de.roamingthings.lambda.circuitbreaker.exceptions.RateLimitExceededException;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * &#64;RateLimited is used to limit the rate of calls of the annotated method across all Lambda containers:<br/>
+ * Every call takes a permit from a token bucket in the persistence store, which is refilled with
+ * {@code permitsPerSecond} and holds at most {@code burst} permits. If no permit is available the method will not be
+ * called. Instead, a {@link RateLimitExceededException} will be thrown.
+ * <p>
+ * To avoid a write to the persistence store for every call, each Lambda container takes up to
+ * {@code permitsPerReservation} permits at once and uses them for the following calls. Reserved permits that have not
+ * been used within a second are dropped.
+ * <p>
+ * The persistence store must support rate limiters, see
+ * {@link de.roamingthings.lambda.circuitbreaker.persistence.RateLimiterStore}. When the method is also
+ * {@link Safeguarded}, the circuit breaker is checked first and a {@link RateLimitExceededException} does not trip
+ * it, even if it is one of the tripping exceptions. A rejected probe call does not close the circuit breaker either.
+ *
+ * <pre>
+ *     &#64;RateLimited(id = "partner-api", permitsPerSecond = 50)
+ *     public String callClient(String someParameter) {
+ *         // ...
+ *         return something;
+ *     }
+ * </pre>
+ * <br/>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RateLimited {
+
+    /**
+     * A logical identifier for the rate limiter. Methods with the same identifier share the permits.
+     *
+     * @return The identifier
+     */
+    String id();
+
+    /**
+     * The number of permits that become available per second across all Lambda containers.
+     *
+     * @return The rate of permits
+     */
+    double permitsPerSecond();
+
+    /**
+     * The maximum number of permits that can be taken at once after the rate limiter has been idle.
+     * <p>
+     * A value less than 1 uses the permits of one second.
+     *
+     * @return The burst capacity
+     */
+    int burst() default -1;
+
+    /**
+     * The maximum number of permits that a Lambda container takes from the persistence store at once.
+     * <p>
+     * A value less than 1 uses the permits of a tenth of a second, but at least one.
+     *
+     * @return The number of permits per reservation
+     */
+    int permitsPerReservation() default -1;
+}
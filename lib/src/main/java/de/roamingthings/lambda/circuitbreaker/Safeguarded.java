@@ -11,10 +11,15 @@ import java.lang.annotation.Target;
  * &#64;Safeguarded is used to signal that the annotated method is safeguarded by a circuit breaker:<br/>
  * When the annotated method is called and the circuit breaker with the given {@code id} is closed the method will be
  * executed normally. When one of the exceptions listed in {@code triggeredBy} is caught during that call,
- * the circuit breaker will transition to the _open_ state.
+ * the circuit breaker will transition to the _open_ state. If a sliding window is configured the circuit breaker
+ * only trips once the failure rate within the window reaches the threshold. With a slow call threshold, calls that
+ * take at least that long are counted as slow and the circuit breaker also trips once the rate of slow calls within
+ * the window reaches its threshold.
  * <p>
  * When the circuit breaker is open, the annotated method will not be called.
  * Instead, a {@link CircuitBreakerOpenException} will be thrown.<br/>
+ * Once the open period has expired the circuit breaker is _half-open_: a single call is let through as a probe.
+ * If the probe succeeds the circuit breaker is closed, otherwise it is opened again.
  *
  * <pre>
  *     &#64;SafeGuarded(id = "my-circuit-breaker", triggeredBy = {MyException.class})
@@ -47,4 +52,61 @@ public @interface Safeguarded {
      * @return The exception that trigger the circuit breaker to open
      */
     Class<? extends Exception>[] trippedBy() default {};
+
+    /**
+     * The sliding window used to calculate the failure rate of this circuit breaker.
+     * <p>
+     * By default, the sliding window configured in {@link CircuitBreakerConfig} is used.
+     *
+     * @return The type of the sliding window
+     */
+    SlidingWindowType slidingWindowType() default SlidingWindowType.DEFAULT;
+
+    /**
+     * The size of the sliding window: the number of calls for a count based window or the number of seconds for a
+     * time based window.
+     * <p>
+     * A value less than 1 uses the size configured in {@link CircuitBreakerConfig}.
+     *
+     * @return The size of the sliding window
+     */
+    int slidingWindowSize() default -1;
+
+    /**
+     * The number of calls in the sliding window that is required before the failure rate is evaluated.
+     * <p>
+     * A negative value uses the minimum configured in {@link CircuitBreakerConfig}.
+     *
+     * @return The minimum number of calls
+     */
+    int minimumNumberOfCalls() default -1;
+
+    /**
+     * The failure rate in percent at or above which the circuit breaker trips.
+     * <p>
+     * A value less than or equal to 0 uses the threshold configured in {@link CircuitBreakerConfig}.
+     *
+     * @return The failure rate threshold in percent
+     */
+    float failureRateThreshold() default -1;
+
+    /**
+     * The duration in milliseconds at or above which a call is counted as slow. Slow calls are only counted when a
+     * sliding window is used.
+     * <p>
+     * A negative value uses the threshold configured in {@link CircuitBreakerConfig}, 0 disables the detection of
+     * slow calls.
+     *
+     * @return The slow call threshold in milliseconds
+     */
+    long slowCallThreshold() default -1;
+
+    /**
+     * The rate of slow calls in percent at or above which the circuit breaker trips.
+     * <p>
+     * A value less than or equal to 0 uses the threshold configured in {@link CircuitBreakerConfig}.
+     *
+     * @return The slow call rate threshold in percent
+     */
+    float slowCallRateThreshold() default -1;
 }
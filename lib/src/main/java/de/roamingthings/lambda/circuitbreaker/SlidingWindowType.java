@@ -0,0 +1,14 @@
+package de.roamingthings.lambda.circuitbreaker;
+
+/**
+ * The kind of sliding window that is used to decide whether a circuit breaker trips.
+ * <ul>
+ *     <li>DEFAULT: use the sliding window configured in {@link CircuitBreakerConfig} (only valid on {@link Safeguarded})</li>
+ *     <li>NONE: the circuit breaker trips on the first failure</li>
+ *     <li>COUNT_BASED: the failure rate is calculated over the last calls</li>
+ *     <li>TIME_BASED: the failure rate is calculated over the calls of the last seconds</li>
+ * </ul>
+ */
+public enum SlidingWindowType {
+    DEFAULT, NONE, COUNT_BASED, TIME_BASED
+}
@@ -0,0 +1,27 @@
+package de.roamingthings.lambda.circuitbreaker;
+
+/**
+ * How the fraction of admitted calls grows during the slow start after a circuit breaker has been closed.
+ * <ul>
+ *     <li>LINEAR: grows linearly from 10% to 100% over the slow start window</li>
+ *     <li>EXPONENTIAL: grows exponentially from 10% to 100% over the slow start window, which admits fewer calls
+ *     at the beginning of the window and more at the end</li>
+ * </ul>
+ */
+public enum SlowStartMode {
+    LINEAR, EXPONENTIAL;
+
+    private static final double INITIAL_ADMISSION_RATE = 0.1;
+
+    /**
+     * @param progress elapsed part of the slow start window, from 0 to 1
+     * @return the fraction of calls to admit, from 0.1 to 1
+     */
+    public double admissionRate(double progress) {
+        var clamped = Math.max(0, Math.min(1, progress));
+        if (this == EXPONENTIAL) {
+            return INITIAL_ADMISSION_RATE * Math.pow(1 / INITIAL_ADMISSION_RATE, clamped);
+        }
+        return INITIAL_ADMISSION_RATE + (1 - INITIAL_ADMISSION_RATE) * clamped;
+    }
+}
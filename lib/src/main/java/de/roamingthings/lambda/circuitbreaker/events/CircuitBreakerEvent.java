@@ -0,0 +1,72 @@
+package de.roamingthings.lambda.circuitbreaker.events;
+
+import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Event of a circuit breaker.
+ *
+ * @param type             the type of the event
+ * @param circuitBreakerId the identifier of the circuit breaker
+ * @param timestamp        when the event occurred
+ * @param status           the new status for {@link Type#STATE_TRANSITION}, the status that caused the rejection for
+ *                         {@link Type#CALL_REJECTED} ({@code CLOSED} if the call has been rejected by the slow start or
+ *                         the concurrency limit), otherwise {@code null}
+ * @param duration         the duration of the call for {@link Type#CALL_SUCCEEDED} and {@link Type#CALL_IGNORED},
+ *                         otherwise {@code null}
+ * @param error            the error of the persistence store for {@link Type#STORE_ERROR}, the exception thrown by the
+ *                         call for {@link Type#CALL_IGNORED}, otherwise {@code null}
+ */
+public record CircuitBreakerEvent(Type type,
+                                  String circuitBreakerId,
+                                  Instant timestamp,
+                                  PersistenceStore.Status status,
+                                  Duration duration,
+                                  Throwable error) {
+
+    public enum Type {
+        /**
+         * The circuit breaker has been opened, a probe has been started or the circuit breaker has been closed.
+         */
+        STATE_TRANSITION,
+        /**
+         * A call has been rejected because the circuit breaker was open or half-open, by the slow start or by the
+         * concurrency limit.
+         */
+        CALL_REJECTED,
+        /**
+         * A call has been completed without an exception.
+         */
+        CALL_SUCCEEDED,
+        /**
+         * A call has thrown an exception that does not trip the circuit breaker.
+         */
+        CALL_IGNORED,
+        /**
+         * The persistence store failed to read or write the state of the circuit breaker.
+         */
+        STORE_ERROR
+    }
+
+    public static CircuitBreakerEvent stateTransition(String circuitBreakerId, Instant timestamp, PersistenceStore.Status status) {
+        return new CircuitBreakerEvent(Type.STATE_TRANSITION, circuitBreakerId, timestamp, status, null, null);
+    }
+
+    public static CircuitBreakerEvent callRejected(String circuitBreakerId, Instant timestamp, PersistenceStore.Status status) {
+        return new CircuitBreakerEvent(Type.CALL_REJECTED, circuitBreakerId, timestamp, status, null, null);
+    }
+
+    public static CircuitBreakerEvent callSucceeded(String circuitBreakerId, Instant timestamp, Duration duration) {
+        return new CircuitBreakerEvent(Type.CALL_SUCCEEDED, circuitBreakerId, timestamp, null, duration, null);
+    }
+
+    public static CircuitBreakerEvent callIgnored(String circuitBreakerId, Instant timestamp, Duration duration, Throwable error) {
+        return new CircuitBreakerEvent(Type.CALL_IGNORED, circuitBreakerId, timestamp, null, duration, error);
+    }
+
+    public static CircuitBreakerEvent storeError(String circuitBreakerId, Instant timestamp, Throwable error) {
+        return new CircuitBreakerEvent(Type.STORE_ERROR, circuitBreakerId, timestamp, null, null, error);
+    }
+}
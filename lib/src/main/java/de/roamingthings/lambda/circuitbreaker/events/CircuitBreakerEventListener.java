@@ -0,0 +1,17 @@
+package de.roamingthings.lambda.circuitbreaker.events;
+
+/**
+ * Receives the events of all circuit breakers.
+ * <p>
+ * Events are buffered and delivered off the path of the protected call, either by a background thread or when
+ * {@link de.roamingthings.lambda.circuitbreaker.CircuitBreaker#flush()} is called. The listener is never called
+ * concurrently. If the listener does not keep up, events are dropped instead of slowing down the calls.
+ */
+@FunctionalInterface
+public interface CircuitBreakerEventListener {
+
+    /**
+     * @param event the event
+     */
+    void onEvent(CircuitBreakerEvent event);
+}
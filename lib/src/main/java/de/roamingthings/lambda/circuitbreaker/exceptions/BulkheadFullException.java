@@ -0,0 +1,8 @@
+package de.roamingthings.lambda.circuitbreaker.exceptions;
+
+public class BulkheadFullException extends RuntimeException {
+
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
@@ -1,8 +1,29 @@
 package de.roamingthings.lambda.circuitbreaker.exceptions;
 
+import java.time.Duration;
+import java.util.Optional;
+
 public class CircuitBreakerOpenException extends RuntimeException {
 
+    private final Duration retryAfter;
+
     public CircuitBreakerOpenException(String message) {
+        this(message, null);
+    }
+
+    /**
+     * @param message    the detail message
+     * @param retryAfter how long the caller should wait before retrying, may be {@code null}
+     */
+    public CircuitBreakerOpenException(String message, Duration retryAfter) {
         super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return how long the caller should wait before retrying, if known
+     */
+    public Optional<Duration> getRetryAfter() {
+        return Optional.ofNullable(retryAfter);
     }
 }
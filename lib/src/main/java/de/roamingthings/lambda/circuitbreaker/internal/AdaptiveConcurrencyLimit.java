@@ -0,0 +1,143 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.AdaptiveConcurrency;
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.persistence.ConcurrencyLimitStore;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The adaptive concurrency limit of a circuit breaker in this container, see {@link AdaptiveConcurrency}.
+ * <p>
+ * The limit is adjusted locally after every call. Once per reconcile interval the local changes are added to the
+ * limit in the persistence store, which keeps the limit in bounds and returns it including the changes of all
+ * containers. Changes that are made while the limit is reconciled are kept.
+ * <p>
+ * The concurrent calls are counted with the leases of the bulkhead {@code <circuitBreakerId>#concurrency} (key
+ * {@code <circuitBreakerId>#concurrency#bulkhead} in DynamoDB), which expire after the probe lease timeout.
+ */
+final class AdaptiveConcurrencyLimit {
+
+    static final String LEASE_SUFFIX = "#concurrency";
+
+    private static final ConcurrentMap<String, AdaptiveConcurrencyLimit> LIMITS = new ConcurrentHashMap<>();
+
+    private final String circuitBreakerId;
+    private final String bulkheadId;
+    private final CircuitBreakerConfig config;
+    private final AdaptiveConcurrency settings;
+    private final long reconcileIntervalNanos;
+    private final long leaseSeconds;
+    private double limit;
+    private double reconciledLimit;
+    private boolean reconciled;
+    private boolean reconciling;
+    private long reconciledAtNanos;
+
+    AdaptiveConcurrencyLimit(String circuitBreakerId, CircuitBreakerConfig config) {
+        this.circuitBreakerId = circuitBreakerId;
+        this.bulkheadId = circuitBreakerId + LEASE_SUFFIX;
+        this.config = config;
+        this.settings = config.getAdaptiveConcurrency();
+        this.reconcileIntervalNanos = TimeUnit.MILLISECONDS.toNanos(settings.getReconcileIntervalMillis());
+        this.leaseSeconds = Math.max(1, config.getProbeLeaseInSeconds());
+        this.limit = settings.getInitialLimit();
+        this.reconciledLimit = settings.getInitialLimit();
+    }
+
+    /**
+     * The adaptive concurrency limit is shared by all methods and programmatic calls with the same circuit breaker id.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param config           the current configuration of the circuit breaker
+     * @return the limit of the circuit breaker, {@code null} if no adaptive concurrency is configured
+     */
+    static AdaptiveConcurrencyLimit of(String circuitBreakerId, CircuitBreakerConfig config) {
+        if (config.getAdaptiveConcurrency() == null) {
+            return null;
+        }
+        return LIMITS.compute(circuitBreakerId, (id, existing) ->
+                existing != null && existing.isResolvedFor(config) ? existing : new AdaptiveConcurrencyLimit(id, config));
+    }
+
+    /**
+     * @param config the current configuration of the circuit breaker
+     * @return {@code true} if this limit has been created with the given configuration
+     */
+    boolean isResolvedFor(CircuitBreakerConfig config) {
+        return this.config == config;
+    }
+
+    /**
+     * Reconcile the limit if due and acquire a lease for a call.
+     *
+     * @return the identifier of the lease or {@code null} if the limit has been reached
+     */
+    String tryAcquire(ConcurrencyLimitStore store, Instant now) {
+        reconcileIfDue(store, now);
+        var leaseId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        if (store.acquireBulkheadLease(bulkheadId, leaseId, currentLimit(), now.plusSeconds(leaseSeconds), now)) {
+            return leaseId;
+        }
+        return null;
+    }
+
+    /**
+     * Adjust the limit with the outcome of a call and release its lease.
+     *
+     * @param overloaded whether the call failed or was slow
+     */
+    void release(ConcurrencyLimitStore store, String leaseId, boolean overloaded) {
+        adjust(overloaded);
+        release(store, leaseId);
+    }
+
+    /**
+     * Release the lease of a call without an outcome, e.g. a call that has been rejected by a bulkhead.
+     */
+    void release(ConcurrencyLimitStore store, String leaseId) {
+        store.releaseBulkheadLease(bulkheadId, leaseId);
+    }
+
+    synchronized int currentLimit() {
+        return (int) limit;
+    }
+
+    synchronized void adjust(boolean overloaded) {
+        if (overloaded) {
+            limit = Math.max(settings.getMinLimit(), limit * settings.getBackoffRatio());
+        } else {
+            limit = Math.min(settings.getMaxLimit(), limit + 1 / limit);
+        }
+    }
+
+    void reconcileIfDue(ConcurrencyLimitStore store, Instant now) {
+        var nowNanos = System.nanoTime();
+        double delta;
+        synchronized (this) {
+            if (reconciling || reconciled && nowNanos - reconciledAtNanos < reconcileIntervalNanos) {
+                return;
+            }
+            reconciling = true;
+            delta = limit - reconciledLimit;
+        }
+        try {
+            var stored = store.addToConcurrencyLimit(circuitBreakerId, delta, settings, now);
+            synchronized (this) {
+                var changesWhileReconciling = limit - reconciledLimit - delta;
+                reconciledLimit = stored;
+                limit = settings.bound(stored + changesWhileReconciling);
+                reconciled = true;
+                reconciledAtNanos = nowNanos;
+            }
+        } finally {
+            synchronized (this) {
+                reconciling = false;
+            }
+        }
+    }
+}
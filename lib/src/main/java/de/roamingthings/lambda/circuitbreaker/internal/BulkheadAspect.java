@@ -0,0 +1,40 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.Bulkhead;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.DeclarePrecedence;
+import org.aspectj.lang.annotation.Pointcut;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Aspect that handles the {@link Bulkhead} annotation.
+ * It uses the {@link BulkheadHandler} to do the job. A handler is created once per annotated method.
+ */
+@Aspect
+// An open circuit breaker rejects the call before a lease is acquired
+@DeclarePrecedence("de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerAspect, de.roamingthings.lambda.circuitbreaker.internal.BulkheadAspect")
+public class BulkheadAspect {
+
+    private final ConcurrentMap<JoinPoint.StaticPart, BulkheadHandler> handlers = new ConcurrentHashMap<>();
+
+    @Pointcut("@annotation(bulkhead)")
+    public void callAt(Bulkhead bulkhead) {
+        // This method is empty, because the pointcut is only used as a location
+    }
+
+    @Around(value = "callAt(bulkhead) && execution(@Bulkhead * *.*(..))", argNames = "pjp,bulkhead")
+    public Object around(ProceedingJoinPoint pjp,
+                         Bulkhead bulkhead) throws Throwable {
+        var staticPart = pjp.getStaticPart();
+        var bulkheadHandler = handlers.get(staticPart);
+        if (bulkheadHandler == null) {
+            bulkheadHandler = handlers.computeIfAbsent(staticPart, part -> new BulkheadHandler(bulkhead));
+        }
+        return bulkheadHandler.handle(pjp);
+    }
+}
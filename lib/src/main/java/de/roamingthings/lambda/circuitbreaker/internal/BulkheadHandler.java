@@ -0,0 +1,82 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.Bulkhead;
+import de.roamingthings.lambda.circuitbreaker.CircuitBreaker;
+import de.roamingthings.lambda.circuitbreaker.exceptions.BulkheadFullException;
+import de.roamingthings.lambda.circuitbreaker.persistence.BulkheadStore;
+import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Handles the calls of a single method annotated with {@link Bulkhead}.
+ */
+public class BulkheadHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkheadHandler.class);
+
+    private final String bulkheadId;
+    private final int maxConcurrent;
+    private final long leaseSeconds;
+
+    public BulkheadHandler(Bulkhead bulkhead) {
+        if (bulkhead.maxConcurrent() < 1) {
+            throw new IllegalArgumentException("Maximum number of concurrent calls must be greater than zero: " + bulkhead.id());
+        }
+        if (bulkhead.leaseSeconds() < 1) {
+            throw new IllegalArgumentException("Lease must be at least one second: " + bulkhead.id());
+        }
+        this.bulkheadId = bulkhead.id();
+        this.maxConcurrent = bulkhead.maxConcurrent();
+        this.leaseSeconds = bulkhead.leaseSeconds();
+    }
+
+    /**
+     * Acquire a lease, proceed and release the lease. The lease of a method that returns a {@link CompletionStage}
+     * is released when the stage completes.
+     *
+     * @param joinPoint the call of the annotated method
+     * @return the result of proceeding
+     * @throws Throwable if the invoked proceed throws anything
+     */
+    public Object handle(ProceedingJoinPoint joinPoint) throws Throwable {
+        var bulkheadStore = bulkheadStore(CircuitBreaker.getInstance().getPersistenceStore());
+        var leaseId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        var now = Instant.now();
+        if (!bulkheadStore.acquireBulkheadLease(bulkheadId, leaseId, maxConcurrent, now.plusSeconds(leaseSeconds), now)) {
+            throw new BulkheadFullException("Bulkhead with id " + bulkheadId + " is full");
+        }
+        Object result;
+        try {
+            result = joinPoint.proceed();
+        } catch (Throwable throwable) {
+            releaseLease(bulkheadStore, leaseId);
+            throw throwable;
+        }
+        if (result instanceof CompletionStage<?> stage) {
+            stage.whenComplete((value, error) -> releaseLease(bulkheadStore, leaseId));
+        } else {
+            releaseLease(bulkheadStore, leaseId);
+        }
+        return result;
+    }
+
+    private void releaseLease(BulkheadStore bulkheadStore, String leaseId) {
+        try {
+            bulkheadStore.releaseBulkheadLease(bulkheadId, leaseId);
+        } catch (RuntimeException e) {
+            // The lease expires, a failed release must not replace the outcome of the call
+            log.warn("Failed to release lease of bulkhead: {}", bulkheadId, e);
+        }
+    }
+
+    private static BulkheadStore bulkheadStore(PersistenceStore persistenceStore) {
+        return BulkheadStore.of(persistenceStore).orElseThrow(() ->
+                new IllegalStateException("Persistence store does not support bulkheads: " + persistenceStore.getClass().getName()));
+    }
+}
@@ -1,21 +1,31 @@
 package de.roamingthings.lambda.circuitbreaker.internal;
 
+import de.roamingthings.lambda.circuitbreaker.CircuitBreaker;
+import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.DeclarePrecedence;
 import de.roamingthings.lambda.circuitbreaker.Safeguarded;
 import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Aspect that handles the {@link Safeguarded} annotation.
- * It uses the {@link CircuitBreakerHandler} to do the job.
+ * It uses the {@link CircuitBreakerHandler} to do the job. A handler is created once per annotated method
+ * (and again when the circuit breaker is reconfigured).
+ * Methods returning a {@link java.util.concurrent.CompletionStage} are handled without blocking the caller.
  */
 @Aspect
 // CircuitBreakerHandler annotation should come first before large message
 @DeclarePrecedence("de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerHandler, *")
 public class CircuitBreakerAspect {
 
+    private final ConcurrentMap<JoinPoint.StaticPart, CircuitBreakerHandler> handlers = new ConcurrentHashMap<>();
+
     @Pointcut("@annotation(safeguarded)")
     public void callAt(Safeguarded safeguarded) {
         // This method is empty, because the pointcut is only used as a location
@@ -24,9 +34,14 @@ public class CircuitBreakerAspect {
     @Around(value = "callAt(safeguarded) && execution(@Safeguarded * *.*(..))", argNames = "pjp,safeguarded")
     public Object around(ProceedingJoinPoint pjp,
                          Safeguarded safeguarded) throws Throwable {
-        var id = safeguarded.id();
-        var triggeringExceptions = safeguarded.trippedBy();
-        var circuitBreakerHandler = new CircuitBreakerHandler(pjp, id, triggeringExceptions);
-        return circuitBreakerHandler.handle();
+        var config = CircuitBreaker.getInstance().getConfig();
+        var staticPart = pjp.getStaticPart();
+        var circuitBreakerHandler = handlers.get(staticPart);
+        if (circuitBreakerHandler == null || !circuitBreakerHandler.isResolvedFor(config)) {
+            circuitBreakerHandler = new CircuitBreakerHandler(safeguarded, config, AdaptiveConcurrencyLimit.of(safeguarded.id(), config),
+                    ((MethodSignature) pjp.getSignature()).getReturnType());
+            handlers.put(staticPart, circuitBreakerHandler);
+        }
+        return circuitBreakerHandler.handle(pjp);
     }
 }
@@ -0,0 +1,137 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.events.CircuitBreakerEvent;
+import de.roamingthings.lambda.circuitbreaker.events.CircuitBreakerEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers the events of the circuit breakers to the registered listeners.
+ * <p>
+ * Events are published into a bounded lock-free ring buffer, which is drained by a daemon thread and by
+ * {@link #drain()} at the end of an invocation (the thread does not run while a Lambda execution environment is
+ * frozen). Publishing never waits for the listeners: if the buffer is full the event is dropped and counted.
+ */
+public class CircuitBreakerEventDispatcher implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakerEventDispatcher.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /**
+     * Dispatcher without listeners, which does not buffer anything.
+     */
+    public static final CircuitBreakerEventDispatcher NONE = new CircuitBreakerEventDispatcher();
+
+    private final List<CircuitBreakerEventListener> listeners;
+    private final EventRingBuffer<CircuitBreakerEvent> buffer;
+    private final LongAdder droppedEvents = new LongAdder();
+    // Listeners are never called concurrently by the drain thread and a flush
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final Thread drainThread;
+    private volatile boolean drainThreadWaiting;
+    private volatile boolean running = true;
+
+    private CircuitBreakerEventDispatcher() {
+        this.listeners = List.of();
+        this.buffer = null;
+        this.drainThread = null;
+    }
+
+    public CircuitBreakerEventDispatcher(List<CircuitBreakerEventListener> listeners, int bufferSize) {
+        this.listeners = List.copyOf(listeners);
+        this.buffer = new EventRingBuffer<>(bufferSize);
+        this.drainThread = new Thread(this::drainContinuously, "circuit-breaker-events");
+        this.drainThread.setDaemon(true);
+        this.drainThread.start();
+    }
+
+    /**
+     * @return {@code false} if there are no listeners, so that no event needs to be created
+     */
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * Add an event to the buffer without waiting for the listeners.
+     *
+     * @param event the event
+     */
+    public void publish(CircuitBreakerEvent event) {
+        if (buffer == null) {
+            return;
+        }
+        if (!buffer.offer(event)) {
+            droppedEvents.increment();
+            return;
+        }
+        if (drainThreadWaiting) {
+            LockSupport.unpark(drainThread);
+        }
+    }
+
+    /**
+     * Deliver all buffered events to the listeners on the calling thread.
+     */
+    public void drain() {
+        if (buffer == null) {
+            return;
+        }
+        drainLock.lock();
+        try {
+            CircuitBreakerEvent event;
+            while ((event = buffer.poll()) != null) {
+                deliver(event);
+            }
+        } finally {
+            drainLock.unlock();
+        }
+        var dropped = droppedEvents.sumThenReset();
+        if (dropped > 0) {
+            log.warn("Dropped {} circuit breaker events because the listeners did not keep up", dropped);
+        }
+    }
+
+    /**
+     * Stop the drain thread. Events that are still buffered are delivered on the calling thread.
+     */
+    @Override
+    public void close() {
+        if (buffer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(drainThread);
+        drain();
+    }
+
+    private void drainContinuously() {
+        while (running) {
+            drain();
+            if (buffer.isEmpty()) {
+                drainThreadWaiting = true;
+                // Checked again, since an event may have been published before the flag was visible
+                if (buffer.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                drainThreadWaiting = false;
+            }
+        }
+    }
+
+    private void deliver(CircuitBreakerEvent event) {
+        for (var listener : listeners) {
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                log.warn("Circuit breaker event listener failed for event {}", event.type(), e);
+            }
+        }
+    }
+}
@@ -1,68 +1,556 @@
 package de.roamingthings.lambda.circuitbreaker.internal;
 
 import de.roamingthings.lambda.circuitbreaker.CircuitBreaker;
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+import de.roamingthings.lambda.circuitbreaker.events.CircuitBreakerEvent;
+import de.roamingthings.lambda.circuitbreaker.exceptions.BulkheadFullException;
 import de.roamingthings.lambda.circuitbreaker.exceptions.CircuitBreakerOpenException;
+import de.roamingthings.lambda.circuitbreaker.exceptions.RateLimitExceededException;
+import de.roamingthings.lambda.circuitbreaker.persistence.AsyncPersistenceStore;
+import de.roamingthings.lambda.circuitbreaker.persistence.CallStatistics;
+import de.roamingthings.lambda.circuitbreaker.persistence.ConcurrencyLimitStore;
 import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * Handles the calls of a single method annotated with {@link Safeguarded}.
+ * <p>
+ * Everything that can be derived from the annotation and the configuration is resolved once when the handler is
+ * created, so that a call of a closed circuit breaker does not allocate anything besides the calls to the
+ * persistence store.
+ * <p>
+ * A call is handled in steps: {@link #acquirePermission} checks the state of the circuit breaker, then either
+ * {@link #onSuccess} or {@link #onError} records the outcome of the call. Methods that return a
+ * {@link CompletionStage} record the outcome once the stage has completed.
+ */
 public class CircuitBreakerHandler {
 
-    private final ProceedingJoinPoint joinPoint;
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakerHandler.class);
+
     private final String circuitBreakerId;
-    private final Class<? extends Exception>[] triggeringExceptions;
-    private final PersistenceStore persistenceStore;
+    private final TrippingExceptions trippingExceptions;
+    private final SlidingWindowSettings slidingWindow;
+    private final CircuitBreakerConfig config;
+    private final Duration slowStartRetryAfter;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final boolean completionStageResult;
+
+    public CircuitBreakerHandler(Safeguarded safeguarded, CircuitBreakerConfig config) {
+        this(safeguarded, config, AdaptiveConcurrencyLimit.of(safeguarded.id(), config), Object.class);
+    }
+
+    /**
+     * Create a handler for programmatic calls, which uses the default values of {@link Safeguarded}: every exception
+     * trips the circuit breaker and the sliding window and slow call settings are taken from the configuration.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param config           the current configuration of the circuit breaker
+     * @return the handler
+     */
+    public static CircuitBreakerHandler forId(String circuitBreakerId, CircuitBreakerConfig config) {
+        return new CircuitBreakerHandler(new DefaultSafeguarded(circuitBreakerId), config);
+    }
+
+    /**
+     * @param concurrencyLimit the adaptive concurrency limit shared by all methods of the circuit breaker,
+     *                         {@code null} if disabled
+     * @param returnType       the declared return type of the annotated method
+     */
+    CircuitBreakerHandler(Safeguarded safeguarded, CircuitBreakerConfig config, AdaptiveConcurrencyLimit concurrencyLimit, Class<?> returnType) {
+        this.concurrencyLimit = concurrencyLimit;
+        // Only types that a CompletableFuture can be returned for, other implementations are handled synchronously
+        this.completionStageResult = returnType == CompletionStage.class || returnType == CompletableFuture.class;
+        this.circuitBreakerId = safeguarded.id();
+        this.trippingExceptions = new TrippingExceptions(safeguarded.trippedBy());
+        this.slidingWindow = SlidingWindowSettings.resolve(safeguarded, config);
+        this.config = config;
+        // The admitted fraction of a linear slow start has grown by 9 percentage points after a tenth of the window
+        this.slowStartRetryAfter = Duration.ofMillis(Math.max(1000L, config.getSlowStartMillis() / 10));
+    }
 
-    public CircuitBreakerHandler(ProceedingJoinPoint joinPoint, String circuitBreakerId, Class<? extends Exception>[] triggeringExceptions) {
-        this.joinPoint = joinPoint;
-        this.circuitBreakerId = circuitBreakerId;
-        this.triggeringExceptions = triggeringExceptions;
-        this.persistenceStore = CircuitBreaker.getInstance().getPersistenceStore();
-        this.persistenceStore.configure(CircuitBreaker.getInstance().getConfig());
+    /**
+     * @param config the current configuration of the circuit breaker
+     * @return {@code true} if this handler has been resolved with the given configuration
+     */
+    public boolean isResolvedFor(CircuitBreakerConfig config) {
+        return this.config == config;
     }
 
     /**
      * Main entry point for handling idempotent execution of a function.
      *
+     * @param joinPoint the call of the annotated method
      * @return the result of proceeding
      * @throws Throwable if the invoked proceed throws anything
      */
-    public Object handle() throws Throwable {
-        // Check if circuit breaker is open
-        if (isCircuitBreakerOpen(circuitBreakerId)) {
-            throw new CircuitBreakerOpenException("Circuit with id " + circuitBreakerId + " is open");
+    public Object handle(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (completionStageResult) {
+            return handleCompletionStage(joinPoint);
         }
+        var now = Instant.now();
+        var permission = acquirePermission(now);
+        var callStart = System.nanoTime();
+        Object result;
         try {
-            return joinPoint.proceed();
+            result = joinPoint.proceed();
         } catch (Throwable throwable) {
-            if (isNullOrEmpty(triggeringExceptions) || isTrippingException(throwable)) {
-                openCircuitBreaker(circuitBreakerId, throwable);
-                throw new CircuitBreakerTrippedException("Circuit with id " + circuitBreakerId + " tripped", throwable);
+            throw onError(permission, throwable, now, System.nanoTime() - callStart);
+        }
+        onSuccess(permission, now, System.nanoTime() - callStart);
+        return result;
+    }
+
+    /**
+     * Handles a method that returns a {@link CompletionStage}. The state of the circuit breaker is fetched and the
+     * probe lease is acquired without blocking if the persistence store is an {@link AsyncPersistenceStore}, and the
+     * outcome of the call is recorded when the returned stage completes. The lease of an adaptive concurrency limit
+     * and the outcome are still written with blocking calls.
+     * <p>
+     * A rejected call, a failed store access and a tripped circuit breaker complete the returned future exceptionally
+     * instead of throwing.
+     */
+    private CompletableFuture<Object> handleCompletionStage(ProceedingJoinPoint joinPoint) {
+        var circuitBreaker = CircuitBreaker.getInstance();
+        var events = circuitBreaker.getEventDispatcher();
+        var now = Instant.now();
+        var fetchStart = System.nanoTime();
+        CompletableFuture<PersistenceStore.Admission> pendingAdmission;
+        try {
+            pendingAdmission = admitCallAsync(circuitBreaker.getPersistenceStore(), events, now);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return pendingAdmission.thenCompose(admission -> {
+            circuitBreaker.getMetrics().recordCheck(circuitBreakerId, System.nanoTime() - fetchStart);
+            if (admission != PersistenceStore.Admission.HALF_OPEN) {
+                return CompletableFuture.completedFuture(acquirePermission(admission, false, now));
+            }
+            return acquireProbeLeaseAsync(circuitBreaker.getPersistenceStore(), events, now)
+                    .thenApply(probeLeaseAcquired -> acquirePermission(admission, probeLeaseAcquired, now));
+        }).thenCompose(permission -> {
+            var callStart = System.nanoTime();
+            CompletionStage<?> stage;
+            try {
+                stage = (CompletionStage<?>) joinPoint.proceed();
+                if (stage == null) {
+                    throw new NullPointerException("Method safeguarded by circuit with id " + circuitBreakerId + " returned null instead of a CompletionStage");
+                }
+            } catch (Throwable throwable) {
+                return CompletableFuture.failedFuture(onError(permission, throwable, now, System.nanoTime() - callStart));
+            }
+            var result = new CompletableFuture<Object>();
+            stage.whenComplete((value, error) -> {
+                var callNanos = System.nanoTime() - callStart;
+                if (error != null) {
+                    result.completeExceptionally(onError(permission, unwrap(error), now, callNanos));
+                    return;
+                }
+                try {
+                    onSuccess(permission, now, callNanos);
+                    result.complete(value);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            return result;
+        });
+    }
+
+    /**
+     * Fetch the state of the circuit breaker and check whether a call is permitted.
+     *
+     * @param now current time, to be passed to {@link #onSuccess} or {@link #onError}
+     * @return the permission of the call, to be passed to {@link #onSuccess} or {@link #onError}
+     * @throws CircuitBreakerOpenException if the call is not permitted
+     */
+    public Permission acquirePermission(Instant now) {
+        var circuitBreaker = CircuitBreaker.getInstance();
+        var fetchStart = System.nanoTime();
+        var admission = admitCall(circuitBreaker.getPersistenceStore(), circuitBreaker.getEventDispatcher(), now);
+        circuitBreaker.getMetrics().recordCheck(circuitBreakerId, System.nanoTime() - fetchStart);
+        return acquirePermission(admission, now);
+    }
+
+    /**
+     * Check whether a call is permitted with the given admission of the persistence store. A half-open circuit
+     * breaker permits the call that acquires the probe lease.
+     *
+     * @param admission the admission of the call by the persistence store
+     * @param now       current time
+     * @return the permission of the call, to be passed to {@link #onSuccess} or {@link #onError}
+     * @throws CircuitBreakerOpenException if the call is not permitted
+     */
+    Permission acquirePermission(PersistenceStore.Admission admission, Instant now) {
+        var circuitBreaker = CircuitBreaker.getInstance();
+        var probeLeaseAcquired = admission == PersistenceStore.Admission.HALF_OPEN
+                && acquireProbeLease(circuitBreaker.getPersistenceStore(), circuitBreaker.getEventDispatcher(), now);
+        return acquirePermission(admission, probeLeaseAcquired, now);
+    }
+
+    /**
+     * @param probeLeaseAcquired whether the probe lease of a half-open circuit breaker has been acquired
+     */
+    private Permission acquirePermission(PersistenceStore.Admission admission, boolean probeLeaseAcquired, Instant now) {
+        var circuitBreaker = CircuitBreaker.getInstance();
+        var persistenceStore = circuitBreaker.getPersistenceStore();
+        var metrics = circuitBreaker.getMetrics();
+        var events = circuitBreaker.getEventDispatcher();
+        var circuitBreakerStatus = admission.status();
+        var probe = false;
+        if (admission == PersistenceStore.Admission.OPEN) {
+            metrics.recordRejection(circuitBreakerId);
+            publishRejection(events, circuitBreakerStatus, now);
+            throw new CircuitBreakerOpenException("Circuit with id " + circuitBreakerId + " is open");
+        }
+        if (admission == PersistenceStore.Admission.RAMPING_UP) {
+            metrics.recordRejection(circuitBreakerId);
+            publishRejection(events, circuitBreakerStatus, now);
+            throw new CircuitBreakerOpenException("Circuit with id " + circuitBreakerId + " is ramping up after it has been closed", slowStartRetryAfter);
+        }
+        if (admission == PersistenceStore.Admission.HALF_OPEN) {
+            // Only a single caller is allowed to probe whether the protected resource has recovered
+            if (!probeLeaseAcquired) {
+                metrics.recordRejection(circuitBreakerId);
+                publishRejection(events, circuitBreakerStatus, now);
+                throw new CircuitBreakerOpenException("Circuit with id " + circuitBreakerId + " is half-open and probed by another caller");
+            }
+            probe = true;
+            publishStateTransition(events, PersistenceStore.Status.HALF_OPEN, now);
+        }
+        if (concurrencyLimit == null || probe) {
+            return probe ? Permission.PROBE : Permission.CLOSED;
+        }
+        var concurrencyLease = acquireConcurrencyLease(persistenceStore, events, now);
+        if (concurrencyLease == null) {
+            metrics.recordRejection(circuitBreakerId);
+            publishRejection(events, circuitBreakerStatus, now);
+            throw new CircuitBreakerOpenException("Circuit with id " + circuitBreakerId + " reached its concurrency limit of " + concurrencyLimit.currentLimit());
+        }
+        return new Permission(false, concurrencyLease);
+    }
+
+    /**
+     * Record a call that has returned. A failed store access is published as event and logged, but not thrown,
+     * since the call has already happened and its result is passed to the caller.
+     *
+     * @param permission the permission of the call
+     * @param now        time the permission has been acquired
+     * @param callNanos  the duration of the call
+     */
+    public void onSuccess(Permission permission, Instant now, long callNanos) {
+        var circuitBreaker = CircuitBreaker.getInstance();
+        var persistenceStore = circuitBreaker.getPersistenceStore();
+        var events = circuitBreaker.getEventDispatcher();
+        var slow = slidingWindow.isSlow(callNanos);
+        try {
+            publishSuccess(events, now, callNanos);
+            if (permission.probe()) {
+                closeCircuitBreaker(persistenceStore, events, now);
+            }
+            recordNonFailure(persistenceStore, events, slow);
+        } catch (RuntimeException e) {
+            log.warn("Failed to record successful call of circuit breaker: {}", circuitBreakerId, e);
+        } finally {
+            releaseConcurrencyLease(persistenceStore, permission, slow);
+        }
+    }
+
+    /**
+     * Record a call that has thrown.
+     *
+     * @param permission the permission of the call
+     * @param throwable  the exception thrown by the call
+     * @param now        time the permission has been acquired
+     * @param callNanos  the duration of the call
+     * @return the exception to be thrown to the caller: a {@link CircuitBreakerTrippedException} if the call tripped
+     * the circuit breaker, otherwise the exception of the call. If the outcome could not be recorded, the exception
+     * of the call carries the error of the persistence store as suppressed exception.
+     */
+    public Throwable onError(Permission permission, Throwable throwable, Instant now, long callNanos) {
+        var circuitBreaker = CircuitBreaker.getInstance();
+        var persistenceStore = circuitBreaker.getPersistenceStore();
+        var events = circuitBreaker.getEventDispatcher();
+        if (isRejection(throwable)) {
+            // The call has not reached the protected resource, so there is no outcome to record. The probe lease
+            // of a rejected probe expires and the circuit breaker is probed again afterwards.
+            publishIgnored(events, now, callNanos, throwable);
+            releaseConcurrencyLease(persistenceStore, permission, null);
+            return throwable;
+        }
+        var tripping = isTrippingException(throwable);
+        var slow = slidingWindow.isSlow(callNanos);
+        try {
+            if (!tripping) {
+                publishIgnored(events, now, callNanos, throwable);
+                if (permission.probe()) {
+                    closeCircuitBreaker(persistenceStore, events, now);
+                }
+                recordNonFailure(persistenceStore, events, slow);
+                return throwable;
+            }
+            // A failed probe always opens the circuit breaker again
+            if (permission.probe() || recordFailureAndCheckThreshold(persistenceStore, events, slow)) {
+                openCircuitBreaker(persistenceStore, events, throwable);
+                circuitBreaker.getMetrics().recordTrip(circuitBreakerId);
+                return new CircuitBreakerTrippedException("Circuit with id " + circuitBreakerId + " tripped", throwable);
+            }
+            return throwable;
+        } catch (RuntimeException e) {
+            throwable.addSuppressed(e);
+            return throwable;
+        } finally {
+            releaseConcurrencyLease(persistenceStore, permission, tripping || slow);
+        }
+    }
+
+    boolean isTrippingException(Throwable throwable) {
+        return trippingExceptions.get(throwable.getClass());
+    }
+
+    /**
+     * @return {@code true} if the call has been rejected by a bulkhead or a rate limiter within the circuit breaker
+     */
+    private static boolean isRejection(Throwable throwable) {
+        return throwable instanceof BulkheadFullException || throwable instanceof RateLimitExceededException;
+    }
+
+    /**
+     * A synchronous call needs the admission before it can proceed, so an {@link AsyncPersistenceStore} is read with
+     * the blocking variant as well. The asynchronous read is only used for methods that return a
+     * {@link CompletionStage}.
+     */
+    private PersistenceStore.Admission admitCall(PersistenceStore persistenceStore, CircuitBreakerEventDispatcher events, Instant now) {
+        try {
+            return persistenceStore.admitCall(circuitBreakerId, now);
+        } catch (RuntimeException e) {
+            throw storeError(events, e);
+        }
+    }
+
+    private CompletableFuture<PersistenceStore.Admission> admitCallAsync(PersistenceStore persistenceStore, CircuitBreakerEventDispatcher events, Instant now) {
+        if (!(persistenceStore instanceof AsyncPersistenceStore asyncStore)) {
+            return CompletableFuture.completedFuture(admitCall(persistenceStore, events, now));
+        }
+        try {
+            return asyncStore.admitCallAsync(circuitBreakerId, now).toCompletableFuture()
+                    .whenComplete((admission, error) -> {
+                        if (unwrap(error) instanceof RuntimeException e) {
+                            storeError(events, e);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            throw storeError(events, e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        if ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    private boolean acquireProbeLease(PersistenceStore persistenceStore, CircuitBreakerEventDispatcher events, Instant now) {
+        try {
+            return persistenceStore.acquireProbeLease(circuitBreakerId, now);
+        } catch (RuntimeException e) {
+            throw storeError(events, e);
+        }
+    }
+
+    private CompletableFuture<Boolean> acquireProbeLeaseAsync(PersistenceStore persistenceStore, CircuitBreakerEventDispatcher events, Instant now) {
+        if (!(persistenceStore instanceof AsyncPersistenceStore asyncStore)) {
+            return CompletableFuture.completedFuture(acquireProbeLease(persistenceStore, events, now));
+        }
+        try {
+            return asyncStore.acquireProbeLeaseAsync(circuitBreakerId, now).toCompletableFuture()
+                    .whenComplete((acquired, error) -> {
+                        if (unwrap(error) instanceof RuntimeException e) {
+                            storeError(events, e);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            throw storeError(events, e);
+        }
+    }
+
+    private String acquireConcurrencyLease(PersistenceStore persistenceStore, CircuitBreakerEventDispatcher events, Instant now) {
+        try {
+            return concurrencyLimit.tryAcquire(concurrencyLimitStore(persistenceStore), now);
+        } catch (RuntimeException e) {
+            throw storeError(events, e);
+        }
+    }
+
+    /**
+     * @param overloaded whether the call failed or was slow, {@code null} if the call has no outcome
+     */
+    private void releaseConcurrencyLease(PersistenceStore persistenceStore, Permission permission, Boolean overloaded) {
+        if (permission.concurrencyLease() == null) {
+            return;
+        }
+        try {
+            var store = concurrencyLimitStore(persistenceStore);
+            if (overloaded == null) {
+                concurrencyLimit.release(store, permission.concurrencyLease());
             } else {
-                throw throwable;
+                concurrencyLimit.release(store, permission.concurrencyLease(), overloaded);
             }
+        } catch (RuntimeException e) {
+            // The lease expires, a failed release must not replace the outcome of the call
+            log.warn("Failed to release concurrency lease of circuit breaker: {}", circuitBreakerId, e);
         }
     }
 
-    private boolean isTrippingException(Throwable throwable) {
-        return Stream.of(triggeringExceptions)
-                .anyMatch(exception -> exception.isAssignableFrom(throwable.getClass()));
+    private static ConcurrencyLimitStore concurrencyLimitStore(PersistenceStore persistenceStore) {
+        return ConcurrencyLimitStore.of(persistenceStore).orElseThrow(() ->
+                new IllegalStateException("Persistence store does not support concurrency limits: " + persistenceStore.getClass().getName()));
     }
 
-    private void openCircuitBreaker(String circuitBreakerId, Throwable cause) {
+    private void openCircuitBreaker(PersistenceStore persistenceStore, CircuitBreakerEventDispatcher events, Throwable cause) {
         var now = Instant.now();
-        persistenceStore.saveCircuitBreakerOpen(circuitBreakerId, cause, now);
+        try {
+            if (persistenceStore instanceof AsyncPersistenceStore asyncStore) {
+                // The exception is thrown without waiting for the write, which is completed when the store is flushed
+                asyncStore.saveCircuitBreakerOpenAsync(circuitBreakerId, cause, now);
+            } else {
+                persistenceStore.saveCircuitBreakerOpen(circuitBreakerId, cause, now);
+            }
+        } catch (RuntimeException e) {
+            throw storeError(events, e);
+        }
+        publishStateTransition(events, PersistenceStore.Status.OPEN, now);
+    }
+
+    private boolean recordFailureAndCheckThreshold(PersistenceStore persistenceStore, CircuitBreakerEventDispatcher events, boolean slow) {
+        if (!slidingWindow.isEnabled()) {
+            return true;
+        }
+        var statistics = recordCallOutcome(persistenceStore, events, true, slow);
+        return slidingWindow.isFailureRateExceeded(statistics) || slidingWindow.isSlowCallRateExceeded(statistics);
+    }
+
+    /**
+     * Record a call that has not failed, which still counts towards the slow call rate.
+     */
+    private void recordNonFailure(PersistenceStore persistenceStore, CircuitBreakerEventDispatcher events, boolean slow) {
+        if (!slidingWindow.isEnabled()) {
+            return;
+        }
+        var statistics = recordCallOutcome(persistenceStore, events, false, slow);
+        if (slow && slidingWindow.isSlowCallRateExceeded(statistics)) {
+            // The outcome of this call is still passed to the caller, only the following calls are rejected
+            openCircuitBreaker(persistenceStore, events, new SlowCallRateExceededException(statistics.slowCallRate()));
+            CircuitBreaker.getInstance().getMetrics().recordTrip(circuitBreakerId);
+        }
     }
 
-    private boolean isCircuitBreakerOpen(String circuitBreakerId) {
+    private CallStatistics recordCallOutcome(PersistenceStore persistenceStore, CircuitBreakerEventDispatcher events, boolean failure, boolean slow) {
         var now = Instant.now();
-        var circuitBreakerStatus = persistenceStore.fetchCircuitBreakerState(circuitBreakerId, now);
-        return circuitBreakerStatus == PersistenceStore.Status.OPEN;
+        try {
+            return persistenceStore.recordCallOutcome(circuitBreakerId, slidingWindow.type(), slidingWindow.size(), failure, slow, now);
+        } catch (RuntimeException e) {
+            throw storeError(events, e);
+        }
     }
 
-    private static boolean isNullOrEmpty(Class<? extends Exception>[] array) {
-        return array == null || array.length == 0;
+    /**
+     * @param leaseAcquiredAt the time the probe lease has been acquired, which identifies the lease
+     */
+    private void closeCircuitBreaker(PersistenceStore persistenceStore, CircuitBreakerEventDispatcher events, Instant leaseAcquiredAt) {
+        var now = Instant.now();
+        boolean closed;
+        try {
+            closed = persistenceStore.saveCircuitBreakerClosed(circuitBreakerId, leaseAcquiredAt, now);
+        } catch (RuntimeException e) {
+            throw storeError(events, e);
+        }
+        if (closed) {
+            publishStateTransition(events, PersistenceStore.Status.CLOSED, now);
+        }
+    }
+
+    private RuntimeException storeError(CircuitBreakerEventDispatcher events, RuntimeException error) {
+        if (events.isEnabled()) {
+            events.publish(CircuitBreakerEvent.storeError(circuitBreakerId, Instant.now(), error));
+        }
+        return error;
+    }
+
+    private void publishStateTransition(CircuitBreakerEventDispatcher events, PersistenceStore.Status status, Instant now) {
+        if (events.isEnabled()) {
+            events.publish(CircuitBreakerEvent.stateTransition(circuitBreakerId, now, status));
+        }
+    }
+
+    private void publishRejection(CircuitBreakerEventDispatcher events, PersistenceStore.Status status, Instant now) {
+        if (events.isEnabled()) {
+            events.publish(CircuitBreakerEvent.callRejected(circuitBreakerId, now, status));
+        }
+    }
+
+    private void publishSuccess(CircuitBreakerEventDispatcher events, Instant now, long callNanos) {
+        if (events.isEnabled()) {
+            events.publish(CircuitBreakerEvent.callSucceeded(circuitBreakerId, now, Duration.ofNanos(callNanos)));
+        }
+    }
+
+    private void publishIgnored(CircuitBreakerEventDispatcher events, Instant now, long callNanos, Throwable throwable) {
+        if (events.isEnabled()) {
+            events.publish(CircuitBreakerEvent.callIgnored(circuitBreakerId, now, Duration.ofNanos(callNanos), throwable));
+        }
+    }
+
+    /**
+     * The permission of a single call, shared by the calls that neither probe nor hold a concurrency lease.
+     *
+     * @param probe            whether the call probes a half-open circuit breaker
+     * @param concurrencyLease the lease of the adaptive concurrency limit, {@code null} if not limited
+     */
+    public record Permission(boolean probe, String concurrencyLease) {
+
+        static final Permission CLOSED = new Permission(false, null);
+        static final Permission PROBE = new Permission(true, null);
+    }
+
+    /**
+     * Whether a thrown exception trips the circuit breaker, computed once per exception class.
+     * Without tripping exceptions every exception trips the circuit breaker. A rejection by a bulkhead or a rate
+     * limiter never trips it, even if it is a subclass of a tripping exception, since the call has not reached the
+     * protected resource.
+     */
+    private static final class TrippingExceptions extends ClassValue<Boolean> {
+
+        private final Class<? extends Exception>[] triggeringExceptions;
+
+        private TrippingExceptions(Class<? extends Exception>[] triggeringExceptions) {
+            this.triggeringExceptions = triggeringExceptions;
+        }
+
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            if (BulkheadFullException.class.isAssignableFrom(type) || RateLimitExceededException.class.isAssignableFrom(type)) {
+                return Boolean.FALSE;
+            }
+            if (triggeringExceptions == null || triggeringExceptions.length == 0) {
+                return Boolean.TRUE;
+            }
+            for (var exception : triggeringExceptions) {
+                if (exception.isAssignableFrom(type)) {
+                    return Boolean.TRUE;
+                }
+            }
+            return Boolean.FALSE;
+        }
     }
 }
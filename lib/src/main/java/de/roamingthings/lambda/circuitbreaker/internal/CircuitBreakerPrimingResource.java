@@ -0,0 +1,59 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreaker;
+import org.crac.Context;
+import org.crac.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CRaC resource that prepares the circuit breaker for a snapshot of the execution environment (e.g. Lambda SnapStart).
+ * <ul>
+ *     <li>before the checkpoint the classes used by the advice are initialized and the persistence store is
+ *     flushed and primed</li>
+ *     <li>after the restore all circuit breaker state kept in memory is dropped, since it is as old as the snapshot</li>
+ * </ul>
+ * On a JVM without CRaC support the resource is never called.
+ */
+public class CircuitBreakerPrimingResource implements Resource {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakerPrimingResource.class);
+
+    private static final String[] PRIMED_CLASSES = {
+            "de.roamingthings.lambda.circuitbreaker.internal.AdaptiveConcurrencyLimit",
+            "de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerAspect",
+            "de.roamingthings.lambda.circuitbreaker.internal.BulkheadAspect",
+            "de.roamingthings.lambda.circuitbreaker.internal.BulkheadHandler",
+            "de.roamingthings.lambda.circuitbreaker.internal.PermitReservation",
+            "de.roamingthings.lambda.circuitbreaker.internal.RateLimitedAspect",
+            "de.roamingthings.lambda.circuitbreaker.internal.RateLimiterHandler",
+            "de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerHandler",
+            "de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerHandler$Permission",
+            "de.roamingthings.lambda.circuitbreaker.internal.DefaultSafeguarded",
+            "de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerTrippedException",
+            "de.roamingthings.lambda.circuitbreaker.internal.SlidingWindowSettings",
+            "de.roamingthings.lambda.circuitbreaker.internal.SlowCallRateExceededException",
+            "de.roamingthings.lambda.circuitbreaker.exceptions.CircuitBreakerOpenException",
+    };
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        log.debug("Priming circuit breaker before checkpoint");
+        for (var className : PRIMED_CLASSES) {
+            try {
+                Class.forName(className, true, CircuitBreakerPrimingResource.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                log.warn("Failed to load class before checkpoint: {}", className);
+            }
+        }
+        var persistenceStore = CircuitBreaker.getInstance().getPersistenceStore();
+        persistenceStore.flush();
+        persistenceStore.prime();
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        log.debug("Resetting circuit breaker state after restore");
+        CircuitBreaker.getInstance().getPersistenceStore().resetLocalState();
+    }
+}
@@ -0,0 +1,55 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+import de.roamingthings.lambda.circuitbreaker.SlidingWindowType;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * {@link Safeguarded} with the default values of the annotation, used for programmatic calls of a circuit breaker.
+ */
+record DefaultSafeguarded(String id) implements Safeguarded {
+
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Exception>[] NO_EXCEPTIONS = new Class[0];
+
+    @Override
+    public Class<? extends Exception>[] trippedBy() {
+        return NO_EXCEPTIONS;
+    }
+
+    @Override
+    public SlidingWindowType slidingWindowType() {
+        return SlidingWindowType.DEFAULT;
+    }
+
+    @Override
+    public int slidingWindowSize() {
+        return -1;
+    }
+
+    @Override
+    public int minimumNumberOfCalls() {
+        return -1;
+    }
+
+    @Override
+    public float failureRateThreshold() {
+        return -1;
+    }
+
+    @Override
+    public long slowCallThreshold() {
+        return -1;
+    }
+
+    @Override
+    public float slowCallRateThreshold() {
+        return -1;
+    }
+
+    @Override
+    public Class<? extends Annotation> annotationType() {
+        return Safeguarded.class;
+    }
+}
@@ -0,0 +1,28 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Permits of a rate limiter that this container has taken from the persistence store but not used yet.
+ * Permits that are not used within a second are dropped, so that they do not add to the rate of a later second.
+ */
+final class PermitReservation {
+
+    static final long MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private int permits;
+    private long reservedAtNanos;
+
+    synchronized boolean tryTake(long nowNanos) {
+        if (permits == 0 || nowNanos - reservedAtNanos >= MAX_AGE_NANOS) {
+            return false;
+        }
+        permits--;
+        return true;
+    }
+
+    synchronized void reserve(int permits, long nowNanos) {
+        this.permits = permits;
+        this.reservedAtNanos = nowNanos;
+    }
+}
@@ -0,0 +1,45 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.RateLimited;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.DeclarePrecedence;
+import org.aspectj.lang.annotation.Pointcut;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Aspect that handles the {@link RateLimited} annotation.
+ * It uses the {@link RateLimiterHandler} to do the job. A handler is created once per annotated method, the
+ * reserved permits are shared by all methods with the same rate limiter id.
+ */
+@Aspect
+// An open circuit breaker rejects the call before a permit is taken, a permit is taken before a bulkhead lease
+@DeclarePrecedence("de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerAspect, de.roamingthings.lambda.circuitbreaker.internal.RateLimitedAspect, de.roamingthings.lambda.circuitbreaker.internal.BulkheadAspect")
+public class RateLimitedAspect {
+
+    private final ConcurrentMap<JoinPoint.StaticPart, RateLimiterHandler> handlers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PermitReservation> reservations = new ConcurrentHashMap<>();
+
+    @Pointcut("@annotation(rateLimited)")
+    public void callAt(RateLimited rateLimited) {
+        // This method is empty, because the pointcut is only used as a location
+    }
+
+    @Around(value = "callAt(rateLimited) && execution(@RateLimited * *.*(..))", argNames = "pjp,rateLimited")
+    public Object around(ProceedingJoinPoint pjp,
+                         RateLimited rateLimited) throws Throwable {
+        var staticPart = pjp.getStaticPart();
+        var rateLimiterHandler = handlers.get(staticPart);
+        if (rateLimiterHandler == null) {
+            rateLimiterHandler = handlers.computeIfAbsent(staticPart, part -> new RateLimiterHandler(
+                    rateLimited,
+                    reservations.computeIfAbsent(rateLimited.id(), id -> new PermitReservation())
+            ));
+        }
+        return rateLimiterHandler.handle(pjp);
+    }
+}
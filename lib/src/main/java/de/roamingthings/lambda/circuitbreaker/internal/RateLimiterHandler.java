@@ -0,0 +1,68 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreaker;
+import de.roamingthings.lambda.circuitbreaker.RateLimited;
+import de.roamingthings.lambda.circuitbreaker.exceptions.RateLimitExceededException;
+import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
+import de.roamingthings.lambda.circuitbreaker.persistence.RateLimiterStore;
+import org.aspectj.lang.ProceedingJoinPoint;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Handles the calls of a single method annotated with {@link RateLimited}.
+ * <p>
+ * A call first takes a permit that this container has reserved before. Only if there is none, permits are taken
+ * from the persistence store: one for the call and the rest as a new reservation.
+ */
+public class RateLimiterHandler {
+
+    private final String rateLimiterId;
+    private final double permitsPerSecond;
+    private final int burst;
+    private final int permitsPerReservation;
+    private final Duration retryAfter;
+    private final PermitReservation reservation;
+
+    RateLimiterHandler(RateLimited rateLimited, PermitReservation reservation) {
+        if (!(rateLimited.permitsPerSecond() > 0)) {
+            throw new IllegalArgumentException("Permits per second must be greater than zero: " + rateLimited.id());
+        }
+        this.rateLimiterId = rateLimited.id();
+        this.permitsPerSecond = rateLimited.permitsPerSecond();
+        this.burst = rateLimited.burst() > 0 ? rateLimited.burst() : (int) Math.max(1, Math.ceil(permitsPerSecond));
+        this.permitsPerReservation = Math.min(burst, rateLimited.permitsPerReservation() > 0
+                ? rateLimited.permitsPerReservation()
+                : (int) Math.max(1, permitsPerSecond / 10));
+        // The time until the next permit becomes available if the bucket is empty
+        this.retryAfter = Duration.ofNanos((long) Math.ceil(1_000_000_000L / permitsPerSecond));
+        this.reservation = reservation;
+    }
+
+    /**
+     * Take a permit and proceed.
+     *
+     * @param joinPoint the call of the annotated method
+     * @return the result of proceeding
+     * @throws Throwable if the invoked proceed throws anything
+     */
+    public Object handle(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!reservation.tryTake(System.nanoTime())) {
+            var rateLimiterStore = rateLimiterStore(CircuitBreaker.getInstance().getPersistenceStore());
+            var permits = rateLimiterStore.acquirePermits(rateLimiterId, permitsPerSecond, burst, permitsPerReservation, Instant.now());
+            if (permits == 0) {
+                throw new RateLimitExceededException("Rate limit with id " + rateLimiterId + " exceeded", retryAfter);
+            }
+            if (permits > 1) {
+                reservation.reserve(permits - 1, System.nanoTime());
+            }
+        }
+        return joinPoint.proceed();
+    }
+
+    private static RateLimiterStore rateLimiterStore(PersistenceStore persistenceStore) {
+        return RateLimiterStore.of(persistenceStore).orElseThrow(() ->
+                new IllegalStateException("Persistence store does not support rate limiters: " + persistenceStore.getClass().getName()));
+    }
+}
@@ -0,0 +1,46 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+import de.roamingthings.lambda.circuitbreaker.SlidingWindowType;
+import de.roamingthings.lambda.circuitbreaker.persistence.CallStatistics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sliding window settings of a circuit breaker, resolved from {@link Safeguarded} and {@link CircuitBreakerConfig}.
+ */
+record SlidingWindowSettings(SlidingWindowType type,
+                             int size,
+                             int minimumNumberOfCalls,
+                             float failureRateThreshold,
+                             long slowCallThresholdNanos,
+                             float slowCallRateThreshold) {
+
+    static SlidingWindowSettings resolve(Safeguarded safeguarded, CircuitBreakerConfig config) {
+        return new SlidingWindowSettings(
+                safeguarded.slidingWindowType() != SlidingWindowType.DEFAULT ? safeguarded.slidingWindowType() : config.getSlidingWindowType(),
+                safeguarded.slidingWindowSize() > 0 ? safeguarded.slidingWindowSize() : config.getSlidingWindowSize(),
+                safeguarded.minimumNumberOfCalls() >= 0 ? safeguarded.minimumNumberOfCalls() : config.getMinimumNumberOfCalls(),
+                safeguarded.failureRateThreshold() > 0 ? safeguarded.failureRateThreshold() : config.getFailureRateThreshold(),
+                TimeUnit.MILLISECONDS.toNanos(safeguarded.slowCallThreshold() >= 0 ? safeguarded.slowCallThreshold() : config.getSlowCallThresholdMillis()),
+                safeguarded.slowCallRateThreshold() > 0 ? safeguarded.slowCallRateThreshold() : config.getSlowCallRateThreshold()
+        );
+    }
+
+    boolean isEnabled() {
+        return type != SlidingWindowType.NONE;
+    }
+
+    boolean isFailureRateExceeded(CallStatistics statistics) {
+        return statistics.calls() >= minimumNumberOfCalls && statistics.failureRate() >= failureRateThreshold;
+    }
+
+    boolean isSlow(long durationNanos) {
+        return slowCallThresholdNanos > 0 && durationNanos >= slowCallThresholdNanos;
+    }
+
+    boolean isSlowCallRateExceeded(CallStatistics statistics) {
+        return slowCallThresholdNanos > 0 && statistics.calls() >= minimumNumberOfCalls && statistics.slowCallRate() >= slowCallRateThreshold;
+    }
+}
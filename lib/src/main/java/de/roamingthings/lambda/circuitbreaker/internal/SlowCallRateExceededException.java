@@ -0,0 +1,11 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+/**
+ * Cause of a circuit breaker that has been tripped by slow calls instead of an exception of the call.
+ */
+class SlowCallRateExceededException extends RuntimeException {
+
+    SlowCallRateExceededException(float slowCallRate) {
+        super("Slow call rate of " + slowCallRate + "% exceeded the threshold", null, false, false);
+    }
+}
@@ -0,0 +1,205 @@
+package de.roamingthings.lambda.circuitbreaker.metrics;
+
+import java.io.PrintStream;
+import java.time.Clock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link MetricsSink} that writes the metrics in the CloudWatch Embedded Metric Format (EMF) to stdout, from where
+ * Lambda forwards them to CloudWatch Logs without a network call of the function.
+ * <p>
+ * The events are counted in memory. On {@link #flush()} one EMF line is written per circuit breaker that had
+ * events since the last flush, with the dimension {@code CircuitBreakerId} and the metrics:
+ * <ul>
+ *     <li>Checks: number of state checks</li>
+ *     <li>Rejections: number of calls rejected because the circuit breaker was open</li>
+ *     <li>Trips: number of times the circuit breaker has been tripped</li>
+ *     <li>StoreLatency: latencies of the state fetches in milliseconds (at most 100 values per flush)</li>
+ * </ul>
+ */
+public class EmfMetricsSink implements MetricsSink {
+
+    private static final int MAX_LATENCY_VALUES = 100;
+
+    private final String namespace;
+    private final PrintStream output;
+    private final Clock clock;
+    private final ConcurrentMap<String, CircuitMetrics> metrics = new ConcurrentHashMap<>();
+
+    private EmfMetricsSink(String namespace, PrintStream output, Clock clock) {
+        this.namespace = namespace;
+        this.output = output;
+        this.clock = clock;
+    }
+
+    @Override
+    public void recordCheck(String circuitBreakerId, long storeLatencyNanos) {
+        var circuitMetrics = metricsOf(circuitBreakerId);
+        circuitMetrics.checks.increment();
+        circuitMetrics.recordLatency(storeLatencyNanos);
+    }
+
+    @Override
+    public void recordRejection(String circuitBreakerId) {
+        metricsOf(circuitBreakerId).rejections.increment();
+    }
+
+    @Override
+    public void recordTrip(String circuitBreakerId) {
+        metricsOf(circuitBreakerId).trips.increment();
+    }
+
+    @Override
+    public void flush() {
+        var timestamp = clock.millis();
+        metrics.forEach((circuitBreakerId, circuitMetrics) -> {
+            var checks = circuitMetrics.checks.sumThenReset();
+            var rejections = circuitMetrics.rejections.sumThenReset();
+            var trips = circuitMetrics.trips.sumThenReset();
+            var latencies = circuitMetrics.drainLatencies();
+            if (checks == 0 && rejections == 0 && trips == 0) {
+                return;
+            }
+            output.println(toEmf(circuitBreakerId, timestamp, checks, rejections, trips, latencies));
+        });
+    }
+
+    private CircuitMetrics metricsOf(String circuitBreakerId) {
+        var circuitMetrics = metrics.get(circuitBreakerId);
+        if (circuitMetrics == null) {
+            circuitMetrics = metrics.computeIfAbsent(circuitBreakerId, id -> new CircuitMetrics());
+        }
+        return circuitMetrics;
+    }
+
+    private String toEmf(String circuitBreakerId, long timestamp, long checks, long rejections, long trips, long[] latencies) {
+        var json = new StringBuilder(512)
+                .append("{\"_aws\":{\"Timestamp\":").append(timestamp)
+                .append(",\"CloudWatchMetrics\":[{\"Namespace\":");
+        appendString(json, namespace);
+        json.append(",\"Dimensions\":[[\"CircuitBreakerId\"]],\"Metrics\":[")
+                .append("{\"Name\":\"Checks\",\"Unit\":\"Count\"},")
+                .append("{\"Name\":\"Rejections\",\"Unit\":\"Count\"},")
+                .append("{\"Name\":\"Trips\",\"Unit\":\"Count\"}");
+        if (latencies.length > 0) {
+            json.append(",{\"Name\":\"StoreLatency\",\"Unit\":\"Milliseconds\"}");
+        }
+        json.append("]}]},\"CircuitBreakerId\":");
+        appendString(json, circuitBreakerId);
+        json.append(",\"Checks\":").append(checks)
+                .append(",\"Rejections\":").append(rejections)
+                .append(",\"Trips\":").append(trips);
+        if (latencies.length > 0) {
+            json.append(",\"StoreLatency\":[");
+            for (var i = 0; i < latencies.length; i++) {
+                json.append(i == 0 ? "" : ",").append(latencies[i] / 1_000_000.0);
+            }
+            json.append(']');
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static class CircuitMetrics {
+        private final LongAdder checks = new LongAdder();
+        private final LongAdder rejections = new LongAdder();
+        private final LongAdder trips = new LongAdder();
+        private final long[] latencies = new long[MAX_LATENCY_VALUES];
+        private int latencyCount;
+
+        synchronized void recordLatency(long latencyNanos) {
+            if (latencyCount < latencies.length) {
+                latencies[latencyCount++] = latencyNanos;
+            }
+        }
+
+        synchronized long[] drainLatencies() {
+            var drained = new long[latencyCount];
+            System.arraycopy(latencies, 0, drained, 0, latencyCount);
+            latencyCount = 0;
+            return drained;
+        }
+    }
+
+    /**
+     * Use this builder to get an instance of {@link EmfMetricsSink}.<br/>
+     * Example:<br>
+     * <pre>
+     *     CircuitBreaker.config()
+     *         .withPersistenceStore(...)
+     *         .withMetrics(EmfMetricsSink.builder().withNamespace("MyService").build())
+     *         .configure();
+     * </pre>
+     */
+    public static class Builder {
+
+        private String namespace = "LambdaCircuitBreaker";
+        private PrintStream output = System.out;
+        private Clock clock = Clock.systemUTC();
+
+        /**
+         * Initialize and return a new instance of {@link EmfMetricsSink}.
+         *
+         * @return an instance of the {@link EmfMetricsSink}
+         */
+        public EmfMetricsSink build() {
+            if (namespace == null || namespace.isEmpty()) {
+                throw new IllegalArgumentException("Namespace is not specified");
+            }
+            return new EmfMetricsSink(namespace, output, clock);
+        }
+
+        /**
+         * CloudWatch namespace of the metrics (optional), by default "LambdaCircuitBreaker"
+         *
+         * @param namespace the namespace
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withNamespace(String namespace) {
+            this.namespace = namespace;
+            return this;
+        }
+
+        /**
+         * Stream to write the EMF lines to (optional), by default {@link System#out}
+         *
+         * @param output the stream
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withOutput(PrintStream output) {
+            this.output = output;
+            return this;
+        }
+
+        /**
+         * Clock for the timestamp of the metrics (optional), by default the system clock
+         *
+         * @param clock the clock
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package de.roamingthings.lambda.circuitbreaker.metrics;
+
+/**
+ * Receives the events of the circuit breakers to derive metrics from.
+ * <p>
+ * Implementations are called on every protected call, so they must be cheap. They should aggregate the events in
+ * memory and only publish them when {@link #flush()} is called at the end of an invocation.
+ */
+public interface MetricsSink {
+
+    /**
+     * Sink that discards all events.
+     */
+    MetricsSink NONE = new MetricsSink() {
+    };
+
+    /**
+     * The state of a circuit breaker has been checked.
+     *
+     * @param circuitBreakerId   the identifier of the circuit breaker
+     * @param storeLatencyNanos  how long fetching the state from the persistence store took
+     */
+    default void recordCheck(String circuitBreakerId, long storeLatencyNanos) {
+        // Nothing to record by default
+    }
+
+    /**
+     * A call has been rejected with a {@link de.roamingthings.lambda.circuitbreaker.exceptions.CircuitBreakerOpenException}.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     */
+    default void recordRejection(String circuitBreakerId) {
+        // Nothing to record by default
+    }
+
+    /**
+     * A circuit breaker has been tripped.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     */
+    default void recordTrip(String circuitBreakerId) {
+        // Nothing to record by default
+    }
+
+    /**
+     * Publish the events that have been recorded since the last flush.
+     */
+    default void flush() {
+        // Nothing to publish by default
+    }
+}
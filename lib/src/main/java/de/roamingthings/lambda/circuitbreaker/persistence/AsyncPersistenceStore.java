@@ -0,0 +1,53 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import java.time.Instant;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * {@link PersistenceStore} that is able to read and write circuit breaker states without blocking the caller.
+ * <p>
+ * The state of a circuit breaker that protects a method returning a {@link CompletionStage} is read and its probe
+ * lease is acquired without blocking, the states of several circuit breakers can be requested in parallel, and a
+ * tripped circuit breaker is opened without waiting for the write. Writes that are still in flight are completed by {@link #flush()}.
+ */
+public interface AsyncPersistenceStore extends PersistenceStore {
+
+    /**
+     * Asynchronous variant of {@link #fetchCircuitBreakerState(String, Instant)}.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param now              current time
+     * @return a stage that completes with the state of the circuit breaker
+     */
+    CompletionStage<Status> fetchCircuitBreakerStateAsync(String circuitBreakerId, Instant now);
+
+    /**
+     * Asynchronous variant of {@link #admitCall(String, Instant)}.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param now              current time
+     * @return a stage that completes with the admission of the call
+     */
+    default CompletionStage<Admission> admitCallAsync(String circuitBreakerId, Instant now) {
+        return fetchCircuitBreakerStateAsync(circuitBreakerId, now).thenApply(Admission::of);
+    }
+
+    /**
+     * Asynchronous variant of {@link #acquireProbeLease(String, Instant)}.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param now              current time
+     * @return a stage that completes with {@code true} if the caller holds the probe lease
+     */
+    CompletionStage<Boolean> acquireProbeLeaseAsync(String circuitBreakerId, Instant now);
+
+    /**
+     * Asynchronous variant of {@link #saveCircuitBreakerOpen(String, Throwable, Instant)}.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param cause            the exception that tripped the circuit breaker
+     * @param now              current time
+     * @return a stage that completes when the state has been written
+     */
+    CompletionStage<Void> saveCircuitBreakerOpenAsync(String circuitBreakerId, Throwable cause, Instant now);
+}
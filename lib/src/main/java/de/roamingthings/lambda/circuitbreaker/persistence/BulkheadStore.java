@@ -0,0 +1,51 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.Bulkhead;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Persistence store that keeps the leases of {@link Bulkhead bulkheads}, shared by all Lambda containers.
+ */
+public interface BulkheadStore {
+
+    /**
+     * Acquire a lease for a call of a bulkhead. The lease is only granted if fewer than {@code maxConcurrent}
+     * leases are held. Leases that have expired are not counted.
+     *
+     * @param bulkheadId    the identifier of the bulkhead
+     * @param leaseId       an identifier of the lease that is unique among the leases of the bulkhead
+     * @param maxConcurrent the maximum number of leases
+     * @param leaseExpiry   the time at which the lease expires if it has not been released
+     * @param now           current time
+     * @return {@code true} if the lease was granted
+     */
+    boolean acquireBulkheadLease(String bulkheadId, String leaseId, int maxConcurrent, Instant leaseExpiry, Instant now);
+
+    /**
+     * Release a lease that has been granted. Releasing a lease that has already expired and been removed has no
+     * effect.
+     *
+     * @param bulkheadId the identifier of the bulkhead
+     * @param leaseId    the identifier of the lease
+     */
+    void releaseBulkheadLease(String bulkheadId, String leaseId);
+
+    /**
+     * Get the {@link BulkheadStore} of a persistence store. A {@link CachingPersistenceStore} passes bulkhead leases to
+     * its underlying store.
+     *
+     * @param persistenceStore the configured persistence store
+     * @return the store, empty if bulkhead leases are not supported
+     */
+    static Optional<BulkheadStore> of(PersistenceStore persistenceStore) {
+        if (persistenceStore instanceof BulkheadStore store) {
+            return Optional.of(store);
+        }
+        if (persistenceStore instanceof CachingPersistenceStore cachingStore) {
+            return cachingStore.bulkheadStore();
+        }
+        return Optional.empty();
+    }
+}
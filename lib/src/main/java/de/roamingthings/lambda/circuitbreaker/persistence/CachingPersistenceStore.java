@@ -0,0 +1,324 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.SlidingWindowType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * {@link PersistenceStore} decorator that keeps the states fetched from another store in memory for a limited time.
+ * <p>
+ * Warm Lambda containers can answer most state checks without a round-trip to the underlying store. The staleness
+ * is bounded by the configured time to live (half-open states are not cached):
+ * <ul>
+ *     <li>positive TTL: how long an <em>open</em> circuit breaker is cached</li>
+ *     <li>negative TTL: how long a <em>closed</em> circuit breaker (no record in the store) is cached</li>
+ * </ul>
+ * An open state is not cached beyond the expiry of the record if the underlying store is derived from
+ * {@link PersistenceStoreBase}, like the stores of this library.
+ * <p>
+ * The cache is bounded in size and evicts the least recently used entries. Whenever the state of a circuit breaker
+ * is changed through this store its cached state is dropped.
+ * <p>
+ * During a slow start the underlying store decides for every call whether it is admitted. Once a call has been
+ * rejected by the slow start, the circuit breaker is not cached until the slow start window has passed. A closed
+ * state that has been fetched before the first rejection may still be cached for the negative TTL.
+ * <p>
+ * Bulkhead leases, rate limiter permits and concurrency limits are never cached. The caching store does not
+ * implement them itself, they are used directly on the underlying store, see {@link #bulkheadStore()},
+ * {@link #rateLimiterStore()} and {@link #concurrencyLimitStore()}.
+ */
+public class CachingPersistenceStore implements PersistenceStore {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingPersistenceStore.class);
+
+    private final PersistenceStore delegate;
+    private final Duration positiveTtl;
+    private final Duration negativeTtl;
+    private final Map<String, CachedStatus> cache;
+    private volatile long slowStartMillis;
+
+    private CachingPersistenceStore(PersistenceStore delegate, Duration positiveTtl, Duration negativeTtl, int maximumSize) {
+        this.delegate = delegate;
+        this.positiveTtl = positiveTtl;
+        this.negativeTtl = negativeTtl;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatus> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    @Override
+    public void configure(CircuitBreakerConfig config) {
+        slowStartMillis = config.getSlowStartMillis();
+        delegate.configure(config);
+    }
+
+    @Override
+    public void saveCircuitBreakerOpen(String circuitBreakerId, Throwable cause, Instant now) {
+        invalidate(circuitBreakerId);
+        delegate.saveCircuitBreakerOpen(circuitBreakerId, cause, now);
+    }
+
+    @Override
+    public boolean acquireProbeLease(String circuitBreakerId, Instant now) {
+        invalidate(circuitBreakerId);
+        return delegate.acquireProbeLease(circuitBreakerId, now);
+    }
+
+    @Override
+    public boolean saveCircuitBreakerClosed(String circuitBreakerId, Instant leaseAcquiredAt, Instant now) {
+        invalidate(circuitBreakerId);
+        return delegate.saveCircuitBreakerClosed(circuitBreakerId, leaseAcquiredAt, now);
+    }
+
+    @Override
+    public CallStatistics recordCallOutcome(String circuitBreakerId, SlidingWindowType windowType, int windowSize, boolean failure, boolean slow, Instant now) {
+        return delegate.recordCallOutcome(circuitBreakerId, windowType, windowSize, failure, slow, now);
+    }
+
+    /**
+     * @return the bulkhead store of the underlying store, empty if it does not support bulkheads
+     */
+    public Optional<BulkheadStore> bulkheadStore() {
+        return BulkheadStore.of(delegate);
+    }
+
+    /**
+     * @return the rate limiter store of the underlying store, empty if it does not support rate limiters
+     */
+    public Optional<RateLimiterStore> rateLimiterStore() {
+        return RateLimiterStore.of(delegate);
+    }
+
+    /**
+     * @return the concurrency limit store of the underlying store, empty if it does not support concurrency limits
+     */
+    public Optional<ConcurrencyLimitStore> concurrencyLimitStore() {
+        return ConcurrencyLimitStore.of(delegate);
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    @Override
+    public void prime() {
+        delegate.prime();
+    }
+
+    @Override
+    public void resetLocalState() {
+        invalidateAll();
+        delegate.resetLocalState();
+    }
+
+    @Override
+    public Status fetchCircuitBreakerState(String circuitBreakerId, Instant now) {
+        var cachedStatus = getCached(circuitBreakerId);
+        if (cachedStatus != null && cachedStatus.isValidAt(now)) {
+            return cachedStatus.admission().status();
+        }
+        return fetchFromDelegate(circuitBreakerId, now, false).status();
+    }
+
+    @Override
+    public Admission admitCall(String circuitBreakerId, Instant now) {
+        var cachedStatus = getCached(circuitBreakerId);
+        if (cachedStatus != null && cachedStatus.isValidAt(now)) {
+            if (cachedStatus.admission() != Admission.RAMPING_UP) {
+                return cachedStatus.admission();
+            }
+            // The slow start is in progress and every call has to be admitted by the underlying store
+            return delegate.admitCall(circuitBreakerId, now);
+        }
+        return fetchFromDelegate(circuitBreakerId, now, true);
+    }
+
+    /**
+     * Fetch the state from the underlying store and cache it. The record of a store derived from
+     * {@link PersistenceStoreBase} is read directly, so that an open state is not cached beyond the expiry of the
+     * record, when the circuit breaker becomes half-open. Other stores do not expose the expiry and their states
+     * are cached for the full time to live.
+     */
+    private Admission fetchFromDelegate(String circuitBreakerId, Instant now, boolean admit) {
+        if (!(delegate instanceof PersistenceStoreBase store)) {
+            var admission = admit
+                    ? delegate.admitCall(circuitBreakerId, now)
+                    : Admission.of(delegate.fetchCircuitBreakerState(circuitBreakerId, now));
+            cache(circuitBreakerId, admission, now, null);
+            return admission;
+        }
+        var statusRecord = store.fetchRecord(circuitBreakerId);
+        var admission = statusRecord
+                .map(existingRecord -> admit
+                        ? store.admit(existingRecord, now)
+                        : Admission.of(PersistenceStoreBase.stateOf(existingRecord, now)))
+                .orElse(Admission.CLOSED);
+        // A record is expired once the current second is past its expiry
+        var recordExpiry = statusRecord
+                .filter(existingRecord -> existingRecord.expiryTimestamp() != 0)
+                .map(existingRecord -> Instant.ofEpochSecond(existingRecord.expiryTimestamp() + 1))
+                .orElse(null);
+        cache(circuitBreakerId, admission, now, recordExpiry);
+        return admission;
+    }
+
+    /**
+     * @param recordExpiry the time the record of the circuit breaker expires, {@code null} if unknown
+     */
+    private void cache(String circuitBreakerId, Admission admission, Instant now, Instant recordExpiry) {
+        Instant validUntil;
+        if (admission == Admission.RAMPING_UP) {
+            validUntil = now.plusMillis(slowStartMillis);
+        } else {
+            var ttl = admission == Admission.CLOSED ? negativeTtl : positiveTtl;
+            // A half-open state is never cached since the probe lease has to be acquired from the underlying store
+            if (admission == Admission.HALF_OPEN || ttl.isZero()) {
+                return;
+            }
+            validUntil = now.plus(ttl);
+        }
+        if (recordExpiry != null && recordExpiry.isBefore(validUntil)) {
+            validUntil = recordExpiry;
+        }
+        putCached(circuitBreakerId, new CachedStatus(admission, validUntil));
+    }
+
+    /**
+     * Drop the cached state of a circuit breaker so that the next check is answered by the underlying store.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     */
+    public void invalidate(String circuitBreakerId) {
+        log.debug("Invalidating cached state of circuit breaker: {}", circuitBreakerId);
+        synchronized (cache) {
+            cache.remove(circuitBreakerId);
+        }
+    }
+
+    /**
+     * Drop all cached states.
+     */
+    public void invalidateAll() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private CachedStatus getCached(String circuitBreakerId) {
+        synchronized (cache) {
+            return cache.get(circuitBreakerId);
+        }
+    }
+
+    private void putCached(String circuitBreakerId, CachedStatus cachedStatus) {
+        synchronized (cache) {
+            cache.put(circuitBreakerId, cachedStatus);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private record CachedStatus(Admission admission, Instant validUntil) {
+
+        boolean isValidAt(Instant now) {
+            return now.isBefore(validUntil);
+        }
+    }
+
+    /**
+     * Use this builder to get an instance of {@link CachingPersistenceStore}.<br/>
+     * Example:<br>
+     * <pre>
+     *     CachingPersistenceStore.builder()
+     *         .withDelegate(DynamoDBPersistenceStore.builder().withTableName("circuit_breaker_store").build())
+     *         .withPositiveTtl(Duration.ofSeconds(5))
+     *         .withNegativeTtl(Duration.ofSeconds(1))
+     *         .build();
+     * </pre>
+     */
+    public static class Builder {
+
+        private PersistenceStore delegate;
+        private Duration positiveTtl = Duration.ofSeconds(5);
+        private Duration negativeTtl = Duration.ofSeconds(1);
+        private int maximumSize = 1000;
+
+        /**
+         * Initialize and return a new instance of {@link CachingPersistenceStore}.
+         *
+         * @return an instance of the {@link CachingPersistenceStore}
+         */
+        public CachingPersistenceStore build() {
+            if (delegate == null) {
+                throw new IllegalArgumentException("Delegate persistence store is not specified");
+            }
+            if (positiveTtl.isNegative() || negativeTtl.isNegative()) {
+                throw new IllegalArgumentException("Time to live must not be negative");
+            }
+            if (maximumSize < 1) {
+                throw new IllegalArgumentException("Maximum size must be greater than zero");
+            }
+            return new CachingPersistenceStore(delegate, positiveTtl, negativeTtl, maximumSize);
+        }
+
+        /**
+         * The store to fetch states from on a cache miss (mandatory)
+         *
+         * @param delegate the underlying persistence store
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withDelegate(PersistenceStore delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * How long an open circuit breaker is cached (optional), by default 5 seconds.
+         * A duration of zero disables caching of open circuit breakers.
+         *
+         * @param positiveTtl time to live of cached open states
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withPositiveTtl(Duration positiveTtl) {
+            this.positiveTtl = positiveTtl;
+            return this;
+        }
+
+        /**
+         * How long a closed circuit breaker is cached (optional), by default 1 second.
+         * A duration of zero disables caching of closed circuit breakers.
+         *
+         * @param negativeTtl time to live of cached closed states
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withNegativeTtl(Duration negativeTtl) {
+            this.negativeTtl = negativeTtl;
+            return this;
+        }
+
+        /**
+         * Maximum number of cached circuit breaker states (optional), by default 1000.
+         * The least recently used entries are evicted first.
+         *
+         * @param maximumSize maximum number of entries
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withMaximumSize(int maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+    }
+}
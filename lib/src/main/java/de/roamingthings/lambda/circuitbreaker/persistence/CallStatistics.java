@@ -0,0 +1,31 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+/**
+ * Number of calls, failures and slow calls of a circuit breaker within its sliding window.
+ *
+ * @param calls     number of recorded calls
+ * @param failures  number of recorded calls that failed
+ * @param slowCalls number of recorded calls that took at least the slow call threshold
+ */
+public record CallStatistics(long calls, long failures, long slowCalls) {
+
+    public static final CallStatistics EMPTY = new CallStatistics(0, 0, 0);
+
+    /**
+     * @return the failure rate in percent or 0 if there are no calls
+     */
+    public float failureRate() {
+        return calls == 0 ? 0 : failures * 100.0f / calls;
+    }
+
+    /**
+     * @return the slow call rate in percent or 0 if there are no calls
+     */
+    public float slowCallRate() {
+        return calls == 0 ? 0 : slowCalls * 100.0f / calls;
+    }
+
+    public CallStatistics plus(CallStatistics other) {
+        return new CallStatistics(calls + other.calls, failures + other.failures, slowCalls + other.slowCalls);
+    }
+}
@@ -9,15 +9,28 @@ import java.time.Instant;
  *                        DynamoDB's TTL mechanism is used to remove the record once the
  *                        expiry has been reached, and subsequent execution of the request
  *                        will be permitted. The user must configure this on their table.
+ *                        <p>
+ *                        For a {@link PersistenceStore.Status#HALF_OPEN} record this is the expiry of the
+ *                        probe lease. For a {@link PersistenceStore.Status#CLOSED} record this is the end of the
+ *                        slow start.
+ * @param closedTimestamp When the circuit breaker has been closed in _milliseconds since epoch_, 0 if the record
+ *                        has not been closed. Used to ramp up the admitted calls during the slow start.
  */
-public record CircuitBreakerStatusRecord(String circuitBreakerId, PersistenceStore.Status status, long expiryTimestamp, String cause) {
+public record CircuitBreakerStatusRecord(String circuitBreakerId, PersistenceStore.Status status, long expiryTimestamp, String cause, long closedTimestamp) {
+
+    public CircuitBreakerStatusRecord(String circuitBreakerId, PersistenceStore.Status status, long expiryTimestamp, String cause) {
+        this(circuitBreakerId, status, expiryTimestamp, cause, 0L);
+    }
 
     /**
      * Check if data record is expired (based on expiration configured in the {@link de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig})
+     * <p>
+     * Compared in whole seconds like the conditions of the conditional writes, so that a record is only reported
+     * expired once a probe lease can be acquired for it.
      *
      * @return Whether the record is currently expired or not
      */
     public boolean isExpired(Instant now) {
-        return expiryTimestamp != 0 && now.isAfter(Instant.ofEpochSecond(expiryTimestamp));
+        return expiryTimestamp != 0 && expiryTimestamp < now.getEpochSecond();
     }
 }
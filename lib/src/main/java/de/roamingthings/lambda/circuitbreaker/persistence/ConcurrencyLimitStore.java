@@ -0,0 +1,43 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.AdaptiveConcurrency;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Persistence store that keeps the {@link AdaptiveConcurrency adaptive concurrency limits} of circuit breakers,
+ * shared by all Lambda containers. The concurrent calls are counted with the leases of a {@link BulkheadStore}.
+ */
+public interface ConcurrencyLimitStore extends BulkheadStore {
+
+    /**
+     * Atomically add the changes of a Lambda container to the concurrency limit of a circuit breaker.
+     * The limit is bounded to the minimum and maximum limit when it is written, so that the changes of several
+     * containers cannot move it out of bounds.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param delta            the change of the limit, may be 0 to only read the limit
+     * @param settings         the initial limit to add to if the circuit breaker has no limit yet and the bounds
+     * @param now              current time
+     * @return the bounded limit including the delta
+     */
+    double addToConcurrencyLimit(String circuitBreakerId, double delta, AdaptiveConcurrency settings, Instant now);
+
+    /**
+     * Get the {@link ConcurrencyLimitStore} of a persistence store. A {@link CachingPersistenceStore} passes
+     * concurrency limits to its underlying store.
+     *
+     * @param persistenceStore the configured persistence store
+     * @return the store, empty if concurrency limits are not supported
+     */
+    static Optional<ConcurrencyLimitStore> of(PersistenceStore persistenceStore) {
+        if (persistenceStore instanceof ConcurrencyLimitStore store) {
+            return Optional.of(store);
+        }
+        if (persistenceStore instanceof CachingPersistenceStore cachingStore) {
+            return cachingStore.concurrencyLimitStore();
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,43 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+/**
+ * Sliding window over the outcomes of the last calls of a circuit breaker in this container.
+ */
+class CountBasedSlidingWindow {
+
+    private final boolean[] failures;
+    private final boolean[] slowCalls;
+    private int next;
+    private long calls;
+    private long failureCount;
+    private long slowCallCount;
+
+    CountBasedSlidingWindow(int size) {
+        this.failures = new boolean[size];
+        this.slowCalls = new boolean[size];
+    }
+
+    synchronized CallStatistics record(boolean failure, boolean slow) {
+        if (calls == failures.length) {
+            // The oldest outcome leaves the window
+            if (failures[next]) {
+                failureCount--;
+            }
+            if (slowCalls[next]) {
+                slowCallCount--;
+            }
+        } else {
+            calls++;
+        }
+        failures[next] = failure;
+        slowCalls[next] = slow;
+        if (failure) {
+            failureCount++;
+        }
+        if (slow) {
+            slowCallCount++;
+        }
+        next = (next + 1) % failures.length;
+        return new CallStatistics(calls, failureCount, slowCallCount);
+    }
+}
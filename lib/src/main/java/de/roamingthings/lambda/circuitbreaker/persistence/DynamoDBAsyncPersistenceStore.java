@@ -0,0 +1,395 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.utils.StringUtils;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link AsyncPersistenceStore} on DynamoDB using a {@link DynamoDbAsyncClient}.
+ * <p>
+ * The table layout is the same as the one of {@link DynamoDBPersistenceStore}, so both stores can be used on the
+ * same table. Records are always read with strong consistency.
+ * <p>
+ * Circuit breakers that are opened with {@link #saveCircuitBreakerOpenAsync(String, Throwable, Instant)} are
+ * written in the background. {@link #flush()} waits for these writes, so it has to be called before the
+ * Lambda invocation ends.
+ */
+public class DynamoDBAsyncPersistenceStore extends PersistenceStoreBase implements AsyncPersistenceStore {
+
+    private static final Logger log = LoggerFactory.getLogger(DynamoDBAsyncPersistenceStore.class);
+
+    private final DynamoDBRequestFactory requests;
+    private final DynamoDbAsyncClient dynamoDbClient;
+    private final ConcurrentMap<String, Set<String>> staleWindowAttributes = new ConcurrentHashMap<>();
+    private final Set<CompletableFuture<Void>> pendingWrites = ConcurrentHashMap.newKeySet();
+
+    private DynamoDBAsyncPersistenceStore(
+            String tableName,
+            String keyAttr,
+            String staticPkValue,
+            String sortKeyAttr,
+            String expiryAttr,
+            String statusAttr,
+            String causeAttr,
+            String closedAttr,
+            DynamoDbAsyncClient dynamoDbClient) {
+        this.requests = new DynamoDBRequestFactory(tableName, keyAttr, staticPkValue, sortKeyAttr, expiryAttr, statusAttr, causeAttr, closedAttr, 1);
+        this.dynamoDbClient = dynamoDbClient;
+    }
+
+    @Override
+    public CompletionStage<Status> fetchCircuitBreakerStateAsync(String circuitBreakerId, Instant now) {
+        return getRecord(circuitBreakerId)
+                .thenApply(statusRecord -> statusRecord
+                        .map(existingRecord -> stateOf(existingRecord, now))
+                        .orElse(Status.CLOSED));
+    }
+
+    @Override
+    public CompletionStage<Admission> admitCallAsync(String circuitBreakerId, Instant now) {
+        return getRecord(circuitBreakerId)
+                .thenApply(statusRecord -> statusRecord
+                        .map(existingRecord -> admit(existingRecord, now))
+                        .orElse(Admission.CLOSED));
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireProbeLeaseAsync(String circuitBreakerId, Instant now) {
+        log.debug("Acquiring probe lease for circuit breaker: {}", circuitBreakerId);
+        return updateProbeLease(probeRecord(circuitBreakerId, now), now);
+    }
+
+    @Override
+    public CompletionStage<Void> saveCircuitBreakerOpenAsync(String circuitBreakerId, Throwable cause, Instant now) {
+        log.debug("Saving circuit breaker status as OPEN");
+        var write = putRecord(openRecord(circuitBreakerId, cause, now), now);
+        pendingWrites.add(write);
+        write.whenComplete((result, throwable) -> pendingWrites.remove(write));
+        return write;
+    }
+
+    @Override
+    public void createRecord(CircuitBreakerStatusRecord statusRecord, Instant now) {
+        join(putRecord(statusRecord, now));
+    }
+
+    @Override
+    boolean updateRecord(CircuitBreakerStatusRecord statusRecord, CircuitBreakerStatusRecord probeRecord) {
+        log.debug("Updating record for circuit breaker key: {}", statusRecord.circuitBreakerId());
+        try {
+            join(dynamoDbClient.updateItem(requests.updateRecordRequest(statusRecord, probeRecord)));
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    Optional<CircuitBreakerStatusRecord> fetchRecord(String circuitBreakerId) {
+        return join(getRecord(circuitBreakerId));
+    }
+
+    @Override
+    boolean acquireProbeLeaseRecord(CircuitBreakerStatusRecord probeRecord, Instant now) {
+        return join(updateProbeLease(probeRecord, now));
+    }
+
+    @Override
+    CallStatistics addToSlidingWindow(String circuitBreakerId, Map<Long, CallStatistics> deltas, long currentBucket, int windowSizeInSeconds) {
+        var staleAttributes = staleWindowAttributes.remove(circuitBreakerId);
+        var response = join(dynamoDbClient.updateItem(
+                requests.addToSlidingWindowRequest(circuitBreakerId, deltas, currentBucket, windowSizeInSeconds, staleAttributes)
+        ));
+
+        Set<String> newStaleAttributes = new HashSet<>();
+        var statistics = requests.windowItemToStatistics(response.attributes(), currentBucket - windowSizeInSeconds, newStaleAttributes);
+        if (!newStaleAttributes.isEmpty()) {
+            staleWindowAttributes.merge(circuitBreakerId, newStaleAttributes, (existing, added) -> {
+                var merged = new HashSet<>(existing);
+                merged.addAll(added);
+                return merged;
+            });
+        }
+        return statistics;
+    }
+
+    @Override
+    boolean deleteRecord(CircuitBreakerStatusRecord probeRecord) {
+        log.debug("Deleting record for circuit breaker key: {}", probeRecord.circuitBreakerId());
+        try {
+            join(dynamoDbClient.deleteItem(requests.deleteRecordRequest(probeRecord)));
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Waits for the circuit breakers that are still being opened in the background after writing the pending
+     * sliding window outcomes.
+     */
+    @Override
+    public void flush() {
+        super.flush();
+        for (var write : pendingWrites) {
+            try {
+                write.join();
+            } catch (CompletionException e) {
+                // Already logged when the write failed
+            }
+        }
+    }
+
+    /**
+     * Reads the record of a circuit breaker that is never used, which initializes the client including its
+     * connection and the marshallers, and maps a record.
+     */
+    @Override
+    public void prime() {
+        try {
+            dynamoDbClient.getItem(requests.getRecordRequest(DynamoDBRequestFactory.PRIMING_CIRCUIT_BREAKER_ID, true)).join();
+        } catch (RuntimeException e) {
+            log.warn("Failed to prime DynamoDB client", e);
+        }
+        requests.primeMapping();
+    }
+
+    @Override
+    public void resetLocalState() {
+        super.resetLocalState();
+        staleWindowAttributes.clear();
+    }
+
+    private CompletableFuture<Optional<CircuitBreakerStatusRecord>> getRecord(String circuitBreakerId) {
+        return dynamoDbClient.getItem(requests.getRecordRequest(circuitBreakerId, true))
+                .thenApply(response -> response.hasItem()
+                        ? Optional.ofNullable(requests.itemToRecord(response.item()))
+                        : Optional.empty());
+    }
+
+    private CompletableFuture<Void> putRecord(CircuitBreakerStatusRecord statusRecord, Instant now) {
+        log.debug("Putting record for circuit breaker: {}", statusRecord.circuitBreakerId());
+        return dynamoDbClient.putItem(requests.createRecordRequest(statusRecord, now))
+                .handle((response, throwable) -> {
+                    if (throwable == null) {
+                        return null;
+                    }
+                    var cause = unwrap(throwable);
+                    if (cause instanceof ConditionalCheckFailedException) {
+                        log.debug("Failed to put record for already existing open circuit breaker key: {}", statusRecord.circuitBreakerId());
+                        return null;
+                    }
+                    log.warn("Failed to put record for circuit breaker key: {}", statusRecord.circuitBreakerId(), cause);
+                    throw new CompletionException(cause);
+                });
+    }
+
+    private CompletableFuture<Boolean> updateProbeLease(CircuitBreakerStatusRecord probeRecord, Instant now) {
+        return dynamoDbClient.updateItem(requests.acquireProbeLeaseRequest(probeRecord, now))
+                .handle((response, throwable) -> {
+                    if (throwable == null) {
+                        log.debug("Acquired probe lease for circuit breaker key: {}", probeRecord.circuitBreakerId());
+                        return true;
+                    }
+                    var cause = unwrap(throwable);
+                    if (cause instanceof ConditionalCheckFailedException) {
+                        log.debug("Probe lease for circuit breaker key is held by another caller: {}", probeRecord.circuitBreakerId());
+                        return false;
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
+
+    /**
+     * Wait for a request and rethrow the exception of a failed request unwrapped, so that the synchronous methods
+     * behave like the ones of {@link DynamoDBPersistenceStore}.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            var cause = unwrap(e);
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        var cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Use this builder to get an instance of {@link DynamoDBAsyncPersistenceStore}.<br/>
+     * With this builder you can configure the characteristics of the DynamoDB Table
+     * (name, key, sort key, and other field names) like with {@link DynamoDBPersistenceStore.Builder}.<br/>
+     * The {@link DynamoDbAsyncClient} has to be provided, so that the asynchronous http client can be chosen
+     * by the application.
+     */
+    public static class Builder {
+
+        private String tableName;
+        private String keyAttr = "id";
+        private String staticPkValue = DynamoDBPersistenceStore.Builder.defaultStaticPkValue();
+        private String sortKeyAttr;
+        private String expiryAttr = "expiration";
+        private String statusAttr = "status";
+        private String causeAttr = "cause";
+        private String closedAttr = DynamoDBRequestFactory.DEFAULT_CLOSED_ATTR;
+        private DynamoDbAsyncClient dynamoDbClient;
+
+        /**
+         * Initialize and return a new instance of {@link DynamoDBAsyncPersistenceStore}.<br/>
+         * Example:<br>
+         * <pre>
+         *     DynamoDBAsyncPersistenceStore.builder()
+         *         .withTableName("circuit_breaker_store")
+         *         .withDynamoDbClient(DynamoDbAsyncClient.create())
+         *         .build();
+         * </pre>
+         *
+         * @return an instance of the {@link DynamoDBAsyncPersistenceStore}
+         */
+        public DynamoDBAsyncPersistenceStore build() {
+            if (StringUtils.isEmpty(tableName)) {
+                throw new IllegalArgumentException("Table name is not specified");
+            }
+            if (dynamoDbClient == null) {
+                throw new IllegalArgumentException("DynamoDbAsyncClient is not specified");
+            }
+            return new DynamoDBAsyncPersistenceStore(
+                    tableName,
+                    keyAttr,
+                    staticPkValue,
+                    sortKeyAttr,
+                    expiryAttr,
+                    statusAttr,
+                    causeAttr,
+                    closedAttr,
+                    dynamoDbClient);
+        }
+
+        /**
+         * Name of the table to use for storing execution records (mandatory)
+         *
+         * @param tableName Name of the DynamoDB table
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withTableName(String tableName) {
+            this.tableName = tableName;
+            return this;
+        }
+
+        /**
+         * DynamoDB attribute name for partition key (optional), by default "id"
+         *
+         * @param keyAttr name of the key attribute in the table
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withKeyAttr(String keyAttr) {
+            this.keyAttr = keyAttr;
+            return this;
+        }
+
+        /**
+         * DynamoDB attribute value for partition key (optional), by default "circuitBreaker#[function-name]".
+         * This will be used if the {@link #sortKeyAttr} is set.
+         *
+         * @param staticPkValue name of the partition key attribute in the table
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withStaticPkValue(String staticPkValue) {
+            this.staticPkValue = staticPkValue;
+            return this;
+        }
+
+        /**
+         * DynamoDB attribute name for the sort key (optional)
+         *
+         * @param sortKeyAttr name of the sort key attribute in the table
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withSortKeyAttr(String sortKeyAttr) {
+            this.sortKeyAttr = sortKeyAttr;
+            return this;
+        }
+
+        /**
+         * DynamoDB attribute name for expiry timestamp (optional), by default "expiration"
+         *
+         * @param expiryAttr name of the expiry attribute in the table
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withExpiryAttr(String expiryAttr) {
+            this.expiryAttr = expiryAttr;
+            return this;
+        }
+
+        /**
+         * DynamoDB attribute name for status (optional), by default "status"
+         *
+         * @param statusAttr name of the status attribute in the table
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withStatusAttr(String statusAttr) {
+            this.statusAttr = statusAttr;
+            return this;
+        }
+
+        /**
+         * DynamoDB attribute name for cause (optional), by default "cause"
+         *
+         * @param causeAttr name of the status attribute in the table
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withCauseAttr(String causeAttr) {
+            this.causeAttr = causeAttr;
+            return this;
+        }
+
+        /**
+         * DynamoDB attribute name for the time a circuit breaker has been closed (optional), by default "closedAt".
+         * Only written when a slow start is configured.
+         *
+         * @param closedAttr name of the closed attribute in the table
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withClosedAttr(String closedAttr) {
+            this.closedAttr = closedAttr;
+            return this;
+        }
+
+        /**
+         * The {@link DynamoDbAsyncClient} used to query DynamoDB (mandatory).
+         *
+         * @param dynamoDbClient the {@link DynamoDbAsyncClient} instance to use
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withDynamoDbClient(DynamoDbAsyncClient dynamoDbClient) {
+            this.dynamoDbClient = dynamoDbClient;
+            return this;
+        }
+    }
+}
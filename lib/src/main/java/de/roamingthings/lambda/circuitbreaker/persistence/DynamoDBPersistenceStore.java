@@ -1,41 +1,57 @@
 package de.roamingthings.lambda.circuitbreaker.persistence;
 
+import de.roamingthings.lambda.circuitbreaker.AdaptiveConcurrency;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
-import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
-import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
-import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
 import software.amazon.awssdk.utils.StringUtils;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static de.roamingthings.lambda.circuitbreaker.Constants.AWS_REGION_ENV;
 import static de.roamingthings.lambda.circuitbreaker.Constants.CIRCUIT_BREAKER_DISABLED_ENV;
+import static de.roamingthings.lambda.circuitbreaker.Constants.LAMBDA_LOG_STREAM_NAME_ENV;
 
-public class DynamoDBPersistenceStore extends PersistenceStoreBase {
+public class DynamoDBPersistenceStore extends PersistenceStoreBase implements ConcurrencyLimitStore, RateLimiterStore {
 
     private static final Logger log = LoggerFactory.getLogger(DynamoDBPersistenceStore.class);
 
-    private final String tableName;
-    private final String keyAttr;
-    private final String staticPkValue;
-    private final String sortKeyAttr;
-    private final String expiryAttr;
-    private final String statusAttr;
-    private final String causeAttr;
-    private final DynamoDbClient dynamoDbClient;
+    private static final int MAX_BATCH_GET_KEYS = 100;
+    private static final int MAX_COMPARE_AND_SET_ATTEMPTS = 3;
+    private static final long CONCURRENCY_LIMIT_RETENTION_SECONDS = 24 * 60 * 60L; // 1 day
+
+    private final DynamoDBRequestFactory requests;
+    private final boolean defaultClient;
+    private volatile DynamoDbClient dynamoDbClient;
+    private final long prefetchMaxAgeNanos;
+    private final ReadConsistency readConsistency;
+    private final long adaptiveReadWindowMillis;
+    private final ConcurrentMap<String, AdaptiveReadState> adaptiveReadStates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> staleWindowAttributes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<String, AttributeValue>> tokenBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<String, AttributeValue>> concurrencyLimits = new ConcurrentHashMap<>();
+    private final Set<String> knownCircuitBreakerIds = ConcurrentHashMap.newKeySet();
+    private volatile Snapshot snapshot;
+    private volatile int readShard;
 
     private DynamoDBPersistenceStore(
             String tableName,
@@ -45,156 +61,612 @@ public class DynamoDBPersistenceStore extends PersistenceStoreBase {
             String expiryAttr,
             String statusAttr,
             String causeAttr,
+            String closedAttr,
+            Duration prefetchMaxAge,
+            ReadConsistency readConsistency,
+            Duration adaptiveReadWindow,
+            int shards,
             DynamoDbClient dynamoDbClient) {
-        this.tableName = tableName;
-        this.keyAttr = keyAttr;
-        this.staticPkValue = staticPkValue;
-        this.sortKeyAttr = sortKeyAttr;
-        this.expiryAttr = expiryAttr;
-        this.statusAttr = statusAttr;
-        this.causeAttr = causeAttr;
+        this.requests = new DynamoDBRequestFactory(tableName, keyAttr, staticPkValue, sortKeyAttr, expiryAttr, statusAttr, causeAttr, closedAttr, shards);
+        this.readShard = selectReadShard(System.getenv(LAMBDA_LOG_STREAM_NAME_ENV), shards);
+        this.prefetchMaxAgeNanos = prefetchMaxAge != null ? prefetchMaxAge.toNanos() : -1;
+        this.readConsistency = readConsistency;
+        this.adaptiveReadWindowMillis = adaptiveReadWindow.toMillis();
 
         if (dynamoDbClient != null) {
             this.dynamoDbClient = dynamoDbClient;
+            this.defaultClient = false;
         } else {
             String idempotencyDisabledEnv = System.getenv().get(CIRCUIT_BREAKER_DISABLED_ENV);
             if (idempotencyDisabledEnv == null || idempotencyDisabledEnv.equalsIgnoreCase("false")) {
-                this.dynamoDbClient = DynamoDbClient.builder()
-                        .httpClient(UrlConnectionHttpClient.builder().build())
-                        .region(Region.of(System.getenv(AWS_REGION_ENV)))
-                        .build();
+                // The client is created on first use, so that the store can be built during a native image build
+                // or in a static initializer without opening connections
+                this.dynamoDbClient = null;
+                this.defaultClient = true;
             } else {
                 // we do not want to create a DynamoDbClient if circuit breaker is disabled
                 // null is ok as circuit breaker won't be called
                 this.dynamoDbClient = null;
+                this.defaultClient = false;
             }
         }
     }
 
-    @Override
-    public void createRecord(CircuitBreakerStatusRecord statusRecord, Instant now) {
-        var item = new HashMap<>(createKey(statusRecord.circuitBreakerId()));
-        item.put(this.expiryAttr, AttributeValue.fromN(String.valueOf(statusRecord.expiryTimestamp())));
-        item.put(this.statusAttr, AttributeValue.fromS(statusRecord.status().toString()));
-        if (statusRecord.cause() != null) {
-            item.put(this.causeAttr, AttributeValue.fromS(statusRecord.cause()));
+    private DynamoDbClient client() {
+        var client = dynamoDbClient;
+        if (client == null && defaultClient) {
+            synchronized (this) {
+                client = dynamoDbClient;
+                if (client == null) {
+                    client = createDefaultClient();
+                    dynamoDbClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    private static DynamoDbClient createDefaultClient() {
+        return DynamoDbClient.builder()
+                .httpClient(UrlConnectionHttpClient.builder().build())
+                .region(Region.of(System.getenv(AWS_REGION_ENV)))
+                .build();
+    }
+
+    /**
+     * Every container reads the same shard of all circuit breakers. The shard is derived from the log stream,
+     * which is unique per execution environment, or chosen at random if it is not known.
+     *
+     * @param logStreamName name of the log stream of the execution environment, may be {@code null}
+     * @param shards        number of shards
+     * @return the shard to read
+     */
+    static int selectReadShard(String logStreamName, int shards) {
+        if (shards <= 1) {
+            return 0;
         }
+        var hash = logStreamName != null ? logStreamName.hashCode() : ThreadLocalRandom.current().nextInt();
+        return Math.floorMod(hash, shards);
+    }
 
+    @Override
+    public void createRecord(CircuitBreakerStatusRecord statusRecord, Instant now) {
+        invalidateSnapshot();
         try {
             log.debug("Putting record for circuit breaker: {}", statusRecord.circuitBreakerId());
-
-            var expressionAttributeNames = Stream.of(
-                            new AbstractMap.SimpleEntry<>("#id", this.keyAttr),
-                            new AbstractMap.SimpleEntry<>("#expiry", this.expiryAttr)
-                    )
-                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-            var expressionAttributeValues = Stream.of(
-                            new AbstractMap.SimpleEntry<>(":now", AttributeValue.fromN(String.valueOf(now.getEpochSecond())))
-                    )
-                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-            dynamoDbClient.putItem(
-                    PutItemRequest.builder()
-                            .tableName(tableName)
-                            .item(item)
-                            .conditionExpression("attribute_not_exists(#id) OR #expiry < :now")
-                            .expressionAttributeNames(expressionAttributeNames)
-                            .expressionAttributeValues(expressionAttributeValues)
-                            .build()
-            );
+            if (requests.isSharded()) {
+                client().transactWriteItems(requests.createShardedRecordRequest(statusRecord, now));
+            } else {
+                client().putItem(requests.createRecordRequest(statusRecord, now));
+            }
         } catch (ConditionalCheckFailedException e) {
             log.debug("Failed to put record for already existing open circuit breaker key: {}", statusRecord.circuitBreakerId());
+        } catch (TransactionCanceledException e) {
+            if (!isCanceledByOtherWriter(e)) {
+                throw e;
+            }
+            log.debug("Failed to put sharded record for already existing open circuit breaker key: {}", statusRecord.circuitBreakerId());
+        }
+    }
+
+    /**
+     * @return {@code true} if a shard holds an open record or another caller writes the shards at the same time
+     */
+    private static boolean isCanceledByOtherWriter(TransactionCanceledException e) {
+        if (!e.hasCancellationReasons()) {
+            return false;
         }
+        for (var reason : e.cancellationReasons()) {
+            var code = reason.code();
+            if (code != null && !"None".equals(code) && !"ConditionalCheckFailed".equals(code) && !"TransactionConflict".equals(code)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
-    void updateRecord(CircuitBreakerStatusRecord statusRecord) {
+    boolean updateRecord(CircuitBreakerStatusRecord statusRecord, CircuitBreakerStatusRecord probeRecord) {
         log.debug("Updating record for circuit breaker key: {}", statusRecord.circuitBreakerId());
+        invalidateSnapshot();
+        try {
+            if (requests.isSharded()) {
+                client().transactWriteItems(requests.updateShardedRecordRequest(statusRecord, probeRecord));
+            } else {
+                client().updateItem(requests.updateRecordRequest(statusRecord, probeRecord));
+            }
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        } catch (TransactionCanceledException e) {
+            if (!isCanceledByOtherWriter(e)) {
+                throw e;
+            }
+            return false;
+        }
+    }
+
+    @Override
+    boolean acquireProbeLeaseRecord(CircuitBreakerStatusRecord probeRecord, Instant now) {
+        invalidateSnapshot();
+        try {
+            if (requests.isSharded()) {
+                client().transactWriteItems(requests.acquireShardedProbeLeaseRequest(probeRecord, now));
+            } else {
+                client().updateItem(requests.acquireProbeLeaseRequest(probeRecord, now));
+            }
+            log.debug("Acquired probe lease for circuit breaker key: {}", probeRecord.circuitBreakerId());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            log.debug("Probe lease for circuit breaker key is held by another caller: {}", probeRecord.circuitBreakerId());
+            return false;
+        } catch (TransactionCanceledException e) {
+            if (!isCanceledByOtherWriter(e)) {
+                throw e;
+            }
+            log.debug("Probe lease for sharded circuit breaker key is held by another caller: {}", probeRecord.circuitBreakerId());
+            return false;
+        }
+    }
+
+    /**
+     * If the bulkhead is full, leases that have expired are removed and the lease is requested once more.
+     */
+    @Override
+    public boolean acquireBulkheadLease(String bulkheadId, String leaseId, int maxConcurrent, Instant leaseExpiry, Instant now) {
+        var request = requests.acquireBulkheadLeaseRequest(bulkheadId, leaseId, maxConcurrent, leaseExpiry);
+        try {
+            client().updateItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            // Stores that do not return the item with the failed condition are read once more
+            var item = e.hasItem() ? e.item() : client().getItem(requests.getBulkheadRequest(bulkheadId)).item();
+            if (item == null || !releaseExpiredBulkheadLeases(bulkheadId, item, now)) {
+                log.debug("Bulkhead is full: {}", bulkheadId);
+                return false;
+            }
+        }
+        try {
+            client().updateItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            log.debug("Bulkhead is full: {}", bulkheadId);
+            return false;
+        }
+    }
 
-        var updateExpression = "SET #expiry = :expiry, #status = :status, #cause = :cause";
-
-        var expressionAttributeNames = Stream.of(
-                        new AbstractMap.SimpleEntry<>("#expiry", this.expiryAttr),
-                        new AbstractMap.SimpleEntry<>("#status", this.statusAttr),
-                        new AbstractMap.SimpleEntry<>("#cause", this.causeAttr)
-                )
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-        var expressionAttributeValues = Stream.of(
-                        new AbstractMap.SimpleEntry<>(":expiry", AttributeValue.fromN(String.valueOf(statusRecord.expiryTimestamp()))),
-                        new AbstractMap.SimpleEntry<>(":status", AttributeValue.fromS(statusRecord.status().toString())),
-                        new AbstractMap.SimpleEntry<>(":cause", AttributeValue.fromS(statusRecord.cause()))
-                )
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-        dynamoDbClient.updateItem(UpdateItemRequest.builder()
-                .tableName(tableName)
-                .key(createKey(statusRecord.circuitBreakerId()))
-                .updateExpression(updateExpression)
-                .expressionAttributeNames(expressionAttributeNames)
-                .expressionAttributeValues(expressionAttributeValues)
-                .build()
+    @Override
+    public void releaseBulkheadLease(String bulkheadId, String leaseId) {
+        try {
+            client().updateItem(requests.releaseBulkheadLeaseRequest(bulkheadId, leaseId));
+        } catch (ConditionalCheckFailedException e) {
+            log.debug("Lease of bulkhead has already been removed as expired: {}", bulkheadId);
+        }
+    }
+
+    /**
+     * The bucket is refilled from the state that this container has written or read last, so that a rate limiter
+     * that is only used by this container needs a single write. If another container has changed the bucket in the
+     * meantime, the write fails with the current state and is repeated a few times.
+     */
+    @Override
+    public int acquirePermits(String rateLimiterId, double permitsPerSecond, int burst, int requested, Instant now) {
+        var nowMillis = now.toEpochMilli();
+        var expiry = now.getEpochSecond() + TokenBucket.secondsToRefill(permitsPerSecond, burst);
+        var item = tokenBuckets.get(rateLimiterId);
+        for (var attempt = 0; attempt < MAX_COMPARE_AND_SET_ATTEMPTS; attempt++) {
+            var stored = item != null ? DynamoDBRequestFactory.itemToTokenBucket(item) : null;
+            var bucket = stored != null ? stored.refill(permitsPerSecond, burst, nowMillis) : TokenBucket.full(burst, nowMillis);
+            var permits = bucket.available(requested);
+            if (permits == 0) {
+                return 0;
+            }
+            var updated = DynamoDBRequestFactory.tokenBucketAttributes(bucket.take(permits));
+            try {
+                client().updateItem(requests.takeTokensRequest(rateLimiterId, stored != null ? item : null, updated, expiry));
+                tokenBuckets.put(rateLimiterId, updated);
+                return permits;
+            } catch (ConditionalCheckFailedException e) {
+                log.debug("Token bucket of rate limiter has been changed by another caller: {}", rateLimiterId);
+                item = e.hasItem() ? e.item() : client().getItem(requests.getRateLimiterRequest(rateLimiterId)).item();
+                if (item != null && !item.isEmpty()) {
+                    tokenBuckets.put(rateLimiterId, item);
+                } else {
+                    tokenBuckets.remove(rateLimiterId);
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Like the token bucket of a rate limiter, the changes are added to the limit that this container has written
+     * or read last and the write is repeated a few times if another container has changed the limit in the
+     * meantime. If the limit keeps changing, the changes of this container are dropped and the current limit is
+     * returned. The limit of a circuit breaker that has not been used for a day is removed and starts over at the
+     * initial limit.
+     */
+    @Override
+    public double addToConcurrencyLimit(String circuitBreakerId, double delta, AdaptiveConcurrency settings, Instant now) {
+        var expiry = now.getEpochSecond() + CONCURRENCY_LIMIT_RETENTION_SECONDS;
+        var item = concurrencyLimits.get(circuitBreakerId);
+        for (var attempt = 0; attempt < MAX_COMPARE_AND_SET_ATTEMPTS; attempt++) {
+            var stored = item != null ? DynamoDBRequestFactory.itemToConcurrencyLimit(item) : null;
+            var updated = DynamoDBRequestFactory.concurrencyLimitAttributes(
+                    settings.bound((stored != null ? stored : settings.getInitialLimit()) + delta));
+            try {
+                client().updateItem(requests.setConcurrencyLimitRequest(circuitBreakerId, stored != null ? item : null, updated, expiry));
+                concurrencyLimits.put(circuitBreakerId, updated);
+                return DynamoDBRequestFactory.itemToConcurrencyLimit(updated);
+            } catch (ConditionalCheckFailedException e) {
+                log.debug("Concurrency limit of circuit breaker has been changed by another caller: {}", circuitBreakerId);
+                item = e.hasItem() ? e.item() : client().getItem(requests.getConcurrencyLimitRequest(circuitBreakerId)).item();
+                if (item != null && !item.isEmpty()) {
+                    concurrencyLimits.put(circuitBreakerId, item);
+                } else {
+                    concurrencyLimits.remove(circuitBreakerId);
+                }
+            }
+        }
+        var current = item != null ? DynamoDBRequestFactory.itemToConcurrencyLimit(item) : null;
+        return settings.bound(current != null ? current : settings.getInitialLimit());
+    }
+
+    /**
+     * @return {@code true} if expired leases have been removed by this or another caller
+     */
+    private boolean releaseExpiredBulkheadLeases(String bulkheadId, Map<String, AttributeValue> item, Instant now) {
+        var expiredLeases = DynamoDBRequestFactory.expiredBulkheadLeases(item, now.getEpochSecond());
+        if (expiredLeases.isEmpty()) {
+            return false;
+        }
+        log.debug("Removing {} expired leases of bulkhead: {}", expiredLeases.size(), bulkheadId);
+        try {
+            client().updateItem(requests.releaseExpiredBulkheadLeasesRequest(bulkheadId, expiredLeases));
+        } catch (ConditionalCheckFailedException e) {
+            // Another caller has released or removed some of the leases in the meantime
+            log.debug("Expired leases of bulkhead have changed: {}", bulkheadId);
+        }
+        return true;
+    }
+
+    /**
+     * The buckets of a time based sliding window are stored as counter attributes of a separate item
+     * (key {@code <circuitBreakerId>#window}) and are incremented with an atomic {@code ADD}.
+     * All pending buckets of a circuit breaker are written with a single update.
+     * Buckets that have left the window are removed with the next update.
+     */
+    @Override
+    CallStatistics addToSlidingWindow(String circuitBreakerId, Map<Long, CallStatistics> deltas, long currentBucket, int windowSizeInSeconds) {
+        var staleAttributes = staleWindowAttributes.remove(circuitBreakerId);
+        var response = client().updateItem(
+                requests.addToSlidingWindowRequest(circuitBreakerId, deltas, currentBucket, windowSizeInSeconds, staleAttributes)
         );
+        return windowItemToStatistics(circuitBreakerId, response.attributes(), currentBucket - windowSizeInSeconds);
+    }
+
+    @Override
+    boolean deleteRecord(CircuitBreakerStatusRecord probeRecord) {
+        log.debug("Deleting record for circuit breaker key: {}", probeRecord.circuitBreakerId());
+        invalidateSnapshot();
+        try {
+            if (requests.isSharded()) {
+                client().transactWriteItems(requests.deleteShardedRecordRequest(probeRecord));
+            } else {
+                client().deleteItem(requests.deleteRecordRequest(probeRecord));
+            }
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        } catch (TransactionCanceledException e) {
+            if (!isCanceledByOtherWriter(e)) {
+                throw e;
+            }
+            return false;
+        }
     }
 
     @Override
     Optional<CircuitBreakerStatusRecord> fetchRecord(String circuitBreakerId) {
-        GetItemResponse response = dynamoDbClient.getItem(
-                GetItemRequest.builder()
-                        .tableName(tableName)
-                        .key(createKey(circuitBreakerId))
-                        .consistentRead(true)
-                        .build()
+        if (prefetchMaxAgeNanos < 0) {
+            return getRecord(circuitBreakerId);
+        }
+
+        var currentSnapshot = snapshot;
+        if (currentSnapshot == null || System.nanoTime() - currentSnapshot.loadedAtNanos() >= prefetchMaxAgeNanos) {
+            currentSnapshot = loadSnapshot();
+            snapshot = currentSnapshot;
+        }
+        if (currentSnapshot.covers(circuitBreakerId)) {
+            return Optional.ofNullable(currentSnapshot.records().get(circuitBreakerId));
+        }
+
+        // Circuit breakers that have not been seen before are fetched individually and included in the next snapshot
+        knownCircuitBreakerIds.add(circuitBreakerId);
+        return getRecord(circuitBreakerId);
+    }
+
+    /**
+     * Drops the snapshot of prefetched records after writing pending state, so that the next invocation starts
+     * with a fresh snapshot.
+     */
+    @Override
+    public void flush() {
+        super.flush();
+        invalidateSnapshot();
+    }
+
+    /**
+     * Reads the record of a circuit breaker that is never used, which initializes the client including its
+     * connection and the marshallers, and maps a record.
+     */
+    @Override
+    public void prime() {
+        var client = client();
+        if (client != null) {
+            try {
+                client.getItem(requests.getRecordRequest(DynamoDBRequestFactory.PRIMING_CIRCUIT_BREAKER_ID, true));
+            } catch (RuntimeException e) {
+                log.warn("Failed to prime DynamoDB client", e);
+            }
+        }
+        requests.primeMapping();
+    }
+
+    /**
+     * Drops the prefetched records and the read states in addition to the local sliding windows. A client
+     * created by this store is replaced, so that no connection is reused after a restore. The read shard is
+     * chosen again, since all environments restored from the same snapshot would read the same shard otherwise.
+     */
+    @Override
+    public void resetLocalState() {
+        super.resetLocalState();
+        readShard = selectReadShard(null, requests.shards());
+        invalidateSnapshot();
+        adaptiveReadStates.clear();
+        staleWindowAttributes.clear();
+        tokenBuckets.clear();
+        concurrencyLimits.clear();
+        if (defaultClient) {
+            DynamoDbClient previousClient;
+            synchronized (this) {
+                previousClient = dynamoDbClient;
+                dynamoDbClient = null;
+            }
+            if (previousClient != null) {
+                previousClient.close();
+            }
+        }
+    }
+
+    private Optional<CircuitBreakerStatusRecord> getRecord(String circuitBreakerId) {
+        GetItemResponse response = client().getItem(
+                requests.getRecordRequest(circuitBreakerId, readShard, isConsistentRead(circuitBreakerId))
         );
 
         if (!response.hasItem()) {
+            rememberLastSeen(circuitBreakerId, null);
             return Optional.empty();
         }
 
-        return Optional.ofNullable(itemToRecord(response.item()));
+        var statusRecord = requests.itemToRecord(response.item());
+        rememberLastSeen(circuitBreakerId, statusRecord);
+        return Optional.ofNullable(statusRecord);
     }
 
     /**
-     * Get the key to use for requests (depending on if we have a sort key or not)
+     * Load the records of all circuit breakers in one round-trip. With a sort key all records below the static
+     * partition key are queried. Otherwise, all circuit breakers that have been fetched before are read with a
+     * batch get (from the read shard of this container).
      *
-     * @param circuitBreakerKey circuit breaker key
-     * @return AttributeValue map containing the key
+     * @return a snapshot of the records
      */
-    private Map<String, AttributeValue> createKey(String circuitBreakerKey) {
-        Map<String, AttributeValue> key = new HashMap<>();
-        if (this.sortKeyAttr != null) {
-            key.put(this.keyAttr, AttributeValue.builder().s(this.staticPkValue).build());
-            key.put(this.sortKeyAttr, AttributeValue.builder().s(circuitBreakerKey).build());
-        } else {
-            key.put(this.keyAttr, AttributeValue.builder().s(circuitBreakerKey).build());
+    private Snapshot loadSnapshot() {
+        var loadedAtNanos = System.nanoTime();
+        Map<String, CircuitBreakerStatusRecord> records = new HashMap<>();
+        if (requests.sortKeyAttr() != null) {
+            queryStaticPartition(records);
+            return new Snapshot(records, null, loadedAtNanos);
+        }
+        var circuitBreakerIds = Set.copyOf(knownCircuitBreakerIds);
+        batchGetRecords(circuitBreakerIds, records);
+        return new Snapshot(records, circuitBreakerIds, loadedAtNanos);
+    }
+
+    private void queryStaticPartition(Map<String, CircuitBreakerStatusRecord> records) {
+        log.debug("Prefetching records of all circuit breakers with partition key: {}", requests.staticPkValue());
+        Map<String, AttributeValue> exclusiveStartKey = null;
+        do {
+            var response = client().query(
+                    requests.queryStaticPartitionRequest(exclusiveStartKey, isConsistentSnapshotRead())
+            );
+            for (var item : response.items()) {
+                addRecord(item, records);
+            }
+            exclusiveStartKey = response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+                    ? response.lastEvaluatedKey()
+                    : null;
+        } while (exclusiveStartKey != null);
+    }
+
+    private void batchGetRecords(Set<String> circuitBreakerIds, Map<String, CircuitBreakerStatusRecord> records) {
+        if (circuitBreakerIds.isEmpty()) {
+            return;
+        }
+        log.debug("Prefetching records of {} circuit breakers", circuitBreakerIds.size());
+        List<Map<String, AttributeValue>> keys = new ArrayList<>();
+        var shard = readShard;
+        for (var circuitBreakerId : circuitBreakerIds) {
+            keys.add(requests.createKey(circuitBreakerId, shard));
+        }
+        for (var from = 0; from < keys.size(); from += MAX_BATCH_GET_KEYS) {
+            Map<String, KeysAndAttributes> requestItems = Map.of(requests.tableName(), KeysAndAttributes.builder()
+                    .keys(keys.subList(from, Math.min(from + MAX_BATCH_GET_KEYS, keys.size())))
+                    .consistentRead(isConsistentSnapshotRead())
+                    .build());
+            while (requestItems != null && !requestItems.isEmpty()) {
+                var response = client().batchGetItem(BatchGetItemRequest.builder()
+                        .requestItems(requestItems)
+                        .build()
+                );
+                for (var item : response.responses().getOrDefault(requests.tableName(), List.of())) {
+                    addRecord(item, records);
+                }
+                requestItems = response.hasUnprocessedKeys() ? response.unprocessedKeys() : null;
+            }
+        }
+    }
+
+    private void addRecord(Map<String, AttributeValue> item, Map<String, CircuitBreakerStatusRecord> records) {
+        // Skip items that are not status records, e.g. sliding windows
+        if (!requests.isStatusRecord(item)) {
+            return;
+        }
+        var statusRecord = requests.itemToRecord(item);
+        if (statusRecord != null) {
+            rememberLastSeen(statusRecord.circuitBreakerId(), statusRecord);
+            records.put(statusRecord.circuitBreakerId(), statusRecord);
+        }
+    }
+
+    @Override
+    protected void onLocalFailure(String circuitBreakerId, Instant now) {
+        if (readConsistency != ReadConsistency.ADAPTIVE) {
+            return;
+        }
+        var strongReadsUntil = now.toEpochMilli() + adaptiveReadWindowMillis;
+        adaptiveReadStates.compute(circuitBreakerId, (id, state) -> new AdaptiveReadState(
+                state != null ? state.expiryEpochMilli() : 0,
+                strongReadsUntil
+        ));
+    }
+
+    private boolean isConsistentRead(String circuitBreakerId) {
+        switch (readConsistency) {
+            case STRONG:
+                return true;
+            case EVENTUAL:
+                return false;
+            default:
+                var state = adaptiveReadStates.get(circuitBreakerId);
+                return state != null && state.requiresStrongRead(System.currentTimeMillis(), adaptiveReadWindowMillis);
+        }
+    }
+
+    private boolean isConsistentSnapshotRead() {
+        switch (readConsistency) {
+            case STRONG:
+                return true;
+            case EVENTUAL:
+                return false;
+            default:
+                var nowEpochMilli = System.currentTimeMillis();
+                for (var state : adaptiveReadStates.values()) {
+                    if (state.requiresStrongRead(nowEpochMilli, adaptiveReadWindowMillis)) {
+                        return true;
+                    }
+                }
+                return false;
         }
-        return key;
     }
 
     /**
-     * Translate raw item records from DynamoDB to DataRecord
+     * Remember the expiry of the last record that has been read for a circuit breaker
+     * so that adaptive reads can switch to strongly consistent reads around the expiry.
      *
-     * @param item Item from dynamodb response
-     * @return DataRecord instance
+     * @param circuitBreakerId circuit breaker id
+     * @param statusRecord     the record that has been read or {@code null} if there was none
      */
-    private CircuitBreakerStatusRecord itemToRecord(Map<String, AttributeValue> item) {
-        var circuitBreakerId = item.get(sortKeyAttr != null ? sortKeyAttr : keyAttr).s();
-        if (circuitBreakerId == null) {
-            return null;
-        }
-        return new CircuitBreakerStatusRecord(
-                circuitBreakerId,
-                PersistenceStore.Status.valueOf(item.get(this.statusAttr).s()),
-                Long.parseLong(item.get(this.expiryAttr).n()),
-                item.get(this.causeAttr) != null ? item.get(this.causeAttr).s() : null
-        );
+    private void rememberLastSeen(String circuitBreakerId, CircuitBreakerStatusRecord statusRecord) {
+        if (readConsistency != ReadConsistency.ADAPTIVE) {
+            return;
+        }
+        var expiryEpochMilli = statusRecord != null && statusRecord.status() != PersistenceStore.Status.CLOSED
+                ? statusRecord.expiryTimestamp() * 1000
+                : 0;
+        adaptiveReadStates.compute(circuitBreakerId, (id, state) -> {
+            var strongReadsUntil = state != null ? state.strongReadsUntilEpochMilli() : 0;
+            if (expiryEpochMilli == 0 && strongReadsUntil == 0) {
+                // Last seen closed without a local failure: eventually consistent reads are sufficient
+                return null;
+            }
+            return new AdaptiveReadState(expiryEpochMilli, strongReadsUntil);
+        });
+    }
+
+    private void invalidateSnapshot() {
+        snapshot = null;
+    }
+
+    /**
+     * Sum up the buckets of a sliding window item that are still within the window
+     * and remember the others to be removed with the next update.
+     *
+     * @param circuitBreakerId circuit breaker id
+     * @param item             the sliding window item
+     * @param oldestBucket     the last bucket that is no longer part of the window
+     * @return the statistics of the sliding window
+     */
+    private CallStatistics windowItemToStatistics(String circuitBreakerId, Map<String, AttributeValue> item, long oldestBucket) {
+        Set<String> staleAttributes = new HashSet<>();
+        var statistics = requests.windowItemToStatistics(item, oldestBucket, staleAttributes);
+        if (!staleAttributes.isEmpty()) {
+            staleWindowAttributes.merge(circuitBreakerId, staleAttributes, (existing, added) -> {
+                var merged = new HashSet<>(existing);
+                merged.addAll(added);
+                return merged;
+            });
+        }
+        return statistics;
     }
 
     public static Builder builder() {
         return new Builder();
     }
 
+    /**
+     * State used to decide whether a circuit breaker is read with strong consistency in
+     * {@link ReadConsistency#ADAPTIVE} mode.
+     *
+     * @param expiryEpochMilli           expiry of the last open or half-open record that has been read, 0 if none
+     * @param strongReadsUntilEpochMilli end of the period of strong reads after a local failure, 0 if none
+     */
+    private record AdaptiveReadState(long expiryEpochMilli, long strongReadsUntilEpochMilli) {
+
+        boolean requiresStrongRead(long nowEpochMilli, long windowMillis) {
+            return nowEpochMilli < strongReadsUntilEpochMilli
+                    || (expiryEpochMilli != 0 && Math.abs(expiryEpochMilli - nowEpochMilli) <= windowMillis);
+        }
+    }
+
+    /**
+     * Consistency of the reads of circuit breaker states.
+     * <ul>
+     *     <li>STRONG: all reads are strongly consistent</li>
+     *     <li>EVENTUAL: all reads are eventually consistent, which consumes half the read capacity</li>
+     *     <li>ADAPTIVE: reads are eventually consistent, but strongly consistent around the known expiry of an
+     *     open circuit breaker and for a while after a failure has been observed in this container</li>
+     * </ul>
+     */
+    public enum ReadConsistency {
+        STRONG, EVENTUAL, ADAPTIVE
+    }
+
+    /**
+     * Records of the circuit breakers that have been loaded with a single request.
+     *
+     * @param records          the records by circuit breaker id
+     * @param circuitBreakerIds the ids of the circuit breakers that have been requested or {@code null} if the
+     *                          snapshot contains all circuit breakers
+     * @param loadedAtNanos    when the snapshot has been loaded ({@link System#nanoTime()})
+     */
+    private record Snapshot(Map<String, CircuitBreakerStatusRecord> records, Set<String> circuitBreakerIds, long loadedAtNanos) {
+
+        boolean covers(String circuitBreakerId) {
+            return circuitBreakerIds == null || circuitBreakerIds.contains(circuitBreakerId);
+        }
+    }
+
     /**
      * Use this builder to get an instance of {@link DynamoDBPersistenceStore}.<br/>
      * With this builder you can configure the characteristics of the DynamoDB Table
@@ -204,17 +676,26 @@ public class DynamoDBPersistenceStore extends PersistenceStoreBase {
     public static class Builder {
         public static final String LAMBDA_FUNCTION_NAME_ENV = "AWS_LAMBDA_FUNCTION_NAME";
 
-        private static final String funcEnv = System.getenv(LAMBDA_FUNCTION_NAME_ENV);
-
         private String tableName;
         private String keyAttr = "id";
-        private String staticPkValue = String.format("circuitBreaker#%s", funcEnv != null ? funcEnv : "");
+        // Read when the builder is created instead of in a static initializer, which may run at build time
+        private String staticPkValue = defaultStaticPkValue();
         private String sortKeyAttr;
         private String expiryAttr = "expiration";
         private String statusAttr = "status";
         private String causeAttr = "cause";
+        private String closedAttr = DynamoDBRequestFactory.DEFAULT_CLOSED_ATTR;
+        private Duration prefetchMaxAge;
+        private ReadConsistency readConsistency = ReadConsistency.STRONG;
+        private Duration adaptiveReadWindow = Duration.ofSeconds(2);
+        private int shards = 1;
         private DynamoDbClient dynamoDbClient;
 
+        static String defaultStaticPkValue() {
+            var funcEnv = System.getenv(LAMBDA_FUNCTION_NAME_ENV);
+            return String.format("circuitBreaker#%s", funcEnv != null ? funcEnv : "");
+        }
+
         /**
          * Initialize and return a new instance of {@link DynamoDBPersistenceStore}.<br/>
          * Example:<br>
@@ -228,6 +709,12 @@ public class DynamoDBPersistenceStore extends PersistenceStoreBase {
             if (StringUtils.isEmpty(tableName)) {
                 throw new IllegalArgumentException("Table name is not specified");
             }
+            if (shards < 1 || shards > DynamoDBRequestFactory.MAX_SHARDS) {
+                throw new IllegalArgumentException("Number of shards must be between 1 and " + DynamoDBRequestFactory.MAX_SHARDS);
+            }
+            if (shards > 1 && sortKeyAttr != null) {
+                throw new IllegalArgumentException("Shards can not be used with a sort key, since all records share the static partition key");
+            }
             return new DynamoDBPersistenceStore(
                     tableName,
                     keyAttr,
@@ -236,6 +723,11 @@ public class DynamoDBPersistenceStore extends PersistenceStoreBase {
                     expiryAttr,
                     statusAttr,
                     causeAttr,
+                    closedAttr,
+                    prefetchMaxAge,
+                    readConsistency,
+                    adaptiveReadWindow,
+                    shards,
                     dynamoDbClient);
         }
 
@@ -317,6 +809,73 @@ public class DynamoDBPersistenceStore extends PersistenceStoreBase {
             return this;
         }
 
+        /**
+         * DynamoDB attribute name for the time a circuit breaker has been closed (optional), by default "closedAt".
+         * Only written when a slow start is configured.
+         *
+         * @param closedAttr name of the closed attribute in the table
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withClosedAttr(String closedAttr) {
+            this.closedAttr = closedAttr;
+            return this;
+        }
+
+        /**
+         * Load the records of all circuit breakers with a single request and answer the following state checks
+         * from memory (optional), by default disabled.<br/>
+         * If a sort key is used, all records below the static partition key are loaded with a {@code Query}.
+         * Otherwise, all circuit breakers that have been checked before are loaded with a {@code BatchGetItem}.
+         * <p>
+         * The snapshot is dropped when the store is flushed at the end of an invocation, when a record is written
+         * by this store, or when it is older than the given maximum age.
+         *
+         * @param maxAge maximum age of a snapshot
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withPrefetch(Duration maxAge) {
+            this.prefetchMaxAge = maxAge;
+            return this;
+        }
+
+        /**
+         * Consistency of the reads of circuit breaker states (optional), by default {@link ReadConsistency#STRONG}.
+         *
+         * @param readConsistency the read consistency
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withReadConsistency(ReadConsistency readConsistency) {
+            this.readConsistency = readConsistency;
+            return this;
+        }
+
+        /**
+         * Period around the expiry of an open circuit breaker and after a local failure in which
+         * {@link ReadConsistency#ADAPTIVE} reads are strongly consistent (optional), by default 2 seconds.
+         *
+         * @param adaptiveReadWindow the period of strongly consistent reads
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withAdaptiveReadWindow(Duration adaptiveReadWindow) {
+            this.adaptiveReadWindow = adaptiveReadWindow;
+            return this;
+        }
+
+        /**
+         * Number of copies of the status record of each circuit breaker (optional), by default 1.<br/>
+         * With more than one shard the record is written to the keys {@code <circuitBreakerId>#<shard>} and every
+         * container reads a single shard, which spreads the reads of a hot circuit breaker across partitions.
+         * Opening, probing and closing a circuit breaker writes all shards in one {@code TransactWriteItems} request,
+         * which consumes twice the write capacity per shard. Shards can not be combined with a sort key.
+         *
+         * @param shards number of shards, at most 100
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withShards(int shards) {
+            this.shards = shards;
+            return this;
+        }
+
         /**
          * Custom {@link DynamoDbClient} used to query DynamoDB (optional).<br/>
          * The default one uses {@link UrlConnectionHttpClient} as a http client and
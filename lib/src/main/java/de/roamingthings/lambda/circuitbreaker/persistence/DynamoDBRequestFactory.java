@@ -0,0 +1,925 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.Delete;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds the DynamoDB requests for the circuit breaker records and maps the returned items.
+ * Shared by the synchronous and the asynchronous DynamoDB persistence stores so that both use the same table layout.
+ * <p>
+ * Everything of a request that does not depend on the call (expressions, attribute names, constant values)
+ * is built once, and the keys of the circuit breakers are cached, since requests are built on every invocation.
+ * <p>
+ * With more than one shard the status record of a circuit breaker is written to the keys
+ * {@code <circuitBreakerId>#<shard>}, so that the reads of a hot circuit breaker are spread across partitions.
+ * All shards are written in one transaction. The probe lease is taken on shard 0 and written to all shards.
+ */
+final class DynamoDBRequestFactory {
+
+    static final String WINDOW_KEY_SUFFIX = "#window";
+    static final String WINDOW_CALLS_ATTR_PREFIX = "calls_";
+    static final String WINDOW_FAILURES_ATTR_PREFIX = "failures_";
+    static final String WINDOW_SLOW_CALLS_ATTR_PREFIX = "slow_";
+    static final String BULKHEAD_KEY_SUFFIX = "#bulkhead";
+    static final String BULKHEAD_IN_FLIGHT_ATTR = "inFlight";
+    static final String BULKHEAD_LEASE_ATTR_PREFIX = "lease_";
+    static final String RATE_LIMITER_KEY_SUFFIX = "#ratelimit";
+    static final String RATE_LIMITER_TOKENS_ATTR = "tokens";
+    static final String RATE_LIMITER_REFILLED_ATTR = "refilledAt";
+    static final String CONCURRENCY_LIMIT_KEY_SUFFIX = "#limit";
+    static final String CONCURRENCY_LIMIT_ATTR = "concurrencyLimit";
+    static final String PRIMING_CIRCUIT_BREAKER_ID = "circuitBreaker#priming";
+
+    static final String SHARD_KEY_SEPARATOR = "#";
+    static final int MAX_SHARDS = 100;
+    static final String DEFAULT_CLOSED_ATTR = "closedAt";
+
+    private static final int MAX_CACHED_KEYS = 1000;
+    private static final String CREATE_RECORD_CONDITION = "attribute_not_exists(#id) OR #expiry < :now OR #status IN (:halfOpen, :closed)";
+    private static final String UPDATE_RECORD_EXPRESSION = "SET #expiry = :expiry, #status = :status, #closed = :closed, #cause = :cause";
+    private static final String UPDATE_RECORD_WITHOUT_CAUSE_EXPRESSION = "SET #expiry = :expiry, #status = :status, #closed = :closed REMOVE #cause";
+    private static final String PROBE_LEASE_UPDATE_EXPRESSION = "SET #status = :halfOpen, #expiry = :expiry";
+    private static final String PROBE_LEASE_CONDITION = "attribute_exists(#id) AND #status IN (:open, :halfOpen) AND #expiry < :now";
+    private static final String PROBE_RECORD_CONDITION = "#status = :halfOpen AND #expiry = :probeExpiry";
+    private static final String ACQUIRE_BULKHEAD_LEASE_EXPRESSION = "ADD #inFlight :one SET #lease = :leaseExpiry, #expiry = :leaseExpiry";
+    private static final String ACQUIRE_BULKHEAD_LEASE_CONDITION = "attribute_not_exists(#inFlight) OR #inFlight < :max";
+    private static final String RELEASE_BULKHEAD_LEASE_EXPRESSION = "ADD #inFlight :released REMOVE #lease";
+    private static final String RELEASE_BULKHEAD_LEASE_CONDITION = "attribute_exists(#lease)";
+    private static final String TAKE_TOKENS_EXPRESSION = "SET #tokens = :tokens, #refilled = :refilled, #expiry = :expiry";
+    private static final String TAKE_TOKENS_FROM_NEW_BUCKET_CONDITION = "attribute_not_exists(#refilled)";
+    private static final String TAKE_TOKENS_CONDITION = "#tokens = :expectedTokens AND #refilled = :expectedRefilled";
+    private static final String SET_CONCURRENCY_LIMIT_EXPRESSION = "SET #limit = :limit, #expiry = :expiry";
+    private static final String SET_NEW_CONCURRENCY_LIMIT_CONDITION = "attribute_not_exists(#limit)";
+    private static final String SET_CONCURRENCY_LIMIT_CONDITION = "#limit = :expectedLimit";
+    private static final AttributeValue ONE_VALUE = AttributeValue.fromN("1");
+    private static final AttributeValue MINUS_ONE_VALUE = AttributeValue.fromN("-1");
+    private static final String STATIC_PARTITION_KEY_CONDITION = "#pk = :pk";
+    private static final AttributeValue OPEN_VALUE = AttributeValue.fromS(PersistenceStore.Status.OPEN.toString());
+    private static final AttributeValue HALF_OPEN_VALUE = AttributeValue.fromS(PersistenceStore.Status.HALF_OPEN.toString());
+    private static final AttributeValue CLOSED_VALUE = AttributeValue.fromS(PersistenceStore.Status.CLOSED.toString());
+
+    private final String tableName;
+    private final String keyAttr;
+    private final String staticPkValue;
+    private final String sortKeyAttr;
+    private final String expiryAttr;
+    private final String statusAttr;
+    private final String causeAttr;
+    private final String closedAttr;
+    private final int shards;
+    private final AttributeValue staticPkAttributeValue;
+    private final Map<String, String> conditionalWriteNames;
+    private final Map<String, String> updateRecordNames;
+    private final Map<String, String> probeRecordNames;
+    private final Map<String, String> staticPartitionNames;
+    private final Map<String, AttributeValue> staticPartitionValues;
+    private final ConcurrentMap<String, Map<String, AttributeValue>> keys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<String, AttributeValue>> windowKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<String, AttributeValue>> bulkheadKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<String, AttributeValue>> rateLimiterKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<String, AttributeValue>> concurrencyLimitKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, List<Map<String, AttributeValue>>> shardKeys = new ConcurrentHashMap<>();
+
+    DynamoDBRequestFactory(
+            String tableName,
+            String keyAttr,
+            String staticPkValue,
+            String sortKeyAttr,
+            String expiryAttr,
+            String statusAttr,
+            String causeAttr) {
+        this(tableName, keyAttr, staticPkValue, sortKeyAttr, expiryAttr, statusAttr, causeAttr, DEFAULT_CLOSED_ATTR, 1);
+    }
+
+    DynamoDBRequestFactory(
+            String tableName,
+            String keyAttr,
+            String staticPkValue,
+            String sortKeyAttr,
+            String expiryAttr,
+            String statusAttr,
+            String causeAttr,
+            String closedAttr,
+            int shards) {
+        this.closedAttr = closedAttr;
+        this.shards = shards;
+        this.tableName = tableName;
+        this.keyAttr = keyAttr;
+        this.staticPkValue = staticPkValue;
+        this.sortKeyAttr = sortKeyAttr;
+        this.expiryAttr = expiryAttr;
+        this.statusAttr = statusAttr;
+        this.causeAttr = causeAttr;
+        this.staticPkAttributeValue = AttributeValue.fromS(staticPkValue);
+        this.conditionalWriteNames = Map.of(
+                "#id", keyAttr,
+                "#expiry", expiryAttr,
+                "#status", statusAttr
+        );
+        this.updateRecordNames = Map.of(
+                "#expiry", expiryAttr,
+                "#status", statusAttr,
+                "#closed", closedAttr,
+                "#cause", causeAttr
+        );
+        this.probeRecordNames = Map.of(
+                "#expiry", expiryAttr,
+                "#status", statusAttr
+        );
+        this.staticPartitionNames = Map.of("#pk", keyAttr);
+        this.staticPartitionValues = Map.of(":pk", staticPkAttributeValue);
+    }
+
+    String tableName() {
+        return tableName;
+    }
+
+    String staticPkValue() {
+        return staticPkValue;
+    }
+
+    String sortKeyAttr() {
+        return sortKeyAttr;
+    }
+
+    String statusAttr() {
+        return statusAttr;
+    }
+
+    int shards() {
+        return shards;
+    }
+
+    boolean isSharded() {
+        return shards > 1;
+    }
+
+    /**
+     * The record is only created if there is no record for the circuit breaker, if the existing record is expired,
+     * or if the existing record is half-open.
+     */
+    PutItemRequest createRecordRequest(CircuitBreakerStatusRecord statusRecord, Instant now) {
+        return PutItemRequest.builder()
+                .tableName(tableName)
+                .item(recordToItem(statusRecord))
+                .conditionExpression(CREATE_RECORD_CONDITION)
+                .expressionAttributeNames(conditionalWriteNames)
+                .expressionAttributeValues(createRecordValues(now))
+                .build();
+    }
+
+    /**
+     * Create the record on all shards in one transaction. Each shard has the condition of
+     * {@link #createRecordRequest(CircuitBreakerStatusRecord, Instant)}, so the transaction is canceled if any
+     * shard holds an unexpired open record.
+     */
+    TransactWriteItemsRequest createShardedRecordRequest(CircuitBreakerStatusRecord statusRecord, Instant now) {
+        var values = createRecordValues(now);
+        var items = new ArrayList<TransactWriteItem>(shards);
+        for (var shard = 0; shard < shards; shard++) {
+            items.add(TransactWriteItem.builder()
+                    .put(Put.builder()
+                            .tableName(tableName)
+                            .item(recordToItem(statusRecord, createKey(statusRecord.circuitBreakerId(), shard)))
+                            .conditionExpression(CREATE_RECORD_CONDITION)
+                            .expressionAttributeNames(conditionalWriteNames)
+                            .expressionAttributeValues(values)
+                            .build())
+                    .build());
+        }
+        return TransactWriteItemsRequest.builder()
+                .transactItems(items)
+                .build();
+    }
+
+    private static Map<String, AttributeValue> createRecordValues(Instant now) {
+        return Map.of(
+                ":now", AttributeValue.fromN(String.valueOf(now.getEpochSecond())),
+                ":halfOpen", HALF_OPEN_VALUE,
+                ":closed", CLOSED_VALUE
+        );
+    }
+
+    /**
+     * The record is only replaced if it is still the half-open record of the probe.
+     */
+    UpdateItemRequest updateRecordRequest(CircuitBreakerStatusRecord statusRecord, CircuitBreakerStatusRecord probeRecord) {
+        return UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(createKey(statusRecord.circuitBreakerId()))
+                .updateExpression(updateRecordExpression(statusRecord))
+                .conditionExpression(PROBE_RECORD_CONDITION)
+                .expressionAttributeNames(updateRecordNames)
+                .expressionAttributeValues(withProbeRecordValues(updateRecordValues(statusRecord), probeRecord))
+                .build();
+    }
+
+    /**
+     * Update the record on all shards in one transaction. The probe lease is held on shard 0, so only shard 0 has
+     * the condition of {@link #updateRecordRequest(CircuitBreakerStatusRecord, CircuitBreakerStatusRecord)}.
+     */
+    TransactWriteItemsRequest updateShardedRecordRequest(CircuitBreakerStatusRecord statusRecord, CircuitBreakerStatusRecord probeRecord) {
+        var values = updateRecordValues(statusRecord);
+        var conditionalValues = withProbeRecordValues(values, probeRecord);
+        var items = new ArrayList<TransactWriteItem>(shards);
+        for (var shard = 0; shard < shards; shard++) {
+            items.add(TransactWriteItem.builder()
+                    .update(Update.builder()
+                            .tableName(tableName)
+                            .key(createKey(statusRecord.circuitBreakerId(), shard))
+                            .updateExpression(updateRecordExpression(statusRecord))
+                            .conditionExpression(shard == 0 ? PROBE_RECORD_CONDITION : null)
+                            .expressionAttributeNames(updateRecordNames)
+                            .expressionAttributeValues(shard == 0 ? conditionalValues : values)
+                            .build())
+                    .build());
+        }
+        return TransactWriteItemsRequest.builder()
+                .transactItems(items)
+                .build();
+    }
+
+    private static String updateRecordExpression(CircuitBreakerStatusRecord statusRecord) {
+        return statusRecord.cause() != null ? UPDATE_RECORD_EXPRESSION : UPDATE_RECORD_WITHOUT_CAUSE_EXPRESSION;
+    }
+
+    private static Map<String, AttributeValue> updateRecordValues(CircuitBreakerStatusRecord statusRecord) {
+        var expiry = AttributeValue.fromN(String.valueOf(statusRecord.expiryTimestamp()));
+        var closed = AttributeValue.fromN(String.valueOf(statusRecord.closedTimestamp()));
+        if (statusRecord.cause() == null) {
+            return Map.of(
+                    ":expiry", expiry,
+                    ":status", statusValue(statusRecord.status()),
+                    ":closed", closed
+            );
+        }
+        return Map.of(
+                ":expiry", expiry,
+                ":status", statusValue(statusRecord.status()),
+                ":closed", closed,
+                ":cause", AttributeValue.fromS(statusRecord.cause())
+        );
+    }
+
+    private static Map<String, AttributeValue> probeRecordValues(CircuitBreakerStatusRecord probeRecord) {
+        return Map.of(
+                ":halfOpen", HALF_OPEN_VALUE,
+                ":probeExpiry", AttributeValue.fromN(String.valueOf(probeRecord.expiryTimestamp()))
+        );
+    }
+
+    private static Map<String, AttributeValue> withProbeRecordValues(Map<String, AttributeValue> values, CircuitBreakerStatusRecord probeRecord) {
+        var conditionalValues = new HashMap<>(values);
+        conditionalValues.putAll(probeRecordValues(probeRecord));
+        return conditionalValues;
+    }
+
+    /**
+     * The lease is only granted if the existing open or half-open record is expired.
+     */
+    UpdateItemRequest acquireProbeLeaseRequest(CircuitBreakerStatusRecord probeRecord, Instant now) {
+        return UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(createKey(probeRecord.circuitBreakerId()))
+                .updateExpression(PROBE_LEASE_UPDATE_EXPRESSION)
+                .conditionExpression(PROBE_LEASE_CONDITION)
+                .expressionAttributeNames(conditionalWriteNames)
+                .expressionAttributeValues(probeLeaseValues(probeRecord, now))
+                .build();
+    }
+
+    /**
+     * Write the lease to all shards in one transaction. Only shard 0 has the condition of
+     * {@link #acquireProbeLeaseRequest(CircuitBreakerStatusRecord, Instant)}, so there is a single lease across all
+     * shards, and the readers of every shard see the half-open record while the lease is held.
+     */
+    TransactWriteItemsRequest acquireShardedProbeLeaseRequest(CircuitBreakerStatusRecord probeRecord, Instant now) {
+        var conditionalValues = probeLeaseValues(probeRecord, now);
+        var values = Map.of(
+                ":expiry", conditionalValues.get(":expiry"),
+                ":halfOpen", HALF_OPEN_VALUE
+        );
+        var items = new ArrayList<TransactWriteItem>(shards);
+        for (var shard = 0; shard < shards; shard++) {
+            items.add(TransactWriteItem.builder()
+                    .update(Update.builder()
+                            .tableName(tableName)
+                            .key(createKey(probeRecord.circuitBreakerId(), shard))
+                            .updateExpression(PROBE_LEASE_UPDATE_EXPRESSION)
+                            .conditionExpression(shard == 0 ? PROBE_LEASE_CONDITION : null)
+                            .expressionAttributeNames(shard == 0 ? conditionalWriteNames : probeRecordNames)
+                            .expressionAttributeValues(shard == 0 ? conditionalValues : values)
+                            .build())
+                    .build());
+        }
+        return TransactWriteItemsRequest.builder()
+                .transactItems(items)
+                .build();
+    }
+
+    private static Map<String, AttributeValue> probeLeaseValues(CircuitBreakerStatusRecord probeRecord, Instant now) {
+        return Map.of(
+                ":now", AttributeValue.fromN(String.valueOf(now.getEpochSecond())),
+                ":expiry", AttributeValue.fromN(String.valueOf(probeRecord.expiryTimestamp())),
+                ":open", OPEN_VALUE,
+                ":halfOpen", HALF_OPEN_VALUE
+        );
+    }
+
+    /**
+     * The buckets of a time based sliding window are stored as counter attributes of a separate item
+     * (key {@code <circuitBreakerId>#window}) and are incremented with an atomic {@code ADD}.
+     * All pending buckets of a circuit breaker are written with a single update.
+     *
+     * @param staleAttributes bucket attributes that have left the window and are removed with this update,
+     *                        may be {@code null}
+     */
+    UpdateItemRequest addToSlidingWindowRequest(String circuitBreakerId, Map<Long, CallStatistics> deltas, long currentBucket,
+                                                int windowSizeInSeconds, Set<String> staleAttributes) {
+        var expressionAttributeNames = new HashMap<String, String>();
+        var expressionAttributeValues = new HashMap<String, AttributeValue>();
+        var updateExpression = new StringBuilder("ADD ");
+        var index = 0;
+        for (var delta : deltas.entrySet()) {
+            updateExpression.append(index == 0 ? "" : ", ")
+                    .append("#calls").append(index).append(" :calls").append(index)
+                    .append(", #failures").append(index).append(" :failures").append(index);
+            expressionAttributeNames.put("#calls" + index, WINDOW_CALLS_ATTR_PREFIX + delta.getKey());
+            expressionAttributeNames.put("#failures" + index, WINDOW_FAILURES_ATTR_PREFIX + delta.getKey());
+            expressionAttributeValues.put(":calls" + index, AttributeValue.fromN(String.valueOf(delta.getValue().calls())));
+            expressionAttributeValues.put(":failures" + index, AttributeValue.fromN(String.valueOf(delta.getValue().failures())));
+            if (delta.getValue().slowCalls() > 0) {
+                // Only written for buckets with slow calls to keep the items of windows without slow calls small
+                updateExpression.append(", #slow").append(index).append(" :slow").append(index);
+                expressionAttributeNames.put("#slow" + index, WINDOW_SLOW_CALLS_ATTR_PREFIX + delta.getKey());
+                expressionAttributeValues.put(":slow" + index, AttributeValue.fromN(String.valueOf(delta.getValue().slowCalls())));
+            }
+            index++;
+        }
+        updateExpression.append(" SET #expiry = :expiry");
+        expressionAttributeNames.put("#expiry", this.expiryAttr);
+        expressionAttributeValues.put(":expiry", AttributeValue.fromN(String.valueOf(currentBucket + windowSizeInSeconds)));
+
+        if (staleAttributes != null && !staleAttributes.isEmpty()) {
+            var staleIndex = 0;
+            for (var staleAttribute : staleAttributes) {
+                if (expressionAttributeNames.containsValue(staleAttribute)) {
+                    // The same attribute must not be added to and removed in one update
+                    continue;
+                }
+                var placeholder = "#stale" + staleIndex;
+                updateExpression.append(staleIndex == 0 ? " REMOVE " : ", ").append(placeholder);
+                expressionAttributeNames.put(placeholder, staleAttribute);
+                staleIndex++;
+            }
+        }
+
+        return UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(createWindowKey(circuitBreakerId))
+                .updateExpression(updateExpression.toString())
+                .expressionAttributeNames(expressionAttributeNames)
+                .expressionAttributeValues(expressionAttributeValues)
+                .returnValues(ReturnValue.ALL_NEW)
+                .build();
+    }
+
+    /**
+     * The leases of a bulkhead are stored as attributes of a separate item (key {@code <bulkheadId>#bulkhead})
+     * next to a counter of the leases, which is incremented only while it is below the maximum.
+     * The expiry of the item is moved with every lease, so that the item of an idle bulkhead is removed by TTL.
+     * <p>
+     * If the condition fails, the item is returned with the exception to find leases that have expired.
+     */
+    UpdateItemRequest acquireBulkheadLeaseRequest(String bulkheadId, String leaseId, int maxConcurrent, Instant leaseExpiry) {
+        return UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(createBulkheadKey(bulkheadId))
+                .updateExpression(ACQUIRE_BULKHEAD_LEASE_EXPRESSION)
+                .conditionExpression(ACQUIRE_BULKHEAD_LEASE_CONDITION)
+                .expressionAttributeNames(Map.of(
+                        "#inFlight", BULKHEAD_IN_FLIGHT_ATTR,
+                        "#lease", BULKHEAD_LEASE_ATTR_PREFIX + leaseId,
+                        "#expiry", this.expiryAttr
+                ))
+                .expressionAttributeValues(Map.of(
+                        ":one", ONE_VALUE,
+                        ":max", AttributeValue.fromN(String.valueOf(maxConcurrent)),
+                        ":leaseExpiry", AttributeValue.fromN(String.valueOf(leaseExpiry.getEpochSecond()))
+                ))
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                .build();
+    }
+
+    /**
+     * The counter is only decremented if the lease still exists, so that a lease that has already been removed
+     * as expired is not subtracted twice.
+     */
+    UpdateItemRequest releaseBulkheadLeaseRequest(String bulkheadId, String leaseId) {
+        return UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(createBulkheadKey(bulkheadId))
+                .updateExpression(RELEASE_BULKHEAD_LEASE_EXPRESSION)
+                .conditionExpression(RELEASE_BULKHEAD_LEASE_CONDITION)
+                .expressionAttributeNames(Map.of(
+                        "#inFlight", BULKHEAD_IN_FLIGHT_ATTR,
+                        "#lease", BULKHEAD_LEASE_ATTR_PREFIX + leaseId
+                ))
+                .expressionAttributeValues(Map.of(":released", MINUS_ONE_VALUE))
+                .build();
+    }
+
+    /**
+     * Remove expired leases and subtract them from the counter. The update fails if any of the leases has been
+     * released or removed by another caller in the meantime.
+     *
+     * @param leaseAttributes the attributes of the expired leases
+     */
+    UpdateItemRequest releaseExpiredBulkheadLeasesRequest(String bulkheadId, Set<String> leaseAttributes) {
+        var expressionAttributeNames = new HashMap<String, String>();
+        var removeExpression = new StringBuilder();
+        var condition = new StringBuilder();
+        var index = 0;
+        for (var leaseAttribute : leaseAttributes) {
+            var placeholder = "#lease" + index;
+            expressionAttributeNames.put(placeholder, leaseAttribute);
+            removeExpression.append(index == 0 ? "" : ", ").append(placeholder);
+            condition.append(index == 0 ? "" : " AND ").append("attribute_exists(").append(placeholder).append(")");
+            index++;
+        }
+        expressionAttributeNames.put("#inFlight", BULKHEAD_IN_FLIGHT_ATTR);
+        return UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(createBulkheadKey(bulkheadId))
+                .updateExpression("ADD #inFlight :released REMOVE " + removeExpression)
+                .conditionExpression(condition.toString())
+                .expressionAttributeNames(expressionAttributeNames)
+                .expressionAttributeValues(Map.of(":released", AttributeValue.fromN(String.valueOf(-leaseAttributes.size()))))
+                .build();
+    }
+
+    GetItemRequest getBulkheadRequest(String bulkheadId) {
+        return GetItemRequest.builder()
+                .tableName(tableName)
+                .key(createBulkheadKey(bulkheadId))
+                .consistentRead(true)
+                .build();
+    }
+
+    /**
+     * @param item           the item of a bulkhead
+     * @param nowEpochSecond current time
+     * @return the attributes of the leases in the item that have expired
+     */
+    static Set<String> expiredBulkheadLeases(Map<String, AttributeValue> item, long nowEpochSecond) {
+        var expiredLeases = new HashSet<String>();
+        for (var attribute : item.entrySet()) {
+            if (attribute.getKey().startsWith(BULKHEAD_LEASE_ATTR_PREFIX)
+                    && Long.parseLong(attribute.getValue().n()) < nowEpochSecond) {
+                expiredLeases.add(attribute.getKey());
+            }
+        }
+        return expiredLeases;
+    }
+
+    /**
+     * The token bucket of a rate limiter is stored in a separate item (key {@code <rateLimiterId>#ratelimit}).
+     * The refilled bucket is computed from the last known state of the item and written with a compare-and-set:
+     * the update only succeeds if the item has not been changed since. If the condition fails, the current item is
+     * returned with the exception.
+     *
+     * @param expected the attributes of the bucket that have been read last, {@code null} if the item does not exist
+     * @param updated  the attributes of the bucket to write, see {@link #tokenBucketAttributes(TokenBucket)}
+     * @param expiry   the time at which a missing item is equivalent to this bucket (seconds since epoch)
+     */
+    UpdateItemRequest takeTokensRequest(String rateLimiterId, Map<String, AttributeValue> expected, Map<String, AttributeValue> updated, long expiry) {
+        var expressionAttributeValues = new HashMap<String, AttributeValue>();
+        expressionAttributeValues.put(":tokens", updated.get(RATE_LIMITER_TOKENS_ATTR));
+        expressionAttributeValues.put(":refilled", updated.get(RATE_LIMITER_REFILLED_ATTR));
+        expressionAttributeValues.put(":expiry", AttributeValue.fromN(String.valueOf(expiry)));
+        if (expected != null) {
+            // The exact attribute values are compared, a number that has been parsed might not format the same way
+            expressionAttributeValues.put(":expectedTokens", expected.get(RATE_LIMITER_TOKENS_ATTR));
+            expressionAttributeValues.put(":expectedRefilled", expected.get(RATE_LIMITER_REFILLED_ATTR));
+        }
+        return UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(createRateLimiterKey(rateLimiterId))
+                .updateExpression(TAKE_TOKENS_EXPRESSION)
+                .conditionExpression(expected == null ? TAKE_TOKENS_FROM_NEW_BUCKET_CONDITION : TAKE_TOKENS_CONDITION)
+                .expressionAttributeNames(Map.of(
+                        "#tokens", RATE_LIMITER_TOKENS_ATTR,
+                        "#refilled", RATE_LIMITER_REFILLED_ATTR,
+                        "#expiry", this.expiryAttr
+                ))
+                .expressionAttributeValues(expressionAttributeValues)
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                .build();
+    }
+
+    GetItemRequest getRateLimiterRequest(String rateLimiterId) {
+        return GetItemRequest.builder()
+                .tableName(tableName)
+                .key(createRateLimiterKey(rateLimiterId))
+                .consistentRead(true)
+                .build();
+    }
+
+    /**
+     * @param bucket the token bucket
+     * @return the attributes of the token bucket, tokens are kept with a precision of a thousandth
+     */
+    static Map<String, AttributeValue> tokenBucketAttributes(TokenBucket bucket) {
+        return Map.of(
+                RATE_LIMITER_TOKENS_ATTR, AttributeValue.fromN(BigDecimal.valueOf(bucket.tokens()).setScale(3, RoundingMode.DOWN).toPlainString()),
+                RATE_LIMITER_REFILLED_ATTR, AttributeValue.fromN(String.valueOf(bucket.refilledAtMillis()))
+        );
+    }
+
+    /**
+     * @param item the item of a rate limiter
+     * @return the token bucket or {@code null} if the item does not contain a bucket
+     */
+    static TokenBucket itemToTokenBucket(Map<String, AttributeValue> item) {
+        var tokens = item.get(RATE_LIMITER_TOKENS_ATTR);
+        var refilled = item.get(RATE_LIMITER_REFILLED_ATTR);
+        if (tokens == null || refilled == null) {
+            return null;
+        }
+        return new TokenBucket(Double.parseDouble(tokens.n()), Long.parseLong(refilled.n()));
+    }
+
+    /**
+     * The concurrency limit of a circuit breaker is stored in a separate item (key {@code <circuitBreakerId>#limit}).
+     * The changes of a container are added to the last known limit, which is bounded and written with a
+     * compare-and-set: the update only succeeds if the limit has not been changed since. If the condition fails,
+     * the current item is returned with the exception.
+     *
+     * @param expected the attributes of the limit that have been read last, {@code null} if the item does not exist
+     * @param updated  the attributes of the limit to write, see {@link #concurrencyLimitAttributes(double)}
+     * @param expiry   the time at which the limit of an idle circuit breaker is removed (seconds since epoch)
+     */
+    UpdateItemRequest setConcurrencyLimitRequest(String circuitBreakerId, Map<String, AttributeValue> expected, Map<String, AttributeValue> updated, long expiry) {
+        var expressionAttributeValues = new HashMap<String, AttributeValue>();
+        expressionAttributeValues.put(":limit", updated.get(CONCURRENCY_LIMIT_ATTR));
+        expressionAttributeValues.put(":expiry", AttributeValue.fromN(String.valueOf(expiry)));
+        if (expected != null) {
+            expressionAttributeValues.put(":expectedLimit", expected.get(CONCURRENCY_LIMIT_ATTR));
+        }
+        return UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(createConcurrencyLimitKey(circuitBreakerId))
+                .updateExpression(SET_CONCURRENCY_LIMIT_EXPRESSION)
+                .conditionExpression(expected == null ? SET_NEW_CONCURRENCY_LIMIT_CONDITION : SET_CONCURRENCY_LIMIT_CONDITION)
+                .expressionAttributeNames(Map.of(
+                        "#limit", CONCURRENCY_LIMIT_ATTR,
+                        "#expiry", this.expiryAttr
+                ))
+                .expressionAttributeValues(expressionAttributeValues)
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                .build();
+    }
+
+    GetItemRequest getConcurrencyLimitRequest(String circuitBreakerId) {
+        return GetItemRequest.builder()
+                .tableName(tableName)
+                .key(createConcurrencyLimitKey(circuitBreakerId))
+                .consistentRead(true)
+                .build();
+    }
+
+    /**
+     * @param limit the concurrency limit
+     * @return the attributes of the concurrency limit
+     */
+    static Map<String, AttributeValue> concurrencyLimitAttributes(double limit) {
+        return Map.of(CONCURRENCY_LIMIT_ATTR, decimalValue(limit));
+    }
+
+    /**
+     * @param item the item of a concurrency limit
+     * @return the concurrency limit or {@code null} if the item does not contain a limit
+     */
+    static Double itemToConcurrencyLimit(Map<String, AttributeValue> item) {
+        var limit = item.get(CONCURRENCY_LIMIT_ATTR);
+        return limit != null ? Double.valueOf(limit.n()) : null;
+    }
+
+    /**
+     * @return a number attribute with a precision of a thousandth
+     */
+    private static AttributeValue decimalValue(double value) {
+        return AttributeValue.fromN(BigDecimal.valueOf(value).setScale(3, RoundingMode.HALF_EVEN).toPlainString());
+    }
+
+    /**
+     * The record is only deleted if it is still the half-open record of the probe.
+     */
+    DeleteItemRequest deleteRecordRequest(CircuitBreakerStatusRecord probeRecord) {
+        return DeleteItemRequest.builder()
+                .tableName(tableName)
+                .key(createKey(probeRecord.circuitBreakerId()))
+                .conditionExpression(PROBE_RECORD_CONDITION)
+                .expressionAttributeNames(probeRecordNames)
+                .expressionAttributeValues(probeRecordValues(probeRecord))
+                .build();
+    }
+
+    /**
+     * Delete the record on all shards in one transaction. The probe lease is held on shard 0, so only shard 0 has
+     * the condition of {@link #deleteRecordRequest(CircuitBreakerStatusRecord)}.
+     */
+    TransactWriteItemsRequest deleteShardedRecordRequest(CircuitBreakerStatusRecord probeRecord) {
+        var items = new ArrayList<TransactWriteItem>(shards);
+        for (var shard = 0; shard < shards; shard++) {
+            var delete = Delete.builder()
+                    .tableName(tableName)
+                    .key(createKey(probeRecord.circuitBreakerId(), shard));
+            if (shard == 0) {
+                delete.conditionExpression(PROBE_RECORD_CONDITION)
+                        .expressionAttributeNames(probeRecordNames)
+                        .expressionAttributeValues(probeRecordValues(probeRecord));
+            }
+            items.add(TransactWriteItem.builder()
+                    .delete(delete.build())
+                    .build());
+        }
+        return TransactWriteItemsRequest.builder()
+                .transactItems(items)
+                .build();
+    }
+
+    GetItemRequest getRecordRequest(String circuitBreakerId, boolean consistentRead) {
+        return GetItemRequest.builder()
+                .tableName(tableName)
+                .key(createKey(circuitBreakerId))
+                .consistentRead(consistentRead)
+                .build();
+    }
+
+    /**
+     * @param shard the shard to read, ignored without shards
+     */
+    GetItemRequest getRecordRequest(String circuitBreakerId, int shard, boolean consistentRead) {
+        return GetItemRequest.builder()
+                .tableName(tableName)
+                .key(createKey(circuitBreakerId, shard))
+                .consistentRead(consistentRead)
+                .build();
+    }
+
+    /**
+     * Query all items below the static partition key (only with a sort key).
+     */
+    QueryRequest queryStaticPartitionRequest(Map<String, AttributeValue> exclusiveStartKey, boolean consistentRead) {
+        return QueryRequest.builder()
+                .tableName(tableName)
+                .keyConditionExpression(STATIC_PARTITION_KEY_CONDITION)
+                .expressionAttributeNames(staticPartitionNames)
+                .expressionAttributeValues(staticPartitionValues)
+                .consistentRead(consistentRead)
+                .exclusiveStartKey(exclusiveStartKey)
+                .build();
+    }
+
+    /**
+     * Build and map the requests and items of a circuit breaker that is never used, so that the model classes
+     * are loaded and initialized.
+     */
+    void primeMapping() {
+        var primingRecord = new CircuitBreakerStatusRecord(PRIMING_CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, 0, "priming");
+        if (isSharded()) {
+            createShardedRecordRequest(primingRecord, Instant.EPOCH);
+            acquireShardedProbeLeaseRequest(primingRecord, Instant.EPOCH);
+            deleteShardedRecordRequest(primingRecord);
+        } else {
+            createRecordRequest(primingRecord, Instant.EPOCH);
+            acquireProbeLeaseRequest(primingRecord, Instant.EPOCH);
+            deleteRecordRequest(primingRecord);
+        }
+        itemToRecord(recordToItem(primingRecord));
+    }
+
+    /**
+     * Get the key to use for requests (depending on if we have a sort key or not).
+     * The keys are immutable and cached per circuit breaker.
+     *
+     * @param circuitBreakerKey circuit breaker key
+     * @return AttributeValue map containing the key
+     */
+    Map<String, AttributeValue> createKey(String circuitBreakerKey) {
+        var key = keys.get(circuitBreakerKey);
+        if (key == null) {
+            key = buildKey(circuitBreakerKey);
+            cacheKey(keys, circuitBreakerKey, key);
+        }
+        return key;
+    }
+
+    /**
+     * Get the key of a shard of the status record. Without shards this is the key of the circuit breaker.
+     *
+     * @param circuitBreakerId circuit breaker id
+     * @param shard            the shard
+     * @return AttributeValue map containing the key
+     */
+    Map<String, AttributeValue> createKey(String circuitBreakerId, int shard) {
+        if (shards == 1) {
+            return createKey(circuitBreakerId);
+        }
+        var keysOfShards = shardKeys.get(circuitBreakerId);
+        if (keysOfShards == null) {
+            var built = new ArrayList<Map<String, AttributeValue>>(shards);
+            for (var i = 0; i < shards; i++) {
+                built.add(buildKey(circuitBreakerId + SHARD_KEY_SEPARATOR + i));
+            }
+            keysOfShards = List.copyOf(built);
+            cacheKey(shardKeys, circuitBreakerId, keysOfShards);
+        }
+        return keysOfShards.get(shard);
+    }
+
+    private Map<String, AttributeValue> createWindowKey(String circuitBreakerId) {
+        var key = windowKeys.get(circuitBreakerId);
+        if (key == null) {
+            key = buildKey(circuitBreakerId + WINDOW_KEY_SUFFIX);
+            cacheKey(windowKeys, circuitBreakerId, key);
+        }
+        return key;
+    }
+
+    private Map<String, AttributeValue> createBulkheadKey(String bulkheadId) {
+        var key = bulkheadKeys.get(bulkheadId);
+        if (key == null) {
+            key = buildKey(bulkheadId + BULKHEAD_KEY_SUFFIX);
+            cacheKey(bulkheadKeys, bulkheadId, key);
+        }
+        return key;
+    }
+
+    private Map<String, AttributeValue> createRateLimiterKey(String rateLimiterId) {
+        var key = rateLimiterKeys.get(rateLimiterId);
+        if (key == null) {
+            key = buildKey(rateLimiterId + RATE_LIMITER_KEY_SUFFIX);
+            cacheKey(rateLimiterKeys, rateLimiterId, key);
+        }
+        return key;
+    }
+
+    private Map<String, AttributeValue> createConcurrencyLimitKey(String circuitBreakerId) {
+        var key = concurrencyLimitKeys.get(circuitBreakerId);
+        if (key == null) {
+            key = buildKey(circuitBreakerId + CONCURRENCY_LIMIT_KEY_SUFFIX);
+            cacheKey(concurrencyLimitKeys, circuitBreakerId, key);
+        }
+        return key;
+    }
+
+    private Map<String, AttributeValue> buildKey(String circuitBreakerKey) {
+        if (this.sortKeyAttr != null) {
+            return Map.of(
+                    this.keyAttr, staticPkAttributeValue,
+                    this.sortKeyAttr, AttributeValue.fromS(circuitBreakerKey)
+            );
+        }
+        return Map.of(this.keyAttr, AttributeValue.fromS(circuitBreakerKey));
+    }
+
+    private static <K> void cacheKey(ConcurrentMap<String, K> cache, String circuitBreakerKey, K key) {
+        // The number of circuit breakers is expected to be small, unbounded ids are not cached
+        if (cache.size() < MAX_CACHED_KEYS) {
+            cache.putIfAbsent(circuitBreakerKey, key);
+        }
+    }
+
+    /**
+     * @param item an item of the table
+     * @return {@code true} if the item is a status record and not e.g. a sliding window
+     */
+    boolean isStatusRecord(Map<String, AttributeValue> item) {
+        return item.containsKey(this.statusAttr);
+    }
+
+    /**
+     * Translate a record to the item to be written to DynamoDB
+     *
+     * @param statusRecord the record
+     * @return the item including the key
+     */
+    Map<String, AttributeValue> recordToItem(CircuitBreakerStatusRecord statusRecord) {
+        return recordToItem(statusRecord, createKey(statusRecord.circuitBreakerId()));
+    }
+
+    private Map<String, AttributeValue> recordToItem(CircuitBreakerStatusRecord statusRecord, Map<String, AttributeValue> key) {
+        var item = new HashMap<>(key);
+        item.put(this.expiryAttr, AttributeValue.fromN(String.valueOf(statusRecord.expiryTimestamp())));
+        item.put(this.statusAttr, statusValue(statusRecord.status()));
+        if (statusRecord.cause() != null) {
+            item.put(this.causeAttr, AttributeValue.fromS(statusRecord.cause()));
+        }
+        if (statusRecord.closedTimestamp() != 0) {
+            item.put(this.closedAttr, AttributeValue.fromN(String.valueOf(statusRecord.closedTimestamp())));
+        }
+        return item;
+    }
+
+    private static AttributeValue statusValue(PersistenceStore.Status status) {
+        switch (status) {
+            case OPEN:
+                return OPEN_VALUE;
+            case HALF_OPEN:
+                return HALF_OPEN_VALUE;
+            default:
+                return CLOSED_VALUE;
+        }
+    }
+
+    /**
+     * Translate raw item records from DynamoDB to DataRecord. The shard suffix is removed from the id of a sharded
+     * record.
+     *
+     * @param item Item from dynamodb response
+     * @return DataRecord instance
+     */
+    CircuitBreakerStatusRecord itemToRecord(Map<String, AttributeValue> item) {
+        var circuitBreakerId = item.get(sortKeyAttr != null ? sortKeyAttr : keyAttr).s();
+        if (circuitBreakerId == null) {
+            return null;
+        }
+        if (shards > 1) {
+            var separator = circuitBreakerId.lastIndexOf(SHARD_KEY_SEPARATOR);
+            if (separator >= 0) {
+                circuitBreakerId = circuitBreakerId.substring(0, separator);
+            }
+        }
+        return new CircuitBreakerStatusRecord(
+                circuitBreakerId,
+                PersistenceStore.Status.fromString(item.get(this.statusAttr).s()),
+                Long.parseLong(item.get(this.expiryAttr).n()),
+                item.get(this.causeAttr) != null ? item.get(this.causeAttr).s() : null,
+                item.get(this.closedAttr) != null ? Long.parseLong(item.get(this.closedAttr).n()) : 0L
+        );
+    }
+
+    /**
+     * Sum up the buckets of a sliding window item that are still within the window.
+     *
+     * @param item            the sliding window item
+     * @param oldestBucket    the last bucket that is no longer part of the window
+     * @param staleAttributes receives the attributes of the buckets that have left the window
+     * @return the statistics of the sliding window
+     */
+    CallStatistics windowItemToStatistics(Map<String, AttributeValue> item, long oldestBucket, Set<String> staleAttributes) {
+        long calls = 0;
+        long failures = 0;
+        long slowCalls = 0;
+        for (var attribute : item.entrySet()) {
+            var name = attribute.getKey();
+            String prefix;
+            if (name.startsWith(WINDOW_CALLS_ATTR_PREFIX)) {
+                prefix = WINDOW_CALLS_ATTR_PREFIX;
+            } else if (name.startsWith(WINDOW_FAILURES_ATTR_PREFIX)) {
+                prefix = WINDOW_FAILURES_ATTR_PREFIX;
+            } else if (name.startsWith(WINDOW_SLOW_CALLS_ATTR_PREFIX)) {
+                prefix = WINDOW_SLOW_CALLS_ATTR_PREFIX;
+            } else {
+                continue;
+            }
+            var bucket = Long.parseLong(name.substring(prefix.length()));
+            var value = Long.parseLong(attribute.getValue().n());
+            if (bucket <= oldestBucket) {
+                staleAttributes.add(name);
+            } else if (prefix.equals(WINDOW_CALLS_ATTR_PREFIX)) {
+                calls += value;
+            } else if (prefix.equals(WINDOW_FAILURES_ATTR_PREFIX)) {
+                failures += value;
+            } else {
+                slowCalls += value;
+            }
+        }
+        return new CallStatistics(calls, failures, slowCalls);
+    }
+}
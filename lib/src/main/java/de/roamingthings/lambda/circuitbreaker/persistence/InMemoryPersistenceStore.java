@@ -0,0 +1,260 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.AdaptiveConcurrency;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PersistenceStore} that keeps the circuit breaker records in memory of the current process.
+ * <p>
+ * The state is not shared between Lambda containers, so this store is meant for tests, local runs,
+ * single process deployments and as a baseline without I/O for benchmarks.
+ * <p>
+ * Records are immutable and replaced with compare-and-set operations, which gives the conditional writes the same
+ * semantics as the ones of {@link DynamoDBPersistenceStore} without locking. Expired records are kept for a
+ * retention period, like DynamoDB deletes expired items with a delay, and are swept lazily.
+ */
+public class InMemoryPersistenceStore extends PersistenceStoreBase implements ConcurrencyLimitStore, RateLimiterStore {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryPersistenceStore.class);
+
+    private final long retentionInSeconds;
+    private final ConcurrentMap<String, CircuitBreakerStatusRecord> records = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SlidingWindowBuckets> slidingWindows = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<String, Long>> bulkheadLeases = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TokenBucket> tokenBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Double> concurrencyLimits = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepEpochSecond = new AtomicLong();
+
+    private InMemoryPersistenceStore(Duration retention) {
+        this.retentionInSeconds = retention.toSeconds();
+    }
+
+    /**
+     * The record is only created if there is no record for the circuit breaker, if the existing record is expired,
+     * or if the existing record is half-open or closed.
+     */
+    @Override
+    public void createRecord(CircuitBreakerStatusRecord statusRecord, Instant now) {
+        var circuitBreakerId = statusRecord.circuitBreakerId();
+        sweepIfDue(now.getEpochSecond());
+        while (true) {
+            var existing = records.get(circuitBreakerId);
+            if (existing == null) {
+                if (records.putIfAbsent(circuitBreakerId, statusRecord) == null) {
+                    return;
+                }
+            } else if (existing.expiryTimestamp() < now.getEpochSecond()
+                    || existing.status() == Status.HALF_OPEN
+                    || existing.status() == Status.CLOSED) {
+                if (records.replace(circuitBreakerId, existing, statusRecord)) {
+                    return;
+                }
+            } else {
+                log.debug("Failed to put record for already existing open circuit breaker key: {}", circuitBreakerId);
+                return;
+            }
+        }
+    }
+
+    @Override
+    boolean updateRecord(CircuitBreakerStatusRecord statusRecord, CircuitBreakerStatusRecord probeRecord) {
+        return records.replace(statusRecord.circuitBreakerId(), probeRecord, statusRecord);
+    }
+
+    @Override
+    Optional<CircuitBreakerStatusRecord> fetchRecord(String circuitBreakerId) {
+        var statusRecord = records.get(circuitBreakerId);
+        if (statusRecord != null && isPastRetention(statusRecord, Instant.now().getEpochSecond())) {
+            records.remove(circuitBreakerId, statusRecord);
+            return Optional.empty();
+        }
+        return Optional.ofNullable(statusRecord);
+    }
+
+    /**
+     * The lease is only granted if the existing open or half-open record is expired.
+     */
+    @Override
+    boolean acquireProbeLeaseRecord(CircuitBreakerStatusRecord probeRecord, Instant now) {
+        var circuitBreakerId = probeRecord.circuitBreakerId();
+        while (true) {
+            var existing = records.get(circuitBreakerId);
+            if (existing == null
+                    || existing.status() == Status.CLOSED
+                    || existing.expiryTimestamp() >= now.getEpochSecond()) {
+                log.debug("Probe lease for circuit breaker key is held by another caller: {}", circuitBreakerId);
+                return false;
+            }
+            if (records.replace(circuitBreakerId, existing, probeRecord)) {
+                log.debug("Acquired probe lease for circuit breaker key: {}", circuitBreakerId);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    CallStatistics addToSlidingWindow(String circuitBreakerId, Map<Long, CallStatistics> deltas, long currentBucket, int windowSizeInSeconds) {
+        var oldestBucket = currentBucket - windowSizeInSeconds;
+        var window = slidingWindows.compute(circuitBreakerId, (id, existing) -> {
+            var buckets = new HashMap<Long, CallStatistics>();
+            if (existing != null) {
+                existing.buckets().forEach((bucket, statistics) -> {
+                    if (bucket > oldestBucket) {
+                        buckets.put(bucket, statistics);
+                    }
+                });
+            }
+            deltas.forEach((bucket, delta) -> buckets.merge(bucket, delta, CallStatistics::plus));
+            return new SlidingWindowBuckets(Map.copyOf(buckets));
+        });
+        var statistics = CallStatistics.EMPTY;
+        for (var bucket : window.buckets().entrySet()) {
+            if (bucket.getKey() > oldestBucket) {
+                statistics = statistics.plus(bucket.getValue());
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Expired leases are removed before the leases are counted.
+     */
+    @Override
+    public boolean acquireBulkheadLease(String bulkheadId, String leaseId, int maxConcurrent, Instant leaseExpiry, Instant now) {
+        var granted = new boolean[1];
+        bulkheadLeases.compute(bulkheadId, (id, existing) -> {
+            var leases = new HashMap<String, Long>();
+            if (existing != null) {
+                existing.forEach((existingLeaseId, expiry) -> {
+                    if (expiry >= now.getEpochSecond()) {
+                        leases.put(existingLeaseId, expiry);
+                    }
+                });
+            }
+            if (leases.size() < maxConcurrent) {
+                leases.put(leaseId, leaseExpiry.getEpochSecond());
+                granted[0] = true;
+            }
+            return leases.isEmpty() ? null : Map.copyOf(leases);
+        });
+        return granted[0];
+    }
+
+    @Override
+    public void releaseBulkheadLease(String bulkheadId, String leaseId) {
+        bulkheadLeases.computeIfPresent(bulkheadId, (id, existing) -> {
+            if (!existing.containsKey(leaseId)) {
+                return existing;
+            }
+            var leases = new HashMap<>(existing);
+            leases.remove(leaseId);
+            return leases.isEmpty() ? null : Map.copyOf(leases);
+        });
+    }
+
+    @Override
+    public int acquirePermits(String rateLimiterId, double permitsPerSecond, int burst, int requested, Instant now) {
+        var nowMillis = now.toEpochMilli();
+        var permits = new int[1];
+        tokenBuckets.compute(rateLimiterId, (id, existing) -> {
+            var bucket = existing != null ? existing.refill(permitsPerSecond, burst, nowMillis) : TokenBucket.full(burst, nowMillis);
+            permits[0] = bucket.available(requested);
+            return bucket.take(permits[0]);
+        });
+        return permits[0];
+    }
+
+    @Override
+    public double addToConcurrencyLimit(String circuitBreakerId, double delta, AdaptiveConcurrency settings, Instant now) {
+        return concurrencyLimits.compute(circuitBreakerId, (id, existing) ->
+                settings.bound((existing != null ? existing : settings.getInitialLimit()) + delta));
+    }
+
+    @Override
+    boolean deleteRecord(CircuitBreakerStatusRecord probeRecord) {
+        return records.remove(probeRecord.circuitBreakerId(), probeRecord);
+    }
+
+    /**
+     * Remove all records, sliding windows, bulkhead leases, token buckets and concurrency limits.
+     */
+    public void clear() {
+        records.clear();
+        slidingWindows.clear();
+        bulkheadLeases.clear();
+        tokenBuckets.clear();
+        concurrencyLimits.clear();
+    }
+
+    private boolean isPastRetention(CircuitBreakerStatusRecord statusRecord, long nowEpochSecond) {
+        return statusRecord.expiryTimestamp() + retentionInSeconds < nowEpochSecond;
+    }
+
+    /**
+     * Remove the records that are past their retention. Only one caller sweeps, at most once per retention period.
+     */
+    private void sweepIfDue(long nowEpochSecond) {
+        var nextSweep = nextSweepEpochSecond.get();
+        if (nowEpochSecond < nextSweep || !nextSweepEpochSecond.compareAndSet(nextSweep, nowEpochSecond + Math.max(retentionInSeconds, 1))) {
+            return;
+        }
+        records.values().removeIf(statusRecord -> isPastRetention(statusRecord, nowEpochSecond));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Buckets of a time based sliding window (seconds since epoch), replaced as a whole on every update.
+     */
+    private record SlidingWindowBuckets(Map<Long, CallStatistics> buckets) {
+    }
+
+    /**
+     * Use this builder to get an instance of {@link InMemoryPersistenceStore}.<br/>
+     * Example:<br>
+     * <pre>
+     *     InMemoryPersistenceStore.builder().build();
+     * </pre>
+     */
+    public static class Builder {
+
+        private Duration retention = Duration.ofHours(1);
+
+        /**
+         * Initialize and return a new instance of {@link InMemoryPersistenceStore}.
+         *
+         * @return an instance of the {@link InMemoryPersistenceStore}
+         */
+        public InMemoryPersistenceStore build() {
+            if (retention.isNegative()) {
+                throw new IllegalArgumentException("Retention must not be negative");
+            }
+            return new InMemoryPersistenceStore(retention);
+        }
+
+        /**
+         * How long an expired record is kept (optional), by default 1 hour.
+         * Until the record is removed, an expired open circuit breaker is half-open and requires a successful probe
+         * to be closed.
+         *
+         * @param retention retention of expired records
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withRetention(Duration retention) {
+            this.retention = retention;
+            return this;
+        }
+    }
+}
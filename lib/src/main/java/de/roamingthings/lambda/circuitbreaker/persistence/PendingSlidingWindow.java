@@ -0,0 +1,152 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call outcomes of a time based sliding window that have been recorded in this container but not yet been written
+ * to the persistence store.
+ * <p>
+ * Outcomes are accumulated per bucket in striped {@link LongAdder} counters so that recording does not need a lock.
+ * The statistics of the window are the ones returned by the last write plus the pending outcomes.
+ */
+class PendingSlidingWindow {
+
+    private final int windowSizeInSeconds;
+    private final ConcurrentMap<Long, BucketCounters> buckets = new ConcurrentHashMap<>();
+    private final LongAdder pendingCalls = new LongAdder();
+    private final AtomicLong firstPendingEpochMilli = new AtomicLong();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private volatile StoredStatistics storedStatistics = new StoredStatistics(0, CallStatistics.EMPTY);
+
+    PendingSlidingWindow(int windowSizeInSeconds) {
+        this.windowSizeInSeconds = windowSizeInSeconds;
+    }
+
+    int windowSizeInSeconds() {
+        return windowSizeInSeconds;
+    }
+
+    void record(long bucket, boolean failure, boolean slow, long nowEpochMilli) {
+        var counters = buckets.get(bucket);
+        if (counters == null) {
+            counters = buckets.computeIfAbsent(bucket, b -> new BucketCounters());
+        }
+        counters.calls.increment();
+        if (failure) {
+            counters.failures.increment();
+        }
+        if (slow) {
+            counters.slowCalls.increment();
+        }
+        pendingCalls.increment();
+        firstPendingEpochMilli.compareAndSet(0, nowEpochMilli);
+    }
+
+    boolean isFlushDue(int maxPendingCalls, long maxPendingMillis, long nowEpochMilli) {
+        var firstPending = firstPendingEpochMilli.get();
+        return pendingCalls.sum() >= maxPendingCalls
+                || (firstPending != 0 && nowEpochMilli - firstPending >= maxPendingMillis);
+    }
+
+    /**
+     * @param currentBucket the current bucket (seconds since epoch)
+     * @return the stored statistics plus the pending outcomes within the window
+     */
+    CallStatistics statistics(long currentBucket) {
+        var oldestBucket = currentBucket - windowSizeInSeconds;
+        var stored = storedStatistics;
+        long calls = 0;
+        long failures = 0;
+        long slowCalls = 0;
+        if (stored.bucket() > oldestBucket) {
+            calls = stored.statistics().calls();
+            failures = stored.statistics().failures();
+            slowCalls = stored.statistics().slowCalls();
+        }
+        for (var bucket : buckets.entrySet()) {
+            if (bucket.getKey() > oldestBucket) {
+                calls += bucket.getValue().calls.sum();
+                failures += bucket.getValue().failures.sum();
+                slowCalls += bucket.getValue().slowCalls.sum();
+            }
+        }
+        return new CallStatistics(calls, failures, slowCalls);
+    }
+
+    /**
+     * Take the pending outcomes of all buckets. The taken amounts are subtracted from the counters so that outcomes
+     * recorded concurrently are kept for the next flush.
+     * Only a single caller at a time is allowed to drain, others get {@code null}.
+     *
+     * @param currentBucket the current bucket (seconds since epoch)
+     * @return the pending outcomes per bucket or {@code null} if another caller is currently flushing
+     */
+    Map<Long, CallStatistics> drain(long currentBucket) {
+        if (!flushing.compareAndSet(false, true)) {
+            return null;
+        }
+        var oldestBucket = currentBucket - windowSizeInSeconds;
+        Map<Long, CallStatistics> deltas = new TreeMap<>();
+        firstPendingEpochMilli.set(0);
+        for (var bucket : buckets.entrySet()) {
+            var counters = bucket.getValue();
+            var calls = counters.calls.sum();
+            var failures = counters.failures.sum();
+            var slowCalls = counters.slowCalls.sum();
+            if (calls == 0 && failures == 0 && slowCalls == 0) {
+                if (bucket.getKey() <= oldestBucket) {
+                    buckets.remove(bucket.getKey(), counters);
+                }
+                continue;
+            }
+            counters.calls.add(-calls);
+            counters.failures.add(-failures);
+            counters.slowCalls.add(-slowCalls);
+            pendingCalls.add(-calls);
+            deltas.put(bucket.getKey(), new CallStatistics(calls, failures, slowCalls));
+        }
+        return deltas;
+    }
+
+    /**
+     * Finish a flush that was started with {@link #drain(long)}.
+     *
+     * @param currentBucket the bucket the statistics were written at
+     * @param statistics    the statistics of the window as returned by the persistence store or {@code null} if
+     *                      nothing was written
+     * @param deltas        the drained outcomes, added back if the write failed
+     */
+    void flushed(long currentBucket, CallStatistics statistics, Map<Long, CallStatistics> deltas) {
+        try {
+            if (statistics != null) {
+                storedStatistics = new StoredStatistics(currentBucket, statistics);
+            } else if (!deltas.isEmpty()) {
+                for (var delta : deltas.entrySet()) {
+                    var counters = buckets.computeIfAbsent(delta.getKey(), b -> new BucketCounters());
+                    counters.calls.add(delta.getValue().calls());
+                    counters.failures.add(delta.getValue().failures());
+                    counters.slowCalls.add(delta.getValue().slowCalls());
+                    pendingCalls.add(delta.getValue().calls());
+                }
+                firstPendingEpochMilli.compareAndSet(0, currentBucket * 1000);
+            }
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    private static class BucketCounters {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowCalls = new LongAdder();
+    }
+
+    private record StoredStatistics(long bucket, CallStatistics statistics) {
+    }
+}
@@ -1,6 +1,7 @@
 package de.roamingthings.lambda.circuitbreaker.persistence;
 
 import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.SlidingWindowType;
 
 import java.time.Instant;
 
@@ -11,15 +12,87 @@ public interface PersistenceStore {
 
     Status fetchCircuitBreakerState(String circuitBreakerId, Instant now);
 
+    /**
+     * Check whether a single call is admitted. By default the admission follows the state of the circuit breaker.
+     * A store that implements a slow start rejects a part of the calls after the circuit breaker has been closed
+     * with {@link Admission#RAMPING_UP}.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param now              current time
+     * @return the admission of the call
+     */
+    default Admission admitCall(String circuitBreakerId, Instant now) {
+        return Admission.of(fetchCircuitBreakerState(circuitBreakerId, now));
+    }
+
+    /**
+     * Try to acquire the lease for the single probe call that is allowed while the circuit breaker is half-open.
+     * At most one caller across all containers is granted the lease until it expires.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param now              current time
+     * @return {@code true} if the caller holds the probe lease and may proceed with the call
+     */
+    boolean acquireProbeLease(String circuitBreakerId, Instant now);
+
+    /**
+     * Close the circuit breaker after a successful probe. The circuit breaker is only closed if it is still
+     * half-open with the probe lease acquired at {@code leaseAcquiredAt}, so that a probe that outlived its lease
+     * does not close a circuit breaker that has been opened again by the probe of another caller.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param leaseAcquiredAt  the time passed to {@link #acquireProbeLease(String, Instant)}
+     * @param now              current time
+     * @return {@code true} if the circuit breaker has been closed, {@code false} if the probe lease has been lost
+     */
+    boolean saveCircuitBreakerClosed(String circuitBreakerId, Instant leaseAcquiredAt, Instant now);
+
+    /**
+     * Record the outcome of a call in the sliding window of a circuit breaker.
+     *
+     * @param circuitBreakerId  the identifier of the circuit breaker
+     * @param windowType        {@link SlidingWindowType#COUNT_BASED} or {@link SlidingWindowType#TIME_BASED}
+     * @param windowSize        number of calls or seconds in the window
+     * @param failure           whether the call failed
+     * @param slow              whether the call took at least the slow call threshold
+     * @param now               current time
+     * @return the statistics of the sliding window including this call
+     */
+    CallStatistics recordCallOutcome(String circuitBreakerId, SlidingWindowType windowType, int windowSize, boolean failure, boolean slow, Instant now);
+
+    /**
+     * Write all state that has been aggregated locally to the store.
+     * This should be called when the Lambda invocation ends.
+     */
+    void flush();
+
+    /**
+     * Exercise the code paths used to read circuit breaker states, e.g. by reading a record that does not exist,
+     * so that classes and clients are initialized before a snapshot of the execution environment is taken.
+     * Failures must not be propagated.
+     */
+    default void prime() {
+        // Nothing to prime by default
+    }
+
+    /**
+     * Drop all circuit breaker state that is kept in memory. This is called when the execution environment has
+     * been restored from a snapshot, since the state in memory is as old as the snapshot.
+     */
+    default void resetLocalState() {
+        // Nothing kept in memory by default
+    }
+
     /**
      * Status of the record:
      * <ul>
      *  <li>OPEN: circuit breaker is open</li>
+     *  <li>HALF_OPEN: the open period has expired and a single probe call may be made to check for recovery</li>
      *  <li>CLOSED: circuit breaker is closed: the record does not exist or has a status of closed</li>
      * </ul>
      */
     enum Status {
-        OPEN("OPEN"), CLOSED("CLOSED");
+        OPEN("OPEN"), HALF_OPEN("HALF_OPEN"), CLOSED("CLOSED");
 
         private final String status;
 
@@ -31,5 +104,61 @@ public interface PersistenceStore {
         public String toString() {
             return status;
         }
+
+        /**
+         * Like {@link #valueOf(String)} but without the reflective lookup of the enum constants, which requires
+         * reachability metadata in a native image.
+         *
+         * @param status the name of the status
+         * @return the status
+         * @throws IllegalArgumentException if the name is not a status
+         */
+        public static Status fromString(String status) {
+            return switch (status) {
+                case "OPEN" -> OPEN;
+                case "HALF_OPEN" -> HALF_OPEN;
+                case "CLOSED" -> CLOSED;
+                default -> throw new IllegalArgumentException("Unknown circuit breaker status: " + status);
+            };
+        }
+    }
+
+    /**
+     * Admission of a single call:
+     * <ul>
+     *  <li>OPEN: the circuit breaker is open and the call is rejected</li>
+     *  <li>HALF_OPEN: the call may probe the circuit breaker if it acquires the probe lease</li>
+     *  <li>CLOSED: the circuit breaker is closed and the call is admitted</li>
+     *  <li>RAMPING_UP: the circuit breaker has recently been closed and the call has not been admitted by the
+     *  slow start</li>
+     * </ul>
+     */
+    enum Admission {
+        OPEN(Status.OPEN), HALF_OPEN(Status.HALF_OPEN), CLOSED(Status.CLOSED), RAMPING_UP(Status.CLOSED);
+
+        private final Status status;
+
+        Admission(Status status) {
+            this.status = status;
+        }
+
+        /**
+         * @return the state of the circuit breaker the admission has been derived from
+         */
+        public Status status() {
+            return status;
+        }
+
+        /**
+         * @param status the state of the circuit breaker
+         * @return the admission that follows the state of the circuit breaker
+         */
+        public static Admission of(Status status) {
+            return switch (status) {
+                case OPEN -> OPEN;
+                case HALF_OPEN -> HALF_OPEN;
+                case CLOSED -> CLOSED;
+            };
+        }
     }
 }
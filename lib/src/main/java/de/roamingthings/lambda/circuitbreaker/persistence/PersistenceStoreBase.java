@@ -1,17 +1,30 @@
 package de.roamingthings.lambda.circuitbreaker.persistence;
 
 import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.SlidingWindowType;
+import de.roamingthings.lambda.circuitbreaker.SlowStartMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 public abstract class PersistenceStoreBase implements PersistenceStore {
 
     private boolean configured = false;
     private long expirationInSeconds = 5 * 60L; // 5 minutes default
+    private long probeLeaseInSeconds = 60L; // 1 minute default
+    private int maxPendingCalls = 100;
+    private long maxPendingMillis = 1000L; // 1 second default
+    private long slowStartMillis = 0L; // disabled by default
+    private SlowStartMode slowStartMode = SlowStartMode.LINEAR;
+    private final ConcurrentMap<String, CountBasedSlidingWindow> countBasedWindows = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PendingSlidingWindow> pendingWindows = new ConcurrentHashMap<>();
 
     private static final Logger log = LoggerFactory.getLogger(PersistenceStoreBase.class);
 
@@ -23,6 +36,11 @@ public abstract class PersistenceStoreBase implements PersistenceStore {
         }
 
         expirationInSeconds = config.getExpirationInSeconds();
+        probeLeaseInSeconds = config.getProbeLeaseInSeconds();
+        maxPendingCalls = config.getMaxPendingCalls();
+        maxPendingMillis = config.getMaxPendingMillis();
+        slowStartMillis = config.getSlowStartMillis();
+        slowStartMode = config.getSlowStartMode();
 
         configured = true;
     }
@@ -30,24 +48,151 @@ public abstract class PersistenceStoreBase implements PersistenceStore {
     @Override
     public void saveCircuitBreakerOpen(String circuitBreakerId, Throwable cause, Instant now) {
         log.debug("Saving circuit breaker status as OPEN");
-        createCircuitBreakerStatus(circuitBreakerId, PersistenceStore.Status.OPEN, cause, now);
+        createRecord(openRecord(circuitBreakerId, cause, now), now);
     }
 
     @Override
     public Status fetchCircuitBreakerState(String circuitBreakerId, Instant now) {
         return fetchRecord(circuitBreakerId)
-                .filter(statusRecord -> !statusRecord.isExpired(now))
-                .map(CircuitBreakerStatusRecord::status)
+                .map(statusRecord -> stateOf(statusRecord, now))
                 .orElse(Status.CLOSED);
     }
 
+    @Override
+    public Admission admitCall(String circuitBreakerId, Instant now) {
+        return fetchRecord(circuitBreakerId)
+                .map(statusRecord -> admit(statusRecord, now))
+                .orElse(Admission.CLOSED);
+    }
+
+    @Override
+    public boolean acquireProbeLease(String circuitBreakerId, Instant now) {
+        log.debug("Acquiring probe lease for circuit breaker: {}", circuitBreakerId);
+        return acquireProbeLeaseRecord(probeRecord(circuitBreakerId, now), now);
+    }
+
+    /**
+     * Without a slow start the record is deleted. Otherwise, a closed record is written, which expires at the end
+     * of the slow start. Either write is conditional on the record still being the half-open record of the probe.
+     */
+    @Override
+    public boolean saveCircuitBreakerClosed(String circuitBreakerId, Instant leaseAcquiredAt, Instant now) {
+        log.debug("Saving circuit breaker status as CLOSED");
+        var probeRecord = probeRecord(circuitBreakerId, leaseAcquiredAt);
+        boolean closed;
+        if (slowStartMillis > 0) {
+            var closedAt = now.toEpochMilli();
+            closed = updateRecord(new CircuitBreakerStatusRecord(
+                    circuitBreakerId,
+                    Status.CLOSED,
+                    Math.floorDiv(closedAt + slowStartMillis + 999, 1000),
+                    null,
+                    closedAt
+            ), probeRecord);
+        } else {
+            closed = deleteRecord(probeRecord);
+        }
+        if (closed) {
+            countBasedWindows.remove(circuitBreakerId);
+        } else {
+            log.debug("Probe lease of circuit breaker has been lost, the record is not closed: {}", circuitBreakerId);
+        }
+        return closed;
+    }
+
+    /**
+     * The half-open record that holds the probe lease acquired at the given time. The expiry of the lease
+     * identifies the probe, since a new lease can only be acquired after the previous one has expired.
+     */
+    CircuitBreakerStatusRecord probeRecord(String circuitBreakerId, Instant leaseAcquiredAt) {
+        return new CircuitBreakerStatusRecord(
+                circuitBreakerId,
+                Status.HALF_OPEN,
+                leaseAcquiredAt.plus(probeLeaseInSeconds, ChronoUnit.SECONDS).getEpochSecond(),
+                null
+        );
+    }
+
+    @Override
+    public CallStatistics recordCallOutcome(String circuitBreakerId, SlidingWindowType windowType, int windowSize, boolean failure, boolean slow, Instant now) {
+        if (failure) {
+            onLocalFailure(circuitBreakerId, now);
+        }
+        switch (windowType) {
+            case COUNT_BASED:
+                // The order of the last calls is only known locally so a count based window is kept per container
+                var window = countBasedWindows.get(circuitBreakerId);
+                if (window == null) {
+                    window = countBasedWindows.computeIfAbsent(circuitBreakerId, id -> new CountBasedSlidingWindow(windowSize));
+                }
+                return window.record(failure, slow);
+            case TIME_BASED:
+                // Outcomes are aggregated locally and written in batches to limit the writes to the store
+                var pendingWindow = pendingWindows.get(circuitBreakerId);
+                if (pendingWindow == null) {
+                    pendingWindow = pendingWindows.computeIfAbsent(circuitBreakerId, id -> new PendingSlidingWindow(windowSize));
+                }
+                var bucket = now.getEpochSecond();
+                var nowEpochMilli = now.toEpochMilli();
+                pendingWindow.record(bucket, failure, slow, nowEpochMilli);
+                if (pendingWindow.isFlushDue(maxPendingCalls, maxPendingMillis, nowEpochMilli)) {
+                    flushPendingWindow(circuitBreakerId, pendingWindow, bucket);
+                }
+                return pendingWindow.statistics(bucket);
+            default:
+                throw new IllegalArgumentException("Unsupported sliding window type: " + windowType);
+        }
+    }
+
+    /**
+     * Write all call outcomes that have been aggregated locally to the persistence store.
+     * <p>
+     * Each circuit breaker with pending outcomes is written with a single update.
+     */
+    @Override
+    public void flush() {
+        var bucket = Instant.now().getEpochSecond();
+        pendingWindows.forEach((circuitBreakerId, pendingWindow) -> flushPendingWindow(circuitBreakerId, pendingWindow, bucket));
+    }
+
+    /**
+     * Drops the local sliding windows.
+     */
+    @Override
+    public void resetLocalState() {
+        countBasedWindows.clear();
+        pendingWindows.clear();
+    }
+
+    /**
+     * Called when a failure of a call has been observed in this container. Stores can use this to read
+     * the state of the circuit breaker with stronger guarantees for a while.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param now              current time
+     */
+    protected void onLocalFailure(String circuitBreakerId, Instant now) {
+        // Nothing to do by default
+    }
+
+    /**
+     * Create a new item in the persistence store. The item must only be created if there is no record for the
+     * circuit breaker, if the existing record is expired, or if the existing record is half-open or closed.
+     *
+     * @param statusRecord CircuitBreakerStatusRecord instance
+     * @param now          current time
+     */
     public abstract void createRecord(CircuitBreakerStatusRecord statusRecord, Instant now);
 
     /**
-     * Update item in persistence store. This method should be able to overwrite an existing item.
+     * Replace the half-open record of a probe, including removing the cause if the record has none. The record
+     * must only be replaced if the existing record has the status and the expiry of the probe record.
+     *
      * @param statusRecord CircuitBreakerStatusRecord instance
+     * @param probeRecord  the half-open record of the probe lease
+     * @return {@code true} if the record was replaced
      */
-    abstract void updateRecord(CircuitBreakerStatusRecord statusRecord);
+    abstract boolean updateRecord(CircuitBreakerStatusRecord statusRecord, CircuitBreakerStatusRecord probeRecord);
 
     /**
      * Get an item in persistence store
@@ -56,18 +201,108 @@ public abstract class PersistenceStoreBase implements PersistenceStore {
      */
     abstract Optional<CircuitBreakerStatusRecord> fetchRecord(String circuitBreakerId);
 
-    private void createCircuitBreakerStatus(String circuitBreakerId, PersistenceStore.Status status, Throwable cause, Instant now) {
+    /**
+     * Set status and expiry of an existing open or half-open record, but only if its expiry has passed.
+     * The conditional write must succeed for exactly one of several concurrent callers.
+     *
+     * @param probeRecord half-open record containing the expiry of the probe lease
+     * @param now         current time
+     * @return {@code true} if the record was updated
+     */
+    abstract boolean acquireProbeLeaseRecord(CircuitBreakerStatusRecord probeRecord, Instant now);
+
+    /**
+     * Atomically add to the counters of a time based sliding window. Each second of the window is a separate bucket.
+     *
+     * @param circuitBreakerId    the identifier of the circuit breaker
+     * @param deltas              the number of calls and failures to add per bucket (seconds since epoch)
+     * @param currentBucket       the current bucket (seconds since epoch)
+     * @param windowSizeInSeconds the number of buckets in the window
+     * @return the statistics of all buckets in the window
+     */
+    abstract CallStatistics addToSlidingWindow(String circuitBreakerId, Map<Long, CallStatistics> deltas, long currentBucket, int windowSizeInSeconds);
+
+    /**
+     * Remove the half-open record of a probe from the persistence store. The record must only be removed if the
+     * existing record has the status and the expiry of the probe record.
+     *
+     * @param probeRecord the half-open record of the probe lease
+     * @return {@code true} if the record was removed
+     */
+    abstract boolean deleteRecord(CircuitBreakerStatusRecord probeRecord);
+
+    private void flushPendingWindow(String circuitBreakerId, PendingSlidingWindow pendingWindow, long currentBucket) {
+        var deltas = pendingWindow.drain(currentBucket);
+        if (deltas == null) {
+            // Another thread is already flushing this window
+            return;
+        }
+        CallStatistics statistics = null;
+        try {
+            if (!deltas.isEmpty()) {
+                log.debug("Flushing {} sliding window buckets of circuit breaker: {}", deltas.size(), circuitBreakerId);
+                statistics = addToSlidingWindow(circuitBreakerId, deltas, currentBucket, pendingWindow.windowSizeInSeconds());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush sliding window of circuit breaker: {}", circuitBreakerId, e);
+        } finally {
+            pendingWindow.flushed(currentBucket, statistics, deltas);
+        }
+    }
+
+    /**
+     * Prepare the record to open a circuit breaker and reset the local state of the circuit breaker.
+     *
+     * @param circuitBreakerId the identifier of the circuit breaker
+     * @param cause            the exception that tripped the circuit breaker
+     * @param now              current time
+     * @return the open record to be created
+     */
+    CircuitBreakerStatusRecord openRecord(String circuitBreakerId, Throwable cause, Instant now) {
+        countBasedWindows.remove(circuitBreakerId);
+        onLocalFailure(circuitBreakerId, now);
+        return createCircuitBreakerStatus(circuitBreakerId, PersistenceStore.Status.OPEN, cause, now);
+    }
+
+    /**
+     * Admit a single call. During the slow start after the circuit breaker has been closed, the call is admitted
+     * with a probability that grows over the slow start window.
+     *
+     * @param statusRecord the record of the circuit breaker
+     * @param now          current time
+     * @return {@link Admission#RAMPING_UP} if the call is not admitted, otherwise the state of the record
+     */
+    Admission admit(CircuitBreakerStatusRecord statusRecord, Instant now) {
+        var status = stateOf(statusRecord, now);
+        if (status != Status.CLOSED || statusRecord.closedTimestamp() == 0 || slowStartMillis <= 0) {
+            return Admission.of(status);
+        }
+        var progress = (double) (now.toEpochMilli() - statusRecord.closedTimestamp()) / slowStartMillis;
+        if (progress >= 1 || ThreadLocalRandom.current().nextDouble() < slowStartMode.admissionRate(progress)) {
+            return Admission.CLOSED;
+        }
+        return Admission.RAMPING_UP;
+    }
+
+    static Status stateOf(CircuitBreakerStatusRecord statusRecord, Instant now) {
+        if (statusRecord.status() == Status.CLOSED) {
+            return Status.CLOSED;
+        }
+        // An expired open record allows a probe, a half-open record with a valid lease is being probed by another caller
+        return statusRecord.isExpired(now) ? Status.HALF_OPEN : Status.OPEN;
+    }
+
+    private CircuitBreakerStatusRecord createCircuitBreakerStatus(String circuitBreakerId, PersistenceStore.Status status, Throwable cause, Instant now) {
         String causeMessage = null;
         if (cause != null) {
             causeMessage = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getName();
         }
-        var statusRecord = new CircuitBreakerStatusRecord(
+        return new CircuitBreakerStatusRecord(
                 circuitBreakerId,
                 status,
                 calculateExpiryEpochSecond(now),
                 causeMessage
         );
-        createRecord(statusRecord, now);
     }
 
     /**
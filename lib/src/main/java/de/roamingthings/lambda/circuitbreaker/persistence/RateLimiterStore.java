@@ -0,0 +1,43 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.RateLimited;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Persistence store that keeps the token buckets of {@link RateLimited rate limiters}, shared by all Lambda
+ * containers.
+ */
+public interface RateLimiterStore {
+
+    /**
+     * Take permits from the token bucket of a rate limiter. The bucket holds at most {@code burst} tokens and is
+     * refilled with {@code permitsPerSecond}. A bucket that does not exist yet is full.
+     *
+     * @param rateLimiterId    the identifier of the rate limiter
+     * @param permitsPerSecond the rate at which the bucket is refilled
+     * @param burst            the capacity of the bucket
+     * @param requested        the maximum number of permits to take
+     * @param now              current time
+     * @return the number of permits that have been taken, between 0 and {@code requested}
+     */
+    int acquirePermits(String rateLimiterId, double permitsPerSecond, int burst, int requested, Instant now);
+
+    /**
+     * Get the {@link RateLimiterStore} of a persistence store. A {@link CachingPersistenceStore} passes rate limiter
+     * permits to its underlying store.
+     *
+     * @param persistenceStore the configured persistence store
+     * @return the store, empty if rate limiter permits are not supported
+     */
+    static Optional<RateLimiterStore> of(PersistenceStore persistenceStore) {
+        if (persistenceStore instanceof RateLimiterStore store) {
+            return Optional.of(store);
+        }
+        if (persistenceStore instanceof CachingPersistenceStore cachingStore) {
+            return cachingStore.rateLimiterStore();
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,458 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.params.SetParams;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link PersistenceStore} that keeps the circuit breaker records in Redis, e.g. an ElastiCache cluster in the VPC
+ * of the Lambda function. A state check is a single {@code GET}, which usually takes less than a millisecond.
+ * <p>
+ * Each record is stored as a string below {@code <keyPrefix><circuitBreakerId>}. Records expire with the native
+ * TTL of the key: open and half-open records are kept for a retention period after their expiry, like DynamoDB
+ * deletes expired items with a delay, closed records are removed at the end of the slow start.
+ * <p>
+ * An open circuit breaker is created with {@code SET NX PX}. Replacing an existing record that may be replaced
+ * (expired, half-open or closed) and acquiring a probe lease are compare-and-set operations with a Lua script, so
+ * the conditional writes have the same semantics as the ones of {@link DynamoDBPersistenceStore}.
+ * <p>
+ * The Jedis client is not a dependency of this library, add {@code redis.clients:jedis} to the function.
+ */
+public class RedisPersistenceStore extends PersistenceStoreBase {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisPersistenceStore.class);
+
+    static final String PRIMING_CIRCUIT_BREAKER_ID = "circuitBreaker#priming";
+    static final String WINDOW_KEY_SUFFIX = "#window";
+    static final String CALLS_FIELD_PREFIX = "calls_";
+    static final String FAILURES_FIELD_PREFIX = "failures_";
+    static final String SLOW_FIELD_PREFIX = "slow_";
+    private static final String SEPARATOR = "|";
+    private static final String COMPARE_AND_SET_SCRIPT = """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])
+                return 1
+            end
+            return 0
+            """;
+    private static final String COMPARE_AND_DELETE_SCRIPT = """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                redis.call('DEL', KEYS[1])
+                return 1
+            end
+            return 0
+            """;
+
+    private final UnifiedJedis jedis;
+    private final String keyPrefix;
+    private final long retentionMillis;
+    private final long prefetchMaxAgeNanos;
+    private final ConcurrentMap<String, Set<String>> staleWindowFields = new ConcurrentHashMap<>();
+    private final Set<String> knownCircuitBreakerIds = ConcurrentHashMap.newKeySet();
+    private volatile Snapshot snapshot;
+
+    private RedisPersistenceStore(UnifiedJedis jedis, String keyPrefix, Duration retention, Duration prefetchMaxAge) {
+        this.jedis = jedis;
+        this.keyPrefix = keyPrefix;
+        this.retentionMillis = retention.toMillis();
+        this.prefetchMaxAgeNanos = prefetchMaxAge != null ? prefetchMaxAge.toNanos() : -1;
+    }
+
+    /**
+     * The record is only created if there is no record for the circuit breaker, if the existing record is expired,
+     * or if the existing record is half-open or closed.
+     */
+    @Override
+    public void createRecord(CircuitBreakerStatusRecord statusRecord, Instant now) {
+        var circuitBreakerId = statusRecord.circuitBreakerId();
+        log.debug("Creating record for circuit breaker key: {}", circuitBreakerId);
+        invalidateSnapshot();
+
+        var key = recordKey(circuitBreakerId);
+        var value = recordToValue(statusRecord);
+        var ttlMillis = ttlMillis(statusRecord, now.toEpochMilli());
+        while (true) {
+            if (jedis.set(key, value, SetParams.setParams().nx().px(ttlMillis)) != null) {
+                return;
+            }
+            var existingValue = jedis.get(key);
+            if (existingValue == null) {
+                // Expired in the meantime
+                continue;
+            }
+            var existing = valueToRecord(circuitBreakerId, existingValue);
+            if (existing.expiryTimestamp() < now.getEpochSecond()
+                    || existing.status() == Status.HALF_OPEN
+                    || existing.status() == Status.CLOSED) {
+                if (compareAndSet(key, existingValue, value, ttlMillis)) {
+                    return;
+                }
+            } else {
+                log.debug("Failed to put record for already existing open circuit breaker key: {}", circuitBreakerId);
+                return;
+            }
+        }
+    }
+
+    @Override
+    boolean updateRecord(CircuitBreakerStatusRecord statusRecord, CircuitBreakerStatusRecord probeRecord) {
+        log.debug("Updating record for circuit breaker key: {}", statusRecord.circuitBreakerId());
+        invalidateSnapshot();
+
+        var ttlMillis = ttlMillis(statusRecord, System.currentTimeMillis());
+        return compareAndSet(recordKey(statusRecord.circuitBreakerId()), recordToValue(probeRecord), recordToValue(statusRecord), ttlMillis);
+    }
+
+    @Override
+    Optional<CircuitBreakerStatusRecord> fetchRecord(String circuitBreakerId) {
+        if (prefetchMaxAgeNanos < 0) {
+            return getRecord(circuitBreakerId);
+        }
+
+        var currentSnapshot = snapshot;
+        if (currentSnapshot == null || System.nanoTime() - currentSnapshot.loadedAtNanos() >= prefetchMaxAgeNanos) {
+            currentSnapshot = loadSnapshot();
+            snapshot = currentSnapshot;
+        }
+        if (currentSnapshot.circuitBreakerIds().contains(circuitBreakerId)) {
+            return Optional.ofNullable(currentSnapshot.records().get(circuitBreakerId));
+        }
+
+        // Circuit breakers that have not been seen before are fetched individually and included in the next snapshot
+        knownCircuitBreakerIds.add(circuitBreakerId);
+        return getRecord(circuitBreakerId);
+    }
+
+    /**
+     * The lease is only granted if the existing open or half-open record is expired.
+     */
+    @Override
+    boolean acquireProbeLeaseRecord(CircuitBreakerStatusRecord probeRecord, Instant now) {
+        var circuitBreakerId = probeRecord.circuitBreakerId();
+        invalidateSnapshot();
+
+        var key = recordKey(circuitBreakerId);
+        var value = recordToValue(probeRecord);
+        var ttlMillis = ttlMillis(probeRecord, now.toEpochMilli());
+        while (true) {
+            var existingValue = jedis.get(key);
+            var existing = existingValue != null ? valueToRecord(circuitBreakerId, existingValue) : null;
+            if (existing == null
+                    || existing.status() == Status.CLOSED
+                    || existing.expiryTimestamp() >= now.getEpochSecond()) {
+                log.debug("Probe lease for circuit breaker key is held by another caller: {}", circuitBreakerId);
+                return false;
+            }
+            if (compareAndSet(key, existingValue, value, ttlMillis)) {
+                log.debug("Acquired probe lease for circuit breaker key: {}", circuitBreakerId);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The buckets are fields of a hash that expires after the window. The deltas are added, fields that have left
+     * the window during the previous update are removed and the window is read in one pipelined round-trip.
+     */
+    @Override
+    CallStatistics addToSlidingWindow(String circuitBreakerId, Map<Long, CallStatistics> deltas, long currentBucket, int windowSizeInSeconds) {
+        var key = recordKey(circuitBreakerId) + WINDOW_KEY_SUFFIX;
+        var staleFields = staleWindowFields.remove(circuitBreakerId);
+        Response<Map<String, String>> window;
+        try (var pipeline = jedis.pipelined()) {
+            deltas.forEach((bucket, delta) -> {
+                pipeline.hincrBy(key, CALLS_FIELD_PREFIX + bucket, delta.calls());
+                pipeline.hincrBy(key, FAILURES_FIELD_PREFIX + bucket, delta.failures());
+                pipeline.hincrBy(key, SLOW_FIELD_PREFIX + bucket, delta.slowCalls());
+            });
+            if (staleFields != null && !staleFields.isEmpty()) {
+                pipeline.hdel(key, staleFields.toArray(String[]::new));
+            }
+            pipeline.pexpire(key, (windowSizeInSeconds + 1) * 1000L);
+            window = pipeline.hgetAll(key);
+            pipeline.sync();
+        }
+        return windowToStatistics(circuitBreakerId, window.get(), currentBucket - windowSizeInSeconds);
+    }
+
+    @Override
+    boolean deleteRecord(CircuitBreakerStatusRecord probeRecord) {
+        log.debug("Deleting record for circuit breaker key: {}", probeRecord.circuitBreakerId());
+        invalidateSnapshot();
+
+        var result = jedis.eval(COMPARE_AND_DELETE_SCRIPT, List.of(recordKey(probeRecord.circuitBreakerId())), List.of(recordToValue(probeRecord)));
+        return Long.valueOf(1L).equals(result);
+    }
+
+    /**
+     * Drops the snapshot of prefetched records after writing pending state, so that the next invocation starts
+     * with a fresh snapshot.
+     */
+    @Override
+    public void flush() {
+        super.flush();
+        invalidateSnapshot();
+    }
+
+    /**
+     * Opens a connection of the pool and loads the classes of the client with a read of a priming key.
+     */
+    @Override
+    public void prime() {
+        try {
+            jedis.get(recordKey(PRIMING_CIRCUIT_BREAKER_ID));
+        } catch (RuntimeException e) {
+            log.warn("Failed to prime Redis client", e);
+        }
+    }
+
+    /**
+     * Drops the prefetched records and the stale window fields in addition to the local sliding windows. The
+     * client is provided by the caller, its pool has to validate connections that are reused after a restore.
+     */
+    @Override
+    public void resetLocalState() {
+        super.resetLocalState();
+        invalidateSnapshot();
+        staleWindowFields.clear();
+    }
+
+    private Optional<CircuitBreakerStatusRecord> getRecord(String circuitBreakerId) {
+        var value = jedis.get(recordKey(circuitBreakerId));
+        return Optional.ofNullable(value).map(existing -> valueToRecord(circuitBreakerId, existing));
+    }
+
+    /**
+     * Load the records of all circuit breakers that have been fetched before with pipelined reads in one
+     * round-trip. Unlike {@code MGET} the reads work with keys in different slots of a cluster.
+     *
+     * @return a snapshot of the records
+     */
+    private Snapshot loadSnapshot() {
+        var loadedAtNanos = System.nanoTime();
+        var circuitBreakerIds = Set.copyOf(knownCircuitBreakerIds);
+        Map<String, CircuitBreakerStatusRecord> records = new HashMap<>();
+        if (!circuitBreakerIds.isEmpty()) {
+            log.debug("Prefetching records of {} circuit breakers", circuitBreakerIds.size());
+            Map<String, Response<String>> values = new HashMap<>();
+            try (var pipeline = jedis.pipelined()) {
+                for (var circuitBreakerId : circuitBreakerIds) {
+                    values.put(circuitBreakerId, pipeline.get(recordKey(circuitBreakerId)));
+                }
+                pipeline.sync();
+            }
+            values.forEach((circuitBreakerId, value) -> {
+                if (value.get() != null) {
+                    records.put(circuitBreakerId, valueToRecord(circuitBreakerId, value.get()));
+                }
+            });
+        }
+        return new Snapshot(records, circuitBreakerIds, loadedAtNanos);
+    }
+
+    private void invalidateSnapshot() {
+        snapshot = null;
+    }
+
+    private boolean compareAndSet(String key, String expectedValue, String value, long ttlMillis) {
+        var result = jedis.eval(COMPARE_AND_SET_SCRIPT, List.of(key), List.of(expectedValue, value, Long.toString(ttlMillis)));
+        return Long.valueOf(1L).equals(result);
+    }
+
+    private CallStatistics windowToStatistics(String circuitBreakerId, Map<String, String> window, long oldestBucket) {
+        long calls = 0;
+        long failures = 0;
+        long slowCalls = 0;
+        Set<String> staleFields = new HashSet<>();
+        for (var field : window.entrySet()) {
+            var name = field.getKey();
+            var separator = name.indexOf('_');
+            if (separator < 0) {
+                continue;
+            }
+            long bucket;
+            try {
+                bucket = Long.parseLong(name.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (bucket <= oldestBucket) {
+                staleFields.add(name);
+                continue;
+            }
+            var value = Long.parseLong(field.getValue());
+            if (name.startsWith(CALLS_FIELD_PREFIX)) {
+                calls += value;
+            } else if (name.startsWith(FAILURES_FIELD_PREFIX)) {
+                failures += value;
+            } else if (name.startsWith(SLOW_FIELD_PREFIX)) {
+                slowCalls += value;
+            }
+        }
+        if (!staleFields.isEmpty()) {
+            staleWindowFields.merge(circuitBreakerId, staleFields, (existing, added) -> {
+                var merged = new HashSet<>(existing);
+                merged.addAll(added);
+                return merged;
+            });
+        }
+        return new CallStatistics(calls, failures, slowCalls);
+    }
+
+    /**
+     * Open and half-open records are kept for the retention after their expiry, closed records until the end of
+     * the slow start.
+     */
+    private long ttlMillis(CircuitBreakerStatusRecord statusRecord, long nowMillis) {
+        var expiresAtMillis = statusRecord.expiryTimestamp() * 1000L;
+        if (statusRecord.status() != Status.CLOSED) {
+            expiresAtMillis += retentionMillis;
+        }
+        return Math.max(expiresAtMillis - nowMillis, 1L);
+    }
+
+    private String recordKey(String circuitBreakerId) {
+        return keyPrefix + circuitBreakerId;
+    }
+
+    /**
+     * The cause is the last part of the value, so that it may contain the separator. A missing cause is omitted
+     * together with its separator.
+     */
+    static String recordToValue(CircuitBreakerStatusRecord statusRecord) {
+        var value = statusRecord.status().name() + SEPARATOR + statusRecord.expiryTimestamp() + SEPARATOR + statusRecord.closedTimestamp();
+        return statusRecord.cause() != null ? value + SEPARATOR + statusRecord.cause() : value;
+    }
+
+    static CircuitBreakerStatusRecord valueToRecord(String circuitBreakerId, String value) {
+        var parts = value.split("\\" + SEPARATOR, 4);
+        if (parts.length < 3) {
+            throw new IllegalStateException("Invalid record of circuit breaker " + circuitBreakerId + ": " + value);
+        }
+        return new CircuitBreakerStatusRecord(
+                circuitBreakerId,
+                Status.fromString(parts[0]),
+                Long.parseLong(parts[1]),
+                parts.length > 3 ? parts[3] : null,
+                Long.parseLong(parts[2])
+        );
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Records of the circuit breakers that have been loaded with a single round-trip.
+     *
+     * @param records           the records by circuit breaker id
+     * @param circuitBreakerIds the ids of the circuit breakers that have been requested
+     * @param loadedAtNanos     when the snapshot has been loaded ({@link System#nanoTime()})
+     */
+    private record Snapshot(Map<String, CircuitBreakerStatusRecord> records, Set<String> circuitBreakerIds, long loadedAtNanos) {
+    }
+
+    /**
+     * Use this builder to get an instance of {@link RedisPersistenceStore}.<br/>
+     * Example:<br>
+     * <pre>
+     *     RedisPersistenceStore.builder()
+     *             .withJedis(new JedisPooled("my-cluster.cache.amazonaws.com", 6379))
+     *             .build();
+     * </pre>
+     */
+    public static class Builder {
+
+        private UnifiedJedis jedis;
+        private String keyPrefix = "circuitBreaker:";
+        private Duration retention = Duration.ofHours(1);
+        private Duration prefetchMaxAge;
+
+        /**
+         * Initialize and return a new instance of {@link RedisPersistenceStore}.
+         *
+         * @return an instance of the {@link RedisPersistenceStore}
+         * @throws IllegalArgumentException if no client has been set or the retention is negative
+         */
+        public RedisPersistenceStore build() {
+            if (jedis == null) {
+                throw new IllegalArgumentException("Redis client must not be null");
+            }
+            if (keyPrefix == null) {
+                throw new IllegalArgumentException("Key prefix must not be null");
+            }
+            if (retention.isNegative()) {
+                throw new IllegalArgumentException("Retention must not be negative");
+            }
+            if (prefetchMaxAge != null && prefetchMaxAge.isNegative()) {
+                throw new IllegalArgumentException("Prefetch max age must not be negative");
+            }
+            return new RedisPersistenceStore(jedis, keyPrefix, retention, prefetchMaxAge);
+        }
+
+        /**
+         * Client used to access Redis (mandatory), e.g. a {@code JedisPooled} or a {@code JedisCluster}.
+         * The client is shared by all invocations and is not closed by the store.
+         *
+         * @param jedis the Redis client
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withJedis(UnifiedJedis jedis) {
+            this.jedis = jedis;
+            return this;
+        }
+
+        /**
+         * Prefix of the keys of the records and sliding windows (optional), by default {@code circuitBreaker:}.
+         *
+         * @param keyPrefix prefix of the keys
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withKeyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+            return this;
+        }
+
+        /**
+         * How long an expired open record is kept (optional), by default 1 hour.
+         * Until the key expires, an expired open circuit breaker is half-open and requires a successful probe
+         * to be closed.
+         *
+         * @param retention retention of expired records
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withRetention(Duration retention) {
+            this.retention = retention;
+            return this;
+        }
+
+        /**
+         * Load the records of all circuit breakers that have been checked before with pipelined reads and answer
+         * the following state checks from memory (optional), by default disabled.
+         * <p>
+         * The snapshot is dropped when the store is flushed at the end of an invocation, when a record is written
+         * by this store, or when it is older than the given maximum age.
+         *
+         * @param maxAge maximum age of a snapshot
+         * @return the builder instance (to chain operations)
+         */
+        public Builder withPrefetch(Duration maxAge) {
+            this.prefetchMaxAge = maxAge;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+/**
+ * State of the token bucket of a rate limiter. Tokens are refilled lazily from the time of the last refill.
+ *
+ * @param tokens           number of tokens in the bucket, may be fractional
+ * @param refilledAtMillis time of the last refill (milliseconds since epoch)
+ */
+record TokenBucket(double tokens, long refilledAtMillis) {
+
+    static TokenBucket full(int burst, long nowMillis) {
+        return new TokenBucket(burst, nowMillis);
+    }
+
+    /**
+     * A clock of another container that is ahead does not remove tokens from the bucket.
+     */
+    TokenBucket refill(double permitsPerSecond, int burst, long nowMillis) {
+        if (nowMillis <= refilledAtMillis) {
+            return this;
+        }
+        var refilled = tokens + (nowMillis - refilledAtMillis) * permitsPerSecond / 1000;
+        return new TokenBucket(Math.min(burst, refilled), nowMillis);
+    }
+
+    /**
+     * @return the number of whole tokens that can be taken, at most {@code requested}
+     */
+    int available(int requested) {
+        return (int) Math.min(requested, Math.floor(tokens));
+    }
+
+    TokenBucket take(int permits) {
+        return new TokenBucket(tokens - permits, refilledAtMillis);
+    }
+
+    /**
+     * @return the number of seconds until an empty bucket is full again, which is when a missing bucket is
+     * equivalent to the stored one
+     */
+    static long secondsToRefill(double permitsPerSecond, int burst) {
+        return (long) Math.ceil(burst / permitsPerSecond);
+    }
+}
@@ -0,0 +1,86 @@
+package de.roamingthings.lambda.circuitbreaker;
+
+import de.roamingthings.lambda.circuitbreaker.exceptions.CircuitBreakerOpenException;
+import de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerTrippedException;
+import de.roamingthings.lambda.circuitbreaker.persistence.DynamoDBPersistenceStore;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.BillingMode;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.ResourceInUseException;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+
+import java.net.URI;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Smoke test of the programmatic API with the {@link DynamoDBPersistenceStore}, meant to be run as a native image
+ * with {@code ./gradlew :lib:nativeSmokeTest}.
+ * <p>
+ * DynamoDB Local can not be embedded into a native image, so it is expected to be running at the endpoint in
+ * {@code DYNAMODB_ENDPOINT}, e.g. {@code docker run -p 8000:8000 amazon/dynamodb-local}.
+ */
+class NativeSmokeTest {
+
+    private static final String TABLE_NAME = "circuit_breaker_smoke_test";
+
+    private static DynamoDbClient client;
+
+    @BeforeAll
+    static void setupDynamo() {
+        var endpoint = System.getenv("DYNAMODB_ENDPOINT");
+        assumeTrue(endpoint != null, "DYNAMODB_ENDPOINT is not set");
+
+        client = DynamoDbClient.builder()
+                .httpClient(UrlConnectionHttpClient.builder().build())
+                .region(Region.EU_CENTRAL_1)
+                .endpointOverride(URI.create(endpoint))
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("DUMMY", "DUMMY")))
+                .build();
+        try {
+            client.createTable(CreateTableRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .keySchema(KeySchemaElement.builder().keyType(KeyType.HASH).attributeName("id").build())
+                    .attributeDefinitions(
+                            AttributeDefinition.builder().attributeName("id").attributeType(ScalarAttributeType.S).build()
+                    )
+                    .billingMode(BillingMode.PAY_PER_REQUEST)
+                    .build());
+        } catch (ResourceInUseException e) {
+            // The table has been created by a previous run
+        }
+    }
+
+    @Test
+    void execute_shouldTripAndRejectCallsWithDynamoDBPersistenceStore() {
+        CircuitBreaker.config()
+                .withPersistenceStore(DynamoDBPersistenceStore.builder()
+                        .withTableName(TABLE_NAME)
+                        .withDynamoDbClient(client)
+                        .build())
+                .configure();
+        var circuitBreaker = CircuitBreaker.getInstance();
+        var circuitBreakerId = "smoke-test-" + UUID.randomUUID();
+
+        assertThat(circuitBreaker.execute(circuitBreakerId, () -> "Something")).isEqualTo("Something");
+        assertThatThrownBy(() -> circuitBreaker.run(circuitBreakerId, () -> {
+            throw new IllegalStateException("Something went wrong");
+        }))
+                .isInstanceOf(CircuitBreakerTrippedException.class);
+        assertThatThrownBy(() -> circuitBreaker.executeAsInt(circuitBreakerId, () -> 42))
+                .isInstanceOf(CircuitBreakerOpenException.class);
+    }
+}
@@ -0,0 +1,124 @@
+package de.roamingthings.lambda.circuitbreaker;
+
+import de.roamingthings.lambda.circuitbreaker.exceptions.CircuitBreakerOpenException;
+import de.roamingthings.lambda.circuitbreaker.handlers.SomethingWentWrongException;
+import de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerTrippedException;
+import de.roamingthings.lambda.circuitbreaker.persistence.CachingPersistenceStore;
+import de.roamingthings.lambda.circuitbreaker.persistence.InMemoryPersistenceStore;
+import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class CircuitBreakerTest {
+
+    private static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+
+    @Mock
+    private PersistenceStore store;
+
+    @BeforeEach
+    void configure() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+    }
+
+    @Test
+    void execute_shouldReturnResultWhenCircuitBreakerIsClosed() {
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+
+        var result = CircuitBreaker.getInstance().execute(CIRCUIT_BREAKER_ID, () -> "Something");
+
+        assertThat(result).isEqualTo("Something");
+        verify(store, never()).saveCircuitBreakerOpen(any(), any(), any());
+    }
+
+    @Test
+    void execute_shouldOpenCircuitBreakerAndThrowCircuitBreakerTrippedExceptionWhenSupplierThrows() {
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+
+        assertThatThrownBy(() -> CircuitBreaker.getInstance().execute(CIRCUIT_BREAKER_ID, () -> {
+            throw new SomethingWentWrongException("Something went wrong");
+        }))
+                .isInstanceOf(CircuitBreakerTrippedException.class)
+                .cause()
+                .isInstanceOf(SomethingWentWrongException.class);
+
+        verify(store).saveCircuitBreakerOpen(eq(CIRCUIT_BREAKER_ID), any(), any());
+    }
+
+    @Test
+    void run_shouldNotCallRunnableWhenCircuitBreakerIsOpen() {
+        doReturn(PersistenceStore.Admission.OPEN).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        var called = new boolean[1];
+
+        assertThatThrownBy(() -> CircuitBreaker.getInstance().run(CIRCUIT_BREAKER_ID, () -> called[0] = true))
+                .isInstanceOf(CircuitBreakerOpenException.class);
+
+        assertThat(called[0]).isFalse();
+    }
+
+    @Test
+    void decorate_shouldCheckCircuitBreakerOnEveryCall() {
+        doReturn(PersistenceStore.Status.CLOSED, PersistenceStore.Admission.OPEN).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        Function<String, Integer> function = CircuitBreaker.getInstance().decorate(CIRCUIT_BREAKER_ID, String::length);
+
+        assertThat(function.apply("Something")).isEqualTo(9);
+        assertThatThrownBy(() -> function.apply("Something"))
+                .isInstanceOf(CircuitBreakerOpenException.class);
+    }
+
+    @Test
+    void executeAsLong_shouldReturnResultWhenCircuitBreakerIsClosed() {
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+
+        var result = CircuitBreaker.getInstance().executeAsLong(CIRCUIT_BREAKER_ID, () -> 42L);
+
+        assertThat(result).isEqualTo(42L);
+    }
+
+    @Test
+    void configure_shouldRejectAdaptiveConcurrencyWithoutConcurrencyLimitStore() {
+        var config = CircuitBreaker.config()
+                .withPersistenceStore(CachingPersistenceStore.builder()
+                        .withDelegate(store)
+                        .build())
+                .withConfig(CircuitBreakerConfig.builder()
+                        .withAdaptiveConcurrency(AdaptiveConcurrency.builder().build())
+                        .build());
+
+        assertThatThrownBy(config::configure)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageStartingWith("Persistence store does not support the adaptive concurrency limit");
+    }
+
+    @Test
+    void configure_shouldAcceptAdaptiveConcurrencyWithCachedConcurrencyLimitStore() {
+        CircuitBreaker.config()
+                .withPersistenceStore(CachingPersistenceStore.builder()
+                        .withDelegate(InMemoryPersistenceStore.builder().build())
+                        .build())
+                .withConfig(CircuitBreakerConfig.builder()
+                        .withAdaptiveConcurrency(AdaptiveConcurrency.builder().build())
+                        .build())
+                .configure();
+
+        assertThat(CircuitBreaker.getInstance().getPersistenceStore()).isInstanceOf(CachingPersistenceStore.class);
+    }
+}
@@ -0,0 +1,24 @@
+package de.roamingthings.lambda.circuitbreaker.handlers;
+
+import de.roamingthings.lambda.circuitbreaker.Bulkhead;
+import de.roamingthings.lambda.circuitbreaker.model.InputEvent;
+import de.roamingthings.lambda.circuitbreaker.model.OutputEvent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+public class BulkheadAsyncSucceedingFunction {
+
+    public static final String BULKHEAD_ID = "a-bulkhead";
+
+    private final CompletableFuture<OutputEvent> result = new CompletableFuture<>();
+
+    @Bulkhead(id = BULKHEAD_ID, maxConcurrent = 2, leaseSeconds = 30)
+    public CompletionStage<OutputEvent> handleRequestAsync(InputEvent input) {
+        return result;
+    }
+
+    public void complete(InputEvent input) {
+        result.complete(new OutputEvent(input.someValue()));
+    }
+}
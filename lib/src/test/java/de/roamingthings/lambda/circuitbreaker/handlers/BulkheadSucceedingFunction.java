@@ -0,0 +1,18 @@
+package de.roamingthings.lambda.circuitbreaker.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import de.roamingthings.lambda.circuitbreaker.Bulkhead;
+import de.roamingthings.lambda.circuitbreaker.model.InputEvent;
+import de.roamingthings.lambda.circuitbreaker.model.OutputEvent;
+
+public class BulkheadSucceedingFunction implements RequestHandler<InputEvent, OutputEvent> {
+
+    public static final String BULKHEAD_ID = "a-bulkhead";
+
+    @Override
+    @Bulkhead(id = BULKHEAD_ID, maxConcurrent = 2, leaseSeconds = 30)
+    public OutputEvent handleRequest(InputEvent input, Context context) {
+        return new OutputEvent(input.someValue());
+    }
+}
@@ -0,0 +1,17 @@
+package de.roamingthings.lambda.circuitbreaker.handlers;
+
+import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+import de.roamingthings.lambda.circuitbreaker.model.InputEvent;
+import de.roamingthings.lambda.circuitbreaker.model.OutputEvent;
+
+import java.util.concurrent.CompletableFuture;
+
+public class CircuitBreakerEnabledAsyncFailingFunction {
+
+    public static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+
+    @Safeguarded(id = CIRCUIT_BREAKER_ID)
+    public CompletableFuture<OutputEvent> handleRequestAsync(InputEvent input) {
+        return CompletableFuture.failedFuture(new SomethingWentWrongException("Something went wrong"));
+    }
+}
@@ -0,0 +1,24 @@
+package de.roamingthings.lambda.circuitbreaker.handlers;
+
+import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+import de.roamingthings.lambda.circuitbreaker.model.InputEvent;
+import de.roamingthings.lambda.circuitbreaker.model.OutputEvent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+public class CircuitBreakerEnabledAsyncSucceedingFunction {
+
+    public static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+
+    private final CompletableFuture<OutputEvent> result = new CompletableFuture<>();
+
+    @Safeguarded(id = CIRCUIT_BREAKER_ID)
+    public CompletionStage<OutputEvent> handleRequestAsync(InputEvent input) {
+        return result;
+    }
+
+    public void complete(InputEvent input) {
+        result.complete(new OutputEvent(input.someValue()));
+    }
+}
@@ -0,0 +1,18 @@
+package de.roamingthings.lambda.circuitbreaker.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+import de.roamingthings.lambda.circuitbreaker.model.InputEvent;
+import de.roamingthings.lambda.circuitbreaker.model.OutputEvent;
+
+public class CircuitBreakerEnabledSucceedingFunction implements RequestHandler<InputEvent, OutputEvent> {
+
+    public static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+
+    @Override
+    @Safeguarded(id = CIRCUIT_BREAKER_ID)
+    public OutputEvent handleRequest(InputEvent input, Context context) {
+        return new OutputEvent(input.someValue());
+    }
+}
@@ -0,0 +1,21 @@
+package de.roamingthings.lambda.circuitbreaker.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import de.roamingthings.lambda.circuitbreaker.Bulkhead;
+import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+import de.roamingthings.lambda.circuitbreaker.model.InputEvent;
+import de.roamingthings.lambda.circuitbreaker.model.OutputEvent;
+
+public class CircuitBreakerWithBulkheadFunction implements RequestHandler<InputEvent, OutputEvent> {
+
+    public static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+    public static final String BULKHEAD_ID = "a-bulkhead";
+
+    @Override
+    @Safeguarded(id = CIRCUIT_BREAKER_ID, trippedBy = RuntimeException.class)
+    @Bulkhead(id = BULKHEAD_ID, maxConcurrent = 2, leaseSeconds = 30)
+    public OutputEvent handleRequest(InputEvent input, Context context) {
+        return new OutputEvent(input.someValue());
+    }
+}
@@ -0,0 +1,21 @@
+package de.roamingthings.lambda.circuitbreaker.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import de.roamingthings.lambda.circuitbreaker.RateLimited;
+import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+import de.roamingthings.lambda.circuitbreaker.model.InputEvent;
+import de.roamingthings.lambda.circuitbreaker.model.OutputEvent;
+
+public class CircuitBreakerWithRateLimiterFunction implements RequestHandler<InputEvent, OutputEvent> {
+
+    public static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+    public static final String RATE_LIMITER_ID = "a-rate-limiter";
+
+    @Override
+    @Safeguarded(id = CIRCUIT_BREAKER_ID, trippedBy = RuntimeException.class)
+    @RateLimited(id = RATE_LIMITER_ID, permitsPerSecond = 10, burst = 20, permitsPerReservation = 3)
+    public OutputEvent handleRequest(InputEvent input, Context context) {
+        return new OutputEvent(input.someValue());
+    }
+}
@@ -0,0 +1,18 @@
+package de.roamingthings.lambda.circuitbreaker.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import de.roamingthings.lambda.circuitbreaker.RateLimited;
+import de.roamingthings.lambda.circuitbreaker.model.InputEvent;
+import de.roamingthings.lambda.circuitbreaker.model.OutputEvent;
+
+public class RateLimitedSucceedingFunction implements RequestHandler<InputEvent, OutputEvent> {
+
+    public static final String RATE_LIMITER_ID = "a-rate-limiter";
+
+    @Override
+    @RateLimited(id = RATE_LIMITER_ID, permitsPerSecond = 10, burst = 20, permitsPerReservation = 3)
+    public OutputEvent handleRequest(InputEvent input, Context context) {
+        return new OutputEvent(input.someValue());
+    }
+}
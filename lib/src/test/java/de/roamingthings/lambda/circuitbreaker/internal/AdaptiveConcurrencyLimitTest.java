@@ -0,0 +1,109 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.AdaptiveConcurrency;
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.persistence.InMemoryPersistenceStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+
+    private final CircuitBreakerConfig config = CircuitBreakerConfig.builder()
+            .withAdaptiveConcurrency(AdaptiveConcurrency.builder()
+                    .withInitialLimit(4)
+                    .withLimits(2, 10)
+                    .withBackoffRatio(0.5)
+                    .withReconcileInterval(Duration.ZERO)
+                    .build())
+            .build();
+
+    private InMemoryPersistenceStore store;
+
+    @BeforeEach
+    void setup() {
+        store = InMemoryPersistenceStore.builder().build();
+    }
+
+    @Test
+    void adjust_shouldIncreaseAdditivelyAndDecreaseMultiplicatively() {
+        var limit = new AdaptiveConcurrencyLimit(CIRCUIT_BREAKER_ID, config);
+
+        for (var i = 0; i < 4; i++) {
+            limit.adjust(false);
+        }
+        var increased = limit.currentLimit();
+        limit.adjust(true);
+        var decreased = limit.currentLimit();
+        limit.adjust(true);
+        limit.adjust(true);
+
+        assertThat(increased).isEqualTo(4);
+        assertThat(decreased).isEqualTo(2);
+        assertThat(limit.currentLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void tryAcquire_shouldRejectCallsAboveLimit() {
+        var limit = new AdaptiveConcurrencyLimit(CIRCUIT_BREAKER_ID, config);
+        var now = Instant.now();
+
+        for (var i = 0; i < 4; i++) {
+            assertThat(limit.tryAcquire(store, now)).isNotNull();
+        }
+        assertThat(limit.tryAcquire(store, now)).isNull();
+    }
+
+    @Test
+    void reconcileIfDue_shouldApplyChangesOfOtherContainers() {
+        var limit = new AdaptiveConcurrencyLimit(CIRCUIT_BREAKER_ID, config);
+        var otherLimit = new AdaptiveConcurrencyLimit(CIRCUIT_BREAKER_ID, config);
+        var now = Instant.now();
+        limit.reconcileIfDue(store, now);
+        otherLimit.reconcileIfDue(store, now);
+
+        otherLimit.adjust(true);
+        otherLimit.reconcileIfDue(store, now);
+        limit.reconcileIfDue(store, now);
+
+        assertThat(store.addToConcurrencyLimit(CIRCUIT_BREAKER_ID, 0, config.getAdaptiveConcurrency(), now)).isEqualTo(2.0);
+        assertThat(limit.currentLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void reconcileIfDue_shouldKeepSharedLimitInBounds() {
+        var limit = new AdaptiveConcurrencyLimit(CIRCUIT_BREAKER_ID, config);
+        var otherLimit = new AdaptiveConcurrencyLimit(CIRCUIT_BREAKER_ID, config);
+        var now = Instant.now();
+        limit.reconcileIfDue(store, now);
+        otherLimit.reconcileIfDue(store, now);
+
+        limit.adjust(true);
+        otherLimit.adjust(true);
+        limit.reconcileIfDue(store, now);
+        otherLimit.reconcileIfDue(store, now);
+        limit.reconcileIfDue(store, now);
+
+        assertThat(store.addToConcurrencyLimit(CIRCUIT_BREAKER_ID, 0, config.getAdaptiveConcurrency(), now)).isEqualTo(2.0);
+        assertThat(limit.currentLimit()).isEqualTo(2);
+        assertThat(otherLimit.currentLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void release_shouldReleaseLeaseAndAdjustLimit() {
+        var limit = new AdaptiveConcurrencyLimit(CIRCUIT_BREAKER_ID, config);
+        var now = Instant.now();
+        var leaseId = limit.tryAcquire(store, now);
+
+        limit.release(store, leaseId, true);
+
+        assertThat(limit.currentLimit()).isEqualTo(2);
+        assertThat(store.acquireBulkheadLease(CIRCUIT_BREAKER_ID + AdaptiveConcurrencyLimit.LEASE_SUFFIX, "lease", 1, now.plusSeconds(1), now)).isTrue();
+    }
+}
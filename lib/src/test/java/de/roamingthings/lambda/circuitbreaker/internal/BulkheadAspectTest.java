@@ -0,0 +1,128 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import de.roamingthings.lambda.circuitbreaker.CircuitBreaker;
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.exceptions.BulkheadFullException;
+import de.roamingthings.lambda.circuitbreaker.handlers.BulkheadAsyncSucceedingFunction;
+import de.roamingthings.lambda.circuitbreaker.handlers.BulkheadSucceedingFunction;
+import de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerWithBulkheadFunction;
+import de.roamingthings.lambda.circuitbreaker.model.InputEvent;
+import de.roamingthings.lambda.circuitbreaker.persistence.BulkheadStore;
+import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+
+import static de.roamingthings.lambda.circuitbreaker.handlers.BulkheadSucceedingFunction.BULKHEAD_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerWithBulkheadFunction.CIRCUIT_BREAKER_ID;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class BulkheadAspectTest {
+
+    @Mock
+    private Context context;
+
+    @Mock(extraInterfaces = BulkheadStore.class)
+    private PersistenceStore store;
+
+    @Test
+    void call_shouldAcquireAndReleaseLease() {
+        configure();
+        var bulkheadStore = (BulkheadStore) store;
+        doReturn(true).when(bulkheadStore).acquireBulkheadLease(eq(BULKHEAD_ID), anyString(), eq(2), any(), any());
+        var function = new BulkheadSucceedingFunction();
+
+        var result = function.handleRequest(new InputEvent("Something"), context);
+
+        assertThat(result.someValue()).isEqualTo("Something");
+        var leaseId = ArgumentCaptor.forClass(String.class);
+        var leaseExpiry = ArgumentCaptor.forClass(Instant.class);
+        var now = ArgumentCaptor.forClass(Instant.class);
+        verify(bulkheadStore).acquireBulkheadLease(eq(BULKHEAD_ID), leaseId.capture(), eq(2), leaseExpiry.capture(), now.capture());
+        assertThat(leaseExpiry.getValue()).isEqualTo(now.getValue().plusSeconds(30));
+        verify(bulkheadStore).releaseBulkheadLease(BULKHEAD_ID, leaseId.getValue());
+    }
+
+    @Test
+    void completionStage_shouldReleaseLeaseWhenReturnedStageCompletes() {
+        configure();
+        var bulkheadStore = (BulkheadStore) store;
+        doReturn(true).when(bulkheadStore).acquireBulkheadLease(eq(BULKHEAD_ID), anyString(), eq(2), any(), any());
+        var function = new BulkheadAsyncSucceedingFunction();
+        var input = new InputEvent("Something");
+
+        var result = function.handleRequestAsync(input).toCompletableFuture();
+
+        verify(bulkheadStore, never()).releaseBulkheadLease(any(), any());
+        function.complete(input);
+        assertThat(result).isCompleted();
+        verify(bulkheadStore).releaseBulkheadLease(eq(BULKHEAD_ID), anyString());
+    }
+
+    @Test
+    void call_shouldThrowBulkheadFullExceptionWhenLeaseIsNotGranted() {
+        configure();
+        var bulkheadStore = (BulkheadStore) store;
+        doReturn(false).when(bulkheadStore).acquireBulkheadLease(eq(BULKHEAD_ID), anyString(), eq(2), any(), any());
+        var function = new BulkheadSucceedingFunction();
+
+        assertThatThrownBy(() -> function.handleRequest(new InputEvent("Something"), context))
+                .isInstanceOf(BulkheadFullException.class);
+
+        verify(bulkheadStore, never()).releaseBulkheadLease(any(), any());
+    }
+
+    @Test
+    void call_shouldNotTripCircuitBreakerWithTrippingExceptionsWhenBulkheadIsFull() {
+        configure();
+        var bulkheadStore = (BulkheadStore) store;
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(false).when(bulkheadStore).acquireBulkheadLease(eq(CircuitBreakerWithBulkheadFunction.BULKHEAD_ID), anyString(), eq(2), any(), any());
+        var function = new CircuitBreakerWithBulkheadFunction();
+
+        assertThatThrownBy(() -> function.handleRequest(new InputEvent("Something"), context))
+                .isInstanceOf(BulkheadFullException.class);
+
+        verify(store, never()).saveCircuitBreakerOpen(any(), any(), any());
+    }
+
+    @Test
+    void probe_shouldNotCloseCircuitBreakerWhenBulkheadIsFull() {
+        configure();
+        var bulkheadStore = (BulkheadStore) store;
+        doReturn(PersistenceStore.Admission.HALF_OPEN).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(true).when(store).acquireProbeLease(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(false).when(bulkheadStore).acquireBulkheadLease(eq(CircuitBreakerWithBulkheadFunction.BULKHEAD_ID), anyString(), eq(2), any(), any());
+        var function = new CircuitBreakerWithBulkheadFunction();
+
+        assertThatThrownBy(() -> function.handleRequest(new InputEvent("Something"), context))
+                .isInstanceOf(BulkheadFullException.class);
+
+        verify(store, never()).saveCircuitBreakerClosed(any(), any(), any());
+        verify(store, never()).saveCircuitBreakerOpen(any(), any(), any());
+        verify(store, never()).recordCallOutcome(any(), any(), anyInt(), anyBoolean(), anyBoolean(), any());
+    }
+
+    private void configure() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+    }
+}
@@ -4,11 +4,24 @@ import com.amazonaws.services.lambda.runtime.Context;
 import de.roamingthings.lambda.circuitbreaker.CircuitBreaker;
 import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
 import de.roamingthings.lambda.circuitbreaker.exceptions.CircuitBreakerOpenException;
+import de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerEnabledAsyncFailingFunction;
+import de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerEnabledAsyncSucceedingFunction;
 import de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerEnabledFailingFunction;
 import de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerEnabledForExceptionFailingFunction;
+import de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerEnabledSucceedingFunction;
+import de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerWithSlidingWindowFailingFunction;
+import de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerWithSlidingWindowForExceptionFailingFunction;
+import de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerWithSlowCallsSucceedingFunction;
 import de.roamingthings.lambda.circuitbreaker.handlers.SomeTrippingException;
 import de.roamingthings.lambda.circuitbreaker.handlers.SomethingWentWrongException;
+import de.roamingthings.lambda.circuitbreaker.metrics.MetricsSink;
+import de.roamingthings.lambda.circuitbreaker.SlidingWindowType;
+import de.roamingthings.lambda.circuitbreaker.SlowStartMode;
+import de.roamingthings.lambda.circuitbreaker.events.CircuitBreakerEvent;
 import de.roamingthings.lambda.circuitbreaker.model.InputEvent;
+import de.roamingthings.lambda.circuitbreaker.model.OutputEvent;
+import de.roamingthings.lambda.circuitbreaker.persistence.AsyncPersistenceStore;
+import de.roamingthings.lambda.circuitbreaker.persistence.CallStatistics;
 import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,13 +29,23 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 
 import static de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerEnabledFailingFunction.CIRCUIT_BREAKER_ID;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
@@ -35,6 +58,12 @@ class CircuitBreakerAspectTest {
     @Mock
     private PersistenceStore store;
 
+    @Mock
+    private AsyncPersistenceStore asyncStore;
+
+    @Mock
+    private MetricsSink metrics;
+
     @Test
     void firstCall_shouldCreateInStoreWhenFunctionThrowsExceptionAndThrowsCircuitBreakerTrippedException() {
         CircuitBreaker.config()
@@ -42,6 +71,7 @@ class CircuitBreakerAspectTest {
                 .withConfig(CircuitBreakerConfig.builder()
                         .build()
                 ).configure();
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
         var function = new CircuitBreakerEnabledFailingFunction();
         var input = new InputEvent("Something");
 
@@ -62,6 +92,7 @@ class CircuitBreakerAspectTest {
                 .withConfig(CircuitBreakerConfig.builder()
                         .build()
                 ).configure();
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
         var function = new CircuitBreakerEnabledForExceptionFailingFunction();
         var input = new InputEvent("Something");
 
@@ -78,7 +109,7 @@ class CircuitBreakerAspectTest {
                 .withConfig(CircuitBreakerConfig.builder()
                         .build()
                 ).configure();
-        doReturn(PersistenceStore.Status.CLOSED).when(store).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
         var function = new CircuitBreakerEnabledFailingFunction();
         var input = new InputEvent("Something");
 
@@ -99,7 +130,7 @@ class CircuitBreakerAspectTest {
                 .withConfig(CircuitBreakerConfig.builder()
                         .build()
                 ).configure();
-        doReturn(PersistenceStore.Status.OPEN).when(store).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(PersistenceStore.Admission.OPEN).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
         var function = new CircuitBreakerEnabledFailingFunction();
         var input = new InputEvent("Something");
 
@@ -114,11 +145,449 @@ class CircuitBreakerAspectTest {
                 .withConfig(CircuitBreakerConfig.builder()
                         .build()
                 ).configure();
-        doReturn(PersistenceStore.Status.OPEN).when(store).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(PersistenceStore.Admission.OPEN).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledFailingFunction();
+        var input = new InputEvent("Something");
+
+        assertThatThrownBy(() -> function.handleRequest(input, context))
+                .isInstanceOf(CircuitBreakerOpenException.class);
+    }
+
+    @Test
+    void halfOpen_shouldCloseCircuitBreakerWhenProbeSucceeds() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        doReturn(PersistenceStore.Admission.HALF_OPEN).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(true).when(store).acquireProbeLease(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledSucceedingFunction();
+        var input = new InputEvent("Something");
+
+        var output = function.handleRequest(input, context);
+
+        assertThat(output.someValue()).isEqualTo("Something");
+        verify(store).saveCircuitBreakerClosed(eq(CIRCUIT_BREAKER_ID), any(), any());
+    }
+
+    @Test
+    void halfOpen_shouldOpenCircuitBreakerAgainWhenProbeFails() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        doReturn(PersistenceStore.Admission.HALF_OPEN).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(true).when(store).acquireProbeLease(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledFailingFunction();
+        var input = new InputEvent("Something");
+
+        assertThatThrownBy(() -> function.handleRequest(input, context))
+                .isInstanceOf(CircuitBreakerTrippedException.class);
+
+        verify(store).saveCircuitBreakerOpen(eq(CIRCUIT_BREAKER_ID), any(), any());
+        verify(store, never()).saveCircuitBreakerClosed(any(), any(), any());
+    }
+
+    @Test
+    void halfOpen_shouldThrowCircuitBreakerOpenExceptionWhenProbeLeaseIsHeldByAnotherCaller() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        doReturn(PersistenceStore.Admission.HALF_OPEN).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(false).when(store).acquireProbeLease(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledSucceedingFunction();
+        var input = new InputEvent("Something");
+
+        assertThatThrownBy(() -> function.handleRequest(input, context))
+                .isInstanceOf(CircuitBreakerOpenException.class);
+
+        verify(store, never()).saveCircuitBreakerClosed(any(), any(), any());
+    }
+
+    @Test
+    void slidingWindow_shouldRethrowExceptionWhileFailureRateIsBelowThreshold() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(new CallStatistics(3, 3, 0)).when(store)
+                .recordCallOutcome(eq(CIRCUIT_BREAKER_ID), eq(SlidingWindowType.COUNT_BASED), eq(10), eq(true), anyBoolean(), any());
+        var function = new CircuitBreakerWithSlidingWindowFailingFunction();
+        var input = new InputEvent("Something");
+
+        assertThatThrownBy(() -> function.handleRequest(input, context))
+                .isInstanceOf(SomethingWentWrongException.class);
+
+        verify(store, never()).saveCircuitBreakerOpen(any(), any(), any());
+    }
+
+    @Test
+    void slidingWindow_shouldTripWhenFailureRateReachesThreshold() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(new CallStatistics(4, 2, 0)).when(store)
+                .recordCallOutcome(eq(CIRCUIT_BREAKER_ID), any(), anyInt(), anyBoolean(), anyBoolean(), any());
+        var function = new CircuitBreakerWithSlidingWindowFailingFunction();
+        var input = new InputEvent("Something");
+
+        assertThatThrownBy(() -> function.handleRequest(input, context))
+                .isInstanceOf(CircuitBreakerTrippedException.class)
+                .cause()
+                .isInstanceOf(SomethingWentWrongException.class);
+
+        verify(store).saveCircuitBreakerOpen(eq(CIRCUIT_BREAKER_ID), any(), any());
+    }
+
+    @Test
+    void slidingWindow_shouldRecordNonTrippingExceptionAsNonFailure() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(new CallStatistics(4, 0, 0)).when(store)
+                .recordCallOutcome(eq(CIRCUIT_BREAKER_ID), any(), anyInt(), anyBoolean(), anyBoolean(), any());
+        var function = new CircuitBreakerWithSlidingWindowForExceptionFailingFunction();
+        var input = new InputEvent("Something");
+
+        assertThatThrownBy(() -> function.handleRequest(input, context))
+                .isInstanceOf(SomethingWentWrongException.class);
+
+        verify(store).recordCallOutcome(eq(CIRCUIT_BREAKER_ID), eq(SlidingWindowType.COUNT_BASED), eq(10), eq(false), eq(false), any());
+        verify(store, never()).saveCircuitBreakerOpen(any(), any(), any());
+    }
+
+    @Test
+    void slowCalls_shouldReturnResultAndTripWhenSlowCallRateReachesThreshold() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(new CallStatistics(4, 0, 2)).when(store)
+                .recordCallOutcome(eq(CIRCUIT_BREAKER_ID), eq(SlidingWindowType.COUNT_BASED), eq(10), eq(false), eq(true), any());
+        var function = new CircuitBreakerWithSlowCallsSucceedingFunction();
+
+        var result = function.handleRequest(new InputEvent("Something"), context);
+
+        assertThat(result.someValue()).isEqualTo("Something");
+        var cause = ArgumentCaptor.forClass(Throwable.class);
+        verify(store).saveCircuitBreakerOpen(eq(CIRCUIT_BREAKER_ID), cause.capture(), any());
+        assertThat(cause.getValue()).isInstanceOf(SlowCallRateExceededException.class);
+    }
+
+    @Test
+    void call_shouldReturnResultAndPublishStoreErrorWhenOutcomeCanNotBeRecorded() {
+        var events = new CopyOnWriteArrayList<CircuitBreakerEvent>();
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withEventListener(events::add)
+                .configure();
+        var error = new IllegalStateException("Store not available");
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doThrow(error).when(store)
+                .recordCallOutcome(eq(CIRCUIT_BREAKER_ID), eq(SlidingWindowType.COUNT_BASED), eq(10), eq(false), anyBoolean(), any());
+        var function = new CircuitBreakerWithSlowCallsSucceedingFunction();
+
+        var result = function.handleRequest(new InputEvent("Something"), context);
+        CircuitBreaker.getInstance().flush();
+
+        assertThat(result.someValue()).isEqualTo("Something");
+        assertThat(events).extracting(CircuitBreakerEvent::type, CircuitBreakerEvent::error)
+                .contains(tuple(CircuitBreakerEvent.Type.STORE_ERROR, error));
+    }
+
+    @Test
+    void asyncStore_shouldReadStateOfSynchronousCallWithoutCompletionStage() {
+        CircuitBreaker.config()
+                .withPersistenceStore(asyncStore)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        doReturn(PersistenceStore.Admission.OPEN).when(asyncStore).admitCall(eq(CIRCUIT_BREAKER_ID), any());
         var function = new CircuitBreakerEnabledFailingFunction();
         var input = new InputEvent("Something");
 
         assertThatThrownBy(() -> function.handleRequest(input, context))
                 .isInstanceOf(CircuitBreakerOpenException.class);
+
+        verify(asyncStore, never()).admitCallAsync(any(), any());
+    }
+
+    @Test
+    void asyncStore_shouldOpenCircuitBreakerWithoutWaitingForTheWrite() {
+        CircuitBreaker.config()
+                .withPersistenceStore(asyncStore)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        doReturn(PersistenceStore.Admission.CLOSED).when(asyncStore).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(new CompletableFuture<Void>()).when(asyncStore)
+                .saveCircuitBreakerOpenAsync(eq(CIRCUIT_BREAKER_ID), any(), any());
+        var function = new CircuitBreakerEnabledFailingFunction();
+        var input = new InputEvent("Something");
+
+        assertThatThrownBy(() -> function.handleRequest(input, context))
+                .isInstanceOf(CircuitBreakerTrippedException.class);
+
+        verify(asyncStore).saveCircuitBreakerOpenAsync(eq(CIRCUIT_BREAKER_ID), any(), any());
+        verify(asyncStore, never()).saveCircuitBreakerOpen(any(), any(), any());
+    }
+
+    @Test
+    void completionStage_shouldTripWhenReturnedFutureFails() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledAsyncFailingFunction();
+
+        var result = function.handleRequestAsync(new InputEvent("Something"));
+
+        assertThat(result).failsWithin(Duration.ofSeconds(1))
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(CircuitBreakerTrippedException.class)
+                .satisfies(e -> assertThat(e.getCause()).hasCauseInstanceOf(SomethingWentWrongException.class));
+        verify(store).saveCircuitBreakerOpen(eq(CIRCUIT_BREAKER_ID), any(), any());
+    }
+
+    @Test
+    void completionStage_shouldReturnFailedFutureWhenCircuitBreakerIsOpen() {
+        CircuitBreaker.config()
+                .withPersistenceStore(asyncStore)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        doReturn(CompletableFuture.completedFuture(PersistenceStore.Admission.OPEN)).when(asyncStore)
+                .admitCallAsync(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledAsyncFailingFunction();
+
+        var result = function.handleRequestAsync(new InputEvent("Something"));
+
+        assertThat(result).failsWithin(Duration.ofSeconds(1))
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(CircuitBreakerOpenException.class);
+    }
+
+    @Test
+    void completionStage_shouldAcquireProbeLeaseWithoutBlocking() {
+        CircuitBreaker.config()
+                .withPersistenceStore(asyncStore)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        var probeLease = new CompletableFuture<Boolean>();
+        doReturn(CompletableFuture.completedFuture(PersistenceStore.Admission.HALF_OPEN)).when(asyncStore)
+                .admitCallAsync(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(probeLease).when(asyncStore).acquireProbeLeaseAsync(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledAsyncFailingFunction();
+
+        var result = function.handleRequestAsync(new InputEvent("Something")).toCompletableFuture();
+
+        assertThat(result).isNotDone();
+        probeLease.complete(false);
+        assertThat(result).failsWithin(Duration.ofSeconds(1))
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(CircuitBreakerOpenException.class);
+        verify(asyncStore, never()).acquireProbeLease(any(), any());
+    }
+
+    @Test
+    void completionStage_shouldRecordOutcomeWhenReturnedStageCompletes() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledAsyncSucceedingFunction();
+        var input = new InputEvent("Something");
+
+        var result = function.handleRequestAsync(input).toCompletableFuture();
+
+        assertThat(result).isNotDone();
+        function.complete(input);
+        assertThat(result).isCompletedWithValue(new OutputEvent("Something"));
+        verify(store, never()).saveCircuitBreakerOpen(any(), any(), any());
+    }
+
+    @Test
+    void metrics_shouldRecordCheckAndRejectionWhenCircuitBreakerIsOpen() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withMetrics(metrics)
+                .configure();
+        doReturn(PersistenceStore.Admission.OPEN).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledFailingFunction();
+        var input = new InputEvent("Something");
+
+        assertThatThrownBy(() -> function.handleRequest(input, context))
+                .isInstanceOf(CircuitBreakerOpenException.class);
+
+        verify(metrics).recordCheck(eq(CIRCUIT_BREAKER_ID), anyLong());
+        verify(metrics).recordRejection(CIRCUIT_BREAKER_ID);
+        verify(metrics, never()).recordTrip(any());
+    }
+
+    @Test
+    void metrics_shouldRecordTripWhenFunctionThrowsException() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withMetrics(metrics)
+                .configure();
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledFailingFunction();
+        var input = new InputEvent("Something");
+
+        assertThatThrownBy(() -> function.handleRequest(input, context))
+                .isInstanceOf(CircuitBreakerTrippedException.class);
+
+        verify(metrics).recordCheck(eq(CIRCUIT_BREAKER_ID), anyLong());
+        verify(metrics).recordTrip(CIRCUIT_BREAKER_ID);
+        verify(metrics, never()).recordRejection(any());
+    }
+
+    @Test
+    void metrics_shouldBeFlushedWithPersistenceStore() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withMetrics(metrics)
+                .configure();
+
+        CircuitBreaker.getInstance().flush();
+
+        verify(store).flush();
+        verify(metrics).flush();
+    }
+
+    @Test
+    void events_shouldPublishTransitionsOfSuccessfulProbe() {
+        var events = new CopyOnWriteArrayList<CircuitBreakerEvent>();
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withEventListener(events::add)
+                .configure();
+        doReturn(PersistenceStore.Admission.HALF_OPEN).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(true).when(store).acquireProbeLease(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(true).when(store).saveCircuitBreakerClosed(eq(CIRCUIT_BREAKER_ID), any(), any());
+        var function = new CircuitBreakerEnabledSucceedingFunction();
+
+        function.handleRequest(new InputEvent("Something"), context);
+        CircuitBreaker.getInstance().flush();
+
+        assertThat(events).extracting(CircuitBreakerEvent::type, CircuitBreakerEvent::status).containsExactly(
+                tuple(CircuitBreakerEvent.Type.STATE_TRANSITION, PersistenceStore.Status.HALF_OPEN),
+                tuple(CircuitBreakerEvent.Type.CALL_SUCCEEDED, null),
+                tuple(CircuitBreakerEvent.Type.STATE_TRANSITION, PersistenceStore.Status.CLOSED));
+        assertThat(events.get(1).duration()).isNotNull();
+    }
+
+    @Test
+    void events_shouldPublishRejectionWhenCircuitBreakerIsOpen() {
+        var events = new CopyOnWriteArrayList<CircuitBreakerEvent>();
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withEventListener(events::add)
+                .configure();
+        doReturn(PersistenceStore.Admission.OPEN).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledFailingFunction();
+
+        assertThatThrownBy(() -> function.handleRequest(new InputEvent("Something"), context))
+                .isInstanceOf(CircuitBreakerOpenException.class);
+        CircuitBreaker.getInstance().flush();
+
+        assertThat(events).extracting(CircuitBreakerEvent::type, CircuitBreakerEvent::status).containsExactly(
+                tuple(CircuitBreakerEvent.Type.CALL_REJECTED, PersistenceStore.Status.OPEN));
+    }
+
+    @Test
+    void events_shouldPublishStoreErrorAndRethrowIt() {
+        var events = new CopyOnWriteArrayList<CircuitBreakerEvent>();
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withEventListener(events::add)
+                .configure();
+        var error = new IllegalStateException("Store not available");
+        doThrow(error).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledSucceedingFunction();
+
+        assertThatThrownBy(() -> function.handleRequest(new InputEvent("Something"), context))
+                .isSameAs(error);
+        CircuitBreaker.getInstance().flush();
+
+        assertThat(events).extracting(CircuitBreakerEvent::type, CircuitBreakerEvent::error).containsExactly(
+                tuple(CircuitBreakerEvent.Type.STORE_ERROR, error));
+    }
+
+    @Test
+    void events_shouldPublishStoreErrorAndKeepExceptionOfCall() {
+        var events = new CopyOnWriteArrayList<CircuitBreakerEvent>();
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withEventListener(events::add)
+                .configure();
+        var error = new IllegalStateException("Store not available");
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doThrow(error).when(store).saveCircuitBreakerOpen(eq(CIRCUIT_BREAKER_ID), any(), any());
+        var function = new CircuitBreakerEnabledFailingFunction();
+
+        assertThatThrownBy(() -> function.handleRequest(new InputEvent("Something"), context))
+                .isInstanceOf(SomethingWentWrongException.class)
+                .hasSuppressedException(error);
+        CircuitBreaker.getInstance().flush();
+
+        assertThat(events).extracting(CircuitBreakerEvent::type, CircuitBreakerEvent::error).containsExactly(
+                tuple(CircuitBreakerEvent.Type.STORE_ERROR, error));
+    }
+
+    @Test
+    void events_shouldPublishIgnoredCallForNonTrippingException() {
+        var events = new CopyOnWriteArrayList<CircuitBreakerEvent>();
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withEventListener(events::add)
+                .configure();
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledForExceptionFailingFunction();
+
+        assertThatThrownBy(() -> function.handleRequest(new InputEvent("Something"), context))
+                .isInstanceOf(SomethingWentWrongException.class);
+        CircuitBreaker.getInstance().flush();
+
+        assertThat(events).singleElement().satisfies(event -> {
+            assertThat(event.type()).isEqualTo(CircuitBreakerEvent.Type.CALL_IGNORED);
+            assertThat(event.error()).isInstanceOf(SomethingWentWrongException.class);
+            assertThat(event.duration()).isNotNull();
+        });
+    }
+
+    @Test
+    void slowStart_shouldRejectCallWithRetryAfterWhenNotAdmitted() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .withSlowStart(Duration.ofSeconds(30), SlowStartMode.LINEAR)
+                        .build()
+                ).configure();
+        doReturn(PersistenceStore.Admission.RAMPING_UP).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        var function = new CircuitBreakerEnabledSucceedingFunction();
+
+        assertThatThrownBy(() -> function.handleRequest(new InputEvent("Something"), context))
+                .isInstanceOfSatisfying(CircuitBreakerOpenException.class, e ->
+                        assertThat(e.getRetryAfter()).contains(Duration.ofSeconds(3)));
     }
 }
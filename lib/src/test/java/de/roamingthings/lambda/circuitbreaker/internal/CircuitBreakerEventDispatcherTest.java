@@ -0,0 +1,92 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.events.CircuitBreakerEvent;
+import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerEventDispatcherTest {
+
+    private static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+
+    @Test
+    void drain_shouldDeliverPublishedEvents() {
+        var received = new CopyOnWriteArrayList<CircuitBreakerEvent>();
+        var event = CircuitBreakerEvent.stateTransition(CIRCUIT_BREAKER_ID, Instant.now(), PersistenceStore.Status.OPEN);
+        try (var dispatcher = new CircuitBreakerEventDispatcher(List.of(received::add), 16)) {
+
+            dispatcher.publish(event);
+            dispatcher.drain();
+
+            assertThat(received).containsExactly(event);
+        }
+    }
+
+    @Test
+    void publish_shouldBeDeliveredByDrainThread() throws InterruptedException {
+        var delivered = new CountDownLatch(1);
+        try (var dispatcher = new CircuitBreakerEventDispatcher(List.of(event -> delivered.countDown()), 16)) {
+
+            dispatcher.publish(CircuitBreakerEvent.callRejected(CIRCUIT_BREAKER_ID, Instant.now(), PersistenceStore.Status.OPEN));
+
+            assertThat(delivered.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    @Test
+    void publish_shouldDropEventsInsteadOfWaitingForSlowListener() throws InterruptedException {
+        var listenerCalled = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        try (var dispatcher = new CircuitBreakerEventDispatcher(List.of(event -> {
+            listenerCalled.countDown();
+            awaitUninterruptibly(release);
+        }), 4)) {
+            dispatcher.publish(CircuitBreakerEvent.callRejected(CIRCUIT_BREAKER_ID, Instant.now(), PersistenceStore.Status.OPEN));
+            assertThat(listenerCalled.await(5, TimeUnit.SECONDS)).isTrue();
+
+            var start = System.nanoTime();
+            for (var i = 0; i < 100; i++) {
+                dispatcher.publish(CircuitBreakerEvent.callRejected(CIRCUIT_BREAKER_ID, Instant.now(), PersistenceStore.Status.OPEN));
+            }
+
+            assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(1);
+            release.countDown();
+        }
+    }
+
+    @Test
+    void drain_shouldContinueWhenListenerFails() {
+        var received = new CopyOnWriteArrayList<CircuitBreakerEvent>();
+        try (var dispatcher = new CircuitBreakerEventDispatcher(List.of(
+                event -> {
+                    throw new IllegalStateException("Listener failed");
+                },
+                received::add), 16)) {
+
+            dispatcher.publish(CircuitBreakerEvent.callRejected(CIRCUIT_BREAKER_ID, Instant.now(), PersistenceStore.Status.OPEN));
+            dispatcher.drain();
+
+            assertThat(received).hasSize(1);
+        }
+    }
+
+    @Test
+    void none_shouldNotBeEnabled() {
+        assertThat(CircuitBreakerEventDispatcher.NONE.isEnabled()).isFalse();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+import de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerEnabledFailingFunction;
+import de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerEnabledForExceptionFailingFunction;
+import de.roamingthings.lambda.circuitbreaker.handlers.SomeTrippingException;
+import de.roamingthings.lambda.circuitbreaker.handlers.SomethingWentWrongException;
+import de.roamingthings.lambda.circuitbreaker.model.InputEvent;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerHandlerTest {
+
+    private final CircuitBreakerConfig config = CircuitBreakerConfig.builder().build();
+
+    @Test
+    void isTrippingException_shouldMatchConfiguredExceptionAndSubclasses() throws Exception {
+        var handler = new CircuitBreakerHandler(safeguardedOf(CircuitBreakerEnabledForExceptionFailingFunction.class), config);
+
+        assertThat(handler.isTrippingException(new SomeTrippingException("Tripping"))).isTrue();
+        assertThat(handler.isTrippingException(new SomeTrippingException("Tripping") {
+        })).isTrue();
+        assertThat(handler.isTrippingException(new SomethingWentWrongException("Not tripping"))).isFalse();
+    }
+
+    @Test
+    void isTrippingException_shouldMatchAnyExceptionWithoutConfiguredExceptions() throws Exception {
+        var handler = new CircuitBreakerHandler(safeguardedOf(CircuitBreakerEnabledFailingFunction.class), config);
+
+        assertThat(handler.isTrippingException(new SomethingWentWrongException("Tripping"))).isTrue();
+        assertThat(handler.isTrippingException(new Error("Tripping"))).isTrue();
+    }
+
+    @Test
+    void isResolvedFor_shouldOnlyMatchConfigurationTheHandlerWasCreatedWith() throws Exception {
+        var handler = new CircuitBreakerHandler(safeguardedOf(CircuitBreakerEnabledFailingFunction.class), config);
+
+        assertThat(handler.isResolvedFor(config)).isTrue();
+        assertThat(handler.isResolvedFor(CircuitBreakerConfig.builder().build())).isFalse();
+    }
+
+    private static Safeguarded safeguardedOf(Class<?> functionClass) throws NoSuchMethodException {
+        return functionClass.getMethod("handleRequest", InputEvent.class, Context.class).getAnnotation(Safeguarded.class);
+    }
+}
@@ -0,0 +1,48 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreaker;
+import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class CircuitBreakerPrimingResourceTest {
+
+    @Mock
+    private PersistenceStore store;
+
+    private final CircuitBreakerPrimingResource primingResource = new CircuitBreakerPrimingResource();
+
+    @BeforeEach
+    void setup() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .configure();
+    }
+
+    @Test
+    void beforeCheckpoint_shouldFlushAndPrimePersistenceStore() {
+        primingResource.beforeCheckpoint(null);
+
+        InOrder inOrder = inOrder(store);
+        inOrder.verify(store).flush();
+        inOrder.verify(store).prime();
+        verify(store, never()).resetLocalState();
+    }
+
+    @Test
+    void afterRestore_shouldResetLocalStateOfPersistenceStore() {
+        primingResource.afterRestore(null);
+
+        verify(store).resetLocalState();
+        verify(store, never()).prime();
+    }
+}
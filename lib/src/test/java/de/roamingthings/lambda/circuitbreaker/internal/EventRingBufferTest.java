@@ -0,0 +1,81 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventRingBufferTest {
+
+    @Test
+    void capacity_shouldBeRoundedUpToPowerOfTwo() {
+        assertThat(new EventRingBuffer<String>(1000).capacity()).isEqualTo(1024);
+        assertThat(new EventRingBuffer<String>(16).capacity()).isEqualTo(16);
+    }
+
+    @Test
+    void poll_shouldReturnElementsInOrder() {
+        var buffer = new EventRingBuffer<String>(4);
+
+        buffer.offer("first");
+        buffer.offer("second");
+
+        assertThat(buffer.poll()).isEqualTo("first");
+        assertThat(buffer.poll()).isEqualTo("second");
+        assertThat(buffer.poll()).isNull();
+        assertThat(buffer.isEmpty()).isTrue();
+    }
+
+    @Test
+    void offer_shouldFailWhenBufferIsFull() {
+        var buffer = new EventRingBuffer<Integer>(4);
+        for (var i = 0; i < 4; i++) {
+            assertThat(buffer.offer(i)).isTrue();
+        }
+
+        assertThat(buffer.offer(4)).isFalse();
+
+        buffer.poll();
+        assertThat(buffer.offer(4)).isTrue();
+    }
+
+    @Test
+    void offer_shouldNotLoseElementsOfConcurrentProducers() throws Exception {
+        var buffer = new EventRingBuffer<Integer>(64);
+        var producers = 4;
+        var elementsPerProducer = 10_000;
+        var executor = Executors.newFixedThreadPool(producers);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (var producer = 0; producer < producers; producer++) {
+                var offset = producer * elementsPerProducer;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    for (var i = 0; i < elementsPerProducer; i++) {
+                        while (!buffer.offer(offset + i)) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            var received = new HashSet<Integer>();
+            while (received.size() < producers * elementsPerProducer) {
+                var element = buffer.poll();
+                if (element != null) {
+                    assertThat(received.add(element)).isTrue();
+                }
+            }
+            for (var future : futures) {
+                future.get();
+            }
+            assertThat(buffer.poll()).isNull();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package de.roamingthings.lambda.circuitbreaker.internal;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import de.roamingthings.lambda.circuitbreaker.CircuitBreaker;
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.exceptions.RateLimitExceededException;
+import de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerWithRateLimiterFunction;
+import de.roamingthings.lambda.circuitbreaker.handlers.RateLimitedSucceedingFunction;
+import de.roamingthings.lambda.circuitbreaker.model.InputEvent;
+import de.roamingthings.lambda.circuitbreaker.persistence.PersistenceStore;
+import de.roamingthings.lambda.circuitbreaker.persistence.RateLimiterStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+
+import static de.roamingthings.lambda.circuitbreaker.handlers.RateLimitedSucceedingFunction.RATE_LIMITER_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static de.roamingthings.lambda.circuitbreaker.handlers.CircuitBreakerWithRateLimiterFunction.CIRCUIT_BREAKER_ID;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class RateLimitedAspectTest {
+
+    @Mock
+    private Context context;
+
+    @Mock(extraInterfaces = RateLimiterStore.class)
+    private PersistenceStore store;
+
+    @Test
+    void calls_shouldUseReservedPermitsBeforeTakingPermitsFromStore() {
+        configure();
+        var rateLimiterStore = (RateLimiterStore) store;
+        doReturn(3).when(rateLimiterStore).acquirePermits(eq(RATE_LIMITER_ID), eq(10.0), eq(20), eq(3), any());
+        var function = new RateLimitedSucceedingFunction();
+
+        for (var i = 0; i < 3; i++) {
+            assertThat(function.handleRequest(new InputEvent("Something"), context).someValue()).isEqualTo("Something");
+        }
+
+        verify(rateLimiterStore, times(1)).acquirePermits(eq(RATE_LIMITER_ID), eq(10.0), eq(20), eq(3), any());
+    }
+
+    @Test
+    void call_shouldThrowRateLimitExceededExceptionWithoutPermit() {
+        configure();
+        var rateLimiterStore = (RateLimiterStore) store;
+        doReturn(0).when(rateLimiterStore).acquirePermits(eq(RATE_LIMITER_ID), eq(10.0), eq(20), eq(3), any());
+        var function = new RateLimitedSucceedingFunction();
+
+        assertThatThrownBy(() -> function.handleRequest(new InputEvent("Something"), context))
+                .isInstanceOfSatisfying(RateLimitExceededException.class, e ->
+                        assertThat(e.getRetryAfter()).contains(Duration.ofMillis(100)));
+    }
+
+    @Test
+    void call_shouldNotTripCircuitBreakerWithTrippingExceptionsWhenRateIsExceeded() {
+        configure();
+        var rateLimiterStore = (RateLimiterStore) store;
+        doReturn(PersistenceStore.Admission.CLOSED).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(0).when(rateLimiterStore).acquirePermits(eq(RATE_LIMITER_ID), eq(10.0), eq(20), eq(3), any());
+        var function = new CircuitBreakerWithRateLimiterFunction();
+
+        assertThatThrownBy(() -> function.handleRequest(new InputEvent("Something"), context))
+                .isInstanceOf(RateLimitExceededException.class);
+
+        verify(store, never()).saveCircuitBreakerOpen(any(), any(), any());
+    }
+
+    @Test
+    void probe_shouldNotCloseCircuitBreakerWhenRateIsExceeded() {
+        configure();
+        var rateLimiterStore = (RateLimiterStore) store;
+        doReturn(PersistenceStore.Admission.HALF_OPEN).when(store).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(true).when(store).acquireProbeLease(eq(CIRCUIT_BREAKER_ID), any());
+        doReturn(0).when(rateLimiterStore).acquirePermits(eq(RATE_LIMITER_ID), eq(10.0), eq(20), eq(3), any());
+        var function = new CircuitBreakerWithRateLimiterFunction();
+
+        assertThatThrownBy(() -> function.handleRequest(new InputEvent("Something"), context))
+                .isInstanceOf(RateLimitExceededException.class);
+
+        verify(store, never()).saveCircuitBreakerClosed(any(), any(), any());
+        verify(store, never()).saveCircuitBreakerOpen(any(), any(), any());
+    }
+
+    private void configure() {
+        CircuitBreaker.config()
+                .withPersistenceStore(store)
+                .withConfig(CircuitBreakerConfig.builder()
+                        .build()
+                ).configure();
+    }
+}
@@ -0,0 +1,97 @@
+package de.roamingthings.lambda.circuitbreaker.metrics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmfMetricsSinkTest {
+
+    private static final Instant NOW = Instant.parse("2023-11-01T10:00:00Z");
+
+    private ByteArrayOutputStream output;
+    private EmfMetricsSink sink;
+
+    @BeforeEach
+    void setup() {
+        output = new ByteArrayOutputStream();
+        sink = EmfMetricsSink.builder()
+                .withNamespace("TestNamespace")
+                .withOutput(new PrintStream(output, true, StandardCharsets.UTF_8))
+                .withClock(Clock.fixed(NOW, ZoneOffset.UTC))
+                .build();
+    }
+
+    @Test
+    void flush_shouldWriteOneLinePerCircuitBreaker() {
+        sink.recordCheck("first", 2_000_000);
+        sink.recordCheck("first", 4_000_000);
+        sink.recordRejection("first");
+        sink.recordCheck("second", 1_000_000);
+        sink.recordTrip("second");
+
+        sink.flush();
+
+        var lines = lines();
+        assertThat(lines).hasSize(2);
+        assertThat(lines).anySatisfy(line -> assertThat(line)
+                .isEqualTo("{\"_aws\":{\"Timestamp\":" + NOW.toEpochMilli() + ",\"CloudWatchMetrics\":[{\"Namespace\":\"TestNamespace\","
+                        + "\"Dimensions\":[[\"CircuitBreakerId\"]],\"Metrics\":[{\"Name\":\"Checks\",\"Unit\":\"Count\"},"
+                        + "{\"Name\":\"Rejections\",\"Unit\":\"Count\"},{\"Name\":\"Trips\",\"Unit\":\"Count\"},"
+                        + "{\"Name\":\"StoreLatency\",\"Unit\":\"Milliseconds\"}]}]},\"CircuitBreakerId\":\"first\","
+                        + "\"Checks\":2,\"Rejections\":1,\"Trips\":0,\"StoreLatency\":[2.0,4.0]}"));
+        assertThat(lines).anySatisfy(line -> assertThat(line)
+                .contains("\"CircuitBreakerId\":\"second\",\"Checks\":1,\"Rejections\":0,\"Trips\":1"));
+    }
+
+    @Test
+    void flush_shouldResetCounters() {
+        sink.recordCheck("first", 1_000_000);
+        sink.flush();
+        output.reset();
+
+        sink.flush();
+
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEmpty();
+    }
+
+    @Test
+    void flush_shouldLimitNumberOfLatencyValues() {
+        for (var i = 0; i < 150; i++) {
+            sink.recordCheck("first", 1_000_000);
+        }
+
+        sink.flush();
+
+        var line = lines()[0];
+        assertThat(line).contains("\"Checks\":150");
+        assertThat(line.substring(line.indexOf("\"StoreLatency\":[")).split(",")).hasSize(100);
+    }
+
+    @Test
+    void flush_shouldEscapeCircuitBreakerId() {
+        sink.recordRejection("with \"quotes\"");
+
+        sink.flush();
+
+        assertThat(lines()[0]).contains("\"CircuitBreakerId\":\"with \\\"quotes\\\"\"");
+    }
+
+    @Test
+    void build_shouldRejectEmptyNamespace() {
+        assertThatThrownBy(() -> EmfMetricsSink.builder().withNamespace("").build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private String[] lines() {
+        return output.toString(StandardCharsets.UTF_8).split(System.lineSeparator());
+    }
+}
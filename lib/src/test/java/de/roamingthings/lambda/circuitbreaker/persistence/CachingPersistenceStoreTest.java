@@ -0,0 +1,168 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.SlowStartMode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class CachingPersistenceStoreTest {
+
+    private static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+
+    @Mock
+    private PersistenceStore delegate;
+
+    private CachingPersistenceStore cachingPersistenceStore;
+
+    @BeforeEach
+    void setup() {
+        cachingPersistenceStore = CachingPersistenceStore.builder()
+                .withDelegate(delegate)
+                .withPositiveTtl(Duration.ofSeconds(10))
+                .withNegativeTtl(Duration.ofSeconds(2))
+                .withMaximumSize(2)
+                .build();
+    }
+
+    @Test
+    void fetchCircuitBreakerState_shouldAnswerFromCacheWithinNegativeTtl() {
+        var now = Instant.now();
+        doReturn(PersistenceStore.Status.CLOSED).when(delegate).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+
+        cachingPersistenceStore.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now);
+        var status = cachingPersistenceStore.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now.plusSeconds(1));
+
+        assertThat(status).isEqualTo(PersistenceStore.Status.CLOSED);
+        verify(delegate, times(1)).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+    }
+
+    @Test
+    void fetchCircuitBreakerState_shouldFetchFromDelegateAfterNegativeTtl() {
+        var now = Instant.now();
+        doReturn(PersistenceStore.Status.CLOSED).when(delegate).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+
+        cachingPersistenceStore.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now);
+        cachingPersistenceStore.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now.plusSeconds(3));
+
+        verify(delegate, times(2)).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+    }
+
+    @Test
+    void fetchCircuitBreakerState_shouldKeepOpenStateForPositiveTtl() {
+        var now = Instant.now();
+        doReturn(PersistenceStore.Status.OPEN).when(delegate).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+
+        cachingPersistenceStore.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now);
+        var status = cachingPersistenceStore.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now.plusSeconds(9));
+
+        assertThat(status).isEqualTo(PersistenceStore.Status.OPEN);
+        verify(delegate, times(1)).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+    }
+
+    @Test
+    void admitCall_shouldAskDelegateForEveryCallDuringSlowStart() {
+        var now = Instant.now();
+        cachingPersistenceStore.configure(CircuitBreakerConfig.builder()
+                .withSlowStart(Duration.ofSeconds(30), SlowStartMode.LINEAR)
+                .build());
+        doReturn(PersistenceStore.Admission.RAMPING_UP, PersistenceStore.Admission.CLOSED)
+                .when(delegate).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+
+        var first = cachingPersistenceStore.admitCall(CIRCUIT_BREAKER_ID, now);
+        var second = cachingPersistenceStore.admitCall(CIRCUIT_BREAKER_ID, now.plusSeconds(1));
+        var status = cachingPersistenceStore.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now.plusSeconds(1));
+
+        assertThat(first).isEqualTo(PersistenceStore.Admission.RAMPING_UP);
+        assertThat(second).isEqualTo(PersistenceStore.Admission.CLOSED);
+        assertThat(status).isEqualTo(PersistenceStore.Status.CLOSED);
+        verify(delegate, times(2)).admitCall(eq(CIRCUIT_BREAKER_ID), any());
+    }
+
+    @Test
+    void fetchCircuitBreakerState_shouldNotKeepOpenStateBeyondExpiryOfRecord() {
+        var inMemoryStore = InMemoryPersistenceStore.builder().build();
+        var store = CachingPersistenceStore.builder()
+                .withDelegate(inMemoryStore)
+                .withPositiveTtl(Duration.ofSeconds(10))
+                .build();
+        var now = Instant.ofEpochSecond(Instant.now().getEpochSecond());
+        inMemoryStore.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.plusSeconds(2).getEpochSecond(), "The cause"), now);
+
+        var open = store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now);
+        var stillOpen = store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now.plusMillis(2999));
+        var halfOpen = store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now.plusSeconds(3));
+
+        assertThat(open).isEqualTo(PersistenceStore.Status.OPEN);
+        assertThat(stillOpen).isEqualTo(PersistenceStore.Status.OPEN);
+        assertThat(halfOpen).isEqualTo(PersistenceStore.Status.HALF_OPEN);
+    }
+
+    @Test
+    void saveCircuitBreakerOpen_shouldInvalidateCachedState() {
+        var now = Instant.now();
+        doReturn(PersistenceStore.Status.CLOSED).when(delegate).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+
+        cachingPersistenceStore.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now);
+        cachingPersistenceStore.saveCircuitBreakerOpen(CIRCUIT_BREAKER_ID, new RuntimeException("The cause"), now);
+        cachingPersistenceStore.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now);
+
+        verify(delegate).saveCircuitBreakerOpen(eq(CIRCUIT_BREAKER_ID), any(), eq(now));
+        verify(delegate, times(2)).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+    }
+
+    @Test
+    void fetchCircuitBreakerState_shouldEvictLeastRecentlyUsedEntry() {
+        var now = Instant.now();
+        doReturn(PersistenceStore.Status.CLOSED).when(delegate).fetchCircuitBreakerState(any(), any());
+
+        cachingPersistenceStore.fetchCircuitBreakerState("first", now);
+        cachingPersistenceStore.fetchCircuitBreakerState("second", now);
+        cachingPersistenceStore.fetchCircuitBreakerState("first", now);
+        cachingPersistenceStore.fetchCircuitBreakerState("third", now);
+        cachingPersistenceStore.fetchCircuitBreakerState("second", now);
+
+        verify(delegate, times(1)).fetchCircuitBreakerState(eq("first"), any());
+        verify(delegate, times(2)).fetchCircuitBreakerState(eq("second"), any());
+        verify(delegate, times(1)).fetchCircuitBreakerState(eq("third"), any());
+    }
+
+    @Test
+    void resetLocalState_shouldDropCachedStatesAndResetDelegate() {
+        var now = Instant.now();
+        doReturn(PersistenceStore.Status.OPEN).when(delegate).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+
+        cachingPersistenceStore.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now);
+        cachingPersistenceStore.resetLocalState();
+        cachingPersistenceStore.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now);
+
+        verify(delegate).resetLocalState();
+        verify(delegate, times(2)).fetchCircuitBreakerState(eq(CIRCUIT_BREAKER_ID), any());
+    }
+
+    @Test
+    void concurrencyLimitStore_shouldExposeCapabilitiesOfDelegate() {
+        var inMemoryStore = InMemoryPersistenceStore.builder().build();
+        var store = CachingPersistenceStore.builder()
+                .withDelegate(inMemoryStore)
+                .build();
+
+        assertThat(store.concurrencyLimitStore()).containsSame(inMemoryStore);
+        assertThat(BulkheadStore.of(store)).containsSame(inMemoryStore);
+        assertThat(cachingPersistenceStore.rateLimiterStore()).isEmpty();
+        assertThat(store).isNotInstanceOf(BulkheadStore.class);
+    }
+}
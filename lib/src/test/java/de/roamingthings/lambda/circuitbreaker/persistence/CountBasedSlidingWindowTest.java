@@ -0,0 +1,45 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CountBasedSlidingWindowTest {
+
+    @Test
+    void record_shouldCountCallsAndFailures() {
+        var window = new CountBasedSlidingWindow(4);
+
+        window.record(false, false);
+        window.record(true, false);
+        var statistics = window.record(true, false);
+
+        assertThat(statistics).isEqualTo(new CallStatistics(3, 2, 0));
+        assertThat(statistics.failureRate()).isEqualTo(200.0f / 3);
+    }
+
+    @Test
+    void record_shouldDropOldestOutcomeWhenWindowIsFull() {
+        var window = new CountBasedSlidingWindow(3);
+
+        window.record(true, false);
+        window.record(true, false);
+        window.record(false, false);
+        var statistics = window.record(false, false);
+
+        assertThat(statistics).isEqualTo(new CallStatistics(3, 1, 0));
+    }
+
+    @Test
+    void record_shouldCountSlowCalls() {
+        var window = new CountBasedSlidingWindow(3);
+
+        window.record(false, true);
+        window.record(true, true);
+        window.record(false, false);
+        var statistics = window.record(false, false);
+
+        assertThat(statistics).isEqualTo(new CallStatistics(3, 1, 1));
+        assertThat(statistics.slowCallRate()).isEqualTo(100.0f / 3);
+    }
+}
@@ -0,0 +1,113 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+
+@ExtendWith(MockitoExtension.class)
+class DynamoDBAsyncPersistenceStoreTest {
+
+    private static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+
+    @Mock
+    private DynamoDbAsyncClient dynamoDbClient;
+
+    private DynamoDBAsyncPersistenceStore store;
+
+    @BeforeEach
+    void setup() {
+        store = DynamoDBAsyncPersistenceStore.builder()
+                .withTableName("circuit_breaker_table")
+                .withDynamoDbClient(dynamoDbClient)
+                .build();
+    }
+
+    @Test
+    void fetchCircuitBreakerStateAsync_shouldReturnOpenForUnexpiredRecord() {
+        var now = Instant.now();
+        doReturn(CompletableFuture.completedFuture(GetItemResponse.builder()
+                .item(Map.of(
+                        "id", AttributeValue.fromS(CIRCUIT_BREAKER_ID),
+                        "status", AttributeValue.fromS("OPEN"),
+                        "expiration", AttributeValue.fromN(String.valueOf(now.plusSeconds(60).getEpochSecond()))
+                ))
+                .build())).when(dynamoDbClient).getItem(any(GetItemRequest.class));
+
+        var status = store.fetchCircuitBreakerStateAsync(CIRCUIT_BREAKER_ID, now).toCompletableFuture().join();
+
+        assertThat(status).isEqualTo(PersistenceStore.Status.OPEN);
+    }
+
+    @Test
+    void fetchCircuitBreakerStateAsync_shouldReturnClosedWithoutRecord() {
+        doReturn(CompletableFuture.completedFuture(GetItemResponse.builder().build()))
+                .when(dynamoDbClient).getItem(any(GetItemRequest.class));
+
+        var status = store.fetchCircuitBreakerStateAsync(CIRCUIT_BREAKER_ID, Instant.now()).toCompletableFuture().join();
+
+        assertThat(status).isEqualTo(PersistenceStore.Status.CLOSED);
+    }
+
+    @Test
+    void saveCircuitBreakerOpenAsync_shouldCompleteWhenWriteCompletes() {
+        var pendingPut = new CompletableFuture<PutItemResponse>();
+        doReturn(pendingPut).when(dynamoDbClient).putItem(any(PutItemRequest.class));
+
+        var write = store.saveCircuitBreakerOpenAsync(CIRCUIT_BREAKER_ID, new RuntimeException("The cause"), Instant.now())
+                .toCompletableFuture();
+
+        assertThat(write).isNotDone();
+        pendingPut.complete(PutItemResponse.builder().build());
+        store.flush();
+        assertThat(write).isCompletedWithValue(null);
+    }
+
+    @Test
+    void saveCircuitBreakerOpenAsync_shouldIgnoreAlreadyOpenCircuitBreaker() {
+        doReturn(CompletableFuture.failedFuture(ConditionalCheckFailedException.builder().message("Condition failed").build()))
+                .when(dynamoDbClient).putItem(any(PutItemRequest.class));
+
+        var write = store.saveCircuitBreakerOpenAsync(CIRCUIT_BREAKER_ID, new RuntimeException("The cause"), Instant.now())
+                .toCompletableFuture();
+
+        assertThat(write).isCompletedWithValue(null);
+    }
+
+    @Test
+    void acquireProbeLease_shouldReturnFalseWhenLeaseIsHeldByAnotherCaller() {
+        doReturn(CompletableFuture.failedFuture(ConditionalCheckFailedException.builder().message("Condition failed").build()))
+                .when(dynamoDbClient).updateItem(any(UpdateItemRequest.class));
+
+        var acquired = store.acquireProbeLease(CIRCUIT_BREAKER_ID, Instant.now());
+
+        assertThat(acquired).isFalse();
+    }
+
+    @Test
+    void acquireProbeLeaseAsync_shouldCompleteWithFalseWhenLeaseIsHeldByAnotherCaller() {
+        doReturn(CompletableFuture.failedFuture(ConditionalCheckFailedException.builder().message("Condition failed").build()))
+                .when(dynamoDbClient).updateItem(any(UpdateItemRequest.class));
+
+        var acquired = store.acquireProbeLeaseAsync(CIRCUIT_BREAKER_ID, Instant.now()).toCompletableFuture();
+
+        assertThat(acquired).isCompletedWithValue(false);
+    }
+}
@@ -0,0 +1,80 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.test.DynamoDBTestBase;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+
+class DynamoDBPersistenceStoreBulkheadTest extends DynamoDBTestBase {
+
+    @Test
+    void acquireBulkheadLease_shouldGrantLeasesUpToMaximum() {
+        var store = store();
+        var now = Instant.now();
+        var leaseExpiry = now.plusSeconds(30);
+
+        var first = store.acquireBulkheadLease("bulkhead-limit", "lease-1", 2, leaseExpiry, now);
+        var second = store.acquireBulkheadLease("bulkhead-limit", "lease-2", 2, leaseExpiry, now);
+        var third = store.acquireBulkheadLease("bulkhead-limit", "lease-3", 2, leaseExpiry, now);
+
+        assertSoftly(softly -> {
+            softly.assertThat(first).isTrue();
+            softly.assertThat(second).isTrue();
+            softly.assertThat(third).isFalse();
+            softly.assertThat(getItem("bulkhead-limit#bulkhead"))
+                    .containsEntry("inFlight", AttributeValue.fromN("2"))
+                    .containsEntry("lease_lease-1", AttributeValue.fromN(String.valueOf(leaseExpiry.getEpochSecond())))
+                    .containsEntry("expiration", AttributeValue.fromN(String.valueOf(leaseExpiry.getEpochSecond())));
+        });
+    }
+
+    @Test
+    void releaseBulkheadLease_shouldFreeLease() {
+        var store = store();
+        var now = Instant.now();
+        store.acquireBulkheadLease("bulkhead-release", "lease-1", 1, now.plusSeconds(30), now);
+
+        store.releaseBulkheadLease("bulkhead-release", "lease-1");
+        store.releaseBulkheadLease("bulkhead-release", "lease-1");
+
+        assertThat(getItem("bulkhead-release#bulkhead"))
+                .containsEntry("inFlight", AttributeValue.fromN("0"))
+                .doesNotContainKey("lease_lease-1");
+        assertThat(store.acquireBulkheadLease("bulkhead-release", "lease-2", 1, now.plusSeconds(30), now)).isTrue();
+    }
+
+    @Test
+    void acquireBulkheadLease_shouldRemoveExpiredLeasesWhenFull() {
+        var store = store();
+        var now = Instant.now();
+        store.acquireBulkheadLease("bulkhead-expired", "expired-lease", 1, now.minusSeconds(1), now.minusSeconds(31));
+
+        var granted = store.acquireBulkheadLease("bulkhead-expired", "lease", 1, now.plusSeconds(30), now);
+
+        assertThat(granted).isTrue();
+        assertThat(getItem("bulkhead-expired#bulkhead"))
+                .containsEntry("inFlight", AttributeValue.fromN("1"))
+                .doesNotContainKey("lease_expired-lease");
+    }
+
+    private DynamoDBPersistenceStore store() {
+        return DynamoDBPersistenceStore.builder()
+                .withTableName(TABLE_NAME)
+                .withDynamoDbClient(client)
+                .build();
+    }
+
+    private Map<String, AttributeValue> getItem(String key) {
+        return client.getItem(GetItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .key(Map.of("id", AttributeValue.fromS(key)))
+                .consistentRead(true)
+                .build()).item();
+    }
+}
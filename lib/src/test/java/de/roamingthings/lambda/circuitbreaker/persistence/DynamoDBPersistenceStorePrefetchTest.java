@@ -0,0 +1,84 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.test.DynamoDBTestBase;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+
+class DynamoDBPersistenceStorePrefetchTest extends DynamoDBTestBase {
+
+    private static final String STATIC_PK_VALUE = "circuitBreaker#prefetch-function";
+
+    @Test
+    void fetchRecord_shouldAnswerFromQueriedSnapshotWithSortKey() {
+        var store = DynamoDBPersistenceStore.builder()
+                .withTableName(TABLE_NAME_WITH_SORT_KEY)
+                .withSortKeyAttr("sk")
+                .withStaticPkValue(STATIC_PK_VALUE)
+                .withPrefetch(Duration.ofMinutes(1))
+                .withDynamoDbClient(client)
+                .build();
+        var expiry = Instant.now().plus(1, ChronoUnit.HOURS).getEpochSecond();
+        putItem(TABLE_NAME_WITH_SORT_KEY, Map.of(
+                "id", AttributeValue.fromS(STATIC_PK_VALUE),
+                "sk", AttributeValue.fromS("first"),
+                "status", AttributeValue.fromS("OPEN"),
+                "expiration", AttributeValue.fromN(String.valueOf(expiry))
+        ));
+
+        var first = store.fetchRecord("first");
+        // Written behind the back of the store: not part of the snapshot
+        putItem(TABLE_NAME_WITH_SORT_KEY, Map.of(
+                "id", AttributeValue.fromS(STATIC_PK_VALUE),
+                "sk", AttributeValue.fromS("second"),
+                "status", AttributeValue.fromS("OPEN"),
+                "expiration", AttributeValue.fromN(String.valueOf(expiry))
+        ));
+        var secondFromSnapshot = store.fetchRecord("second");
+        store.flush();
+        var secondAfterFlush = store.fetchRecord("second");
+
+        assertSoftly(softly -> {
+            softly.assertThat(first).isPresent();
+            softly.assertThat(secondFromSnapshot).isEmpty();
+            softly.assertThat(secondAfterFlush).isPresent();
+        });
+    }
+
+    @Test
+    void fetchRecord_shouldBatchGetKnownCircuitBreakersWithoutSortKey() {
+        var store = DynamoDBPersistenceStore.builder()
+                .withTableName(TABLE_NAME)
+                .withPrefetch(Duration.ofMinutes(1))
+                .withDynamoDbClient(client)
+                .build();
+        var expiry = Instant.now().plus(1, ChronoUnit.HOURS).getEpochSecond();
+
+        // First invocation: circuit breakers become known
+        assertThat(store.fetchRecord("batchFirst")).isEmpty();
+        assertThat(store.fetchRecord("batchSecond")).isEmpty();
+        store.flush();
+        putItem(TABLE_NAME, Map.of(
+                "id", AttributeValue.fromS("batchSecond"),
+                "status", AttributeValue.fromS("OPEN"),
+                "expiration", AttributeValue.fromN(String.valueOf(expiry))
+        ));
+
+        // Second invocation: both are loaded with the first fetch
+        assertThat(store.fetchRecord("batchFirst")).isEmpty();
+        assertThat(store.fetchRecord("batchSecond")).isPresent();
+    }
+
+    private static void putItem(String tableName, Map<String, AttributeValue> item) {
+        client.putItem(PutItemRequest.builder().tableName(tableName).item(new HashMap<>(item)).build());
+    }
+}
@@ -0,0 +1,71 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.test.DynamoDBTestBase;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+
+class DynamoDBPersistenceStoreRateLimiterTest extends DynamoDBTestBase {
+
+    @Test
+    void acquirePermits_shouldTakePermitsFromNewBucket() {
+        var store = store();
+        var now = Instant.ofEpochMilli(1_700_000_000_000L);
+
+        var permits = store.acquirePermits("rate-limiter-new", 10, 5, 3, now);
+
+        var item = getItem("rate-limiter-new#ratelimit");
+        assertSoftly(softly -> {
+            softly.assertThat(permits).isEqualTo(3);
+            softly.assertThat(Double.parseDouble(item.get("tokens").n())).isEqualTo(2.0);
+            softly.assertThat(item)
+                    .containsEntry("refilledAt", AttributeValue.fromN("1700000000000"))
+                    .containsEntry("expiration", AttributeValue.fromN("1700000001"));
+        });
+    }
+
+    @Test
+    void acquirePermits_shouldShareBucketBetweenContainers() {
+        var store = store();
+        var otherStore = store();
+        var now = Instant.now();
+
+        var first = store.acquirePermits("rate-limiter-shared", 10, 5, 4, now);
+        var second = otherStore.acquirePermits("rate-limiter-shared", 10, 5, 4, now);
+        var third = store.acquirePermits("rate-limiter-shared", 10, 5, 4, now);
+
+        assertThat(new int[]{first, second, third}).containsExactly(4, 1, 0);
+    }
+
+    @Test
+    void acquirePermits_shouldRefillBucket() {
+        var store = store();
+        var now = Instant.now();
+        store.acquirePermits("rate-limiter-refill", 10, 5, 5, now);
+
+        var permits = store.acquirePermits("rate-limiter-refill", 10, 5, 5, now.plusMillis(300));
+
+        assertThat(permits).isEqualTo(3);
+    }
+
+    private DynamoDBPersistenceStore store() {
+        return DynamoDBPersistenceStore.builder()
+                .withTableName(TABLE_NAME)
+                .withDynamoDbClient(client)
+                .build();
+    }
+
+    private Map<String, AttributeValue> getItem(String key) {
+        return client.getItem(GetItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .key(Map.of("id", AttributeValue.fromS(key)))
+                .consistentRead(true)
+                .build()).item();
+    }
+}
@@ -0,0 +1,101 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class DynamoDBPersistenceStoreReadConsistencyTest {
+
+    private static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    @Test
+    void fetchRecord_shouldReadStronglyConsistentByDefault() {
+        var store = storeWith(DynamoDBPersistenceStore.ReadConsistency.STRONG);
+        doReturn(GetItemResponse.builder().build()).when(dynamoDbClient).getItem(any(GetItemRequest.class));
+
+        store.fetchRecord(CIRCUIT_BREAKER_ID);
+
+        assertThat(capturedConsistentReads(1)).containsExactly(true);
+    }
+
+    @Test
+    void fetchRecord_shouldReadEventuallyConsistent() {
+        var store = storeWith(DynamoDBPersistenceStore.ReadConsistency.EVENTUAL);
+        doReturn(GetItemResponse.builder().build()).when(dynamoDbClient).getItem(any(GetItemRequest.class));
+
+        store.fetchRecord(CIRCUIT_BREAKER_ID);
+
+        assertThat(capturedConsistentReads(1)).containsExactly(false);
+    }
+
+    @Test
+    void fetchRecord_shouldReadEventuallyConsistentWhileClosedInAdaptiveMode() {
+        var store = storeWith(DynamoDBPersistenceStore.ReadConsistency.ADAPTIVE);
+        doReturn(GetItemResponse.builder().build()).when(dynamoDbClient).getItem(any(GetItemRequest.class));
+
+        store.fetchRecord(CIRCUIT_BREAKER_ID);
+        store.fetchRecord(CIRCUIT_BREAKER_ID);
+
+        assertThat(capturedConsistentReads(2)).containsExactly(false, false);
+    }
+
+    @Test
+    void fetchRecord_shouldReadStronglyConsistentAfterLocalFailureInAdaptiveMode() {
+        var store = storeWith(DynamoDBPersistenceStore.ReadConsistency.ADAPTIVE);
+        doReturn(GetItemResponse.builder().build()).when(dynamoDbClient).getItem(any(GetItemRequest.class));
+
+        store.onLocalFailure(CIRCUIT_BREAKER_ID, Instant.now());
+        store.fetchRecord(CIRCUIT_BREAKER_ID);
+
+        assertThat(capturedConsistentReads(1)).containsExactly(true);
+    }
+
+    @Test
+    void fetchRecord_shouldReadStronglyConsistentNearKnownExpiryInAdaptiveMode() {
+        var store = storeWith(DynamoDBPersistenceStore.ReadConsistency.ADAPTIVE);
+        var expiry = Instant.now().getEpochSecond() + 1;
+        doReturn(GetItemResponse.builder().item(Map.of(
+                "id", AttributeValue.fromS(CIRCUIT_BREAKER_ID),
+                "status", AttributeValue.fromS("OPEN"),
+                "expiration", AttributeValue.fromN(String.valueOf(expiry))
+        )).build()).when(dynamoDbClient).getItem(any(GetItemRequest.class));
+
+        store.fetchRecord(CIRCUIT_BREAKER_ID);
+        store.fetchRecord(CIRCUIT_BREAKER_ID);
+
+        assertThat(capturedConsistentReads(2)).containsExactly(false, true);
+    }
+
+    private DynamoDBPersistenceStore storeWith(DynamoDBPersistenceStore.ReadConsistency readConsistency) {
+        return DynamoDBPersistenceStore.builder()
+                .withTableName("circuit_breaker_table")
+                .withReadConsistency(readConsistency)
+                .withDynamoDbClient(dynamoDbClient)
+                .build();
+    }
+
+    private Iterable<Boolean> capturedConsistentReads(int times) {
+        var requestCaptor = ArgumentCaptor.forClass(GetItemRequest.class);
+        verify(dynamoDbClient, times(times)).getItem(requestCaptor.capture());
+        return requestCaptor.getAllValues().stream().map(GetItemRequest::consistentRead).toList();
+    }
+}
@@ -0,0 +1,164 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.test.DynamoDBTestBase;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class DynamoDBPersistenceStoreShardingTest extends DynamoDBTestBase {
+
+    private static final int SHARDS = 4;
+
+    @Test
+    void createRecord_shouldWriteOpenRecordToAllShards() {
+        var store = shardedStore();
+        var now = Instant.now();
+        var expiry = now.plus(1, ChronoUnit.HOURS).getEpochSecond();
+
+        store.createRecord(new CircuitBreakerStatusRecord("sharded-open", PersistenceStore.Status.OPEN, expiry, "The cause"), now);
+
+        assertSoftly(softly -> {
+            for (var shard = 0; shard < SHARDS; shard++) {
+                var item = getItem("sharded-open#" + shard);
+                softly.assertThat(item).containsEntry("status", AttributeValue.fromS("OPEN"));
+                softly.assertThat(item).containsEntry("expiration", AttributeValue.fromN(String.valueOf(expiry)));
+            }
+        });
+    }
+
+    @Test
+    void createRecord_shouldNotReplaceUnexpiredOpenShards() {
+        var store = shardedStore();
+        var now = Instant.now();
+        var expiry = now.plus(1, ChronoUnit.HOURS).getEpochSecond();
+        store.createRecord(new CircuitBreakerStatusRecord("sharded-reopen", PersistenceStore.Status.OPEN, expiry, "first"), now);
+
+        store.createRecord(new CircuitBreakerStatusRecord("sharded-reopen", PersistenceStore.Status.OPEN, expiry + 60, "second"), now);
+
+        assertThat(getItem("sharded-reopen#" + (SHARDS - 1))).containsEntry("cause", AttributeValue.fromS("first"));
+    }
+
+    @Test
+    void fetchRecord_shouldReadRecordFromShardOfContainer() {
+        var store = shardedStore();
+        var now = Instant.now();
+        var expiry = now.plus(1, ChronoUnit.HOURS).getEpochSecond();
+        store.createRecord(new CircuitBreakerStatusRecord("sharded-fetch", PersistenceStore.Status.OPEN, expiry, "The cause"), now);
+
+        var statusRecord = store.fetchRecord("sharded-fetch");
+
+        assertThat(statusRecord).hasValueSatisfying(fetched -> {
+            assertThat(fetched.circuitBreakerId()).isEqualTo("sharded-fetch");
+            assertThat(fetched.status()).isEqualTo(PersistenceStore.Status.OPEN);
+        });
+    }
+
+    @Test
+    void acquireProbeLease_shouldGrantSingleLeaseAcrossShards() {
+        var store = shardedStore();
+        var now = Instant.now();
+        store.createRecord(new CircuitBreakerStatusRecord("sharded-probe", PersistenceStore.Status.OPEN, now.minusSeconds(10).getEpochSecond(), "The cause"), now.minusSeconds(20));
+
+        var first = store.acquireProbeLease("sharded-probe", now);
+        var second = shardedStore().acquireProbeLease("sharded-probe", now);
+
+        assertSoftly(softly -> {
+            softly.assertThat(first).isTrue();
+            softly.assertThat(second).isFalse();
+            softly.assertThat(getItem("sharded-probe#0")).containsEntry("status", AttributeValue.fromS("HALF_OPEN"));
+        });
+    }
+
+    @Test
+    void admitCall_shouldRejectReaderOfAnyShardWithoutWriteWhileProbeLeaseIsHeld() {
+        var store = shardedStore();
+        var now = Instant.now();
+        store.createRecord(new CircuitBreakerStatusRecord("sharded-lease", PersistenceStore.Status.OPEN, now.minusSeconds(10).getEpochSecond(), "The cause"), now.minusSeconds(20));
+        store.acquireProbeLease("sharded-lease", now);
+        var readerClient = mock(DynamoDbClient.class, AdditionalAnswers.delegatesTo(client));
+        var reader = DynamoDBPersistenceStore.builder()
+                .withTableName(TABLE_NAME)
+                .withShards(SHARDS)
+                .withDynamoDbClient(readerClient)
+                .build();
+
+        var admission = reader.admitCall("sharded-lease", now);
+
+        assertSoftly(softly -> {
+            softly.assertThat(admission).isEqualTo(PersistenceStore.Admission.OPEN);
+            for (var shard = 0; shard < SHARDS; shard++) {
+                softly.assertThat(getItem("sharded-lease#" + shard)).containsEntry("status", AttributeValue.fromS("HALF_OPEN"));
+            }
+        });
+        verify(readerClient, never()).updateItem(any(UpdateItemRequest.class));
+        verify(readerClient, never()).transactWriteItems(any(TransactWriteItemsRequest.class));
+    }
+
+    @Test
+    void saveCircuitBreakerClosed_shouldDeleteAllShards() {
+        var store = shardedStore();
+        var now = Instant.now();
+        store.createRecord(new CircuitBreakerStatusRecord("sharded-close", PersistenceStore.Status.OPEN, now.minusSeconds(1).getEpochSecond(), "The cause"), now.minusSeconds(10));
+        store.acquireProbeLease("sharded-close", now);
+
+        store.saveCircuitBreakerClosed("sharded-close", now, now);
+
+        assertSoftly(softly -> {
+            for (var shard = 0; shard < SHARDS; shard++) {
+                softly.assertThat(getItem("sharded-close#" + shard)).isEmpty();
+            }
+        });
+    }
+
+    @Test
+    void selectReadShard_shouldBeStablePerLogStream() {
+        var shard = DynamoDBPersistenceStore.selectReadShard("2023/11/01/[$LATEST]abcdef", SHARDS);
+
+        assertThat(DynamoDBPersistenceStore.selectReadShard("2023/11/01/[$LATEST]abcdef", SHARDS)).isEqualTo(shard);
+        assertThat(shard).isBetween(0, SHARDS - 1);
+        assertThat(DynamoDBPersistenceStore.selectReadShard(null, 1)).isZero();
+    }
+
+    @Test
+    void build_shouldRejectShardsWithSortKey() {
+        assertThatThrownBy(() -> DynamoDBPersistenceStore.builder()
+                .withTableName(TABLE_NAME_WITH_SORT_KEY)
+                .withSortKeyAttr("sk")
+                .withShards(SHARDS)
+                .withDynamoDbClient(client)
+                .build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private DynamoDBPersistenceStore shardedStore() {
+        return DynamoDBPersistenceStore.builder()
+                .withTableName(TABLE_NAME)
+                .withShards(SHARDS)
+                .withDynamoDbClient(client)
+                .build();
+    }
+
+    private Map<String, AttributeValue> getItem(String key) {
+        return client.getItem(GetItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .key(Map.of("id", AttributeValue.fromS(key)))
+                .consistentRead(true)
+                .build()).item();
+    }
+}
@@ -1,5 +1,6 @@
 package de.roamingthings.lambda.circuitbreaker.persistence;
 
+import de.roamingthings.lambda.circuitbreaker.AdaptiveConcurrency;
 import de.roamingthings.lambda.circuitbreaker.test.DynamoDBTestBase;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -134,4 +135,217 @@ class DynamoDBPersistenceStoreTest extends DynamoDBTestBase {
                     .isEqualTo(statusRecord);
         });
     }
+
+    @Test
+    void fetchCircuitBreakerState_shouldReturnHalfOpenForExpiredOpenRecord() {
+        var now = Instant.now();
+        var circuitBreakerId = "halfOpenCircuitBreaker";
+        key = Collections.singletonMap("id", AttributeValue.fromS(circuitBreakerId));
+        dynamoDBPersistenceStore.createRecord(new CircuitBreakerStatusRecord(
+                        circuitBreakerId,
+                        PersistenceStore.Status.OPEN,
+                        now.minus(30, ChronoUnit.SECONDS).getEpochSecond(),
+                        "The cause"),
+                now.minus(1, ChronoUnit.HOURS)
+        );
+
+        var status = dynamoDBPersistenceStore.fetchCircuitBreakerState(circuitBreakerId, now);
+
+        assertThat(status).isEqualTo(PersistenceStore.Status.HALF_OPEN);
+    }
+
+    @Test
+    void acquireProbeLease_shouldGrantLeaseToSingleCaller() {
+        var now = Instant.now();
+        var circuitBreakerId = "probedCircuitBreaker";
+        key = Collections.singletonMap("id", AttributeValue.fromS(circuitBreakerId));
+        dynamoDBPersistenceStore.createRecord(new CircuitBreakerStatusRecord(
+                        circuitBreakerId,
+                        PersistenceStore.Status.OPEN,
+                        now.minus(30, ChronoUnit.SECONDS).getEpochSecond(),
+                        "The cause"),
+                now.minus(1, ChronoUnit.HOURS)
+        );
+
+        var firstLease = dynamoDBPersistenceStore.acquireProbeLease(circuitBreakerId, now);
+        var secondLease = dynamoDBPersistenceStore.acquireProbeLease(circuitBreakerId, now);
+
+        var itemInDb = client.getItem(GetItemRequest.builder().tableName(TABLE_NAME).key(key).build()).item();
+        assertSoftly(softly -> {
+            softly.assertThat(firstLease).isTrue();
+            softly.assertThat(secondLease).isFalse();
+            softly.assertThat(itemInDb.get("status").s()).isEqualTo("HALF_OPEN");
+            softly.assertThat(dynamoDBPersistenceStore.fetchCircuitBreakerState(circuitBreakerId, now))
+                    .isEqualTo(PersistenceStore.Status.OPEN);
+        });
+    }
+
+    @Test
+    void acquireProbeLease_shouldNotGrantLeaseForOpenRecord() {
+        var now = Instant.now();
+        var circuitBreakerId = "openCircuitBreaker";
+        key = Collections.singletonMap("id", AttributeValue.fromS(circuitBreakerId));
+        dynamoDBPersistenceStore.createRecord(new CircuitBreakerStatusRecord(
+                        circuitBreakerId,
+                        PersistenceStore.Status.OPEN,
+                        now.plus(1, ChronoUnit.HOURS).getEpochSecond(),
+                        "The cause"),
+                now
+        );
+
+        assertThat(dynamoDBPersistenceStore.acquireProbeLease(circuitBreakerId, now)).isFalse();
+    }
+
+    @Test
+    void createRecord_shouldReopenHalfOpenRecord() {
+        var now = Instant.now();
+        var circuitBreakerId = "reopenedCircuitBreaker";
+        key = Collections.singletonMap("id", AttributeValue.fromS(circuitBreakerId));
+        dynamoDBPersistenceStore.createRecord(new CircuitBreakerStatusRecord(
+                        circuitBreakerId,
+                        PersistenceStore.Status.HALF_OPEN,
+                        now.plus(1, ChronoUnit.MINUTES).getEpochSecond(),
+                        null),
+                now
+        );
+        var expiry = now.plus(1, ChronoUnit.HOURS).getEpochSecond();
+
+        dynamoDBPersistenceStore.createRecord(new CircuitBreakerStatusRecord(
+                        circuitBreakerId,
+                        PersistenceStore.Status.OPEN,
+                        expiry,
+                        "The cause"),
+                now
+        );
+
+        var itemInDb = client.getItem(GetItemRequest.builder().tableName(TABLE_NAME).key(key).build()).item();
+        assertThat(itemInDb.get("status").s()).isEqualTo("OPEN");
+        assertThat(itemInDb.get("expiration").n()).isEqualTo(String.valueOf(expiry));
+    }
+
+    @Test
+    void saveCircuitBreakerClosed_shouldDeleteRecord() {
+        var now = Instant.now();
+        var circuitBreakerId = "closedCircuitBreaker";
+        key = Collections.singletonMap("id", AttributeValue.fromS(circuitBreakerId));
+        dynamoDBPersistenceStore.createRecord(new CircuitBreakerStatusRecord(
+                        circuitBreakerId,
+                        PersistenceStore.Status.OPEN,
+                        now.minusSeconds(1).getEpochSecond(),
+                        "The cause"),
+                now.minusSeconds(10)
+        );
+        dynamoDBPersistenceStore.acquireProbeLease(circuitBreakerId, now);
+
+        var closed = dynamoDBPersistenceStore.saveCircuitBreakerClosed(circuitBreakerId, now, now);
+
+        assertThat(closed).isTrue();
+        assertThat(dynamoDBPersistenceStore.fetchRecord(circuitBreakerId)).isEmpty();
+    }
+
+    @Test
+    void saveCircuitBreakerClosed_shouldNotDeleteRecordAfterProbeLeaseHasBeenLost() {
+        var now = Instant.now();
+        var later = now.plusSeconds(120);
+        var circuitBreakerId = "reopenedCircuitBreaker";
+        key = Collections.singletonMap("id", AttributeValue.fromS(circuitBreakerId));
+        dynamoDBPersistenceStore.createRecord(new CircuitBreakerStatusRecord(
+                        circuitBreakerId,
+                        PersistenceStore.Status.OPEN,
+                        now.minusSeconds(1).getEpochSecond(),
+                        "The cause"),
+                now.minusSeconds(10)
+        );
+        dynamoDBPersistenceStore.acquireProbeLease(circuitBreakerId, now);
+        dynamoDBPersistenceStore.acquireProbeLease(circuitBreakerId, later);
+        dynamoDBPersistenceStore.saveCircuitBreakerOpen(circuitBreakerId, new RuntimeException("Probe failed"), later);
+
+        var closed = dynamoDBPersistenceStore.saveCircuitBreakerClosed(circuitBreakerId, now, later);
+
+        assertThat(closed).isFalse();
+        assertThat(dynamoDBPersistenceStore.fetchRecord(circuitBreakerId)).hasValueSatisfying(statusRecord ->
+                assertThat(statusRecord.status()).isEqualTo(PersistenceStore.Status.OPEN));
+    }
+
+    @Test
+    void addToSlidingWindow_shouldSumUpBucketsWithinWindow() {
+        var circuitBreakerId = "slidingWindowCircuitBreaker";
+        key = Collections.singletonMap("id", AttributeValue.fromS(circuitBreakerId + "#window"));
+        var bucket = Instant.now().getEpochSecond();
+
+        dynamoDBPersistenceStore.addToSlidingWindow(circuitBreakerId, Map.of(bucket - 20, new CallStatistics(5, 5, 0)), bucket - 20, 10);
+        dynamoDBPersistenceStore.addToSlidingWindow(circuitBreakerId, Map.of(bucket - 1, new CallStatistics(1, 0, 0)), bucket - 1, 10);
+        var statistics = dynamoDBPersistenceStore.addToSlidingWindow(circuitBreakerId, Map.of(bucket, new CallStatistics(1, 1, 0)), bucket, 10);
+
+        assertThat(statistics).isEqualTo(new CallStatistics(2, 1, 0));
+    }
+
+    @Test
+    void addToSlidingWindow_shouldRemoveBucketsOutsideOfWindow() {
+        var circuitBreakerId = "staleSlidingWindowCircuitBreaker";
+        key = Collections.singletonMap("id", AttributeValue.fromS(circuitBreakerId + "#window"));
+        var bucket = Instant.now().getEpochSecond();
+
+        dynamoDBPersistenceStore.addToSlidingWindow(circuitBreakerId, Map.of(bucket - 20, new CallStatistics(5, 5, 0)), bucket - 20, 10);
+        dynamoDBPersistenceStore.addToSlidingWindow(circuitBreakerId, Map.of(bucket - 1, new CallStatistics(1, 0, 0)), bucket - 1, 10);
+        dynamoDBPersistenceStore.addToSlidingWindow(circuitBreakerId, Map.of(bucket, new CallStatistics(1, 1, 0)), bucket, 10);
+
+        var itemInDb = client.getItem(GetItemRequest.builder().tableName(TABLE_NAME).key(key).build()).item();
+        assertThat(itemInDb).doesNotContainKey("calls_" + (bucket - 20));
+        assertThat(itemInDb.get("calls_" + bucket).n()).isEqualTo("1");
+    }
+
+    @Test
+    void addToSlidingWindow_shouldAddAllBucketsInSingleUpdate() {
+        var circuitBreakerId = "batchedSlidingWindowCircuitBreaker";
+        key = Collections.singletonMap("id", AttributeValue.fromS(circuitBreakerId + "#window"));
+        var bucket = Instant.now().getEpochSecond();
+
+        var statistics = dynamoDBPersistenceStore.addToSlidingWindow(circuitBreakerId, Map.of(
+                bucket - 2, new CallStatistics(10, 1, 0),
+                bucket - 1, new CallStatistics(20, 2, 0),
+                bucket, new CallStatistics(30, 3, 0)
+        ), bucket, 10);
+
+        assertThat(statistics).isEqualTo(new CallStatistics(60, 6, 0));
+    }
+
+    @Test
+    void addToConcurrencyLimit_shouldStartAtInitialLimitAndAddDeltas() {
+        var circuitBreakerId = "adaptiveLimitCircuitBreaker";
+        key = Collections.singletonMap("id", AttributeValue.fromS(circuitBreakerId + "#limit"));
+        var settings = AdaptiveConcurrency.builder().withInitialLimit(20).build();
+        var now = Instant.now();
+
+        var initial = dynamoDBPersistenceStore.addToConcurrencyLimit(circuitBreakerId, 0, settings, now);
+        var increased = dynamoDBPersistenceStore.addToConcurrencyLimit(circuitBreakerId, 1.5, settings, now);
+        var decreased = dynamoDBPersistenceStore.addToConcurrencyLimit(circuitBreakerId, -4.25, settings, now);
+
+        assertSoftly(softly -> {
+            softly.assertThat(initial).isEqualTo(20.0);
+            softly.assertThat(increased).isEqualTo(21.5);
+            softly.assertThat(decreased).isEqualTo(17.25);
+        });
+    }
+
+    @Test
+    void addToConcurrencyLimit_shouldBoundLimitChangedByAnotherContainer() {
+        var circuitBreakerId = "boundedLimitCircuitBreaker";
+        key = Collections.singletonMap("id", AttributeValue.fromS(circuitBreakerId + "#limit"));
+        var settings = AdaptiveConcurrency.builder().withInitialLimit(4).withLimits(2, 10).build();
+        var otherContainer = DynamoDBPersistenceStore.builder()
+                .withTableName(TABLE_NAME)
+                .withDynamoDbClient(client)
+                .build();
+        var now = Instant.now();
+
+        dynamoDBPersistenceStore.addToConcurrencyLimit(circuitBreakerId, -2, settings, now);
+        var decreased = otherContainer.addToConcurrencyLimit(circuitBreakerId, -2, settings, now);
+        var increased = dynamoDBPersistenceStore.addToConcurrencyLimit(circuitBreakerId, 20, settings, now);
+
+        assertSoftly(softly -> {
+            softly.assertThat(decreased).isEqualTo(2.0);
+            softly.assertThat(increased).isEqualTo(10.0);
+        });
+    }
 }
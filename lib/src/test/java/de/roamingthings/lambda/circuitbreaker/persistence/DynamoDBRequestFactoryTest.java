@@ -0,0 +1,84 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DynamoDBRequestFactoryTest {
+
+    private static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+
+    private final DynamoDBRequestFactory requests = new DynamoDBRequestFactory(
+            "circuit_breaker_table", "id", "circuitBreaker#function", null, "expiration", "status", "cause");
+
+    private final DynamoDBRequestFactory requestsWithSortKey = new DynamoDBRequestFactory(
+            "circuit_breaker_table", "id", "circuitBreaker#function", "sk", "expiration", "status", "cause");
+
+    @Test
+    void createKey_shouldReturnCachedKey() {
+        var key = requests.createKey(CIRCUIT_BREAKER_ID);
+
+        assertThat(key).isEqualTo(Map.of("id", AttributeValue.fromS(CIRCUIT_BREAKER_ID)));
+        assertThat(requests.createKey(CIRCUIT_BREAKER_ID)).isSameAs(key);
+    }
+
+    @Test
+    void createKey_shouldUseStaticPartitionKeyWithSortKey() {
+        var key = requestsWithSortKey.createKey(CIRCUIT_BREAKER_ID);
+
+        assertThat(key).isEqualTo(Map.of(
+                "id", AttributeValue.fromS("circuitBreaker#function"),
+                "sk", AttributeValue.fromS(CIRCUIT_BREAKER_ID)
+        ));
+    }
+
+    @Test
+    void createRecordRequest_shouldReuseExpressionAttributeNames() {
+        var statusRecord = new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, 42, "cause");
+
+        var first = requests.createRecordRequest(statusRecord, Instant.ofEpochSecond(1));
+        var second = requests.createRecordRequest(statusRecord, Instant.ofEpochSecond(2));
+
+        assertThat(first.expressionAttributeNames())
+                .isEqualTo(Map.of("#id", "id", "#expiry", "expiration", "#status", "status"))
+                .isEqualTo(second.expressionAttributeNames());
+        assertThat(first.expressionAttributeValues().get(":now")).isEqualTo(AttributeValue.fromN("1"));
+        assertThat(second.expressionAttributeValues().get(":now")).isEqualTo(AttributeValue.fromN("2"));
+    }
+
+    @Test
+    void itemToRecord_shouldMapItemCreatedFromRecord() {
+        var statusRecord = new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.HALF_OPEN, 42, "cause");
+
+        assertThat(requests.itemToRecord(requests.recordToItem(statusRecord))).isEqualTo(statusRecord);
+        assertThat(requestsWithSortKey.itemToRecord(requestsWithSortKey.recordToItem(statusRecord))).isEqualTo(statusRecord);
+    }
+
+    @Test
+    void itemToRecord_shouldMapClosedTimestamp() {
+        var statusRecord = new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.CLOSED, 42, null, 41_500L);
+
+        assertThat(requests.recordToItem(statusRecord)).containsEntry("closedAt", AttributeValue.fromN("41500"));
+        assertThat(requests.itemToRecord(requests.recordToItem(statusRecord))).isEqualTo(statusRecord);
+    }
+
+    @Test
+    void updateRecordRequest_shouldRemoveCauseOfClosedRecord() {
+        var statusRecord = new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.CLOSED, 42, null, 41_500L);
+        var probeRecord = new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.HALF_OPEN, 40, null);
+
+        var request = requests.updateRecordRequest(statusRecord, probeRecord);
+
+        assertThat(request.updateExpression()).endsWith("REMOVE #cause");
+        assertThat(request.expressionAttributeValues())
+                .doesNotContainKey(":cause")
+                .containsEntry(":closed", AttributeValue.fromN("41500"))
+                .containsEntry(":status", AttributeValue.fromS("CLOSED"))
+                .containsEntry(":probeExpiry", AttributeValue.fromN("40"));
+        assertThat(request.conditionExpression()).isEqualTo("#status = :halfOpen AND #expiry = :probeExpiry");
+    }
+}
@@ -0,0 +1,250 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.SlowStartMode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryPersistenceStoreTest {
+
+    private static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+
+    private InMemoryPersistenceStore store;
+
+    @BeforeEach
+    void setup() {
+        store = InMemoryPersistenceStore.builder().build();
+        store.configure(CircuitBreakerConfig.builder()
+                .withExpiration(Duration.ofSeconds(60))
+                .build());
+    }
+
+    @Test
+    void saveCircuitBreakerOpen_shouldOpenCircuitBreaker() {
+        var now = Instant.now();
+
+        store.saveCircuitBreakerOpen(CIRCUIT_BREAKER_ID, new RuntimeException("The cause"), now);
+
+        assertThat(store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now)).isEqualTo(PersistenceStore.Status.OPEN);
+        assertThat(store.fetchRecord(CIRCUIT_BREAKER_ID)).hasValueSatisfying(statusRecord ->
+                assertThat(statusRecord.cause()).isEqualTo("The cause"));
+    }
+
+    @Test
+    void createRecord_shouldNotReplaceUnexpiredOpenRecord() {
+        var now = Instant.now();
+        var existing = new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.plusSeconds(60).getEpochSecond(), "first");
+
+        store.createRecord(existing, now);
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.plusSeconds(120).getEpochSecond(), "second"), now);
+
+        assertThat(store.fetchRecord(CIRCUIT_BREAKER_ID)).contains(existing);
+    }
+
+    @Test
+    void createRecord_shouldReplaceExpiredRecord() {
+        var now = Instant.now();
+        var replacement = new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.plusSeconds(60).getEpochSecond(), "second");
+
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.minusSeconds(10).getEpochSecond(), "first"), now.minusSeconds(20));
+        store.createRecord(replacement, now);
+
+        assertThat(store.fetchRecord(CIRCUIT_BREAKER_ID)).contains(replacement);
+    }
+
+    @Test
+    void acquireProbeLease_shouldBeGrantedToASingleConcurrentCaller() throws Exception {
+        var now = Instant.now();
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.minusSeconds(1).getEpochSecond(), "The cause"), now.minusSeconds(10));
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var attempts = new ArrayList<Future<Boolean>>();
+            for (var i = 0; i < 32; i++) {
+                attempts.add(executor.submit((Callable<Boolean>) () -> store.acquireProbeLease(CIRCUIT_BREAKER_ID, now)));
+            }
+            var granted = 0;
+            for (var attempt : attempts) {
+                granted += attempt.get() ? 1 : 0;
+            }
+
+            assertThat(granted).isEqualTo(1);
+            assertThat(store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now)).isEqualTo(PersistenceStore.Status.OPEN);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void fetchCircuitBreakerState_shouldReportHalfOpenOnlyOnceProbeLeaseCanBeAcquired() {
+        var expiry = Instant.now().getEpochSecond();
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, expiry, "The cause"), Instant.ofEpochSecond(expiry - 60));
+        var withinExpirySecond = Instant.ofEpochSecond(expiry, 500_000_000);
+        var afterExpirySecond = Instant.ofEpochSecond(expiry + 1);
+
+        assertThat(store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, withinExpirySecond)).isEqualTo(PersistenceStore.Status.OPEN);
+        assertThat(store.acquireProbeLease(CIRCUIT_BREAKER_ID, withinExpirySecond)).isFalse();
+        assertThat(store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, afterExpirySecond)).isEqualTo(PersistenceStore.Status.HALF_OPEN);
+        assertThat(store.acquireProbeLease(CIRCUIT_BREAKER_ID, afterExpirySecond)).isTrue();
+    }
+
+    @Test
+    void fetchRecord_shouldSweepRecordPastRetention() {
+        var store = InMemoryPersistenceStore.builder()
+                .withRetention(Duration.ZERO)
+                .build();
+        var now = Instant.now();
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.minusSeconds(10).getEpochSecond(), "The cause"), now.minusSeconds(20));
+
+        assertThat(store.fetchRecord(CIRCUIT_BREAKER_ID)).isEmpty();
+        assertThat(store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now)).isEqualTo(PersistenceStore.Status.CLOSED);
+    }
+
+    @Test
+    void saveCircuitBreakerClosed_shouldDeleteRecord() {
+        var now = Instant.now();
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.minusSeconds(1).getEpochSecond(), "The cause"), now.minusSeconds(10));
+        store.acquireProbeLease(CIRCUIT_BREAKER_ID, now);
+
+        var closed = store.saveCircuitBreakerClosed(CIRCUIT_BREAKER_ID, now, now);
+
+        assertThat(closed).isTrue();
+        assertThat(store.fetchRecord(CIRCUIT_BREAKER_ID)).isEmpty();
+    }
+
+    @Test
+    void saveCircuitBreakerClosed_shouldNotDeleteRecordAfterProbeLeaseHasBeenLost() {
+        var now = Instant.now();
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.minusSeconds(1).getEpochSecond(), "The cause"), now.minusSeconds(10));
+        store.acquireProbeLease(CIRCUIT_BREAKER_ID, now);
+        // Another caller has taken over the expired lease and tripped the circuit breaker again
+        var later = now.plusSeconds(120);
+        store.acquireProbeLease(CIRCUIT_BREAKER_ID, later);
+        store.saveCircuitBreakerOpen(CIRCUIT_BREAKER_ID, new RuntimeException("Probe failed"), later);
+
+        var closed = store.saveCircuitBreakerClosed(CIRCUIT_BREAKER_ID, now, later);
+
+        assertThat(closed).isFalse();
+        assertThat(store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, later)).isEqualTo(PersistenceStore.Status.OPEN);
+    }
+
+    @Test
+    void addToSlidingWindow_shouldSumBucketsWithinWindow() {
+        var bucket = Instant.now().getEpochSecond();
+
+        store.addToSlidingWindow(CIRCUIT_BREAKER_ID, Map.of(bucket - 20, new CallStatistics(5, 5, 0)), bucket - 20, 10);
+        store.addToSlidingWindow(CIRCUIT_BREAKER_ID, Map.of(bucket - 1, new CallStatistics(2, 1, 0)), bucket, 10);
+        var statistics = store.addToSlidingWindow(CIRCUIT_BREAKER_ID, Map.of(bucket, new CallStatistics(1, 0, 0)), bucket, 10);
+
+        assertThat(statistics).isEqualTo(new CallStatistics(3, 1, 0));
+    }
+
+    @Test
+    void saveCircuitBreakerClosed_shouldKeepClosedRecordDuringSlowStart() {
+        var slowStartStore = slowStartStore();
+        var now = Instant.now();
+
+        closeAfterProbe(slowStartStore, now);
+
+        assertThat(slowStartStore.fetchRecord(CIRCUIT_BREAKER_ID)).hasValueSatisfying(statusRecord -> {
+            assertThat(statusRecord.status()).isEqualTo(PersistenceStore.Status.CLOSED);
+            assertThat(statusRecord.closedTimestamp()).isEqualTo(now.toEpochMilli());
+            assertThat(statusRecord.expiryTimestamp()).isGreaterThanOrEqualTo(now.plusSeconds(100).getEpochSecond());
+        });
+    }
+
+    @Test
+    void admitCall_shouldAdmitGrowingFractionOfCallsDuringSlowStart() {
+        var slowStartStore = slowStartStore();
+        var closedAt = Instant.now();
+        closeAfterProbe(slowStartStore, closedAt);
+
+        var admittedAtStart = countAdmitted(slowStartStore, closedAt);
+        var admittedInTheMiddle = countAdmitted(slowStartStore, closedAt.plusSeconds(50));
+        var admittedAfterWindow = countAdmitted(slowStartStore, closedAt.plusSeconds(101));
+
+        assertThat(admittedAtStart).isBetween(50, 200);
+        assertThat(admittedInTheMiddle).isBetween(450, 650);
+        assertThat(admittedAfterWindow).isEqualTo(1000);
+    }
+
+    @Test
+    void saveCircuitBreakerOpen_shouldReplaceClosedRecordDuringSlowStart() {
+        var slowStartStore = slowStartStore();
+        var now = Instant.now();
+        closeAfterProbe(slowStartStore, now);
+
+        slowStartStore.saveCircuitBreakerOpen(CIRCUIT_BREAKER_ID, new RuntimeException("The cause"), now.plusSeconds(1));
+
+        assertThat(slowStartStore.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now.plusSeconds(1))).isEqualTo(PersistenceStore.Status.OPEN);
+    }
+
+    private static InMemoryPersistenceStore slowStartStore() {
+        var slowStartStore = InMemoryPersistenceStore.builder().build();
+        slowStartStore.configure(CircuitBreakerConfig.builder()
+                .withSlowStart(Duration.ofSeconds(100), SlowStartMode.LINEAR)
+                .build());
+        return slowStartStore;
+    }
+
+    private static void closeAfterProbe(InMemoryPersistenceStore slowStartStore, Instant now) {
+        slowStartStore.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.minusSeconds(1).getEpochSecond(), "The cause"), now.minusSeconds(10));
+        slowStartStore.acquireProbeLease(CIRCUIT_BREAKER_ID, now);
+        slowStartStore.saveCircuitBreakerClosed(CIRCUIT_BREAKER_ID, now, now);
+    }
+
+    private static int countAdmitted(InMemoryPersistenceStore slowStartStore, Instant now) {
+        var admitted = 0;
+        for (var i = 0; i < 1000; i++) {
+            if (slowStartStore.admitCall(CIRCUIT_BREAKER_ID, now) == PersistenceStore.Admission.CLOSED) {
+                admitted++;
+            }
+        }
+        return admitted;
+    }
+
+    @Test
+    void acquireBulkheadLease_shouldGrantLeasesUpToMaximum() {
+        var now = Instant.now();
+        var leaseExpiry = now.plusSeconds(30);
+
+        var first = store.acquireBulkheadLease("a-bulkhead", "lease-1", 2, leaseExpiry, now);
+        var second = store.acquireBulkheadLease("a-bulkhead", "lease-2", 2, leaseExpiry, now);
+        var third = store.acquireBulkheadLease("a-bulkhead", "lease-3", 2, leaseExpiry, now);
+        store.releaseBulkheadLease("a-bulkhead", "lease-1");
+        var fourth = store.acquireBulkheadLease("a-bulkhead", "lease-4", 2, leaseExpiry, now);
+
+        assertThat(new boolean[]{first, second, third, fourth}).containsExactly(true, true, false, true);
+    }
+
+    @Test
+    void acquireBulkheadLease_shouldNotCountExpiredLeases() {
+        var now = Instant.now();
+        store.acquireBulkheadLease("a-bulkhead", "expired-lease", 1, now.minusSeconds(1), now.minusSeconds(31));
+
+        var granted = store.acquireBulkheadLease("a-bulkhead", "lease", 1, now.plusSeconds(30), now);
+
+        assertThat(granted).isTrue();
+    }
+
+    @Test
+    void acquirePermits_shouldTakePermitsUpToBurstAndRefill() {
+        var now = Instant.now();
+
+        var first = store.acquirePermits("a-rate-limiter", 10, 5, 4, now);
+        var second = store.acquirePermits("a-rate-limiter", 10, 5, 4, now);
+        var third = store.acquirePermits("a-rate-limiter", 10, 5, 4, now);
+        var refilled = store.acquirePermits("a-rate-limiter", 10, 5, 4, now.plusMillis(200));
+
+        assertThat(new int[]{first, second, third, refilled}).containsExactly(4, 1, 0, 2);
+    }
+}
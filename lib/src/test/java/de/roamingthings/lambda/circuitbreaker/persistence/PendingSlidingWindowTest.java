@@ -0,0 +1,71 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PendingSlidingWindowTest {
+
+    @Test
+    void statistics_shouldCombineStoredAndPendingOutcomes() {
+        var window = new PendingSlidingWindow(10);
+        window.record(100, true, false, 100_000);
+        var deltas = window.drain(100);
+        window.flushed(100, new CallStatistics(50, 5, 0), deltas);
+
+        window.record(101, false, false, 101_000);
+        window.record(101, true, false, 101_000);
+
+        assertThat(window.statistics(101)).isEqualTo(new CallStatistics(52, 6, 0));
+    }
+
+    @Test
+    void drain_shouldTakePendingOutcomesPerBucket() {
+        var window = new PendingSlidingWindow(10);
+        window.record(100, true, false, 100_000);
+        window.record(100, false, false, 100_000);
+        window.record(101, false, false, 101_000);
+
+        var deltas = window.drain(101);
+
+        assertThat(deltas).isEqualTo(Map.of(
+                100L, new CallStatistics(2, 1, 0),
+                101L, new CallStatistics(1, 0, 0)
+        ));
+    }
+
+    @Test
+    void drain_shouldOnlyAllowSingleFlushAtATime() {
+        var window = new PendingSlidingWindow(10);
+        window.record(100, true, false, 100_000);
+
+        var firstDeltas = window.drain(100);
+        var secondDeltas = window.drain(100);
+
+        assertThat(firstDeltas).isNotEmpty();
+        assertThat(secondDeltas).isNull();
+    }
+
+    @Test
+    void flushed_shouldKeepOutcomesOfFailedWrite() {
+        var window = new PendingSlidingWindow(10);
+        window.record(100, true, false, 100_000);
+        var deltas = window.drain(100);
+
+        window.flushed(100, null, deltas);
+
+        assertThat(window.statistics(100)).isEqualTo(new CallStatistics(1, 1, 0));
+        assertThat(window.isFlushDue(1, 1000, 100_000)).isTrue();
+    }
+
+    @Test
+    void isFlushDue_shouldBeDueWhenOldestPendingOutcomeIsTooOld() {
+        var window = new PendingSlidingWindow(10);
+        window.record(100, false, false, 100_000);
+
+        assertThat(window.isFlushDue(100, 1000, 100_500)).isFalse();
+        assertThat(window.isFlushDue(100, 1000, 101_000)).isTrue();
+    }
+}
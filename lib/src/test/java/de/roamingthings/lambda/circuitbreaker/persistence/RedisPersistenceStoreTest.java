@@ -0,0 +1,196 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreakerConfig;
+import de.roamingthings.lambda.circuitbreaker.test.RedisTestBase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+
+class RedisPersistenceStoreTest extends RedisTestBase {
+
+    private static final String CIRCUIT_BREAKER_ID = "a-circuit-breaker";
+
+    private RedisPersistenceStore store;
+
+    @BeforeEach
+    void setup() {
+        store = RedisPersistenceStore.builder()
+                .withJedis(jedis)
+                .build();
+        store.configure(CircuitBreakerConfig.builder()
+                .withExpiration(Duration.ofSeconds(60))
+                .build());
+    }
+
+    @Test
+    void saveCircuitBreakerOpen_shouldOpenCircuitBreaker() {
+        var now = Instant.now();
+
+        store.saveCircuitBreakerOpen(CIRCUIT_BREAKER_ID, new RuntimeException("The cause|with separator"), now);
+
+        assertThat(store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now)).isEqualTo(PersistenceStore.Status.OPEN);
+        assertThat(store.fetchRecord(CIRCUIT_BREAKER_ID)).hasValueSatisfying(statusRecord ->
+                assertThat(statusRecord.cause()).isEqualTo("The cause|with separator"));
+    }
+
+    @Test
+    void createRecord_shouldExpireKeyAfterRetention() {
+        var now = Instant.now();
+
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.plusSeconds(60).getEpochSecond(), "The cause"), now);
+
+        assertThat(jedis.pttl("circuitBreaker:" + CIRCUIT_BREAKER_ID))
+                .isBetween(Duration.ofSeconds(3600).toMillis(), Duration.ofSeconds(3661).toMillis());
+    }
+
+    @Test
+    void createRecord_shouldNotReplaceUnexpiredOpenRecord() {
+        var now = Instant.now();
+        var existing = new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.plusSeconds(60).getEpochSecond(), "first");
+
+        store.createRecord(existing, now);
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.plusSeconds(120).getEpochSecond(), "second"), now);
+
+        assertThat(store.fetchRecord(CIRCUIT_BREAKER_ID)).contains(existing);
+    }
+
+    @Test
+    void createRecord_shouldReplaceExpiredRecord() {
+        var now = Instant.now();
+        var replacement = new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.plusSeconds(60).getEpochSecond(), "second");
+
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.minusSeconds(10).getEpochSecond(), "first"), now.minusSeconds(20));
+        store.createRecord(replacement, now);
+
+        assertThat(store.fetchRecord(CIRCUIT_BREAKER_ID)).contains(replacement);
+    }
+
+    @Test
+    void acquireProbeLease_shouldBeGrantedToASingleConcurrentCaller() throws Exception {
+        var now = Instant.now();
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.minusSeconds(1).getEpochSecond(), "The cause"), now.minusSeconds(10));
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var attempts = new ArrayList<Future<Boolean>>();
+            for (var i = 0; i < 32; i++) {
+                attempts.add(executor.submit((Callable<Boolean>) () -> store.acquireProbeLease(CIRCUIT_BREAKER_ID, now)));
+            }
+            var granted = 0;
+            for (var attempt : attempts) {
+                granted += attempt.get() ? 1 : 0;
+            }
+
+            assertThat(granted).isEqualTo(1);
+            assertThat(store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now)).isEqualTo(PersistenceStore.Status.OPEN);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void fetchRecord_shouldNotReturnRecordPastRetention() throws Exception {
+        var store = RedisPersistenceStore.builder()
+                .withJedis(jedis)
+                .withRetention(Duration.ZERO)
+                .build();
+        var now = Instant.now();
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.minusSeconds(10).getEpochSecond(), "The cause"), now);
+        Thread.sleep(10);
+
+        assertThat(store.fetchRecord(CIRCUIT_BREAKER_ID)).isEmpty();
+        assertThat(store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now)).isEqualTo(PersistenceStore.Status.CLOSED);
+    }
+
+    @Test
+    void saveCircuitBreakerClosed_shouldDeleteRecord() {
+        var now = Instant.now();
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.minusSeconds(1).getEpochSecond(), "The cause"), now.minusSeconds(10));
+        store.acquireProbeLease(CIRCUIT_BREAKER_ID, now);
+
+        var closed = store.saveCircuitBreakerClosed(CIRCUIT_BREAKER_ID, now, now);
+
+        assertThat(closed).isTrue();
+        assertThat(store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, now)).isEqualTo(PersistenceStore.Status.CLOSED);
+        assertThat(jedis.get("circuitBreaker:" + CIRCUIT_BREAKER_ID)).isNull();
+    }
+
+    @Test
+    void saveCircuitBreakerClosed_shouldNotDeleteRecordAfterProbeLeaseHasBeenLost() {
+        var now = Instant.now();
+        store.createRecord(new CircuitBreakerStatusRecord(CIRCUIT_BREAKER_ID, PersistenceStore.Status.OPEN, now.minusSeconds(1).getEpochSecond(), "The cause"), now.minusSeconds(10));
+        store.acquireProbeLease(CIRCUIT_BREAKER_ID, now);
+        var later = now.plusSeconds(120);
+        store.acquireProbeLease(CIRCUIT_BREAKER_ID, later);
+        store.saveCircuitBreakerOpen(CIRCUIT_BREAKER_ID, new RuntimeException("Probe failed"), later);
+
+        var closed = store.saveCircuitBreakerClosed(CIRCUIT_BREAKER_ID, now, later);
+
+        assertThat(closed).isFalse();
+        assertThat(store.fetchCircuitBreakerState(CIRCUIT_BREAKER_ID, later)).isEqualTo(PersistenceStore.Status.OPEN);
+    }
+
+    @Test
+    void addToSlidingWindow_shouldSumBucketsWithinWindow() {
+        var bucket = Instant.now().getEpochSecond();
+
+        store.addToSlidingWindow(CIRCUIT_BREAKER_ID, Map.of(bucket - 20, new CallStatistics(5, 5, 0)), bucket - 20, 10);
+        store.addToSlidingWindow(CIRCUIT_BREAKER_ID, Map.of(bucket - 1, new CallStatistics(2, 1, 1)), bucket, 10);
+        var statistics = store.addToSlidingWindow(CIRCUIT_BREAKER_ID, Map.of(bucket, new CallStatistics(1, 0, 0)), bucket, 10);
+
+        assertThat(statistics).isEqualTo(new CallStatistics(3, 1, 1));
+        // Fields of the stale bucket are removed with the update after they have been read
+        assertThat(jedis.hgetAll("circuitBreaker:" + CIRCUIT_BREAKER_ID + "#window"))
+                .doesNotContainKey("calls_" + (bucket - 20));
+    }
+
+    @Test
+    void fetchRecord_shouldAnswerFromPipelinedSnapshot() {
+        var store = RedisPersistenceStore.builder()
+                .withJedis(jedis)
+                .withPrefetch(Duration.ofMinutes(1))
+                .build();
+        var expiry = Instant.now().plusSeconds(3600).getEpochSecond();
+
+        // First invocation: circuit breakers become known
+        assertThat(store.fetchRecord("first")).isEmpty();
+        assertThat(store.fetchRecord("second")).isEmpty();
+        store.flush();
+        jedis.set("circuitBreaker:second", "OPEN|" + expiry + "|0|The cause");
+
+        // Second invocation: both are loaded with the first fetch
+        var first = store.fetchRecord("first");
+        // Written behind the back of the store: not part of the snapshot
+        jedis.set("circuitBreaker:first", "OPEN|" + expiry + "|0");
+        var firstFromSnapshot = store.fetchRecord("first");
+        var second = store.fetchRecord("second");
+        store.flush();
+        var firstAfterFlush = store.fetchRecord("first");
+
+        assertSoftly(softly -> {
+            softly.assertThat(first).isEmpty();
+            softly.assertThat(firstFromSnapshot).isEmpty();
+            softly.assertThat(second).hasValueSatisfying(statusRecord ->
+                    softly.assertThat(statusRecord.cause()).isEqualTo("The cause"));
+            softly.assertThat(firstAfterFlush).hasValueSatisfying(statusRecord ->
+                    softly.assertThat(statusRecord.cause()).isNull());
+        });
+    }
+
+    @Test
+    void build_shouldRequireClient() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> RedisPersistenceStore.builder().build())
+                .withMessage("Redis client must not be null");
+    }
+}
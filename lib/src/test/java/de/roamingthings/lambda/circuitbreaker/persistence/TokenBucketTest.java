@@ -0,0 +1,31 @@
+package de.roamingthings.lambda.circuitbreaker.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    @Test
+    void refill_shouldAddTokensForElapsedTimeUpToBurst() {
+        var bucket = new TokenBucket(0.5, 1_000);
+
+        assertThat(bucket.refill(10, 20, 1_250).tokens()).isEqualTo(3.0);
+        assertThat(bucket.refill(10, 20, 10_000).tokens()).isEqualTo(20.0);
+    }
+
+    @Test
+    void refill_shouldNotRemoveTokensWhenClockIsBehind() {
+        var bucket = new TokenBucket(5, 2_000);
+
+        assertThat(bucket.refill(10, 20, 1_000)).isEqualTo(bucket);
+    }
+
+    @Test
+    void available_shouldOnlyCountWholeTokens() {
+        var bucket = new TokenBucket(2.9, 1_000);
+
+        assertThat(bucket.available(5)).isEqualTo(2);
+        assertThat(bucket.available(1)).isEqualTo(1);
+    }
+}
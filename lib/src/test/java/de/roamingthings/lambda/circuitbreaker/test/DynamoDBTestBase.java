@@ -25,6 +25,7 @@ import java.net.URI;
 public abstract class DynamoDBTestBase {
 
     protected static final String TABLE_NAME = "circuit_breaker_table";
+    protected static final String TABLE_NAME_WITH_SORT_KEY = "circuit_breaker_table_with_sort_key";
     protected static DynamoDBProxyServer dynamoProxy;
     protected static DynamoDbClient client;
 
@@ -51,7 +52,9 @@ public abstract class DynamoDBTestBase {
                 .build();
 
         createCircuitBreakerTable();
-        checkTableCreatedOrFail();
+        createCircuitBreakerTableWithSortKey();
+        checkTableCreatedOrFail(TABLE_NAME);
+        checkTableCreatedOrFail(TABLE_NAME_WITH_SORT_KEY);
     }
 
     @AfterAll
@@ -85,9 +88,24 @@ public abstract class DynamoDBTestBase {
                 .build());
     }
 
-    private static void checkTableCreatedOrFail() {
+    private static void createCircuitBreakerTableWithSortKey() {
+        client.createTable(CreateTableRequest.builder()
+                .tableName(TABLE_NAME_WITH_SORT_KEY)
+                .keySchema(
+                        KeySchemaElement.builder().keyType(KeyType.HASH).attributeName("id").build(),
+                        KeySchemaElement.builder().keyType(KeyType.RANGE).attributeName("sk").build()
+                )
+                .attributeDefinitions(
+                        AttributeDefinition.builder().attributeName("id").attributeType(ScalarAttributeType.S).build(),
+                        AttributeDefinition.builder().attributeName("sk").attributeType(ScalarAttributeType.S).build()
+                )
+                .billingMode(BillingMode.PAY_PER_REQUEST)
+                .build());
+    }
+
+    private static void checkTableCreatedOrFail(String tableName) {
         DescribeTableResponse response =
-                client.describeTable(DescribeTableRequest.builder().tableName(TABLE_NAME).build());
+                client.describeTable(DescribeTableRequest.builder().tableName(tableName).build());
         if (response == null) {
             throw new RuntimeException("Table was not created within expected time");
         }
@@ -0,0 +1,47 @@
+package de.roamingthings.lambda.circuitbreaker.test;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import redis.clients.jedis.JedisPooled;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+public abstract class RedisTestBase {
+
+    protected static RedisServer redisServer;
+    protected static JedisPooled jedis;
+
+    @BeforeAll
+    public static void setupRedis() throws IOException {
+        var redisPort = discoverFreePort();
+        redisServer = new RedisServer(redisPort);
+        redisServer.start();
+
+        jedis = new JedisPooled("localhost", redisPort);
+    }
+
+    @AfterAll
+    public static void teardownRedis() throws IOException {
+        jedis.close();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    public void clearRedis() {
+        jedis.flushAll();
+    }
+
+    private static int discoverFreePort() {
+        try {
+            ServerSocket socket = new ServerSocket(0);
+            int port = socket.getLocalPort();
+            socket.close();
+            return port;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+plugins {
+    `java-library`
+    `maven-publish`
+}
+
+val mavenArtifactId = "lambda-circuit-breaker-processor"
+val repositoryName = "roamingthings/lambda-circuit-breaker"
+val longName = "Annotation processor for the Circuit Breaker for AWS Lambda Functions"
+val longDescription = "Generates wrappers for methods annotated with @Safeguarded, so that the circuit breaker can be used\n" +
+        "without AspectJ weaving."
+
+group = "de.roamingthings"
+version = "local"
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    // The generated wrappers are compiled against the library
+    testImplementation(project(":lib"))
+    testImplementation(libs.bundles.test.common)
+
+    testRuntimeOnly(libs.junit.jupiter.engine)
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(17))
+        vendor = JvmVendorSpec.AMAZON
+    }
+    withSourcesJar()
+    withJavadocJar()
+}
+
+publishing {
+    repositories {
+        maven {
+            name = "GitHubPackages"
+            url = uri("https://maven.pkg.github.com/${repositoryName}")
+            credentials {
+                username = "dummy"
+                password = project.findProperty("gpr.key") as String? ?: (System.getenv("GITHUB_TOKEN"))
+                        ?: System.getenv("GITHUB_PUBLISH_PACKAGES_TOKEN")
+            }
+        }
+    }
+    publications {
+        create<MavenPublication>("processor") {
+            groupId = project.group.toString()
+            artifactId = mavenArtifactId
+            version = project.version.toString()
+
+            from(components["java"])
+
+            pom {
+                name.set(longName)
+                description.set(longDescription)
+                url.set("https://github.com/${repositoryName}")
+
+                scm {
+                    connection.set("https://github.com/${repositoryName}.git")
+                    developerConnection.set("https://github.com/${repositoryName}.git")
+                    url.set("https://github.com/${repositoryName}")
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package de.roamingthings.lambda.circuitbreaker.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a wrapper class {@code <Class>_Safeguarded} for every class with methods annotated with
+ * {@code @Safeguarded}.
+ * <p>
+ * The wrapper contains a static method per annotated method, which takes the instance as first parameter (static
+ * methods are called directly) and calls the method safeguarded by the circuit breaker:
+ * <pre>
+ *     String result = MyClient_Safeguarded.callClient(client, someParameter);
+ * </pre>
+ * The circuit breaker is checked with direct calls of {@code CircuitBreakerHandler}, so the wrappers work without
+ * AspectJ weaving and without reflection. Projects that use the wrappers should not weave the
+ * {@code CircuitBreakerAspect} as well, otherwise the circuit breaker is checked twice.
+ * <p>
+ * Methods that return a {@code CompletionStage} or a {@code CompletableFuture} are only supported by the aspect and
+ * are skipped with a warning.
+ */
+@SupportedAnnotationTypes(SafeguardedProcessor.SAFEGUARDED)
+public class SafeguardedProcessor extends AbstractProcessor {
+
+    static final String SAFEGUARDED = "de.roamingthings.lambda.circuitbreaker.Safeguarded";
+    private static final String COMPLETION_STAGE = "java.util.concurrent.CompletionStage";
+    private static final String COMPLETABLE_FUTURE = "java.util.concurrent.CompletableFuture";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        var safeguarded = processingEnv.getElementUtils().getTypeElement(SAFEGUARDED);
+        if (safeguarded == null) {
+            return false;
+        }
+        var methodsByType = new LinkedHashMap<TypeElement, List<ExecutableElement>>();
+        for (var element : roundEnv.getElementsAnnotatedWith(safeguarded)) {
+            if (element.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            var method = (ExecutableElement) element;
+            if (isSupported(method)) {
+                methodsByType.computeIfAbsent((TypeElement) method.getEnclosingElement(), type -> new ArrayList<>()).add(method);
+            }
+        }
+        for (Map.Entry<TypeElement, List<ExecutableElement>> entry : methodsByType.entrySet()) {
+            writeWrapper(entry.getKey(), entry.getValue(), safeguarded);
+        }
+        return false;
+    }
+
+    private boolean isSupported(ExecutableElement method) {
+        if (method.getModifiers().contains(Modifier.PRIVATE)) {
+            error(method, "Method annotated with @Safeguarded must not be private to generate a wrapper");
+            return false;
+        }
+        for (Element enclosing = method.getEnclosingElement(); enclosing instanceof TypeElement type; enclosing = enclosing.getEnclosingElement()) {
+            if (type.getModifiers().contains(Modifier.PRIVATE) || type.getNestingKind().isNested() && type.getNestingKind() != NestingKind.MEMBER) {
+                error(method, "Method annotated with @Safeguarded must be declared in an accessible top-level or member type to generate a wrapper");
+                return false;
+            }
+        }
+        if (isCompletionStage(method.getReturnType())) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Methods returning a CompletionStage are only safeguarded by the aspect, no wrapper is generated", method);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Like the aspect, only the declared types a {@code CompletableFuture} can be returned for are handled
+     * asynchronously.
+     */
+    private static boolean isCompletionStage(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        var name = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+        return COMPLETION_STAGE.equals(name) || COMPLETABLE_FUTURE.equals(name);
+    }
+
+    private void writeWrapper(TypeElement type, List<ExecutableElement> methods, TypeElement safeguarded) {
+        var writer = new SafeguardedWrapperWriter(processingEnv, type, methods, safeguarded);
+        try {
+            var sourceFile = processingEnv.getFiler().createSourceFile(writer.qualifiedName(), type);
+            try (var out = sourceFile.openWriter()) {
+                out.write(writer.source());
+            }
+        } catch (IOException e) {
+            error(type, "Failed to write wrapper " + writer.qualifiedName() + ": " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,232 @@
+package de.roamingthings.lambda.circuitbreaker.processor;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Writes the source of the wrapper of a single class.
+ * <p>
+ * Every annotated method gets a constant with the values of its {@code @Safeguarded} annotation, so that the
+ * {@code CircuitBreakerHandler} is created without reflection, and a handler that is created again when the
+ * circuit breaker is reconfigured.
+ */
+final class SafeguardedWrapperWriter {
+
+    private static final String HANDLER = "de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerHandler";
+    private static final String CIRCUIT_BREAKER = "de.roamingthings.lambda.circuitbreaker.CircuitBreaker";
+    private static final String INDENT = "    ";
+
+    private final ProcessingEnvironment processingEnv;
+    private final TypeElement type;
+    private final List<ExecutableElement> methods;
+    private final TypeElement safeguarded;
+    private final String packageName;
+    private final String simpleName;
+
+    SafeguardedWrapperWriter(ProcessingEnvironment processingEnv, TypeElement type, List<ExecutableElement> methods, TypeElement safeguarded) {
+        this.processingEnv = processingEnv;
+        this.type = type;
+        this.methods = methods;
+        this.safeguarded = safeguarded;
+        this.packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        this.simpleName = wrapperSimpleName(type);
+    }
+
+    String qualifiedName() {
+        return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+    }
+
+    String source() {
+        var source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@javax.annotation.processing.Generated(\"").append(SafeguardedProcessor.class.getName()).append("\")\n");
+        source.append("public final class ").append(simpleName).append(" {\n\n");
+        for (var index = 0; index < methods.size(); index++) {
+            appendSafeguarded(source, index, methods.get(index));
+            source.append(INDENT).append("private static volatile ").append(HANDLER).append(" handler").append(index).append(";\n\n");
+        }
+        source.append(INDENT).append("private ").append(simpleName).append("() {\n");
+        source.append(INDENT).append(INDENT).append("// Prevent instantiation\n");
+        source.append(INDENT).append("}\n");
+        for (var index = 0; index < methods.size(); index++) {
+            source.append('\n');
+            appendWrapperMethod(source, index, methods.get(index));
+            source.append('\n');
+            appendHandlerMethod(source, index);
+        }
+        source.append('\n');
+        source.append(INDENT).append("@SuppressWarnings(\"unchecked\")\n");
+        source.append(INDENT).append("private static <E extends Throwable> RuntimeException rethrow(Throwable throwable) throws E {\n");
+        source.append(INDENT).append(INDENT).append("// The handler only returns the thrown exception or an unchecked exception\n");
+        source.append(INDENT).append(INDENT).append("throw (E) throwable;\n");
+        source.append(INDENT).append("}\n");
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private void appendSafeguarded(StringBuilder source, int index, ExecutableElement method) {
+        var annotation = annotationOf(method);
+        var safeguardedName = safeguarded.getQualifiedName();
+        source.append(INDENT).append("private static final ").append(safeguardedName).append(" SAFEGUARDED_").append(index)
+                .append(" = new ").append(safeguardedName).append("() {\n");
+        var values = processingEnv.getElementUtils().getElementValuesWithDefaults(annotation);
+        for (var entry : values.entrySet()) {
+            var element = entry.getKey();
+            source.append('\n');
+            if (element.getReturnType().getKind() == TypeKind.ARRAY) {
+                source.append(INDENT).append(INDENT).append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+            }
+            source.append(INDENT).append(INDENT).append("@Override\n");
+            source.append(INDENT).append(INDENT).append("public ").append(element.getReturnType()).append(' ')
+                    .append(element.getSimpleName()).append("() {\n");
+            source.append(INDENT).append(INDENT).append(INDENT).append("return ")
+                    .append(literal(element.getReturnType(), entry.getValue())).append(";\n");
+            source.append(INDENT).append(INDENT).append("}\n");
+        }
+        source.append('\n');
+        source.append(INDENT).append(INDENT).append("@Override\n");
+        source.append(INDENT).append(INDENT).append("public Class<? extends java.lang.annotation.Annotation> annotationType() {\n");
+        source.append(INDENT).append(INDENT).append(INDENT).append("return ").append(safeguardedName).append(".class;\n");
+        source.append(INDENT).append(INDENT).append("}\n");
+        source.append(INDENT).append("};\n");
+    }
+
+    private void appendWrapperMethod(StringBuilder source, int index, ExecutableElement method) {
+        var isStatic = method.getModifiers().contains(Modifier.STATIC);
+        var parameterNames = method.getParameters().stream().map(parameter -> parameter.getSimpleName().toString()).toList();
+        var target = parameterNames.contains("target") ? "$target" : "target";
+
+        var typeParameters = new ArrayList<TypeParameterElement>();
+        if (!isStatic) {
+            typeParameters.addAll(type.getTypeParameters());
+        }
+        typeParameters.addAll(method.getTypeParameters());
+
+        var parameters = new ArrayList<String>();
+        if (!isStatic) {
+            parameters.add(type.asType() + " " + target);
+        }
+        for (var i = 0; i < method.getParameters().size(); i++) {
+            var parameterType = method.getParameters().get(i).asType();
+            var isVarArgs = method.isVarArgs() && i == method.getParameters().size() - 1;
+            parameters.add((isVarArgs ? ((ArrayType) parameterType).getComponentType() + "..." : parameterType.toString())
+                    + " " + parameterNames.get(i));
+        }
+
+        var returnType = method.getReturnType();
+        var isVoid = returnType.getKind() == TypeKind.VOID;
+        var call = (isStatic ? type.getQualifiedName() : target) + "." + method.getSimpleName() + "(" + String.join(", ", parameterNames) + ")";
+
+        source.append(INDENT).append(method.getModifiers().contains(Modifier.PUBLIC) ? "public static " : "static ");
+        if (!typeParameters.isEmpty()) {
+            source.append(typeParameters(typeParameters)).append(' ');
+        }
+        source.append(returnType).append(' ').append(method.getSimpleName())
+                .append('(').append(String.join(", ", parameters)).append(')');
+        if (!method.getThrownTypes().isEmpty()) {
+            source.append(" throws ").append(method.getThrownTypes().stream().map(TypeMirror::toString).collect(Collectors.joining(", ")));
+        }
+        source.append(" {\n");
+        var body = INDENT + INDENT;
+        source.append(body).append("var $handler = handler").append(index).append("();\n");
+        source.append(body).append("var $now = java.time.Instant.now();\n");
+        source.append(body).append("var $permission = $handler.acquirePermission($now);\n");
+        source.append(body).append("var $callStart = System.nanoTime();\n");
+        if (!isVoid) {
+            source.append(body).append(returnType).append(" $result;\n");
+        }
+        source.append(body).append("try {\n");
+        source.append(body).append(INDENT).append(isVoid ? "" : "$result = ").append(call).append(";\n");
+        source.append(body).append("} catch (Throwable $throwable) {\n");
+        source.append(body).append(INDENT).append("throw rethrow($handler.onError($permission, $throwable, $now, System.nanoTime() - $callStart));\n");
+        source.append(body).append("}\n");
+        source.append(body).append("$handler.onSuccess($permission, $now, System.nanoTime() - $callStart);\n");
+        if (!isVoid) {
+            source.append(body).append("return $result;\n");
+        }
+        source.append(INDENT).append("}\n");
+    }
+
+    private void appendHandlerMethod(StringBuilder source, int index) {
+        var body = INDENT + INDENT;
+        source.append(INDENT).append("private static ").append(HANDLER).append(" handler").append(index).append("() {\n");
+        source.append(body).append("var config = ").append(CIRCUIT_BREAKER).append(".getInstance().getConfig();\n");
+        source.append(body).append("var handler = handler").append(index).append(";\n");
+        source.append(body).append("if (handler == null || !handler.isResolvedFor(config)) {\n");
+        source.append(body).append(INDENT).append("handler = new ").append(HANDLER).append("(SAFEGUARDED_").append(index).append(", config);\n");
+        source.append(body).append(INDENT).append("handler").append(index).append(" = handler;\n");
+        source.append(body).append("}\n");
+        source.append(body).append("return handler;\n");
+        source.append(INDENT).append("}\n");
+    }
+
+    private AnnotationMirror annotationOf(ExecutableElement method) {
+        for (var annotation : method.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().asElement().equals(safeguarded)) {
+                return annotation;
+            }
+        }
+        throw new IllegalStateException("Method is not annotated with @Safeguarded: " + method);
+    }
+
+    private String literal(TypeMirror type, AnnotationValue value) {
+        var constant = value.getValue();
+        if (constant instanceof TypeMirror typeMirror) {
+            return processingEnv.getTypeUtils().erasure(typeMirror) + ".class";
+        }
+        if (constant instanceof VariableElement enumConstant) {
+            return enumConstant.getEnclosingElement() + "." + enumConstant.getSimpleName();
+        }
+        if (constant instanceof List<?> elements) {
+            var componentType = ((ArrayType) type).getComponentType();
+            var literals = new ArrayList<String>();
+            for (var element : elements) {
+                literals.add(literal(componentType, (AnnotationValue) element));
+            }
+            return "new " + processingEnv.getTypeUtils().erasure(componentType) + "[]{" + String.join(", ", literals) + "}";
+        }
+        if (constant instanceof AnnotationMirror) {
+            throw new IllegalStateException("Nested annotations are not supported: " + value);
+        }
+        return processingEnv.getElementUtils().getConstantExpression(constant);
+    }
+
+    private static String typeParameters(List<TypeParameterElement> typeParameters) {
+        var declarations = new ArrayList<String>();
+        for (var typeParameter : typeParameters) {
+            var bounds = typeParameter.getBounds().stream()
+                    .map(TypeMirror::toString)
+                    .filter(bound -> !"java.lang.Object".equals(bound))
+                    .toList();
+            declarations.add(bounds.isEmpty() ? typeParameter.getSimpleName().toString() : typeParameter.getSimpleName() + " extends " + String.join(" & ", bounds));
+        }
+        return "<" + String.join(", ", declarations) + ">";
+    }
+
+    /**
+     * Nested types are flattened, {@code Outer.Inner} is wrapped by {@code Outer_Inner_Safeguarded}.
+     */
+    private static String wrapperSimpleName(TypeElement type) {
+        var name = new StringBuilder(type.getSimpleName()).append("_Safeguarded");
+        for (Element enclosing = type.getEnclosingElement(); !(enclosing instanceof PackageElement); enclosing = enclosing.getEnclosingElement()) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,155 @@
+package de.roamingthings.lambda.circuitbreaker.processor;
+
+import de.roamingthings.lambda.circuitbreaker.CircuitBreaker;
+import de.roamingthings.lambda.circuitbreaker.exceptions.CircuitBreakerOpenException;
+import de.roamingthings.lambda.circuitbreaker.internal.CircuitBreakerTrippedException;
+import de.roamingthings.lambda.circuitbreaker.persistence.InMemoryPersistenceStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SafeguardedProcessorTest {
+
+    private static final String CLIENT_SOURCE = """
+            package com.example;
+
+            import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+
+            import java.io.IOException;
+
+            public class Client {
+
+                private final boolean failing;
+
+                public Client(boolean failing) {
+                    this.failing = failing;
+                }
+
+                @Safeguarded(id = "generated-circuit-breaker", trippedBy = IOException.class)
+                public String call(String target, int... values) throws IOException {
+                    if (failing) {
+                        throw new IOException("Something went wrong");
+                    }
+                    return target + values.length;
+                }
+
+                @Safeguarded(id = "generated-static-circuit-breaker")
+                public static long count() {
+                    return 42L;
+                }
+            }
+            """;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void process_shouldGenerateWrapperThatReturnsResult() throws Exception {
+        configureCircuitBreaker();
+        var classLoader = compile(CLIENT_SOURCE);
+        var client = classLoader.loadClass("com.example.Client").getConstructor(boolean.class).newInstance(false);
+        var wrapper = classLoader.loadClass("com.example.Client_Safeguarded");
+
+        var result = wrapper.getMethod("call", client.getClass(), String.class, int[].class)
+                .invoke(null, client, "Something", new int[]{1, 2});
+        var count = wrapper.getMethod("count").invoke(null);
+
+        assertThat(result).isEqualTo("Something2");
+        assertThat(count).isEqualTo(42L);
+    }
+
+    @Test
+    void process_shouldGenerateWrapperThatTripsCircuitBreaker() throws Exception {
+        configureCircuitBreaker();
+        var classLoader = compile(CLIENT_SOURCE);
+        var client = classLoader.loadClass("com.example.Client").getConstructor(boolean.class).newInstance(true);
+        var call = classLoader.loadClass("com.example.Client_Safeguarded")
+                .getMethod("call", client.getClass(), String.class, int[].class);
+
+        assertThatThrownBy(() -> call.invoke(null, client, "Something", new int[0]))
+                .isInstanceOf(InvocationTargetException.class)
+                .cause()
+                .isInstanceOf(CircuitBreakerTrippedException.class)
+                .cause()
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> call.invoke(null, client, "Something", new int[0]))
+                .isInstanceOf(InvocationTargetException.class)
+                .cause()
+                .isInstanceOf(CircuitBreakerOpenException.class);
+    }
+
+    @Test
+    void process_shouldReportPrivateMethod() throws Exception {
+        var diagnostics = compileWithDiagnostics("""
+                package com.example;
+
+                import de.roamingthings.lambda.circuitbreaker.Safeguarded;
+
+                public class PrivateClient {
+
+                    @Safeguarded(id = "private-circuit-breaker")
+                    private String call() {
+                        return "Something";
+                    }
+                }
+                """);
+
+        assertThat(diagnostics)
+                .filteredOn(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                .extracting(diagnostic -> diagnostic.getMessage(null))
+                .containsExactly("Method annotated with @Safeguarded must not be private to generate a wrapper");
+    }
+
+    private static void configureCircuitBreaker() {
+        CircuitBreaker.config()
+                .withPersistenceStore(InMemoryPersistenceStore.builder().build())
+                .configure();
+    }
+
+    private URLClassLoader compile(String source) throws IOException {
+        var diagnostics = compileWithDiagnostics(source);
+        assertThat(diagnostics)
+                .filteredOn(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                .isEmpty();
+        return new URLClassLoader(new java.net.URL[]{directory.resolve("classes").toUri().toURL()}, getClass().getClassLoader());
+    }
+
+    private List<Diagnostic<? extends JavaFileObject>> compileWithDiagnostics(String source) throws IOException {
+        var className = source.lines()
+                .filter(line -> line.startsWith("public class "))
+                .map(line -> line.split(" ")[2])
+                .findFirst()
+                .orElseThrow();
+        var sourceFile = directory.resolve("src/com/example/" + className + ".java");
+        Files.createDirectories(sourceFile.getParent());
+        Files.writeString(sourceFile, source);
+        Files.createDirectories(directory.resolve("classes"));
+        Files.createDirectories(directory.resolve("generated"));
+
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        var diagnostics = new DiagnosticCollector<JavaFileObject>();
+        try (var fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+            var task = compiler.getTask(null, fileManager, diagnostics, List.of(
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-d", directory.resolve("classes").toString(),
+                    "-s", directory.resolve("generated").toString()
+            ), null, fileManager.getJavaFileObjects(sourceFile));
+            task.setProcessors(List.of(new SafeguardedProcessor()));
+            task.call();
+        }
+        return diagnostics.getDiagnostics();
+    }
+}
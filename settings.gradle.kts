@@ -5,3 +5,4 @@ plugins {
 rootProject.name = "lambda-circuit-breaker"
 
 include("lib")
+include("processor")